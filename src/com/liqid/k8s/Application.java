@@ -8,7 +8,11 @@ package com.liqid.k8s;
 import com.bearsnake.k8sclient.K8SException;
 import com.bearsnake.klog.Logger;
 import com.liqid.k8s.commands.*;
+import com.liqid.k8s.exceptions.ConfigurationException;
 import com.liqid.k8s.exceptions.ScriptException;
+import com.liqid.k8s.layout.AllocationStrategy;
+import com.liqid.k8s.layout.SparePool;
+import com.liqid.k8s.plan.ErrorPolicy;
 import com.liqid.sdk.LiqidException;
 
 import java.util.Collection;
@@ -17,13 +21,21 @@ public class Application {
 
     private CommandType _commandType;
     private int _timeoutInSeconds = 300;
+    private int _inventoryConcurrency = Constants.LIQID_INVENTORY_CONCURRENCY;
+    private int _executionConcurrency = Constants.PLAN_EXECUTION_CONCURRENCY;
+    private int _drainLookahead = Constants.PLAN_DRAIN_LOOKAHEAD;
+    private String _inventoryCacheFile;
 
     private Boolean _allocate;
+    private String _allocationStrategy;
     private Boolean _automatic;
     private Boolean _clear;
+    private Boolean _continueOnError;
     private Boolean _enableP2P;
+    private String _distributionWeighting;
     private Boolean _force;
     private Collection<String> _fpgaSpecs;
+    private Boolean _fullReplan;
     private Collection<String> _gpuSpecs;
     private String _liqidAddress;
     private String _liqidGroupName;
@@ -35,19 +47,32 @@ public class Application {
     private Collection<String> _memorySpecs;
     private String _nodeName;
     private Boolean _noUpdate;
+    private Boolean _optimal;
     private Collection<String> _processorSpecs;
     private String _proxyURL;
     private Collection<String> _resourceSpecs;
+    private Integer _simulationDeviceCount;
+    private Integer _simulationNodeCount;
+    private String _spares;
     private Collection<String> _ssdSpecs;
+    private Boolean _topologyAware;
 
     Application setAllocate(final Boolean value) { _allocate = value; return this; }
+    Application setAllocationStrategy(final String value) { _allocationStrategy = value; return this; }
     Application setAutomatic(final Boolean value) { _automatic = value; return this; }
     Application setClear(final Boolean value) { _clear = value; return this; }
     Application setCommandType(final CommandType value) { _commandType = value; return this; }
+    Application setContinueOnError(final Boolean value) { _continueOnError = value; return this; }
+    Application setDrainLookahead(final int value) { _drainLookahead = value; return this; }
+    Application setDistributionWeighting(final String value) { _distributionWeighting = value; return this; }
     Application setEnableP2P(final Boolean value) { _enableP2P = value; return this; }
+    Application setExecutionConcurrency(final int value) { _executionConcurrency = value; return this; }
     Application setForce(final Boolean value) { _force = value; return this; }
     Application setFPGASpecs(final Collection<String> list) { _fpgaSpecs = list; return this; }
+    Application setFullReplan(final Boolean value) { _fullReplan = value; return this; }
     Application setGPUSpecs(final Collection<String> list) { _gpuSpecs = list; return this; }
+    Application setInventoryCacheFile(final String value) { _inventoryCacheFile = value; return this; }
+    Application setInventoryConcurrency(final int value) { _inventoryConcurrency = value; return this; }
     Application setLiqidAddress(final String value) { _liqidAddress = value; return this; }
     Application setLiqidGroupName(final String value) { _liqidGroupName = value; return this; }
     Application setLiqidPassword(final String value) { _liqidPassword = value; return this; }
@@ -58,16 +83,47 @@ public class Application {
     Application setMemorySpecs(final Collection<String> list) { _memorySpecs = list; return this; }
     Application setNodeName(final String value) { _nodeName = value; return this; }
     Application setNoUpdate(final boolean flag) { _noUpdate = flag; return this; }
+    Application setOptimal(final boolean flag) { _optimal = flag; return this; }
     Application setProxyURL(final String value) { _proxyURL = value; return this; }
     Application setProcessorSpecs(final Collection<String> list) { _processorSpecs = list; return this; }
     Application setResourceSpecs(final Collection<String> list) {_resourceSpecs = list; return this; }
+    Application setSimulationDeviceCount(final Integer value) { _simulationDeviceCount = value; return this; }
+    Application setSimulationNodeCount(final Integer value) { _simulationNodeCount = value; return this; }
+    Application setSpares(final String value) { _spares = value; return this; }
     Application setSSDSpecs(final Collection<String> list) { _ssdSpecs = list; return this; }
     Application setTimeoutInSeconds(final int value) { _timeoutInSeconds = value; return this; }
+    Application setTopologyAware(final boolean flag) { _topologyAware = flag; return this; }
 
     void process() throws K8SException, LiqidException, ScriptException {
         var fn = "process";
         _logger.trace("Entering %s", fn);
 
+        AllocationStrategy strategy = null;
+        if (_allocationStrategy != null) {
+            strategy = AllocationStrategy.getStrategy(_allocationStrategy);
+            if (strategy == null) {
+                throw new ConfigurationException(String.format("Unknown allocation strategy '%s' - the built-in strategies are %s",
+                                                               _allocationStrategy,
+                                                               String.join(", ", AllocationStrategy.getBuiltInNames())));
+            }
+        }
+
+        DistributionWeighting weighting = null;
+        if (_distributionWeighting != null) {
+            weighting = DistributionWeighting.get(_distributionWeighting);
+            if (weighting == null) {
+                throw new ConfigurationException(String.format("Unknown distribution weighting '%s'", _distributionWeighting));
+            }
+        }
+
+        SparePool sparePool = null;
+        if (_spares != null) {
+            sparePool = SparePool.parse(_spares);
+            if (sparePool == null) {
+                throw new ConfigurationException(String.format("Invalid spare pool '%s' - expected {type}:{count}[,...]", _spares));
+            }
+        }
+
         var command = switch (_commandType) {
             case ADOPT ->
                 new AdoptCommand(_logger, _force, _timeoutInSeconds)
@@ -89,6 +145,7 @@ public class Application {
             case COMPOSE ->
                 new ComposeCommand(_logger, _force, _timeoutInSeconds)
                     .setEnableP2POverride(_enableP2P)
+                    .setFullReplan(_fullReplan)
                     .setProxyURL(_proxyURL);
             case INITIALIZE ->
                 new InitializeCommand(_logger, _force, _timeoutInSeconds)
@@ -127,17 +184,39 @@ public class Application {
                     .setLiqidAddress(_liqidAddress)
                     .setLiqidPassword(_liqidPassword)
                     .setLiqidUsername(_liqidUsername);
+            case SIMULATE ->
+                new SimulateCommand(_logger, _force, _timeoutInSeconds)
+                    .setDeviceCount(_simulationDeviceCount)
+                    .setNodeCount(_simulationNodeCount);
             case UNLINK ->
                 new UnlinkCommand(_logger, _force, _timeoutInSeconds)
                     .setProxyURL(_proxyURL);
         };
 
+        command.setAllocationStrategy(strategy)
+               .setDistributionWeighting(weighting)
+               .setInventoryCacheFile(_inventoryCacheFile)
+               .setInventoryConcurrency(_inventoryConcurrency)
+               .setOptimalAllocation(_optimal)
+               .setPlanExecution(!_noUpdate)
+               .setSparePool(sparePool)
+               .setTopologyAware(_topologyAware);
         var plan = command.process();
         if (plan != null) {
             // commands which do not update anything may not create a plan
             plan.show();
             if (!_noUpdate) {
-                plan.execute(command.getK8SClient(), command.getLiqidClient(), _logger);
+                plan.setExecutionConcurrency(_executionConcurrency)
+                    .setInventoryConcurrency(command.getInventoryConcurrency())
+                    .setLiqidClientFactory(command.getLiqidClientFactory())
+                    .setDrainLookahead(_drainLookahead)
+                    .setErrorPolicy(_continueOnError ? ErrorPolicy.CONTINUE_ON_ERROR : ErrorPolicy.FAIL_FAST);
+                plan.execute(command.getK8SClient(),
+                             command.getLiqidClient(),
+                             command.getLiqidInventory(),
+                             command.getLiqidInventoryFingerprint(),
+                             _logger);
+                command.discardInventorySnapshot();
             }
         }
 
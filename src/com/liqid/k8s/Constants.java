@@ -16,6 +16,12 @@ public class Constants {
         K8S_CONFIG_MAP_IP_ADDRESS_KEY is the key for the IP address of the Liqid Cluster Director
         K8S_CONFIG_MAP_GROUP_NAME_KEY is the key for the name of the Liqid Cluster group where we put all the
             machines and resources that we're going to manage for the Kubernetes Cluster.
+    It may also have these entries:
+        K8S_CONFIG_MAP_ENABLE_P2P_KEY indicates whether P2P should be enabled for machines with two or more GPUs
+        K8S_CONFIG_MAP_ALLOCATION_STRATEGY_KEY names the allocation strategy used for laying out and allocating
+            resources (see AllocationStrategy) - if it is absent, the default strategy is used.
+        K8S_CONFIG_MAP_SPARES_KEY describes the number of devices of each type which compose keeps free in the group
+            as spares, such as "gpu:2,ssd:1" (see SparePool) - if it is absent, no spares are kept.
 
     Note that this allows us to observe multi-tenancy. Any resources which are in other groups, or which are
     not in any group, are generally left alone. This allows other clients (including other Kubernetes clusters)
@@ -55,6 +61,13 @@ public class Constants {
         K8S_ANNOTATION_LINK_ENTRY - as above, but for LINK (i.e., network) resources
         K8S_ANNOTATION_MEMORY_ENTRY - as above, but for MEM (i.e., NVMe memory) resources
         K8S_ANNOTATION_SSD_ENTRY - as above, but for PCI-based storage resources (generally SSDs)
+    The following annotation key may be written by the user:
+        K8S_ANNOTATION_WEIGHT - a number giving the relative share of resources the node should get when resources are
+            distributed automatically with annotation weighting (see DistributionWeighting). Nodes without it weigh 1.
+    The following annotation key is written by compose:
+        K8S_ANNOTATION_LAYOUT_FINGERPRINT - a fingerprint of the resource annotations and of the devices which were
+            allocated for them, the last time the machine for this node was composed. If neither has changed since,
+            compose leaves the machine (and its devices) alone.
      */
 
     public static final String K8S_ANNOTATION_PREFIX = "kubint.liqid.com";
@@ -64,6 +77,8 @@ public class Constants {
     public static final String K8S_ANNOTATION_LINK_ENTRY = "link-resources";
     public static final String K8S_ANNOTATION_MEMORY_ENTRY = "memory-resources";
     public static final String K8S_ANNOTATION_SSD_ENTRY = "ssd-resources";
+    public static final String K8S_ANNOTATION_LAYOUT_FINGERPRINT = "layout-fingerprint";
+    public static final String K8S_ANNOTATION_WEIGHT = "weight";
 
     public static final String[] K8S_ANNOTATION_KEYS = {
         K8S_ANNOTATION_MACHINE_NAME,
@@ -72,6 +87,8 @@ public class Constants {
         K8S_ANNOTATION_LINK_ENTRY,
         K8S_ANNOTATION_MEMORY_ENTRY,
         K8S_ANNOTATION_SSD_ENTRY,
+        K8S_ANNOTATION_LAYOUT_FINGERPRINT,
+        K8S_ANNOTATION_WEIGHT,
     };
 
     public static final String K8S_CONFIG_NAME = "kubint.liqid.com";
@@ -79,12 +96,24 @@ public class Constants {
     public static final String K8S_CONFIG_MAP_IP_ADDRESS_KEY = "address";
     public static final String K8S_CONFIG_MAP_GROUP_NAME_KEY = "group";
     public static final String K8S_CONFIG_MAP_ENABLE_P2P_KEY = "enableP2P";
+    public static final String K8S_CONFIG_MAP_ALLOCATION_STRATEGY_KEY = "allocationStrategy";
+    public static final String K8S_CONFIG_MAP_SPARES_KEY = "spares";
 
     public static final String K8S_SECRET_NAME = "kubint.liqid.com";
     public static final String K8S_SECRET_NAMESPACE = "default";
     public static final String K8S_SECRET_CREDENTIALS_KEY = "credentials";
 
     public static final String LIQID_SDK_LABEL = "KubInt";
+    public static final int LIQID_INVENTORY_CONCURRENCY = 8;
+    public static final int PLAN_EXECUTION_CONCURRENCY = 1;
+    public static final int PLAN_DRAIN_LOOKAHEAD = 0;
+    public static final int PLAN_ATTACHMENT_CHECK_MAX_PERCENT = 50;
+    public static final int PLAN_ESTIMATED_EVICTION_SECONDS = 60;
+    public static final int PLAN_ESTIMATED_REPROGRAM_SECONDS = 30;
+    public static final int LIQID_INVENTORY_SNAPSHOT_MAX_AGE_IN_SECONDS = 600;
+
+    public static final int SIMULATION_DEFAULT_NODE_COUNT = 500;
+    public static final int SIMULATION_DEFAULT_DEVICE_COUNT = 2000;
 
     public static final String VERSION = "3.0";
 }
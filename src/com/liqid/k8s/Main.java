@@ -36,6 +36,7 @@ import static com.liqid.k8s.commands.CommandType.*;
         -px,--proxy-url={proxy_url}
         -a,--automatic
         -n,--worker-node={worker_node_name}
+        [ -as,--allocation-strategy={strategy} ]
         [ -cl,--clear ]
         [ -m,--liqid-machine={liqid_machine} ]
         [ -fs,--fpga-spec={spec}[,...] ]
@@ -43,6 +44,7 @@ import static com.liqid.k8s.commands.CommandType.*;
         [ -ls,--link-spec={spec}[,...] ]
         [ -ms,--mem-spec={spec}[,...] ]
         [ -ss,--ssd-spec={spec}[,...] ]
+        [ -wt,--weighting={annotation|capacity|pods} ]
         [ -f,--force ]
         [ -no,--no-update ]
 
@@ -53,6 +55,11 @@ import static com.liqid.k8s.commands.CommandType.*;
     compose
         -px,--proxy-url={proxy_url}
         -p2p
+        [ -as,--allocation-strategy={strategy} ]
+        [ -fu,--full ]
+        [ -op,--optimal ]
+        [ -sp,--spares={type:count}[,...] ]
+        [ -ta,--topology-aware ]
         [ -f,--force ]
         [ -no,--no-update ]
 
@@ -66,6 +73,11 @@ import static com.liqid.k8s.commands.CommandType.*;
         -r,--resources={name}[,...]
         -p2p
         [ -al,--allocate ]
+        [ -as,--allocation-strategy={strategy} ]
+        [ -op,--optimal ]
+        [ -sp,--spares={type:count}[,...] ]
+        [ -ta,--topology-aware ]
+        [ -wt,--weighting={annotation|capacity|pods} ]
         [ -f,--force ]
         [ -no,--no-update ]
 
@@ -76,6 +88,8 @@ import static com.liqid.k8s.commands.CommandType.*;
         [ -p,--liqid-password={password} ]
         -g,--liqid-group={group_name}
         -p2p
+        [ -as,--allocation-strategy={strategy} ]
+        [ -sp,--spares={type:count}[,...] ]
         [ -f,--force ]
         [ -no,--no-update ]
 
@@ -101,6 +115,15 @@ import static com.liqid.k8s.commands.CommandType.*;
         [ -u,--liqid-username={user_name} ]
         [ -p,--liqid-password={password} ]
 
+    simulate
+        [ -sn,--sim-nodes={count} ]
+        [ -sd,--sim-devices={count} ]
+        [ -cf,--cache-file={file_name} ]
+        [ -as,--allocation-strategy={strategy} ]
+        [ -op,--optimal ]
+        [ -ta,--topology-aware ]
+        [ -f,--force ]
+
     unlink
         -px,--proxy-url={proxy_url}
         [ -f,--force ]
@@ -121,15 +144,22 @@ public class Main {
     private static final CommandValue CV_RELEASE = new CommandValue(RELEASE.getToken());
     private static final CommandValue CV_RESET = new CommandValue(RESET.getToken());
     private static final CommandValue CV_RESOURCES = new CommandValue(RESOURCES.getToken());
+    private static final CommandValue CV_SIMULATE = new CommandValue(SIMULATE.getToken());
     private static final CommandValue CV_UNLINK = new CommandValue(UNLINK.getToken());
 
     private static final CommandArgument COMMAND_ARG;
     private static final Switch ALLOCATE_SWITCH;
+    private static final Switch ALLOCATION_STRATEGY_SWITCH;
     private static final Switch AUTO_SWITCH;
+    private static final Switch CACHE_FILE_SWITCH;
     private static final Switch CLEAR_SWITCH;
+    private static final Switch CONTINUE_ON_ERROR_SWITCH;
+    private static final Switch DRAIN_LOOKAHEAD_SWITCH;
     private static final Switch FORCE_SWITCH;
     private static final Switch FPGA_SPEC_SWITCH;
+    private static final Switch FULL_SWITCH;
     private static final Switch GPU_SPEC_SWITCH;
+    private static final Switch INVENTORY_CONCURRENCY_SWITCH;
     private static final Switch LIQID_ADDRESS_SWITCH;
     private static final Switch LIQID_GROUP_SWITCH;
     private static final Switch LIQID_PASSWORD_SWITCH;
@@ -140,12 +170,19 @@ public class Main {
     private static final Switch MEM_SPEC_SWITCH;
     private static final Switch NODE_NAME_SWITCH;
     private static final Switch NO_UPDATE_SWITCH;
+    private static final Switch OPTIMAL_SWITCH;
     private static final Switch ENABLE_P2P_SWITCH;
+    private static final Switch EXECUTION_CONCURRENCY_SWITCH;
     private static final Switch PROCESSORS_SWITCH;
     private static final Switch PROXY_URL_SWITCH;
     private static final Switch RESOURCES_SWITCH;
+    private static final Switch SIM_DEVICES_SWITCH;
+    private static final Switch SIM_NODES_SWITCH;
+    private static final Switch SPARES_SWITCH;
     private static final Switch SSD_SPEC_SWITCH;
     private static final Switch TIMEOUT_SWITCH;
+    private static final Switch TOPOLOGY_SWITCH;
+    private static final Switch WEIGHTING_SWITCH;
 
     private static final Set<Switch> ANNOTATE_REQ_SET = new HashSet<>();
 
@@ -158,6 +195,25 @@ public class Main {
                                           .addDescription("Causes the initialize process to create annotations and subsequently")
                                           .addDescription("allocate resources to worker nodes, as equally as possible per type.")
                                           .build();
+            ALLOCATION_STRATEGY_SWITCH =
+                new ArgumentSwitch.Builder().setShortName("as")
+                                            .setLongName("allocation-strategy")
+                                            .setIsRequired(false)
+                                            .addAffinity(CV_ANNOTATE)
+                                            .addAffinity(CV_COMPOSE)
+                                            .addAffinity(CV_INITIALIZE)
+                                            .addAffinity(CV_LINK)
+                                            .addAffinity(CV_SIMULATE)
+                                            .setValueName("strategy")
+                                            .setValueType(ValueType.STRING)
+                                            .addDescription("Selects the policy by which resources are distributed among the worker nodes:")
+                                            .addDescription("  spread - each node gets as nearly as possible the same number of each type of resource")
+                                            .addDescription("  pack - resources are packed onto as few nodes as possible, keeping whole nodes free")
+                                            .addDescription("  minimal-disruption - nodes keep what they have, and as few resources as possible are moved")
+                                            .addDescription("For the " + INITIALIZE.getToken() + " and " + LINK.getToken() + " commands, the strategy is stored in the linkage,")
+                                            .addDescription("and is used by subsequent commands unless they specify a different strategy.")
+                                            .addDescription("If not specified and not stored in the linkage, the spread strategy is used.")
+                                            .build();
             AUTO_SWITCH =
                 new SimpleSwitch.Builder().setShortName("a")
                                           .setLongName("automatic")
@@ -166,6 +222,19 @@ public class Main {
                                           .addDescription("evenly distribute (to the extent possible) the various resources")
                                           .addDescription("across the worker nodes. Does NOT recompose.")
                                           .build();
+            CACHE_FILE_SWITCH =
+                new ArgumentSwitch.Builder().setShortName("cf")
+                                            .setLongName("cache-file")
+                                            .setIsRequired(false)
+                                            .setValueName("file_name")
+                                            .setValueType(ValueType.STRING)
+                                            .addDescription("Names a local file which holds a snapshot of the Liqid Cluster inventory.")
+                                            .addDescription("Commands which only read the Liqid configuration use the snapshot if it is")
+                                            .addDescription("still current (it is checked against the Liqid Director with a few inexpensive")
+                                            .addDescription("queries) and is less than " + Constants.LIQID_INVENTORY_SNAPSHOT_MAX_AGE_IN_SECONDS
+                                                            + " seconds old; otherwise they load the inventory and rewrite the snapshot.")
+                                            .addDescription("Commands which change the Liqid configuration discard the snapshot.")
+                                            .build();
             CLEAR_SWITCH =
                 new SimpleSwitch.Builder().setShortName("cl")
                                           .setLongName("clear")
@@ -181,6 +250,33 @@ public class Main {
                                           .addDescription("which have two or more GPUs allocated to them, at the time of allocation.")
                                           .addDescription("For the " + COMPOSE.getToken() + " command, this will override the linkage setting.")
                                           .build();
+            CONTINUE_ON_ERROR_SWITCH =
+                new SimpleSwitch.Builder().setShortName("ce")
+                                          .setLongName("continue-on-error")
+                                          .addDescription("Indicates that when a step of the plan fails, every step which does not depend upon")
+                                          .addDescription("the failed step should still be performed. By default, no further steps are started.")
+                                          .build();
+            DRAIN_LOOKAHEAD_SWITCH =
+                new ArgumentSwitch.Builder().setShortName("dl")
+                                            .setLongName("drain-lookahead")
+                                            .setIsRequired(false)
+                                            .setValueName("nodes")
+                                            .setValueType(ValueType.FIXED_POINT)
+                                            .addDescription("Maximum number of Kubernetes nodes which are cordoned and drained ahead of the plan steps")
+                                            .addDescription("which need them, while earlier steps are still reprogramming the Liqid fabric.")
+                                            .addDescription("Defaults to " + Constants.PLAN_DRAIN_LOOKAHEAD + ", which drains each node only when its step begins.")
+                                            .build();
+            EXECUTION_CONCURRENCY_SWITCH =
+                new ArgumentSwitch.Builder().setShortName("xc")
+                                            .setLongName("execution-concurrency")
+                                            .setIsRequired(false)
+                                            .setValueName("steps")
+                                            .setValueType(ValueType.FIXED_POINT)
+                                            .addDescription("Maximum number of plan steps which are performed at the same time. Steps are only")
+                                            .addDescription("performed together if they share no devices, machines, nodes, or groups.")
+                                            .addDescription("Each step in progress has its own connection to the Liqid Director.")
+                                            .addDescription("Defaults to " + Constants.PLAN_EXECUTION_CONCURRENCY + ", which performs the steps one at a time, in order.")
+                                            .build();
             FORCE_SWITCH =
                 new SimpleSwitch.Builder().setShortName("f")
                                           .setLongName("force")
@@ -217,6 +313,15 @@ public class Main {
                                             .addDescription("If not specified, no change is made to the relevant annotation.")
                                             .addDescription("To clear this value, enter '0' for the specification.")
                                             .build();
+            FULL_SWITCH =
+                new SimpleSwitch.Builder().setShortName("fu")
+                                          .setLongName("full")
+                                          .addAffinity(CV_COMPOSE)
+                                          .addDescription("Re-plans every machine. Without this switch, only the machines whose annotations or")
+                                          .addDescription("devices have changed since they were last composed are re-planned, and the other")
+                                          .addDescription("machines keep the devices they have (unless the changed machines cannot otherwise")
+                                          .addDescription("be satisfied).")
+                                          .build();
             GPU_SPEC_SWITCH =
                 new ArgumentSwitch.Builder().setShortName("gs")
                                             .setLongName("gpu-spec")
@@ -228,6 +333,17 @@ public class Main {
                                             .addDescription("Specifies how many resources of this type should be assigned to the indicated worker node.")
                                             .addDescription("(see the documentation for the -fs,--fpga-spec switch.")
                                             .build();
+            INVENTORY_CONCURRENCY_SWITCH =
+                new ArgumentSwitch.Builder().setShortName("ic")
+                                            .setLongName("inventory-concurrency")
+                                            .setIsRequired(false)
+                                            .setValueName("requests")
+                                            .setValueType(ValueType.FIXED_POINT)
+                                            .addDescription("Maximum number of concurrent requests made to the Liqid Director while")
+                                            .addDescription("loading the Liqid Cluster inventory. A value of 1 loads the inventory serially.")
+                                            .addDescription("Each concurrent request is made through its own connection (and login) to the Director.")
+                                            .addDescription("Defaults to " + Constants.LIQID_INVENTORY_CONCURRENCY + ".")
+                                            .build();
             LIQID_ADDRESS_SWITCH =
                 new ArgumentSwitch.Builder().setShortName("ip")
                                             .setLongName("liqid-ip-address")
@@ -341,6 +457,17 @@ public class Main {
                                           .addDescription("Indicates that no action should be taken; however, the script will display what action")
                                           .addDescription("/would/ be taken in the absence of this switch.")
                                           .build();
+            OPTIMAL_SWITCH =
+                new SimpleSwitch.Builder().setShortName("op")
+                                          .setLongName("optimal")
+                                          .addAffinity(CV_COMPOSE)
+                                          .addAffinity(CV_INITIALIZE)
+                                          .addAffinity(CV_SIMULATE)
+                                          .addDescription("Chooses devices for the worker nodes by solving for the allocation which satisfies")
+                                          .addDescription("every node if that is at all possible, while moving as few devices as possible.")
+                                          .addDescription("Without this switch, devices are chosen for each node in turn, which is quicker")
+                                          .addDescription("but can fail, or can move more devices than necessary.")
+                                          .build();
             PROCESSORS_SWITCH =
                 new ArgumentSwitch.Builder().setShortName("pr")
                                             .setLongName("processors")
@@ -401,6 +528,42 @@ public class Main {
                                             .addDescription("Specifies how many resources of this type should be assigned to the indicated worker node.")
                                             .addDescription("(see the documentation for the -fs,--fpga-spec switch.")
                                             .build();
+            SIM_DEVICES_SWITCH =
+                new ArgumentSwitch.Builder().setShortName("sd")
+                                            .setLongName("sim-devices")
+                                            .setIsRequired(false)
+                                            .addAffinity(CV_SIMULATE)
+                                            .setValueName("count")
+                                            .setValueType(ValueType.FIXED_POINT)
+                                            .addDescription("Number of resource devices in the synthetic Liqid Cluster inventory.")
+                                            .addDescription("Defaults to " + Constants.SIMULATION_DEFAULT_DEVICE_COUNT + ".")
+                                            .build();
+            SIM_NODES_SWITCH =
+                new ArgumentSwitch.Builder().setShortName("sn")
+                                            .setLongName("sim-nodes")
+                                            .setIsRequired(false)
+                                            .addAffinity(CV_SIMULATE)
+                                            .setValueName("count")
+                                            .setValueType(ValueType.FIXED_POINT)
+                                            .addDescription("Number of worker nodes (and machines) in the synthetic Liqid Cluster inventory.")
+                                            .addDescription("Defaults to " + Constants.SIMULATION_DEFAULT_NODE_COUNT + ".")
+                                            .build();
+            SPARES_SWITCH =
+                new ArgumentSwitch.Builder().setShortName("sp")
+                                            .setLongName("spares")
+                                            .setIsRequired(false)
+                                            .addAffinity(CV_COMPOSE)
+                                            .addAffinity(CV_INITIALIZE)
+                                            .addAffinity(CV_LINK)
+                                            .setValueName("type:count[,...]")
+                                            .setValueType(ValueType.STRING)
+                                            .addDescription("Keeps a pool of spare devices free in the Liqid Cluster group - for example, gpu:2,ssd:1")
+                                            .addDescription("keeps two GPUs and one SSD ready to be attached without first being moved into the group.")
+                                            .addDescription("Devices are attached only from the pool (or taken from other machines), and the")
+                                            .addDescription(COMPOSE.getToken() + " plan finishes by restocking the pool from devices which are not in any group.")
+                                            .addDescription("For the " + INITIALIZE.getToken() + " and " + LINK.getToken() + " commands, the pool is stored in the linkage,")
+                                            .addDescription("and used by " + COMPOSE.getToken() + " unless this switch is given there.")
+                                            .build();
             TIMEOUT_SWITCH =
                 new ArgumentSwitch.Builder().setShortName("t")
                                             .setLongName("timeout")
@@ -409,6 +572,31 @@ public class Main {
                                             .setValueType(ValueType.FIXED_POINT)
                                             .addDescription("Timeout value for back-end network communication in seconds.")
                                             .build();
+            TOPOLOGY_SWITCH =
+                new SimpleSwitch.Builder().setShortName("ta")
+                                          .setLongName("topology-aware")
+                                          .addAffinity(CV_COMPOSE)
+                                          .addAffinity(CV_INITIALIZE)
+                                          .addAffinity(CV_SIMULATE)
+                                          .addDescription("When choosing GPUs for a worker node, prefers GPUs which share a fabric switch")
+                                          .addDescription("with each other and with the node's compute device, for better P2P bandwidth.")
+                                          .addDescription("Has no effect if the Liqid Director does not report fabric switch information.")
+                                          .build();
+            WEIGHTING_SWITCH =
+                new ArgumentSwitch.Builder().setShortName("wt")
+                                            .setLongName("weighting")
+                                            .setIsRequired(false)
+                                            .addAffinity(CV_ANNOTATE)
+                                            .addAffinity(CV_INITIALIZE)
+                                            .setValueName("source")
+                                            .setValueType(ValueType.STRING)
+                                            .addDescription("When resources are distributed automatically, gives each worker node a share of each type of")
+                                            .addDescription("resource in proportion to a weight, rather than an equal share. The weight is taken from:")
+                                            .addDescription("  annotation - the node's " + Constants.K8S_ANNOTATION_PREFIX + "/" + Constants.K8S_ANNOTATION_WEIGHT
+                                                            + " annotation (1 if it has none)")
+                                            .addDescription("  capacity - the node's CPU capacity")
+                                            .addDescription("  pods - the number of active pods scheduled to the node")
+                                            .build();
             COMMAND_ARG =
                 new CommandArgument.Builder().addDescription(ADOPT.getToken())
                                              .addDescription("  Adopts additional resources (compute or otherwise) into the targeted Kubernetes Cluster.")
@@ -450,6 +638,11 @@ public class Main {
                                              .addDescription("  Removes all Liqid annotations and other configuration information from the Kubernetes Cluster.")
                                              .addDescription(RESOURCES.getToken())
                                              .addDescription("  Displays the resources and machines available on the Liqid Cluster.")
+                                             .addDescription(SIMULATE.getToken())
+                                             .addDescription("  Develops a compose plan entirely in memory, without the Liqid Director or the Kubernetes API server,")
+                                             .addDescription("  for a synthetic Liqid Cluster inventory - or the inventory in the snapshot named by -cf,--cache-file -")
+                                             .addDescription("  with the worker nodes annotated as the allocation strategy would annotate them.")
+                                             .addDescription("  Reports the size of the plan, the devices moved, the nodes drained, and the planning time.")
                                              .addDescription(UNLINK.getToken())
                                              .addDescription("  Unlinks a particular Liqid Cluster from the targeted Kubernetes Cluster.")
                                              .addDescription("  Removes the Liqid Cluster information provided via the " + LINK.getToken() + " command (listed above).")
@@ -463,6 +656,7 @@ public class Main {
                                              .addCommandValue(CV_RELEASE)
                                              .addCommandValue(CV_RESET)
                                              .addCommandValue(CV_RESOURCES)
+                                             .addCommandValue(CV_SIMULATE)
                                              .addCommandValue(CV_UNLINK)
                                              .build();
 
@@ -517,12 +711,17 @@ public class Main {
     ) {
         var app = new Application().setCommandType(CommandType.get(result._commandValue.getValue()))
                                    .setAllocate(result._switchSpecifications.containsKey(ALLOCATE_SWITCH))
+                                   .setAllocationStrategy(getSingleString(result._switchSpecifications.get(ALLOCATION_STRATEGY_SWITCH)))
                                    .setAutomatic(result._switchSpecifications.containsKey(AUTO_SWITCH))
                                    .setClear(result._switchSpecifications.containsKey(CLEAR_SWITCH))
+                                   .setContinueOnError(result._switchSpecifications.containsKey(CONTINUE_ON_ERROR_SWITCH))
+                                   .setDistributionWeighting(getSingleString(result._switchSpecifications.get(WEIGHTING_SWITCH)))
                                    .setEnableP2P(result._switchSpecifications.containsKey(ENABLE_P2P_SWITCH))
                                    .setForce(result._switchSpecifications.containsKey(FORCE_SWITCH))
                                    .setFPGASpecs(getStringCollection(result._switchSpecifications.get(FPGA_SPEC_SWITCH)))
+                                   .setFullReplan(result._switchSpecifications.containsKey(FULL_SWITCH))
                                    .setGPUSpecs(getStringCollection(result._switchSpecifications.get(GPU_SPEC_SWITCH)))
+                                   .setInventoryCacheFile(getSingleString(result._switchSpecifications.get(CACHE_FILE_SWITCH)))
                                    .setLiqidAddress(getSingleString(result._switchSpecifications.get(LIQID_ADDRESS_SWITCH)))
                                    .setLiqidGroupName(getSingleString(result._switchSpecifications.get(LIQID_GROUP_SWITCH)))
                                    .setLiqidPassword(getSingleString(result._switchSpecifications.get(LIQID_PASSWORD_SWITCH)))
@@ -533,16 +732,44 @@ public class Main {
                                    .setMemorySpecs(getStringCollection(result._switchSpecifications.get(MEM_SPEC_SWITCH)))
                                    .setNodeName(getSingleString(result._switchSpecifications.get(NODE_NAME_SWITCH)))
                                    .setNoUpdate(result._switchSpecifications.containsKey(NO_UPDATE_SWITCH))
+                                   .setOptimal(result._switchSpecifications.containsKey(OPTIMAL_SWITCH))
                                    .setProcessorSpecs(getStringCollection(result._switchSpecifications.get(PROCESSORS_SWITCH)))
                                    .setProxyURL(getSingleString(result._switchSpecifications.get(PROXY_URL_SWITCH)))
                                    .setResourceSpecs(getStringCollection(result._switchSpecifications.get(RESOURCES_SWITCH)))
-                                   .setSSDSpecs(getStringCollection(result._switchSpecifications.get(SSD_SPEC_SWITCH)));
+                                   .setSpares(getSingleString(result._switchSpecifications.get(SPARES_SWITCH)))
+                                   .setSSDSpecs(getStringCollection(result._switchSpecifications.get(SSD_SPEC_SWITCH)))
+                                   .setTopologyAware(result._switchSpecifications.containsKey(TOPOLOGY_SWITCH));
 
         var values = result._switchSpecifications.get(TIMEOUT_SWITCH);
         if ((values != null) && !values.isEmpty()) {
             app.setTimeoutInSeconds((int) (long) ((FixedPointValue) values.get(0)).getValue());
         }
 
+        values = result._switchSpecifications.get(INVENTORY_CONCURRENCY_SWITCH);
+        if ((values != null) && !values.isEmpty()) {
+            app.setInventoryConcurrency((int) (long) ((FixedPointValue) values.get(0)).getValue());
+        }
+
+        values = result._switchSpecifications.get(EXECUTION_CONCURRENCY_SWITCH);
+        if ((values != null) && !values.isEmpty()) {
+            app.setExecutionConcurrency((int) (long) ((FixedPointValue) values.get(0)).getValue());
+        }
+
+        values = result._switchSpecifications.get(DRAIN_LOOKAHEAD_SWITCH);
+        if ((values != null) && !values.isEmpty()) {
+            app.setDrainLookahead((int) (long) ((FixedPointValue) values.get(0)).getValue());
+        }
+
+        values = result._switchSpecifications.get(SIM_DEVICES_SWITCH);
+        if ((values != null) && !values.isEmpty()) {
+            app.setSimulationDeviceCount((int) (long) ((FixedPointValue) values.get(0)).getValue());
+        }
+
+        values = result._switchSpecifications.get(SIM_NODES_SWITCH);
+        if ((values != null) && !values.isEmpty()) {
+            app.setSimulationNodeCount((int) (long) ((FixedPointValue) values.get(0)).getValue());
+        }
+
         return app;
     }
 
@@ -581,12 +808,19 @@ public class Main {
         clh.addCanonicalHelpSwitch()
            .addCanonicalVersionSwitch()
            .addSwitch(ALLOCATE_SWITCH)
+           .addSwitch(ALLOCATION_STRATEGY_SWITCH)
            .addSwitch(AUTO_SWITCH)
+           .addSwitch(CACHE_FILE_SWITCH)
            .addSwitch(CLEAR_SWITCH)
+           .addSwitch(CONTINUE_ON_ERROR_SWITCH)
+           .addSwitch(DRAIN_LOOKAHEAD_SWITCH)
            .addSwitch(ENABLE_P2P_SWITCH)
+           .addSwitch(EXECUTION_CONCURRENCY_SWITCH)
            .addSwitch(FORCE_SWITCH)
            .addSwitch(FPGA_SPEC_SWITCH)
+           .addSwitch(FULL_SWITCH)
            .addSwitch(GPU_SPEC_SWITCH)
+           .addSwitch(INVENTORY_CONCURRENCY_SWITCH)
            .addSwitch(LIQID_ADDRESS_SWITCH)
            .addSwitch(LIQID_GROUP_SWITCH)
            .addSwitch(LIQID_USERNAME_SWITCH)
@@ -597,11 +831,17 @@ public class Main {
            .addSwitch(MEM_SPEC_SWITCH)
            .addSwitch(NODE_NAME_SWITCH)
            .addSwitch(NO_UPDATE_SWITCH)
+           .addSwitch(OPTIMAL_SWITCH)
            .addSwitch(PROCESSORS_SWITCH)
            .addSwitch(PROXY_URL_SWITCH)
            .addSwitch(RESOURCES_SWITCH)
+           .addSwitch(SIM_DEVICES_SWITCH)
+           .addSwitch(SIM_NODES_SWITCH)
+           .addSwitch(SPARES_SWITCH)
            .addSwitch(SSD_SPEC_SWITCH)
            .addSwitch(TIMEOUT_SWITCH)
+           .addSwitch(TOPOLOGY_SWITCH)
+           .addSwitch(WEIGHTING_SWITCH)
            .addRequirementSet(CV_ANNOTATE, ANNOTATE_REQ_SET)
            .addDependency(MACHINE_NAME_SWITCH, NODE_NAME_SWITCH)
            .addDependency(FPGA_SPEC_SWITCH, NODE_NAME_SWITCH)
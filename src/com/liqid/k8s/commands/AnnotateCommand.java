@@ -43,6 +43,9 @@ public class AnnotateCommand extends Command {
         super(logger, force, timeoutInSeconds);
     }
 
+    @Override
+    protected boolean canUseInventorySnapshot() { return true; }
+
     public AnnotateCommand setAutomatic(final Boolean value) { _automatic = value; return this; }
     public AnnotateCommand setClear(final Boolean value) { _clear = value; return this; }
     public AnnotateCommand setFPGASpecifications(final Collection<String> list) { _fpgaSpecs = list; return this; }
@@ -255,7 +258,7 @@ public class AnnotateCommand extends Command {
                     }
                 }
 
-                resModel = new SpecificResourceModel(genType, vendor, model);
+                resModel = ResourceModel.intern(new SpecificResourceModel(genType, vendor, model));
             } else if (split.length == 2) {
                 vendor = split[0];
 
@@ -267,9 +270,9 @@ public class AnnotateCommand extends Command {
                     }
                 }
 
-                resModel = new VendorResourceModel(genType, vendor);
+                resModel = ResourceModel.intern(new VendorResourceModel(genType, vendor));
             } else {
-                resModel = new GenericResourceModel(genType);
+                resModel = ResourceModel.intern(new GenericResourceModel(genType));
                 if (resCount == 0) {
                     clear = true;
                 }
@@ -10,20 +10,23 @@ import com.bearsnake.klog.*;
 import com.liqid.k8s.CredentialMangler;
 import com.liqid.k8s.exceptions.*;
 import com.liqid.k8s.layout.*;
+import com.liqid.k8s.layout.LiqidClientFactory;
 import com.liqid.k8s.plan.Plan;
 import com.liqid.k8s.plan.actions.*;
 import com.liqid.sdk.*;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.liqid.k8s.Constants.*;
 
@@ -46,6 +49,13 @@ public abstract class Command {
     protected final Logger _logger;
     protected Boolean _force;
     protected final Integer _timeoutInSeconds;
+    protected int _inventoryConcurrency = LIQID_INVENTORY_CONCURRENCY;
+    protected String _inventoryCacheFile;
+    protected boolean _optimalAllocation = false;
+    protected boolean _topologyAware = false;
+    protected AllocationStrategy _allocationStrategy = null;
+    protected DistributionWeighting _distributionWeighting = null;
+    protected SparePool _sparePool = null;
 
     protected String _liqidAddress;
     protected Boolean _liqidEnableP2P;
@@ -57,6 +67,8 @@ public abstract class Command {
     protected K8SClient _k8sClient;
     protected LiqidClient _liqidClient;
     protected LiqidInventory _liqidInventory;
+    protected String _liqidInventoryFingerprint;
+    protected boolean _planExecution = false;
 
     protected Command(
         final Logger logger,
@@ -91,8 +103,50 @@ public abstract class Command {
              LiqidException,
              ProcessingException;
 
+    public int getInventoryConcurrency() { return _inventoryConcurrency; }
     public K8SClient getK8SClient() { return _k8sClient; }
     public LiqidClient getLiqidClient() { return _liqidClient; }
+    public LiqidClientFactory getLiqidClientFactory() { return this::createLoggedInLiqidClient; }
+    public LiqidInventory getLiqidInventory() { return _liqidInventory; }
+    public String getLiqidInventoryFingerprint() { return _liqidInventoryFingerprint; }
+
+    public Command setAllocationStrategy(final AllocationStrategy value) { _allocationStrategy = value; return this; }
+    public Command setDistributionWeighting(final DistributionWeighting value) { _distributionWeighting = value; return this; }
+    public Command setInventoryCacheFile(final String value) { _inventoryCacheFile = value; return this; }
+    public Command setInventoryConcurrency(final int value) { _inventoryConcurrency = value; return this; }
+    public Command setOptimalAllocation(final boolean value) { _optimalAllocation = value; return this; }
+    public Command setPlanExecution(final boolean value) { _planExecution = value; return this; }
+    public Command setSparePool(final SparePool value) { _sparePool = value; return this; }
+    public Command setTopologyAware(final boolean value) { _topologyAware = value; return this; }
+
+    /**
+     * Indicates whether this command may work from a snapshot of the Liqid inventory (see InventorySnapshot).
+     * Only commands which make no changes to the Liqid Cluster should do so - they override this method.
+     */
+    protected boolean canUseInventorySnapshot() { return false; }
+
+    /**
+     * Indicates whether this command may produce a plan. Commands which only report on things override this,
+     * so that we do not take an inventory fingerprint (see initLiqidClient()) which nothing would use.
+     */
+    protected boolean producesPlan() { return true; }
+
+    /**
+     * Retrieves the allocation strategy - as given on the command line, or else as stored in the linkage,
+     * or else the default strategy.
+     */
+    protected AllocationStrategy getAllocationStrategy() {
+        return (_allocationStrategy != null) ? _allocationStrategy : AllocationStrategy.DEFAULT;
+    }
+
+    /**
+     * Discards the inventory snapshot (if there is one) - to be invoked after the Liqid configuration is changed.
+     */
+    public void discardInventorySnapshot() {
+        if (_inventoryCacheFile != null) {
+            InventorySnapshot.discard(_inventoryCacheFile);
+        }
+    }
 
     /**
      * Check for conflicts in the current Liqid / K8S configurations
@@ -156,6 +210,15 @@ public abstract class Command {
         return result;
     }
 
+    /**
+     * As below, for allocators created from our own inventory
+     */
+    protected Collection<Allocation> createAllocations(
+        final Map<ResourceModel, Collection<Allocator>> allocators
+    ) {
+        return createAllocations(_liqidInventory, allocators);
+    }
+
     /**
      * Creates a map of allocations based on the given allocators.
      * --[ This is the point where we convert types/vendors/models/counts into actual device identifiers. ]--
@@ -165,59 +228,71 @@ public abstract class Command {
      * Our job is to choose the best device identifiers based on the preference, for each allocator, producing an allocation
      * of device identifiers per machine. At this point, order of preference or resource model is no longer relevant, so we
      * simply return a map of machine name to an Allocation object for that machine.
+     * The allocation strategy provides the solver (see AllocationStrategy.createSolver()) - normally we choose
+     * greedily, in allocator order (see GreedyAllocationSolver). If _optimalAllocation is set,
+     * we use OptimalAllocationSolver regardless of the strategy. Either way, each general type of device is
+     * solved separately and concurrently (see PartitionedAllocationSolver).
+     * If _topologyAware is set, GPUs are chosen to be co-located on the fabric, where the inventory tells us
+     * where they are (see FabricLocality).
+     * @param inventory the inventory from which the allocators were created
      * @param allocators ordered map of allocators
      * @return unordered map of machines -> allocations if successful, null if errors are detected and we are not forcing
      */
     protected Collection<Allocation> createAllocations(
+        final LiqidInventory inventory,
         final Map<ResourceModel, Collection<Allocator>> allocators
     ) {
         var fn = "createAllocations";
         _logger.trace("Entering %s with allocators=%s", fn, allocators);
 
-        var errors = false;
-        var errPrefix = getErrorPrefix();
-
-        // key is machine name
-        var allocations = new HashMap<String, Allocation>();
-        var chosenIds = new HashSet<Integer>();
-        for (var entry : allocators.entrySet()) {
-            // per res model
-            var resModel = entry.getKey();
-            var allocs = entry.getValue();
-            for (var alloc : allocs) {
-                // per machine
-                var newDeviceIds = new HashSet<Integer>();
-                var machineName = alloc.getMachineName();
-                var count = alloc.getCount();
-                var selectionSet = alloc.getDeviceIdentifiers();
-                while (count > 0) {
-                    if (selectionSet.isEmpty()) {
+        var solver = solveAllocations(inventory, allocators);
+        if (!solver.isSatisfied()) {
+            var errPrefix = getErrorPrefix();
+            for (var entry : allocators.entrySet()) {
+                var resModel = entry.getKey();
+                for (var alloc : entry.getValue()) {
+                    if (solver.getShortfall(alloc) > 0) {
                         System.out.printf("%s:Out of potential device identifiers for machine %s resmodel %s\n",
-                                          errPrefix, machineName, resModel);
-                        errors = true;
-                        break;
-                    }
-
-                    var id = selectionSet.removeFirst();
-                    if (!chosenIds.contains(id)) {
-                        newDeviceIds.add(id);
-                        chosenIds.add(id);
-                        count--;
+                                          errPrefix, alloc.getMachineName(), resModel);
                     }
                 }
-
-                if (!allocations.containsKey(machineName)) {
-                    allocations.put(machineName, new Allocation(machineName));
-                }
-                allocations.get(machineName).appendDeviceIdentifiers(newDeviceIds);
             }
         }
 
-        var result = (errors && !_force) ? null : allocations.values();
+        var result = (!solver.isSatisfied() && !_force) ? null : solver.getAllocations();
         _logger.trace("%s returning with %s", fn, result);
         return result;
     }
 
+    /**
+     * Chooses device identifiers for the given allocators (see createAllocations()) without reporting
+     * any shortfall - the caller inspects the returned solver.
+     * @param inventory the inventory from which the allocators were created
+     * @param allocators ordered map of allocators
+     * @return the solver, having solved
+     */
+    protected AllocationSolver solveAllocations(
+        final LiqidInventory inventory,
+        final Map<ResourceModel, Collection<Allocator>> allocators
+    ) {
+        FabricLocality locality = null;
+        if (_topologyAware && (inventory != null)) {
+            locality = FabricLocality.createFromInventory(inventory);
+            if (locality.isEmpty()) {
+                System.err.println("WARNING:No fabric location information is available - devices will be allocated without regard to locality.");
+                locality = null;
+            }
+        }
+
+        // Device types never compete for devices, so we solve for each type separately, and concurrently
+        var strategy = getAllocationStrategy();
+        var solver = new PartitionedAllocationSolver(allocators,
+                                                     part -> _optimalAllocation
+                                                             ? new OptimalAllocationSolver(part)
+                                                             : strategy.createSolver(part));
+        return solver.setLocality(locality).solve();
+    }
+
     /**
      * Given an inventory of the current Liqid configuration and a desired layout, we populate our allocations list
      * with Allocation objects describing the potential devices for each ResourceModel entry indicated in the
@@ -233,12 +308,32 @@ public abstract class Command {
     public Map<ResourceModel, Collection<Allocator>> createAllocators(
         final LiqidInventory inventory,
         final ClusterLayout desiredLayout
+    ) {
+        return createAllocators(inventory, desiredLayout, new IdentifierSet());
+    }
+
+    /**
+     * As above, but the given devices are not candidates for any machine - unless they are already attached
+     * to the machine. This is how we keep devices where they are, for machines which are not being re-planned.
+     * @param inventory LiqidInventory which sources the devices we consider
+     * @param desiredLayout ClusterLayout which describes the layout wanted by the user
+     * @param excludedDeviceIds identifiers of devices which are not to be moved
+     */
+    public Map<ResourceModel, Collection<Allocator>> createAllocators(
+        final LiqidInventory inventory,
+        final ClusterLayout desiredLayout,
+        final IdentifierSet excludedDeviceIds
     ) {
         var fn = "createAllocators";
-        _logger.trace("Entering %s with inventory=%s desiredLayout=%s", fn, inventory, desiredLayout);
+        _logger.trace("Entering %s with inventory=%s desiredLayout=%s excludedDeviceIds=%s",
+                      fn, inventory, desiredLayout, excludedDeviceIds);
 
         var result = new TreeMap<ResourceModel, Collection<Allocator>>();
 
+        // The free and assigned candidates depend only upon the resource model and the restrictions,
+        // so we find them once and share them among all the machines with the same model and restrictions.
+        var sharedCandidates = new HashMap<ResourceModel, Map<Set<ResourceModel>, IdentifierSet[]>>();
+
         // iterate over the machine profiles in the desired layout.
         for (var machineProfile : desiredLayout.getMachineProfiles()) {
             var machineName = machineProfile.getMachineName();
@@ -256,9 +351,11 @@ public abstract class Command {
             for (var rm : resModels) {
                 var devCount = machineProfile.getCount(rm);
                 if (devCount > 0) {
-                    var devIds = getOrderedDeviceIdentifiers(inventory, rm, restrictions, machineName);
+                    var shared = sharedCandidates.computeIfAbsent(rm, k -> new HashMap<>())
+                                                 .computeIfAbsent(restrictions, k -> getSharedCandidates(inventory, rm, k, excludedDeviceIds));
+                    var attached = getAttachedCandidates(inventory, rm, restrictions, machineName);
                     result.computeIfAbsent(rm, k -> new LinkedList<>());
-                    result.get(rm).add(new Allocator(machineProfile.getMachineName(), devCount, devIds));
+                    result.get(rm).add(new Allocator(machineName, devCount, attached, shared[0], shared[1]));
                 }
             }
         }
@@ -429,18 +526,18 @@ public abstract class Command {
                             switch (split.length) {
                                 case 1:
                                     count = Integer.parseInt(split[0]);
-                                    resModel = new GenericResourceModel(genType);
+                                    resModel = ResourceModel.intern(new GenericResourceModel(genType));
                                     break;
                                 case 2:
                                     vendor = split[0];
                                     count = Integer.parseInt(split[1]);
-                                    resModel = new VendorResourceModel(genType, vendor);
+                                    resModel = ResourceModel.intern(new VendorResourceModel(genType, vendor));
                                     break;
                                 case 3:
                                     vendor = split[0];
                                     model = split[1];
                                     count = Integer.parseInt(split[2]);
-                                    resModel = new SpecificResourceModel(genType, vendor, model);
+                                    resModel = ResourceModel.intern(new SpecificResourceModel(genType, vendor, model));
                                     break;
                                 default:
                                     System.out.printf("%s:Annotation for node '%s' -> %s is invalid\n",
@@ -492,30 +589,45 @@ public abstract class Command {
             }
         }
 
-        var layout = createEvenlyAllocatedClusterLayout(computeDeviceItems, resourceDeviceItems);
+        var nodeWeights = (_distributionWeighting == null) ? null : getNodeWeights(nodes);
+        var layout = createEvenlyAllocatedClusterLayout(computeDeviceItems, resourceDeviceItems, nodeWeights);
 
         _logger.trace("%s returning %s", fn, layout);
         return layout;
     }
 
     /**
-     * Creates steps to create annotations which will allocate resources as equally as possible
-     * among the k8s worker nodes. Does NOT require anything from the existing _liqidClient nor from _k8sClient.
+     * As below, without weighting
+     */
+    protected ClusterLayout createEvenlyAllocatedClusterLayout(
+        final Map<DeviceItem, Node> computeDeviceItems,
+        final Collection<DeviceItem> resourceDeviceItems
+    ) {
+        return createEvenlyAllocatedClusterLayout(computeDeviceItems, resourceDeviceItems, null);
+    }
+
+    /**
+     * Creates steps to create annotations which will allocate resources among the k8s worker nodes, as the allocation
+     * strategy dictates (as equally as possible, by default - see AllocationStrategy.distribute()) - or in proportion
+     * to the node weights, if there are any. Does NOT require anything from the existing _liqidClient nor from _k8sClient.
      * This logic is here because we really need to tie nodes to machines (sometimes in the context of NOT
      * having the annotation for the node->machine name in place), and we need to know how many devices of each
      * generic type we have, which we could get many places... but all of that in one place is best provided
      * in the .commands package, which is where we are at.
+     * The compute devices are taken in order of name, so that the same inputs always produce the same layout.
      * @param computeDeviceItems container which indicates the compute devices of interest, along with their nodes
      * @param resourceDeviceItems container which indicates the resource devices of interest
+     * @param nodeWeights weight per node name (see getNodeWeights()), or null to distribute without weighting
      * @return ClusterLayout object corresponding to the actions added to the given Plan
      */
     protected ClusterLayout createEvenlyAllocatedClusterLayout(
         final Map<DeviceItem, Node> computeDeviceItems,
-        final Collection<DeviceItem> resourceDeviceItems
+        final Collection<DeviceItem> resourceDeviceItems,
+        final Map<String, Double> nodeWeights
     ) {
         var fn = "allocateEqually";
-        _logger.trace("Entering %s with compDevs=%s resDevs=%s",
-                      fn, computeDeviceItems, resourceDeviceItems);
+        _logger.trace("Entering %s with compDevs=%s resDevs=%s nodeWeights=%s",
+                      fn, computeDeviceItems, resourceDeviceItems, nodeWeights);
 
         var layout = new ClusterLayout();
         var devsByType = LiqidInventory.segregateDeviceItemsByType(resourceDeviceItems);
@@ -524,38 +636,43 @@ public abstract class Command {
             return layout;
         }
 
+        //  The strategy decides how many devices of each type go to each machine.
+        var strategy = getAllocationStrategy();
+        var compDevItems = new LinkedList<>(computeDeviceItems.keySet());
+        compDevItems.sort(Comparator.comparing(DeviceItem::getDeviceName));
+        if (nodeWeights != null) {
+            var weights = new HashMap<Integer, Double>();
+            for (var compDevItem : compDevItems) {
+                var node = computeDeviceItems.get(compDevItem);
+                if (node != null) {
+                    weights.put(compDevItem.getDeviceId(), nodeWeights.getOrDefault(node.getName(), 0.0));
+                }
+            }
+            strategy = new WeightedAllocationStrategy(strategy, weights);
+        }
+        var countsByType = new HashMap<GeneralType, int[]>();
+        for (var entry : devsByType.entrySet()) {
+            countsByType.put(entry.getKey(), strategy.distribute(compDevItems, entry.getValue()));
+        }
+
         //  We do this by machine, because it is much more efficient to attach all the devices for the machine
-        //  in one step. We need to iterate over the computeDeviceItems to get there, though.
-        var remainingMachineCount = computeDeviceItems.size();
-        for (var entry : computeDeviceItems.entrySet()) {
-            var node = entry.getValue();
-            var machineName = createMachineName(entry.getKey().getDeviceStatus(), node);
+        //  in one step.
+        var cx = 0;
+        for (var compDevItem : compDevItems) {
+            var node = computeDeviceItems.get(compDevItem);
+            var machineName = createMachineName(compDevItem.getDeviceStatus(), node);
             var machineProfile = new MachineProfile(machineName);
 
-            //  loop over each type of device - for each type we have all the still-to-be-assigned
-            //  devices of that type.
-            for (var subEntry : devsByType.entrySet()) {
-                var genType = subEntry.getKey();
-                var devItems = subEntry.getValue();
-
-                //  how many for this machine?
-                var resCount = devItems.size() / remainingMachineCount;
-                if (devItems.size() % remainingMachineCount > 0) {
-                    resCount++;
-                }
-
-                //  Create resource profile and add it to machine profile with the resource count
+            //  Create resource profile and add it to machine profile with the resource count
+            for (var subEntry : countsByType.entrySet()) {
+                var resCount = subEntry.getValue()[cx];
                 if (resCount > 0) {
-                    var resModel = new GenericResourceModel(genType);
+                    var resModel = ResourceModel.intern(new GenericResourceModel(subEntry.getKey()));
                     machineProfile.injectCount(resModel, resCount);
-
-                    for (int rx = 0; rx < resCount; rx++) {
-                        devItems.removeFirst();
-                    }
                 }
             }
 
-            remainingMachineCount--;
+            cx++;
 
             if (!machineProfile.getResourceModels().isEmpty()) {
                 layout.addMachineProfile(machineProfile);
@@ -566,6 +683,91 @@ public abstract class Command {
         return layout;
     }
 
+    /**
+     * Determines a weight for each of the given worker nodes, according to _distributionWeighting:
+     *  ANNOTATION - the value of the weight annotation, or 1.0 if there is none
+     *  CAPACITY - the CPU capacity of the node
+     *  PODS - the number of pods scheduled to the node which have not finished
+     * A node for which no weight can be determined gets the average weight of the other nodes.
+     * @param nodes collection of worker nodes
+     * @return map of node name to weight
+     */
+    protected Map<String, Double> getNodeWeights(
+        final Collection<Node> nodes
+    ) throws K8SRequestError, K8SJSONError, K8SHTTPError {
+        var fn = "getNodeWeights";
+        _logger.trace("Entering %s with nodes=%s", fn, nodes);
+
+        var weights = new HashMap<String, Double>();
+        var unknown = new LinkedList<String>();
+        switch (_distributionWeighting) {
+            case ANNOTATION -> {
+                var annoKey = createAnnotationKeyFor(K8S_ANNOTATION_WEIGHT);
+                for (var node : nodes) {
+                    var value = node.metadata.annotations.get(annoKey);
+                    try {
+                        weights.put(node.getName(), (value == null) ? 1.0 : Double.parseDouble(value));
+                    } catch (NumberFormatException ex) {
+                        System.err.printf("WARNING:Node '%s' has an invalid weight annotation '%s'\n", node.getName(), value);
+                        unknown.add(node.getName());
+                    }
+                }
+            }
+
+            case CAPACITY -> {
+                for (var node : nodes) {
+                    var value = (node.status.capacity == null) ? null : node.status.capacity.get("cpu");
+                    var cpus = parseCPUQuantity(value);
+                    if (cpus == null) {
+                        System.err.printf("WARNING:Cannot determine the CPU capacity of node '%s'\n", node.getName());
+                        unknown.add(node.getName());
+                    } else {
+                        weights.put(node.getName(), cpus);
+                    }
+                }
+            }
+
+            case PODS -> {
+                for (var node : nodes) {
+                    weights.put(node.getName(), 0.0);
+                }
+                for (var pod : _k8sClient.getPods()) {
+                    var phase = (pod.status == null) ? null : pod.status.phase;
+                    if ((pod.spec != null) && weights.containsKey(pod.spec.nodeName)
+                        && !"Succeeded".equals(phase) && !"Failed".equals(phase)) {
+                        weights.merge(pod.spec.nodeName, 1.0, Double::sum);
+                    }
+                }
+            }
+        }
+
+        var average = weights.values().stream().mapToDouble(Double::doubleValue).average().orElse(1.0);
+        unknown.forEach(nodeName -> weights.put(nodeName, average));
+
+        _logger.trace("%s returning %s", fn, weights);
+        return weights;
+    }
+
+    /**
+     * Parses a Kubernetes CPU quantity such as '16' or '7500m'
+     * @return number of CPUs, or null if the quantity is missing or not understood
+     */
+    static Double parseCPUQuantity(
+        final String quantity
+    ) {
+        if (quantity == null) {
+            return null;
+        }
+
+        try {
+            return quantity.endsWith("m")
+                   ? Double.parseDouble(quantity.substring(0, quantity.length() - 1)) / 1000.0
+                   : Double.parseDouble(quantity);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
     /**
      * Creates a machine name for a combination of the compute device name and the k8s node name.
      * This is somewhat arbitrary, but it should be used whenever a machine name needs to be associated with
@@ -831,6 +1033,25 @@ public abstract class Command {
         _liqidGroupName = cfgMap.data.get(K8S_CONFIG_MAP_GROUP_NAME_KEY);
         _liqidEnableP2P = Boolean.parseBoolean(cfgMap.data.get(K8S_CONFIG_MAP_ENABLE_P2P_KEY));
 
+        // A strategy given on the command line overrides the one stored in the linkage
+        var strategyName = cfgMap.data.get(K8S_CONFIG_MAP_ALLOCATION_STRATEGY_KEY);
+        if ((_allocationStrategy == null) && (strategyName != null)) {
+            _allocationStrategy = AllocationStrategy.getStrategy(strategyName);
+            if (_allocationStrategy == null) {
+                throw new ConfigurationDataException(String.format("Unknown allocation strategy '%s' in the linkage",
+                                                                   strategyName));
+            }
+        }
+
+        // Likewise the spare pool
+        var spares = cfgMap.data.get(K8S_CONFIG_MAP_SPARES_KEY);
+        if ((_sparePool == null) && (spares != null)) {
+            _sparePool = SparePool.parse(spares);
+            if (_sparePool == null) {
+                throw new ConfigurationDataException(String.format("Invalid spare pool '%s' in the linkage", spares));
+            }
+        }
+
         _liqidUsername = null;
         _liqidPassword = null;
         try {
@@ -871,46 +1092,81 @@ public abstract class Command {
         final Collection<ResourceModel> disallowedModels,
         final String machineName
     ) {
-        var fn = "getOrderedDeviceIdentifiers";
+        return Arrays.stream(orderDeviceIdentifiers(inventory, resourceModel, disallowedModels, machineName))
+                     .boxed()
+                     .collect(Collectors.toCollection(LinkedList::new));
+    }
+
+    /**
+     * As above, producing the identifiers as a primitive array
+     */
+    protected int[] orderDeviceIdentifiers(
+        final LiqidInventory inventory,
+        final ResourceModel resourceModel,
+        final Collection<ResourceModel> disallowedModels,
+        final String machineName
+    ) {
+        var fn = "orderDeviceIdentifiers";
         _logger.trace("Entering %s with inventory=%s resModel=%s disallowedModesl=%s machName=%s",
                       fn, inventory, resourceModel, disallowedModels, machineName);
 
-        var thisMachineList = new TreeSet<Integer>();
-        var otherMachineList = new TreeSet<Integer>();
-        var freeList = new TreeSet<Integer>();
-
-        for (var devItem : inventory.getDeviceItems()) {
-            if (resourceModel.accepts(devItem.getDeviceInfo())) {
-                var ignore = false;
-                for (var rm : disallowedModels) {
-                    if (rm.accepts(devItem.getDeviceInfo())) {
-                        ignore = true;
-                        break;
-                    }
-                }
+        var shared = getSharedCandidates(inventory, resourceModel, disallowedModels, new IdentifierSet());
+        var attached = getAttachedCandidates(inventory, resourceModel, disallowedModels, machineName);
+        var others = shared[1].ids().filter(id -> !attached.containsId(id));
+        var result = IntStream.concat(IntStream.concat(attached.ids(), shared[0].ids()), others).toArray();
 
-                if (!ignore) {
-                    var devId = devItem.getDeviceId();
-                    if (devItem.isAssignedToMachine()) {
-                        var attachedMachine = inventory.getMachine(devItem.getMachineId());
-                        if (attachedMachine.getMachineName().equals(machineName)) {
-                            thisMachineList.add(devId);
-                        } else {
-                            otherMachineList.add(devId);
-                        }
-                    } else {
-                        freeList.add(devId);
-                    }
-                }
-            }
+        _logger.trace("%s returning %s", fn, Arrays.toString(result));
+        return result;
+    }
+
+    /**
+     * Finds the devices described by the resource model and not by any disallowed model, which are not attached
+     * to any machine, and those which are attached to some machine.
+     * @return array of two IdentifierSet objects, free and assigned, in that order
+     */
+    private IdentifierSet[] getSharedCandidates(
+        final LiqidInventory inventory,
+        final ResourceModel resourceModel,
+        final Collection<ResourceModel> disallowedModels,
+        final IdentifierSet excludedDeviceIds
+    ) {
+        var freeQuery = inventory.query().acceptedBy(resourceModel).notInAnyMachine();
+        var assignedQuery = inventory.query().acceptedBy(resourceModel).inAnyMachine();
+        disallowedModels.forEach(rm -> {
+            freeQuery.notAcceptedBy(rm);
+            assignedQuery.notAcceptedBy(rm);
+        });
+
+        var free = freeQuery.getDeviceIds();
+        var assigned = assignedQuery.getDeviceIds();
+        if (!excludedDeviceIds.isEmpty()) {
+            free = new IdentifierSet(free);
+            free.removeAll(excludedDeviceIds);
+            assigned = new IdentifierSet(assigned);
+            assigned.removeAll(excludedDeviceIds);
         }
+        return new IdentifierSet[]{ free, assigned };
+    }
 
-        var result = new LinkedList<>(thisMachineList);
-        result.addAll(freeList);
-        result.addAll(otherMachineList);
+    /**
+     * Finds the devices described by the resource model and not by any disallowed model, which are attached
+     * to the named machine. This is driven by the inventory's index of the machine's devices, so it costs
+     * no more than the number of devices attached to the machine.
+     */
+    private IdentifierSet getAttachedCandidates(
+        final LiqidInventory inventory,
+        final ResourceModel resourceModel,
+        final Collection<ResourceModel> disallowedModels,
+        final String machineName
+    ) {
+        var machineId = inventory.getMachineId(machineName);
+        if (machineId == null) {
+            return new IdentifierSet();
+        }
 
-        _logger.trace("%s returning %s", fn, result);
-        return result;
+        var query = inventory.query().acceptedBy(resourceModel).inMachine(machineId);
+        disallowedModels.forEach(query::notAcceptedBy);
+        return query.getDeviceIds();
     }
 
     /**
@@ -1005,9 +1261,7 @@ public abstract class Command {
         _logger.trace("Entering %s", fn);
 
         try {
-            _liqidClient = new LiqidClientBuilder().setHostAddress(_liqidAddress)
-                                                   .setTimeoutInSeconds(_timeoutInSeconds)
-                                                   .build();
+            _liqidClient = buildLiqidClient();
         } catch (LiqidException ex) {
             _logger.catching(ex);
             var ex2 = new InternalErrorException("Caught:" + ex.getMessage());
@@ -1015,15 +1269,95 @@ public abstract class Command {
             throw ex2;
         }
 
-        _liqidClient.setLogger(createSubLogger("LiqidSDK"));
-        if (_liqidUsername != null) {
-            _liqidClient.login(LIQID_SDK_LABEL, _liqidUsername, _liqidPassword);
+        loginLiqidClient(_liqidClient);
+
+        // The fingerprint validates a snapshot, and decides whether the plan may be executed against the inventory
+        // loaded here - so we only take it if there is a snapshot or a plan to be executed, as it costs several
+        // requests to the director. It is taken before the inventory is loaded, so that any change made in between
+        // causes a mismatch (and thus a reload) rather than going unnoticed.
+        var useSnapshot = (_inventoryCacheFile != null) && canUseInventorySnapshot();
+        if (useSnapshot || (_planExecution && producesPlan())) {
+            _liqidInventoryFingerprint = InventorySnapshot.createFingerprint(_liqidClient);
         }
 
-        _liqidInventory = LiqidInventory.createLiqidInventory(_liqidClient);
+        if (useSnapshot) {
+            _liqidInventory = loadLiqidInventoryThroughSnapshot(_liqidInventoryFingerprint);
+        } else {
+            _liqidInventory = loadLiqidInventory();
+        }
         _logger.trace("Exiting %s", fn);
     }
 
+    private LiqidClient buildLiqidClient() throws LiqidException {
+        var client = new LiqidClientBuilder().setHostAddress(_liqidAddress)
+                                             .setTimeoutInSeconds(_timeoutInSeconds)
+                                             .build();
+        client.setLogger(createSubLogger("LiqidSDK"));
+        return client;
+    }
+
+    private void loginLiqidClient(
+        final LiqidClient client
+    ) throws LiqidException {
+        if (_liqidUsername != null) {
+            client.login(LIQID_SDK_LABEL, _liqidUsername, _liqidPassword);
+        }
+    }
+
+    // Produces a further client for the same Liqid Cluster as our own - see getLiqidClientFactory()
+    private LiqidClient createLoggedInLiqidClient() throws LiqidException {
+        var client = buildLiqidClient();
+        loginLiqidClient(client);
+        return client;
+    }
+
+    /**
+     * Loads the Liqid inventory from the Liqid Cluster. A concurrent load gives each of its threads
+     * a client of its own (logged in separately, and logged out once the load is done),
+     * as a LiqidClient is not safe to share between threads.
+     */
+    private LiqidInventory loadLiqidInventory() throws LiqidException {
+        if (_inventoryConcurrency <= 1) {
+            return LiqidInventory.createLiqidInventory(_liqidClient);
+        }
+
+        return LiqidInventory.createLiqidInventory(getLiqidClientFactory(), _inventoryConcurrency);
+    }
+
+    /**
+     * Loads the Liqid inventory from the snapshot file if the snapshot is still valid.
+     * Otherwise, we load the inventory from the Liqid Cluster and write a new snapshot.
+     * Problems with the snapshot file are logged, but are otherwise ignored.
+     */
+    private LiqidInventory loadLiqidInventoryThroughSnapshot(
+        final String fingerprint
+    ) throws LiqidException {
+        var fn = "loadLiqidInventoryThroughSnapshot";
+        _logger.trace("Entering %s fingerprint=%s", fn, fingerprint);
+
+        LiqidInventory inventory = null;
+        try {
+            inventory = InventorySnapshot.read(_inventoryCacheFile,
+                                               _liqidAddress,
+                                               fingerprint,
+                                               LIQID_INVENTORY_SNAPSHOT_MAX_AGE_IN_SECONDS);
+        } catch (IOException ex) {
+            _logger.catching(ex);
+        }
+
+        if (inventory == null) {
+            inventory = loadLiqidInventory();
+            try {
+                InventorySnapshot.write(_inventoryCacheFile, _liqidAddress, fingerprint, inventory);
+            } catch (IOException ex) {
+                _logger.catching(ex);
+            }
+        }
+
+        _logger.trace("%s returning %s", fn, inventory);
+        return inventory;
+    }
+
     /**
      * Processes a VarianceSet against the content of the given LiqidInventory, populating the given Plan object
      * with actions which will effect the changes required to do so.
@@ -1039,7 +1373,7 @@ public abstract class Command {
         var fn = "processVarianceSet";
         _logger.trace("Entering %s with varSet=%s plan=%s", fn, varianceSet, plan);
 
-        var working = new HashSet<>(unassignedDeviceIds);
+        var working = new IdentifierSet(unassignedDeviceIds);
         while (!varianceSet.isEmpty()) {
             var action = varianceSet.getAction(_liqidInventory, working);
             plan.addAction(action);
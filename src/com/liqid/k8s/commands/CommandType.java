@@ -17,6 +17,7 @@ public enum CommandType {
     RELEASE("release"),
     RESET("reset"),
     RESOURCES("resources"),
+    SIMULATE("simulate"),
     UNLINK("unlink")
     ;
 
@@ -6,23 +6,47 @@
 package com.liqid.k8s.commands;
 
 import com.bearsnake.k8sclient.K8SException;
+import com.bearsnake.k8sclient.Node;
 import com.bearsnake.klog.Logger;
 import com.liqid.k8s.exceptions.ConfigurationDataException;
 import com.liqid.k8s.exceptions.ConfigurationException;
 import com.liqid.k8s.exceptions.InternalErrorException;
 import com.liqid.k8s.exceptions.ProcessingException;
+import com.liqid.k8s.layout.Allocation;
+import com.liqid.k8s.layout.ClusterLayout;
 import com.liqid.k8s.layout.GeneralType;
+import com.liqid.k8s.layout.IdentifierSet;
 import com.liqid.k8s.layout.LiqidInventory;
 import com.liqid.k8s.layout.VarianceSet;
 import com.liqid.k8s.plan.Plan;
+import com.liqid.k8s.plan.actions.AnnotateNodeAction;
+import com.liqid.k8s.plan.actions.AssignToGroupAction;
 import com.liqid.k8s.plan.actions.EnableP2PForMachineAction;
+import com.liqid.sdk.Group;
 import com.liqid.sdk.LiqidException;
+import com.liqid.sdk.Machine;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
 
+import static com.liqid.k8s.Constants.K8S_ANNOTATION_LAYOUT_FINGERPRINT;
+import static com.liqid.k8s.Constants.K8S_ANNOTATION_MACHINE_NAME;
+
+/**
+ * Composes the machines so that they match the resource annotations of their worker nodes.
+ * Normally only the machines whose annotations (or devices) have changed since they were last composed
+ * are re-planned, as determined by the layout fingerprint annotation - the rest keep the devices they have.
+ * If there is a spare pool (see SparePool), devices are attached only from the free devices in the group
+ * (or taken from other machines), and the plan finishes by restocking the pool.
+ */
 public class ComposeCommand extends Command {
 
     public Boolean _p2pOverride = false;
+    private boolean _fullReplan = false;
 
     public ComposeCommand(
         final Logger logger,
@@ -33,6 +57,7 @@ public class ComposeCommand extends Command {
     }
 
     public ComposeCommand setEnableP2POverride(final Boolean value) { _p2pOverride = value; return this; }
+    public ComposeCommand setFullReplan(final Boolean value) { _fullReplan = value; return this; }
     public ComposeCommand setProxyURL(final String value) { _proxyURL = value; return this; }
 
     @Override
@@ -64,16 +89,45 @@ public class ComposeCommand extends Command {
         System.out.println("Desired Layout:");
         desiredLayout.show("| ");
 
-        var allocators = createAllocators(_liqidInventory, desiredLayout);
-        if (allocators == null) {
-            _logger.trace("Exiting %s with null", fn);
-            return null;
+        var nodesByMachine = new HashMap<String, Node>();
+        var machineAnnoKey = createAnnotationKeyFor(K8S_ANNOTATION_MACHINE_NAME);
+        for (var node : nodes) {
+            var machineName = node.metadata.annotations.get(machineAnnoKey);
+            if (machineName != null) {
+                nodesByMachine.put(machineName, node);
+            }
+        }
+
+        var group = _liqidInventory.getGroup(_liqidGroupName);
+        var outsideIds = getOutsideDeviceIds(group);
+
+        Collection<Allocation> allocations = null;
+        Collection<Machine> machines = _liqidInventory.getMachines();
+        if (!_fullReplan) {
+            var unchanged = getUnchangedMachineNames(desiredLayout, nodesByMachine);
+            if (!unchanged.isEmpty()) {
+                machines = new LinkedList<>();
+                allocations = createIncrementalAllocations(desiredLayout, unchanged, outsideIds, machines);
+                if (allocations == null) {
+                    System.out.println("The changed machines cannot be satisfied without disturbing the unchanged machines.");
+                    System.out.println("All machines will be re-planned.");
+                    machines = _liqidInventory.getMachines();
+                }
+            }
         }
 
-        var allocations = createAllocations(allocators);
         if (allocations == null) {
-            _logger.trace("Exiting %s with null", fn);
-            return null;
+            var allocators = createAllocators(_liqidInventory, desiredLayout, outsideIds);
+            if (allocators == null) {
+                _logger.trace("Exiting %s with null", fn);
+                return null;
+            }
+
+            allocations = createAllocations(_liqidInventory, allocators);
+            if (allocations == null) {
+                _logger.trace("Exiting %s with null", fn);
+                return null;
+            }
         }
 
         // Create list of machines for which we want to enable P2P
@@ -81,7 +135,7 @@ public class ComposeCommand extends Command {
         if (_liqidEnableP2P || _p2pOverride) {
             for (var alloc : allocations) {
                 var devIds = alloc.getDeviceIdentifiers();
-                var gpuCount = (int) devIds.stream()
+                var gpuCount = (int) devIds.ids()
                                            .filter(devId -> _liqidInventory.getDeviceItem(devId).getGeneralType() == GeneralType.GPU)
                                            .count();
                 if (gpuCount > 1) {
@@ -90,11 +144,8 @@ public class ComposeCommand extends Command {
             }
         }
 
-        var varSet = VarianceSet.createVarianceSet(_liqidInventory, allocations);
-        var devItems = _liqidInventory.getDeviceItems();
-        LiqidInventory.removeDeviceItemsOfType(devItems, GeneralType.CPU);
-        LiqidInventory.removeDeviceItemsInAnyMachine(devItems);
-        var deviceIds = LiqidInventory.getDeviceIdsFromItems(devItems);
+        var varSet = VarianceSet.createVarianceSet(_liqidInventory, allocations, machines);
+        var deviceIds = _liqidInventory.query().notOfType(GeneralType.CPU).notInAnyMachine().getDeviceIds();
 
         var plan = new Plan();
         processVarianceSet(deviceIds, varSet, plan);
@@ -102,7 +153,182 @@ public class ComposeCommand extends Command {
             plan.addAction(new EnableP2PForMachineAction().setMachineName(machName));
         }
 
+        if ((_sparePool != null) && (group != null)) {
+            replenishSparePool(group, allocations, machines, plan);
+        }
+
+        // Record the fingerprints of the machines we have composed - last, so that we do not record them
+        // unless everything else has been done. Machines which are short of devices get no fingerprint,
+        // so that we try them again next time.
+        for (var alloc : allocations) {
+            var node = nodesByMachine.get(alloc.getMachineName());
+            var profile = desiredLayout.getMachineProfile(alloc.getMachineName());
+            if ((node != null) && (profile != null)) {
+                var wanted = profile.getResourceModels().stream().mapToInt(profile::getCount).sum();
+                var fingerprint = (alloc.getDeviceIdentifiers().size() == wanted)
+                                  ? profile.createFingerprint(alloc.getDeviceIdentifiers())
+                                  : null;
+                var stored = node.metadata.annotations.get(createAnnotationKeyFor(K8S_ANNOTATION_LAYOUT_FINGERPRINT));
+                if ((fingerprint != null) ? !fingerprint.equals(stored) : (stored != null)) {
+                    plan.addAction(new AnnotateNodeAction().setNodeName(node.getName())
+                                                           .addAnnotation(K8S_ANNOTATION_LAYOUT_FINGERPRINT, fingerprint));
+                }
+            }
+        }
+
         _logger.trace("Exiting %s with %s", fn, plan);
         return plan;
     }
+
+    /**
+     * If there is a spare pool, devices which are free but are not in our group are not to be attached to
+     * our machines - they come into the group by way of the pool (see replenishSparePool()).
+     * @param group our group - null if it does not (yet) exist
+     * @return identifiers of the devices which are not to be attached to any machine
+     */
+    private IdentifierSet getOutsideDeviceIds(
+        final Group group
+    ) {
+        if ((_sparePool == null) || (group == null)) {
+            return new IdentifierSet();
+        }
+
+        var result = new IdentifierSet();
+        _liqidInventory.query()
+                       .notOfType(GeneralType.CPU)
+                       .notInAnyMachine()
+                       .notInGroup(group.getGroupId())
+                       .getDeviceIds()
+                       .forEachId(result::addId);
+        return result;
+    }
+
+    /**
+     * Adds a step to the end of the plan which moves devices into our group, so that once the plan has been
+     * executed there are as many free devices of each type in the group as the spare pool wants.
+     * @param group our group
+     * @param allocations the devices wanted by the machines which are being re-planned
+     * @param machines the machines which are being re-planned - the rest keep what they have
+     * @param plan the plan to be updated
+     */
+    private void replenishSparePool(
+        final Group group,
+        final Collection<Allocation> allocations,
+        final Collection<Machine> machines,
+        final Plan plan
+    ) {
+        var fn = "replenishSparePool";
+        _logger.trace("Entering %s with sparePool=%s", fn, _sparePool);
+
+        // Find all the devices which will be attached to machines once the plan is executed
+        var attachedIds = new IdentifierSet();
+        var replanned = new HashSet<Integer>();
+        machines.forEach(mach -> replanned.add(mach.getMachineId()));
+        for (var mach : _liqidInventory.getMachines()) {
+            if (!replanned.contains(mach.getMachineId())) {
+                _liqidInventory.query().inMachine(mach.getMachineId()).getDeviceIds().forEachId(attachedIds::addId);
+            }
+        }
+        allocations.forEach(alloc -> alloc.getDeviceIdentifiers().forEachId(attachedIds::addId));
+
+        var devItems = _sparePool.getReplenishment(_liqidInventory, group.getGroupId(), attachedIds);
+        if (!devItems.isEmpty()) {
+            plan.addAction(new AssignToGroupAction().setGroupName(group.getGroupName())
+                                                    .setDeviceNames(LiqidInventory.getDeviceNamesFromItems(devItems)));
+        }
+
+        for (var genType : GeneralType.values()) {
+            var wanted = _sparePool.getTarget(genType);
+            if (wanted > 0) {
+                var staged = _liqidInventory.query().ofType(genType).inGroup(group.getGroupId()).getDeviceIds();
+                var free = new IdentifierSet(staged);
+                free.removeAll(attachedIds);
+                var adding = devItems.stream().filter(devItem -> devItem.getGeneralType() == genType).count();
+                if (free.size() + adding < wanted) {
+                    System.err.printf("WARNING:The spare pool wants %d %s devices, but only %d will be available\n",
+                                      wanted, genType, free.size() + adding);
+                }
+            }
+        }
+
+        _logger.trace("%s returning with plan=%s", fn, plan);
+    }
+
+    /**
+     * Finds the machines in the desired layout which have not changed since we last composed them -
+     * that is, their profile and their devices still produce the fingerprint we recorded for them.
+     */
+    private Set<String> getUnchangedMachineNames(
+        final ClusterLayout desiredLayout,
+        final Map<String, Node> nodesByMachine
+    ) {
+        var fn = "getUnchangedMachineNames";
+        _logger.trace("Entering %s", fn);
+
+        var result = new HashSet<String>();
+        var annoKey = createAnnotationKeyFor(K8S_ANNOTATION_LAYOUT_FINGERPRINT);
+        for (var profile : desiredLayout.getMachineProfiles()) {
+            var machineName = profile.getMachineName();
+            var node = nodesByMachine.get(machineName);
+            var machineId = _liqidInventory.getMachineId(machineName);
+            var stored = (node == null) ? null : node.metadata.annotations.get(annoKey);
+            if ((stored != null) && (machineId != null)) {
+                var devIds = _liqidInventory.query().inMachine(machineId).notOfType(GeneralType.CPU).getDeviceIds();
+                if (stored.equals(profile.createFingerprint(devIds))) {
+                    result.add(machineName);
+                }
+            }
+        }
+
+        _logger.trace("%s returning %s", fn, result);
+        return result;
+    }
+
+    /**
+     * Allocates devices for the machines which have changed, from the free devices and the devices of the
+     * changed machines (and of machines which are no longer wanted) only. The unchanged machines keep their devices.
+     * @param desiredLayout the complete desired layout
+     * @param unchanged names of the machines which have not changed
+     * @param outsideIds identifiers of devices which are not to be attached to any machine (see getOutsideDeviceIds())
+     * @param machines populated with the machines which are to be re-planned
+     * @return allocations for the changed machines, or null if they cannot all be satisfied
+     */
+    private Collection<Allocation> createIncrementalAllocations(
+        final ClusterLayout desiredLayout,
+        final Set<String> unchanged,
+        final IdentifierSet outsideIds,
+        final Collection<Machine> machines
+    ) {
+        var fn = "createIncrementalAllocations";
+        _logger.trace("Entering %s with unchanged=%s", fn, unchanged);
+
+        var changedLayout = new ClusterLayout();
+        desiredLayout.getMachineProfiles()
+                     .stream()
+                     .filter(profile -> !unchanged.contains(profile.getMachineName()))
+                     .forEach(changedLayout::addMachineProfile);
+
+        var pinnedIds = new IdentifierSet(outsideIds);
+        for (var mach : _liqidInventory.getMachines()) {
+            if (unchanged.contains(mach.getMachineName())) {
+                _liqidInventory.query()
+                               .inMachine(mach.getMachineId())
+                               .notOfType(GeneralType.CPU)
+                               .getDeviceIds()
+                               .forEachId(pinnedIds::addId);
+            } else {
+                machines.add(mach);
+            }
+        }
+
+        System.out.printf("Re-planning %d of %d machines\n",
+                          changedLayout.getMachineProfiles().size(),
+                          desiredLayout.getMachineProfiles().size());
+
+        var allocators = createAllocators(_liqidInventory, changedLayout, pinnedIds);
+        var solver = solveAllocations(_liqidInventory, allocators);
+        var result = solver.isSatisfied() ? solver.getAllocations() : null;
+        _logger.trace("%s returning %s", fn, result);
+        return result;
+    }
 }
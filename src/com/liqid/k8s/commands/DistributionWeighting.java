@@ -0,0 +1,31 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.commands;
+
+import java.util.Arrays;
+
+/**
+ * Where the per-node weights come from, when resources are distributed among worker nodes in proportion
+ * to their weights (see Command.getNodeWeights()).
+ */
+public enum DistributionWeighting {
+    ANNOTATION("annotation"),   // the weight annotation of the node
+    CAPACITY("capacity"),       // the CPU capacity of the node
+    PODS("pods"),               // the number of active pods scheduled to the node
+    ;
+
+    private final String _token;
+
+    DistributionWeighting(final String value) {_token = value; }
+
+    public String getToken() { return _token; }
+
+    public static DistributionWeighting get(
+        final String token
+    ) {
+        return Arrays.stream(values()).filter(dw -> dw.getToken().equals(token)).findFirst().orElse(null);
+    }
+}
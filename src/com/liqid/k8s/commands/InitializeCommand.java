@@ -119,7 +119,7 @@ public class InitializeCommand extends Command {
     private Plan createPlan(
         final Map<DeviceItem, Node> computeDevices,
         final Collection<DeviceItem> resourceDevices
-    ) throws InternalErrorException {
+    ) throws InternalErrorException, K8SHTTPError, K8SJSONError, K8SRequestError {
         var fn = "createPlan";
         _logger.trace("Entering %s with computeDevices=%s, resourceDevices=%s",
                       fn, computeDevices, resourceDevices);
@@ -138,11 +138,16 @@ public class InitializeCommand extends Command {
             plan.addAction(new DeleteGroupAction().setGroupName(_liqidGroupName));
         }
 
+        var strategyName = (_allocationStrategy == null) ? null : _allocationStrategy.getName();
+
+        var spares = (_sparePool == null) ? null : _sparePool.toString();
         plan.addAction(new CreateLinkageAction().setLiqidAddress(_liqidAddress)
+                                                .setAllocationStrategy(strategyName)
                                                 .setEnableP2P(_enableP2P)
                                                 .setLiqidGroupName(_liqidGroupName)
                                                 .setLiqidUsername(_liqidUsername)
-                                                .setLiqidPassword(_liqidPassword));
+                                                .setLiqidPassword(_liqidPassword)
+                                                .setSpares(spares));
 
         plan.addAction(new CreateGroupAction().setGroupName(_liqidGroupName));
 
@@ -174,7 +179,8 @@ public class InitializeCommand extends Command {
 
         // Allocate, if requested
         if (_allocate) {
-            ClusterLayout layout = createEvenlyAllocatedClusterLayout(computeDevices, resourceDevices);
+            var nodeWeights = (_distributionWeighting == null) ? null : getNodeWeights(computeDevices.values());
+            ClusterLayout layout = createEvenlyAllocatedClusterLayout(computeDevices, resourceDevices, nodeWeights);
             if (!createAnnotationsFromClusterLayout(computeDevices.values(), layout, plan)) {
                 _logger.trace("Exiting %s with null", fn);
                 return null;
@@ -203,7 +209,7 @@ public class InitializeCommand extends Command {
             }
 
             var allocators = createAllocators(proposedInventory, layout);
-            var allocations = createAllocations(allocators);
+            var allocations = createAllocations(proposedInventory, allocators);
             if (allocations == null) {
                 _logger.trace("Exiting %s with null", fn);
                 return null;
@@ -214,7 +220,7 @@ public class InitializeCommand extends Command {
             if (_enableP2P) {
                 for (var alloc : allocations) {
                     var devIds = alloc.getDeviceIdentifiers();
-                    var gpuCount = (int) devIds.stream()
+                    var gpuCount = (int) devIds.ids()
                                                .filter(devId -> _liqidInventory.getDeviceItem(devId).getGeneralType() == GeneralType.GPU)
                                                .count();
                     if (gpuCount > 1) {
@@ -109,11 +109,16 @@ public class LinkCommand extends Command {
             throw ex;
         }
 
+        var strategyName = (_allocationStrategy == null) ? null : _allocationStrategy.getName();
+
+        var spares = (_sparePool == null) ? null : _sparePool.toString();
         plan.addAction(new CreateLinkageAction().setLiqidAddress(_liqidAddress)
+                                                .setAllocationStrategy(strategyName)
                                                 .setEnableP2P(_enableP2P)
                                                 .setLiqidGroupName(_liqidGroupName)
                                                 .setLiqidUsername(_liqidUsername)
-                                                .setLiqidPassword(_liqidPassword));
+                                                .setLiqidPassword(_liqidPassword)
+                                                .setSpares(spares));
 
         _logger.trace("Exiting %s with %s", fn, plan);
         return plan;
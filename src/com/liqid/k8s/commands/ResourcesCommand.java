@@ -21,6 +21,12 @@ public class ResourcesCommand extends Command {
         super(logger, force, timeoutInSeconds);
     }
 
+    @Override
+    protected boolean canUseInventorySnapshot() { return true; }
+
+    @Override
+    protected boolean producesPlan() { return false; }
+
     public ResourcesCommand setLiqidAddress(final String value) {_liqidAddress = value; return this; }
     public ResourcesCommand setLiqidPassword(final String value) {_liqidPassword = value; return this; }
     public ResourcesCommand setLiqidUsername(final String value) {_liqidUsername = value; return this; }
@@ -0,0 +1,339 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.commands;
+
+import com.bearsnake.k8sclient.Node;
+import com.bearsnake.k8sclient.NodeMetadata;
+import com.bearsnake.k8sclient.NodeSpec;
+import com.bearsnake.k8sclient.NodeStatus;
+import com.bearsnake.klog.Logger;
+import com.liqid.k8s.exceptions.ConfigurationException;
+import com.liqid.k8s.exceptions.InternalErrorException;
+import com.liqid.k8s.exceptions.ProcessingException;
+import com.liqid.k8s.layout.ClusterLayout;
+import com.liqid.k8s.layout.DeviceItem;
+import com.liqid.k8s.layout.GeneralType;
+import com.liqid.k8s.layout.InventorySnapshot;
+import com.liqid.k8s.layout.LiqidInventory;
+import com.liqid.k8s.layout.VarianceSet;
+import com.liqid.k8s.plan.Plan;
+import com.liqid.sdk.DeviceInfo;
+import com.liqid.sdk.DeviceStatus;
+import com.liqid.sdk.DeviceType;
+import com.liqid.sdk.Group;
+import com.liqid.sdk.Machine;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Random;
+
+import static com.liqid.k8s.Constants.K8S_ANNOTATION_MACHINE_NAME;
+import static com.liqid.k8s.Constants.SIMULATION_DEFAULT_DEVICE_COUNT;
+import static com.liqid.k8s.Constants.SIMULATION_DEFAULT_NODE_COUNT;
+
+/**
+ * Runs the compose planning pipeline entirely in memory, against a synthetic inventory (or one loaded from an
+ * inventory snapshot file) and a set of synthetic worker nodes, annotated as the allocation strategy would
+ * annotate them. Neither the Liqid Director nor the Kubernetes API server is involved, and nothing is executed -
+ * we report the size of the plan, what it would disturb, and how long it took to produce.
+ */
+public class SimulateCommand extends Command {
+
+    public static final String SIMULATION_GROUP_NAME = "Simulation";
+    public static final long DEFAULT_SEED = 0x5EED;
+    public static final double DEFAULT_ATTACHED_FRACTION = 0.75;
+
+    // Resource devices per fabric switch, for synthetic inventories
+    private static final int DEVICES_PER_SWITCH = 24;
+
+    private int _deviceCount = SIMULATION_DEFAULT_DEVICE_COUNT;
+    private int _nodeCount = SIMULATION_DEFAULT_NODE_COUNT;
+    private long _seed = DEFAULT_SEED;
+
+    public SimulateCommand(
+        final Logger logger,
+        final Boolean force,
+        final Integer timeoutInSeconds
+    ) {
+        super(logger, force, timeoutInSeconds);
+    }
+
+    public SimulateCommand setDeviceCount(final Integer value) { if (value != null) _deviceCount = value; return this; }
+    public SimulateCommand setNodeCount(final Integer value) { if (value != null) _nodeCount = value; return this; }
+    public SimulateCommand setSeed(final long value) { _seed = value; return this; }
+
+    /**
+     * Creates an inventory of a single group holding the given number of machines (one compute device each, described
+     * with the name of its worker node) and the given number of resource devices - mostly GPUs, of two models, with
+     * some SSDs, FPGAs, and links. The given fraction of the resource devices is attached to randomly-chosen machines;
+     * the rest are free in the group. The same arguments always produce the same inventory.
+     * @param nodeCount number of machines (and worker nodes)
+     * @param deviceCount number of resource devices
+     * @param attachedFraction fraction of the resource devices which are attached to machines
+     * @param seed seed for choosing which devices are attached to which machines
+     * @return the inventory
+     */
+    public static LiqidInventory createSyntheticInventory(
+        final int nodeCount,
+        final int deviceCount,
+        final double attachedFraction,
+        final long seed
+    ) {
+        var random = new Random(seed);
+        var inventory = new LiqidInventory();
+        var group = new Group().setGroupName(SIMULATION_GROUP_NAME).setGroupId(1);
+        inventory.notifyGroupCreated(group);
+
+        var devId = 1;
+        var switchCount = Math.max(1, (deviceCount + DEVICES_PER_SWITCH - 1) / DEVICES_PER_SWITCH);
+        for (var nx = 0; nx < nodeCount; nx++) {
+            var devName = String.format("pcpu%d", nx);
+            var nodeName = String.format("worker-%d", nx + 1);
+            var machine = new Machine().setMachineName(String.format("%s-%s", devName, nodeName))
+                                       .setMachineId(nx + 1)
+                                       .setGroupId(group.getGroupId());
+            inventory.notifyMachineCreated(machine);
+            inventory.notifyDeviceCreated(createDeviceStatus(devId, devName, DeviceType.COMPUTE, nx % switchCount),
+                                          createDeviceInfo(devId, devName, DeviceType.COMPUTE, "Intel", "Xeon")
+                                              .setUserDescription(nodeName));
+            inventory.notifyDeviceAssignedToMachine(devId, machine.getMachineId());
+            devId++;
+        }
+
+        var counts = new HashMap<DeviceType, Integer>();
+        for (var dx = 0; dx < deviceCount; dx++) {
+            // six in ten are GPUs, two SSDs, one an FPGA, and one a link
+            var slot = dx % 10;
+            var devType = (slot < 6) ? DeviceType.GPU
+                                     : (slot < 8) ? DeviceType.SSD
+                                                  : (slot < 9) ? DeviceType.FPGA : DeviceType.ETHERNET_LINK;
+            var index = counts.merge(devType, 1, Integer::sum) - 1;
+            var prefix = (devType == DeviceType.ETHERNET_LINK) ? "link" : devType.name().toLowerCase();
+            var devName = String.format("%s%d", prefix, index);
+            var info = switch (devType) {
+                case GPU -> (slot % 2 == 0)
+                            ? createDeviceInfo(devId, devName, devType, "NVIDIA", "A100")
+                            : createDeviceInfo(devId, devName, devType, "NVIDIA", "L40");
+                case SSD -> createDeviceInfo(devId, devName, devType, "Liqid", "Element");
+                case FPGA -> createDeviceInfo(devId, devName, devType, "Xilinx", "Alveo");
+                default -> createDeviceInfo(devId, devName, devType, "Mellanox", "ConnectX");
+            };
+            inventory.notifyDeviceCreated(createDeviceStatus(devId, devName, devType, dx / DEVICES_PER_SWITCH), info);
+            if ((nodeCount > 0) && (random.nextDouble() < attachedFraction)) {
+                inventory.notifyDeviceAssignedToMachine(devId, random.nextInt(nodeCount) + 1);
+            } else {
+                inventory.notifyDeviceAssignedToGroup(devId, group.getGroupId());
+            }
+            devId++;
+        }
+
+        return inventory;
+    }
+
+    private static DeviceStatus createDeviceStatus(
+        final int deviceId,
+        final String deviceName,
+        final DeviceType deviceType,
+        final int switchId
+    ) {
+        return new DeviceStatus().setDeviceId(deviceId)
+                                 .setName(deviceName)
+                                 .setDeviceType(deviceType)
+                                 .setSwitchGlobalId(switchId);
+    }
+
+    private static DeviceInfo createDeviceInfo(
+        final int deviceId,
+        final String deviceName,
+        final DeviceType deviceType,
+        final String vendor,
+        final String model
+    ) {
+        return new DeviceInfo().setDeviceIdentifier(deviceId)
+                               .setName(deviceName)
+                               .setDeviceInfoType(deviceType)
+                               .setVendor(vendor)
+                               .setModel(model);
+    }
+
+    /**
+     * Creates a worker node for each machine in the given inventory, named from the user description of the
+     * machine's compute device (or after the machine, if there is none), and annotated with the machine name.
+     * @param inventory the inventory
+     * @return map of compute device to the worker node for it
+     */
+    public static Map<DeviceItem, Node> createNodes(
+        final LiqidInventory inventory
+    ) {
+        var result = new LinkedHashMap<DeviceItem, Node>();
+        for (var machine : inventory.getMachines()) {
+            var compItem = inventory.getComputeDeviceItemForMachine(machine.getMachineId());
+            if (compItem != null) {
+                var nodeName = inventory.getK8sNodeNameFromComputeDeviceItem(compItem);
+                var annos = new HashMap<String, String>();
+                annos.put(createAnnotationKeyFor(K8S_ANNOTATION_MACHINE_NAME), machine.getMachineName());
+                var metadata = new NodeMetadata().setName((nodeName == null) ? machine.getMachineName() : nodeName)
+                                                 .setAnnotations(annos);
+                result.put(compItem, new Node(metadata, new NodeSpec(), new NodeStatus()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Annotates the given worker nodes with the resources which the given layout calls for -
+     * as the annotate command would, without the API server.
+     */
+    private void annotateNodes(
+        final Collection<Node> nodes,
+        final ClusterLayout layout
+    ) throws InternalErrorException {
+        var machineAnnoKey = createAnnotationKeyFor(K8S_ANNOTATION_MACHINE_NAME);
+        for (var node : nodes) {
+            var profile = layout.getMachineProfile(node.metadata.annotations.get(machineAnnoKey));
+            if (profile != null) {
+                var specs = new HashMap<GeneralType, String>();
+                for (var resModel : profile.getResourceModels()) {
+                    var spec = createAnnotationForModelAndCount(resModel, profile.getCount(resModel));
+                    specs.merge(resModel.getGeneralType(), spec, (a, b) -> a + "," + b);
+                }
+                for (var entry : specs.entrySet()) {
+                    node.metadata.annotations.put(createAnnotationKeyFor(ANNOTATION_KEY_FOR_DEVICE_TYPE.get(entry.getKey())),
+                                                  entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a worker node for each machine in the given inventory (see createNodes()), annotated with the
+     * resources which the allocation strategy distributes to it from all the resource devices in the inventory.
+     * @param inventory the inventory
+     * @return the annotated worker nodes
+     */
+    public Collection<Node> createAnnotatedNodes(
+        final LiqidInventory inventory
+    ) throws InternalErrorException {
+        _liqidInventory = inventory;
+        var computeDevices = createNodes(inventory);
+        var resourceDevices = new LinkedList<DeviceItem>();
+        inventory.getDeviceItems()
+                 .stream()
+                 .filter(devItem -> devItem.getGeneralType() != GeneralType.CPU)
+                 .forEach(resourceDevices::add);
+        annotateNodes(computeDevices.values(), createEvenlyAllocatedClusterLayout(computeDevices, resourceDevices));
+        return computeDevices.values();
+    }
+
+    /**
+     * We name the machines in the desired layout after the existing machines, so that a layout developed
+     * for a snapshot inventory refers to the machines in it.
+     */
+    @Override
+    protected String createMachineName(
+        final DeviceStatus devStat,
+        final Node node
+    ) {
+        var machineId = (_liqidInventory == null) ? null : _liqidInventory.getDeviceItem(devStat.getDeviceId()).getMachineId();
+        return (machineId != null) ? _liqidInventory.getMachine(machineId).getMachineName() : super.createMachineName(devStat, node);
+    }
+
+    /**
+     * Develops a plan to bring the given inventory into line with the annotations of the given worker nodes,
+     * exactly as the compose command would, timing each phase of the process.
+     * @param inventory the current configuration
+     * @param nodes the worker nodes, annotated with their machine names and the resources they want
+     * @return a report of the outcome
+     * @throws ProcessingException if the annotations are invalid, or cannot be satisfied and we are not forcing
+     * @throws InternalErrorException if something goes quite wrong
+     */
+    public SimulationReport simulate(
+        final LiqidInventory inventory,
+        final Collection<Node> nodes
+    ) throws InternalErrorException, ProcessingException {
+        var fn = "simulate";
+        _logger.trace("Entering %s", fn);
+
+        _liqidInventory = inventory;
+        var phaseNanos = new LinkedHashMap<String, Long>();
+
+        var start = System.nanoTime();
+        var desiredLayout = createClusterLayoutFromAnnotations(nodes);
+        if (desiredLayout == null) {
+            throw new ProcessingException("The simulated worker nodes are incorrectly annotated.");
+        }
+        var mark = System.nanoTime();
+        phaseNanos.put("layout", mark - start);
+
+        start = mark;
+        var allocators = createAllocators(inventory, desiredLayout);
+        mark = System.nanoTime();
+        phaseNanos.put("allocators", mark - start);
+
+        start = mark;
+        var allocations = createAllocations(inventory, allocators);
+        if (allocations == null) {
+            throw new ProcessingException("The simulated layout cannot be satisfied.");
+        }
+        mark = System.nanoTime();
+        phaseNanos.put("allocations", mark - start);
+
+        start = mark;
+        var varSet = VarianceSet.createVarianceSet(inventory, allocations);
+        mark = System.nanoTime();
+        phaseNanos.put("variances", mark - start);
+
+        start = mark;
+        var deviceIds = inventory.query().notOfType(GeneralType.CPU).notInAnyMachine().getDeviceIds();
+        var plan = new Plan();
+        processVarianceSet(deviceIds, varSet, plan);
+        plan.optimize();
+        phaseNanos.put("plan", System.nanoTime() - start);
+
+        var deviceCount = (int) inventory.getDeviceItems()
+                                         .stream()
+                                         .filter(devItem -> devItem.getGeneralType() != GeneralType.CPU)
+                                         .count();
+        var report = new SimulationReport(nodes.size(), deviceCount, plan, phaseNanos);
+        _logger.trace("%s returning %s", fn, report);
+        return report;
+    }
+
+    @Override
+    public Plan process(
+    ) throws ConfigurationException,
+             InternalErrorException,
+             ProcessingException {
+        var fn = this.getClass().getName() + ":process";
+        _logger.trace("Entering %s", fn);
+
+        LiqidInventory inventory;
+        if (_inventoryCacheFile != null) {
+            try {
+                inventory = InventorySnapshot.read(_inventoryCacheFile);
+            } catch (IOException ex) {
+                _logger.catching(ex);
+                throw new ConfigurationException(String.format("Cannot read inventory snapshot %s: %s", _inventoryCacheFile, ex));
+            }
+            if (inventory == null) {
+                throw new ConfigurationException(String.format("No usable inventory snapshot in %s", _inventoryCacheFile));
+            }
+        } else {
+            inventory = createSyntheticInventory(_nodeCount, _deviceCount, DEFAULT_ATTACHED_FRACTION, _seed);
+        }
+
+        var report = simulate(inventory, createAnnotatedNodes(inventory));
+        report.show();
+
+        // nothing is to be executed
+        _logger.trace("Exiting %s with null", fn);
+        return null;
+    }
+}
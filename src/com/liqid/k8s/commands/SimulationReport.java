@@ -0,0 +1,136 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.commands;
+
+import com.liqid.k8s.plan.Plan;
+import com.liqid.k8s.plan.actions.AssignToMachineAction;
+import com.liqid.k8s.plan.actions.FusedMachineAction;
+import com.liqid.k8s.plan.actions.ReconfigureMachineAction;
+import com.liqid.k8s.plan.actions.RemoveFromMachineAction;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Describes the outcome of a simulated planning run (see SimulateCommand.simulate()) -
+ * the plan which was produced, what executing it would disturb, and how long it took to produce.
+ */
+public class SimulationReport {
+
+    private final int _nodeCount;
+    private final int _deviceCount;
+    private final Plan _plan;
+    private final Map<String, Long> _phaseNanos = new LinkedHashMap<>();
+
+    private int _devicesAttached = 0;
+    private int _devicesDetached = 0;
+    private int _devicesMoved = 0;
+    private int _nodesDrained = 0;
+
+    /**
+     * @param nodeCount number of worker nodes in the simulation
+     * @param deviceCount number of resource devices in the simulation
+     * @param plan the plan which was produced
+     * @param phaseNanos elapsed time for each planning phase, in nanoseconds, in the order in which they were run
+     */
+    SimulationReport(
+        final int nodeCount,
+        final int deviceCount,
+        final Plan plan,
+        final Map<String, Long> phaseNanos
+    ) {
+        _nodeCount = nodeCount;
+        _deviceCount = deviceCount;
+        _plan = plan;
+        _phaseNanos.putAll(phaseNanos);
+
+        // A device which is detached from one machine and attached to another is one move.
+        // A node is drained whenever its machine loses devices
+        // (see ReconfigureMachineAction, RemoveFromMachineAction, FusedMachineAction).
+        var movedNames = new HashSet<String>();
+        var drainedNames = new HashSet<String>();
+        for (var action : plan.getActions()) {
+            if (action instanceof AssignToMachineAction assign) {
+                _devicesAttached += assign.getDeviceNames().size();
+                movedNames.addAll(assign.getDeviceNames());
+            } else if (action instanceof RemoveFromMachineAction remove) {
+                _devicesDetached += remove.getDeviceNames().size();
+                movedNames.addAll(remove.getDeviceNames());
+                if (remove.getNodeName() != null) {
+                    drainedNames.add(remove.getNodeName());
+                }
+            } else if (action instanceof ReconfigureMachineAction reconfig) {
+                _devicesAttached += reconfig.getDeviceNamesToAdd().size();
+                _devicesDetached += reconfig.getDeviceNamesToRemove().size();
+                movedNames.addAll(reconfig.getDeviceNamesToAdd());
+                movedNames.addAll(reconfig.getDeviceNamesToRemove());
+                if (reconfig.getNodeName() != null) {
+                    drainedNames.add(reconfig.getNodeName());
+                }
+            } else if (action instanceof FusedMachineAction fused) {
+                _devicesAttached += fused.getDeviceNamesToAdd().size();
+                _devicesDetached += fused.getDeviceNamesToRemove().size();
+                movedNames.addAll(fused.getDeviceNamesToAdd());
+                movedNames.addAll(fused.getDeviceNamesToRemove());
+                if (fused.isDrainingNode()) {
+                    drainedNames.add(fused.getNodeName());
+                }
+            }
+        }
+
+        _devicesMoved = movedNames.size();
+        _nodesDrained = drainedNames.size();
+    }
+
+    public int getActionCount() { return _plan.getActions().size(); }
+    public int getDeviceCount() { return _deviceCount; }
+    public int getDevicesAttached() { return _devicesAttached; }
+    public int getDevicesDetached() { return _devicesDetached; }
+    public int getDevicesMoved() { return _devicesMoved; }
+    public int getNodeCount() { return _nodeCount; }
+    public int getNodesDrained() { return _nodesDrained; }
+    public Plan getPlan() { return _plan; }
+
+    /**
+     * Elapsed time for each planning phase, in milliseconds, in the order in which they were run
+     */
+    public Map<String, Double> getPhaseMillis() {
+        var result = new LinkedHashMap<String, Double>();
+        _phaseNanos.forEach((phase, nanos) -> result.put(phase, nanos / 1_000_000.0));
+        return result;
+    }
+
+    /**
+     * Total elapsed planning time, in milliseconds
+     */
+    public double getPlanningMillis() {
+        return _phaseNanos.values().stream().mapToLong(Long::longValue).sum() / 1_000_000.0;
+    }
+
+    public void show() {
+        System.out.println();
+        System.out.println("Simulation----------------------------");
+        System.out.printf("| Worker nodes:     %d\n", _nodeCount);
+        System.out.printf("| Devices:          %d\n", _deviceCount);
+        System.out.printf("| Plan actions:     %d\n", getActionCount());
+        System.out.printf("| Devices moved:    %d (%d attachments, %d detachments)\n",
+                          _devicesMoved, _devicesAttached, _devicesDetached);
+        System.out.printf("| Nodes drained:    %d\n", _nodesDrained);
+        System.out.printf("| Planning time:    %.1f ms\n", getPlanningMillis());
+        for (var entry : getPhaseMillis().entrySet()) {
+            System.out.printf("|   %-15s %.1f ms\n", entry.getKey() + ":", entry.getValue());
+        }
+        System.out.println("--------------------------------------");
+    }
+
+    @Override
+    public String toString() {
+        return String.format("{nodes=%d devices=%d actions=%d moved=%d attached=%d detached=%d drained=%d planningMillis=%.1f}",
+                             _nodeCount, _deviceCount, getActionCount(), _devicesMoved,
+                             _devicesAttached, _devicesDetached, _nodesDrained, getPlanningMillis());
+    }
+}
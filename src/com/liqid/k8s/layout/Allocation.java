@@ -6,8 +6,6 @@
 package com.liqid.k8s.layout;
 
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
 
 // describes an ellocation - for a machine, it is a list of device identifiers which are,
 // or which are to be, attached to that machine.
@@ -17,7 +15,7 @@ public class Allocation {
     private final String _machineName;
 
     // device identifiers
-    private final Set<Integer> _deviceIdentifiers = new HashSet<>();
+    private final IdentifierSet _deviceIdentifiers = new IdentifierSet();
 
     public Allocation(
         final String machineName,
@@ -34,9 +32,9 @@ public class Allocation {
     }
 
     public Allocation appendDeviceIdentifier(
-        final Integer identifier
+        final int identifier
     ) {
-        _deviceIdentifiers.add(identifier);
+        _deviceIdentifiers.addId(identifier);
         return this;
     }
 
@@ -47,8 +45,14 @@ public class Allocation {
         return this;
     }
 
-    public Collection<Integer> getDeviceIdentifiers() {
-        return new HashSet<>(_deviceIdentifiers);
+    public IdentifierSet getDeviceIdentifiers() {
+        return new IdentifierSet(_deviceIdentifiers);
+    }
+
+    public boolean hasDeviceIdentifier(
+        final int identifier
+    ) {
+        return _deviceIdentifiers.containsId(identifier);
     }
 
     public String getMachineName() {
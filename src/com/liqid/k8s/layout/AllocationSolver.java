@@ -0,0 +1,40 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import java.util.Collection;
+
+/**
+ * Chooses actual device identifiers for the allocators produced from a desired layout
+ * (see Command.createAllocators()), producing one Allocation per machine.
+ */
+public interface AllocationSolver {
+
+    /**
+     * Produces the allocations (whether or not all the allocators could be satisfied)
+     * @return this object
+     */
+    AllocationSolver solve();
+
+    /**
+     * Provides fabric locality information, so that GPUs can be chosen to be co-located (see FabricLocality).
+     * @param value locality information, or null to choose without regard to locality
+     * @return this object
+     */
+    AllocationSolver setLocality(final FabricLocality value);
+
+    /**
+     * Retrieves the allocations produced by solve(), one per machine
+     */
+    Collection<Allocation> getAllocations();
+
+    /**
+     * Retrieves the number of devices by which the given allocator fell short (zero if it was satisfied)
+     */
+    int getShortfall(final Allocator allocator);
+
+    boolean isSatisfied();
+}
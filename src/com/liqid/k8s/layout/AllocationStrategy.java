@@ -0,0 +1,83 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Describes a policy for distributing resources among machines. A strategy decides two things:
+ *  how many devices of a particular general type each machine should have, when we lay out the cluster
+ *      automatically (see Command.createEvenlyAllocatedClusterLayout()), and
+ *  which solver chooses the actual device identifiers for a layout (see Command.createAllocations()).
+ * The built-in strategies are spread (the default), pack, and minimal-disruption.
+ * Further strategies may be provided as services (see java.util.ServiceLoader) - they are found by name.
+ */
+public interface AllocationStrategy {
+
+    String getName();
+
+    /**
+     * Determines how many devices each compute device (hence, each machine) should be given.
+     * @param computeDeviceItems the compute devices for the machines of interest
+     * @param deviceItems the devices of one general type to be distributed among the machines
+     * @return device counts, in the order of computeDeviceItems - these must add up to no more than the number of devices
+     */
+    int[] distribute(final List<DeviceItem> computeDeviceItems,
+                     final Collection<DeviceItem> deviceItems);
+
+    /**
+     * Creates the solver which chooses device identifiers for the given allocators
+     */
+    AllocationSolver createSolver(final Map<ResourceModel, Collection<Allocator>> allocators);
+
+    AllocationStrategy SPREAD = new SpreadAllocationStrategy();
+    AllocationStrategy PACK = new PackAllocationStrategy();
+    AllocationStrategy MINIMAL_DISRUPTION = new MinimalDisruptionAllocationStrategy();
+    AllocationStrategy DEFAULT = SPREAD;
+
+    /**
+     * Retrieves the names of the built-in strategies
+     */
+    static Collection<String> getBuiltInNames() {
+        return BuiltIn.STRATEGIES.keySet();
+    }
+
+    /**
+     * Retrieves a strategy by name - built-in strategies first, then any provided as services
+     * @param name name of the strategy (case-insensitive)
+     * @return the strategy, or null if there is no strategy by that name
+     */
+    static AllocationStrategy getStrategy(
+        final String name
+    ) {
+        var strategy = BuiltIn.STRATEGIES.get(name.toLowerCase());
+        if (strategy == null) {
+            for (var provided : ServiceLoader.load(AllocationStrategy.class)) {
+                if (provided.getName().equalsIgnoreCase(name)) {
+                    strategy = provided;
+                    break;
+                }
+            }
+        }
+        return strategy;
+    }
+
+    class BuiltIn {
+
+        private static final Map<String, AllocationStrategy> STRATEGIES = new LinkedHashMap<>();
+        static {
+            STRATEGIES.put(SPREAD.getName(), SPREAD);
+            STRATEGIES.put(PACK.getName(), PACK);
+            STRATEGIES.put(MINIMAL_DISRUPTION.getName(), MINIMAL_DISRUPTION);
+        }
+
+        private BuiltIn() {}
+    }
+}
@@ -5,9 +5,11 @@
 
 package com.liqid.k8s.layout;
 
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 // describes an entry to describe one stage of an allocator to be implemented
 public class Allocator {
@@ -20,7 +22,17 @@ public class Allocator {
 
     // ordered list of device identifiers, from which we allocate.
     // we always allocate from the front of the list.
-    private final LinkedList<Integer> _deviceIdentifiers = new LinkedList<>();
+    // When the list is described by the sets below, it is only built if somebody asks for it.
+    private int[] _deviceIdentifiers;
+
+    // The list consists of the devices which are already attached to the machine, followed by devices which are
+    // not attached to any machine, and finally devices which are attached to other machines.
+    // The second and third portions are described by sets of candidates which are shared by all the allocators
+    // for the same resource model and restrictions (the assigned set includes this machine's devices).
+    // These are null if the list was provided pre-ordered, in which case the whole list is treated as free devices.
+    private final IdentifierSet _attachedDeviceIdentifiers;
+    private final IdentifierSet _freeDeviceIdentifiers;
+    private final IdentifierSet _assignedDeviceIdentifiers;
 
     public Allocator(
         final String machineName,
@@ -29,7 +41,47 @@ public class Allocator {
     ) {
         _machineName = machineName;
         _count = count;
-        _deviceIdentifiers.addAll(deviceIdentifiers);
+        _deviceIdentifiers = deviceIdentifiers.stream().mapToInt(Integer::intValue).toArray();
+        _attachedDeviceIdentifiers = null;
+        _freeDeviceIdentifiers = null;
+        _assignedDeviceIdentifiers = null;
+    }
+
+    public Allocator(
+        final String machineName,
+        final Integer count,
+        final int[] deviceIdentifiers // ordered list of identifiers
+    ) {
+        _machineName = machineName;
+        _count = count;
+        _deviceIdentifiers = deviceIdentifiers.clone();
+        _attachedDeviceIdentifiers = null;
+        _freeDeviceIdentifiers = null;
+        _assignedDeviceIdentifiers = null;
+    }
+
+    public Allocator(
+        final String machineName,
+        final Integer count,
+        final IdentifierSet attachedDeviceIdentifiers, // candidates attached to this machine
+        final IdentifierSet freeDeviceIdentifiers,     // candidates not attached to any machine
+        final IdentifierSet assignedDeviceIdentifiers  // candidates attached to any machine
+    ) {
+        _machineName = machineName;
+        _count = count;
+        _attachedDeviceIdentifiers = attachedDeviceIdentifiers;
+        _freeDeviceIdentifiers = freeDeviceIdentifiers;
+        _assignedDeviceIdentifiers = assignedDeviceIdentifiers;
+    }
+
+    private int[] getList() {
+        if (_deviceIdentifiers == null) {
+            var attached = _attachedDeviceIdentifiers;
+            var others = _assignedDeviceIdentifiers.ids().filter(id -> !attached.containsId(id));
+            _deviceIdentifiers = IntStream.concat(IntStream.concat(attached.ids(), _freeDeviceIdentifiers.ids()), others)
+                                          .toArray();
+        }
+        return _deviceIdentifiers;
     }
 
     public String getMachineName() {
@@ -41,11 +93,38 @@ public class Allocator {
     }
 
     public LinkedList<Integer> getDeviceIdentifiers() {
-        return new LinkedList<>(_deviceIdentifiers);
+        return Arrays.stream(getList()).boxed().collect(Collectors.toCollection(LinkedList::new));
+    }
+
+    // Primitive access to the ordered identifiers, for walking the list without copying it
+    public int getDeviceIdentifierCount() { return getList().length; }
+    public int getDeviceIdentifier(final int index) { return getList()[index]; }
+
+    // The sets describing the list (see above), or null if they are not known. These must not be updated.
+    public IdentifierSet getAttachedDeviceIdentifiers() { return _attachedDeviceIdentifiers; }
+    public IdentifierSet getFreeDeviceIdentifiers() { return _freeDeviceIdentifiers; }
+    public IdentifierSet getAssignedDeviceIdentifiers() { return _assignedDeviceIdentifiers; }
+
+    /**
+     * Indicates the disruption caused by allocating the device at the given position in the list:
+     * 0 if it is already attached to the machine, 1 if it is free, 2 if it must be taken from another machine.
+     */
+    public int getPlacementCost(
+        final int index
+    ) {
+        if (_attachedDeviceIdentifiers == null) {
+            return 1;
+        } else if (index < _attachedDeviceIdentifiers.size()) {
+            return 0;
+        } else if (index < _attachedDeviceIdentifiers.size() + _freeDeviceIdentifiers.size()) {
+            return 1;
+        } else {
+            return 2;
+        }
     }
 
     @Override
     public String toString() {
-        return String.format("%s:%d <- %s", _machineName, _count, _deviceIdentifiers);
+        return String.format("%s:%d <- %s", _machineName, _count, Arrays.toString(getList()));
     }
 }
@@ -56,13 +56,11 @@ public class ClusterLayout {
         }
 
         //  non-compute devices not assigned to any machines
-        var devItems = inventory.getDeviceItems();
-        LiqidInventory.removeDeviceItemsOfType(devItems, GeneralType.CPU);
+        var query = inventory.query().notOfType(GeneralType.CPU).notInAnyMachine();
         if (groupId != null) {
-            LiqidInventory.removeDeviceItemsNotInGroup(devItems, groupId);
+            query.inGroup(groupId);
         }
-        LiqidInventory.removeDeviceItemsInAnyMachine(devItems);
-        devItems.forEach(layout._unassignedProfile::injectDevice);
+        query.getDeviceItems().forEach(layout._unassignedProfile::injectDevice);
 
         return layout;
     }
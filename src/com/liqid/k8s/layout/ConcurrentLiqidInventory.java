@@ -0,0 +1,315 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import com.liqid.sdk.DeviceInfo;
+import com.liqid.sdk.DeviceStatus;
+import com.liqid.sdk.Group;
+import com.liqid.sdk.Machine;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * A LiqidInventory which may be shared by multiple threads - for example, by plan actions which are
+ * performed concurrently against one ExecutionContext.
+ * Queries run concurrently with each other, while notify* updates are serialized. Updates are small in-memory
+ * changes (the SDK calls which precede them are not made under the lock), so a single read/write lock suffices.
+ * DeviceItem objects are never updated in place here; an update replaces the item with an updated copy,
+ * so any item a thread has already retrieved stays consistent.
+ * For a consistent view across several queries, take a copy() - it is a plain (single-threaded) LiqidInventory
+ * reflecting the state at the time it was taken, and it costs constant time.
+ * Listeners are invoked while the update lock is held, and must not query this inventory from other threads.
+ */
+public class ConcurrentLiqidInventory extends LiqidInventory {
+
+    private final ReadWriteLock _lock = new ReentrantReadWriteLock();
+
+    /**
+     * Creates a concurrent inventory with the content of the given inventory.
+     * The two are independent afterward - neither one sees updates made to the other.
+     */
+    public ConcurrentLiqidInventory(
+        final LiqidInventory source
+    ) {
+        if (source instanceof ConcurrentLiqidInventory concurrentSource) {
+            // sharing updates the source's copy-on-write bookkeeping, so it excludes the source's updates
+            concurrentSource.write(() -> { concurrentSource.shareContentWith(this); });
+        } else {
+            source.shareContentWith(this);
+        }
+    }
+
+    private <T> T read(
+        final Supplier<T> query
+    ) {
+        _lock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    private void write(
+        final Runnable update
+    ) {
+        _lock.writeLock().lock();
+        try {
+            update.run();
+        } finally {
+            _lock.writeLock().unlock();
+        }
+    }
+
+    private <T> T write(
+        final Supplier<T> update
+    ) {
+        _lock.writeLock().lock();
+        try {
+            return update.get();
+        } finally {
+            _lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected boolean updatesDeviceItemsInPlace() { return false; }
+
+    @Override
+    public LiqidInventory addListener(final InventoryListener listener) {
+        return write(() -> super.addListener(listener));
+    }
+
+    @Override
+    public LiqidInventory removeListener(final InventoryListener listener) {
+        return write(() -> super.removeListener(listener));
+    }
+
+    @Override
+    public LiqidInventory copy() {
+        // copying updates our own copy-on-write bookkeeping, so it excludes updates
+        return write(super::copy);
+    }
+
+    @Override
+    IdentifierSet evaluateQuery(final InventoryQuery query) {
+        return read(() -> super.evaluateQuery(query));
+    }
+
+    @Override
+    public IdentifierSet getDeviceIdsAcceptedBy(final ResourceModel resourceModel) {
+        return read(() -> super.getDeviceIdsAcceptedBy(resourceModel));
+    }
+
+    @Override
+    public DeviceItem getComputeDeviceItemForMachine(final Integer machineId) {
+        return read(() -> super.getComputeDeviceItemForMachine(machineId));
+    }
+
+    @Override
+    public DeviceItem getDeviceItem(final Integer deviceId) {
+        return read(() -> super.getDeviceItem(deviceId));
+    }
+
+    @Override
+    public DeviceItem getDeviceItem(final String deviceName) {
+        return read(() -> super.getDeviceItem(deviceName));
+    }
+
+    @Override
+    public Collection<DeviceItem> getDeviceItems() {
+        return read(super::getDeviceItems);
+    }
+
+    @Override
+    public Collection<DeviceItem> getDeviceItemsForGroup(final Integer groupId) {
+        return read(() -> super.getDeviceItemsForGroup(groupId));
+    }
+
+    @Override
+    public Collection<DeviceItem> getDeviceItemsForGroup(final String groupName) {
+        return read(() -> super.getDeviceItemsForGroup(groupName));
+    }
+
+    @Override
+    public Collection<DeviceItem> getDeviceItemsForMachine(final Integer machineId) {
+        return read(() -> super.getDeviceItemsForMachine(machineId));
+    }
+
+    @Override
+    public Collection<DeviceItem> getDeviceItemsForMachine(final String machineName) {
+        return read(() -> super.getDeviceItemsForMachine(machineName));
+    }
+
+    @Override
+    public Collection<DeviceItem> getDeviceItemsOfType(final GeneralType generalType) {
+        return read(() -> super.getDeviceItemsOfType(generalType));
+    }
+
+    @Override
+    public Collection<DeviceItem> getDeviceItemsForVendor(final String vendor) {
+        return read(() -> super.getDeviceItemsForVendor(vendor));
+    }
+
+    @Override
+    public Collection<DeviceItem> getDeviceItemsForVendor(final String vendor, final String model) {
+        return read(() -> super.getDeviceItemsForVendor(vendor, model));
+    }
+
+    @Override
+    public Set<String> getDeviceNamesFromIds(final Collection<Integer> deviceIds) {
+        return read(() -> super.getDeviceNamesFromIds(deviceIds));
+    }
+
+    @Override
+    public Group getGroup(final Integer groupId) {
+        return read(() -> super.getGroup(groupId));
+    }
+
+    @Override
+    public Group getGroup(final String groupName) {
+        return read(() -> super.getGroup(groupName));
+    }
+
+    @Override
+    public Integer getGroupId(final String groupName) {
+        return read(() -> super.getGroupId(groupName));
+    }
+
+    @Override
+    public Integer getGroupIdForDevice(final Integer deviceId) {
+        return read(() -> super.getGroupIdForDevice(deviceId));
+    }
+
+    @Override
+    public Integer getGroupIdForDevice(final String deviceName) {
+        return read(() -> super.getGroupIdForDevice(deviceName));
+    }
+
+    @Override
+    public Collection<Group> getGroups() {
+        return read(super::getGroups);
+    }
+
+    @Override
+    public String getK8sNodeNameFromComputeDeviceItem(final DeviceItem deviceItem) {
+        return read(() -> super.getK8sNodeNameFromComputeDeviceItem(deviceItem));
+    }
+
+    @Override
+    public String getK8sNodeNameFromMachine(final Integer machineId) {
+        return read(() -> super.getK8sNodeNameFromMachine(machineId));
+    }
+
+    @Override
+    public Machine getMachine(final Integer machineId) {
+        return read(() -> super.getMachine(machineId));
+    }
+
+    @Override
+    public Machine getMachine(final String machineName) {
+        return read(() -> super.getMachine(machineName));
+    }
+
+    @Override
+    public Integer getMachineId(final String machineName) {
+        return read(() -> super.getMachineId(machineName));
+    }
+
+    @Override
+    public Integer getMachineIdForDevice(final Integer deviceId) {
+        return read(() -> super.getMachineIdForDevice(deviceId));
+    }
+
+    @Override
+    public Integer getMachineIdForDevice(final String deviceName) {
+        return read(() -> super.getMachineIdForDevice(deviceName));
+    }
+
+    @Override
+    public Collection<Machine> getMachines() {
+        return read(super::getMachines);
+    }
+
+    @Override
+    public Collection<Machine> getMachinesInGroup(final Integer groupId) {
+        return read(() -> super.getMachinesInGroup(groupId));
+    }
+
+    @Override
+    public Collection<Integer> getMachineIdsInGroup(final Integer groupId) {
+        return read(() -> super.getMachineIdsInGroup(groupId));
+    }
+
+    @Override
+    public boolean hasDevice(final String vendor, final String model) {
+        return read(() -> super.hasDevice(vendor, model));
+    }
+
+    @Override
+    public boolean hasDevice(final String vendor) {
+        return read(() -> super.hasDevice(vendor));
+    }
+
+    @Override
+    void restoreDeviceAttachment(final Integer deviceId, final Integer groupId, final Integer machineId) {
+        write(() -> super.restoreDeviceAttachment(deviceId, groupId, machineId));
+    }
+
+    @Override
+    public void notifyDeviceAssignedToGroup(final Integer deviceId, final Integer groupId) {
+        write(() -> super.notifyDeviceAssignedToGroup(deviceId, groupId));
+    }
+
+    @Override
+    public void notifyDeviceAssignedToMachine(final Integer deviceId, final Integer machineId) {
+        write(() -> super.notifyDeviceAssignedToMachine(deviceId, machineId));
+    }
+
+    @Override
+    public void notifyDeviceCreated(final DeviceStatus status, final DeviceInfo info) {
+        write(() -> super.notifyDeviceCreated(status, info));
+    }
+
+    @Override
+    public void notifyDeviceRemoved(final Integer deviceId) {
+        write(() -> super.notifyDeviceRemoved(deviceId));
+    }
+
+    @Override
+    public void notifyDeviceRemovedFromGroup(final Integer deviceId) {
+        write(() -> super.notifyDeviceRemovedFromGroup(deviceId));
+    }
+
+    @Override
+    public void notifyDeviceRemovedFromMachine(final Integer deviceId) {
+        write(() -> super.notifyDeviceRemovedFromMachine(deviceId));
+    }
+
+    @Override
+    public void notifyGroupCreated(final Group group) {
+        write(() -> super.notifyGroupCreated(group));
+    }
+
+    @Override
+    public void notifyGroupRemoved(final Integer groupId) {
+        write(() -> super.notifyGroupRemoved(groupId));
+    }
+
+    @Override
+    public void notifyMachineCreated(final Machine machine) {
+        write(() -> super.notifyMachineCreated(machine));
+    }
+
+    @Override
+    public void notifyMachineRemoved(final Integer machineId) {
+        write(() -> super.notifyMachineRemoved(machineId));
+    }
+}
@@ -55,8 +55,9 @@ public class DeviceItem {
     public boolean isAssignedToGroup() { return _groupId != null; }
     public boolean isAssignedToMachine() { return _machineId != null; }
 
-    public DeviceItem setGroupId(final Integer value) {_groupId = value; return this; }
-    public DeviceItem setMachineId(final Integer value) {_machineId = value; return this; }
+    // Only LiqidInventory may change the attachments, since it indexes devices by group and machine.
+    DeviceItem setGroupId(final Integer value) {_groupId = value; return this; }
+    DeviceItem setMachineId(final Integer value) {_machineId = value; return this; }
 
     @Override
     public boolean equals(
@@ -0,0 +1,190 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Describes where devices sit on the PCIe fabric - specifically, which fabric switch each device
+ * (and each machine's compute device) is connected to - so that allocation can prefer devices which
+ * share a switch with each other and with the machine's compute device.
+ * GPU-to-GPU P2P traffic stays within a switch if the GPUs share one.
+ * The switch for each device comes from the switchGlobalId of its DeviceStatus, which the inventory
+ * already holds; if the director does not report it, we know nothing and choose devices in the usual order.
+ */
+public class FabricLocality {
+
+    private final Map<Integer, Integer> _switchByDevice = new HashMap<>();
+    private final Map<String, Integer> _switchByMachine = new HashMap<>();
+
+    FabricLocality() {}
+
+    /**
+     * Creates a FabricLocality from the DeviceStatus entries in the given inventory
+     */
+    public static FabricLocality createFromInventory(
+        final LiqidInventory inventory
+    ) {
+        var locality = new FabricLocality();
+        for (var devItem : inventory.getDeviceItems()) {
+            var switchId = devItem.getDeviceStatus().getSwitchGlobalId();
+            if (switchId != null) {
+                locality.setDeviceSwitch(devItem.getDeviceId(), switchId);
+            }
+        }
+
+        for (var machine : inventory.getMachines()) {
+            var computeItem = inventory.getComputeDeviceItemForMachine(machine.getMachineId());
+            if ((computeItem != null) && (computeItem.getDeviceStatus().getSwitchGlobalId() != null)) {
+                locality.setMachineSwitch(machine.getMachineName(), computeItem.getDeviceStatus().getSwitchGlobalId());
+            }
+        }
+
+        return locality;
+    }
+
+    FabricLocality setDeviceSwitch(final int deviceId, final int switchId) {
+        _switchByDevice.put(deviceId, switchId);
+        return this;
+    }
+
+    FabricLocality setMachineSwitch(final String machineName, final int switchId) {
+        _switchByMachine.put(machineName, switchId);
+        return this;
+    }
+
+    public Integer getSwitchForDevice(final int deviceId) { return _switchByDevice.get(deviceId); }
+    public Integer getSwitchForMachine(final String machineName) { return _switchByMachine.get(machineName); }
+
+    /**
+     * Indicates whether we know the fabric location of any devices at all
+     */
+    public boolean isEmpty() {
+        return _switchByDevice.isEmpty();
+    }
+
+    // One pair of co-located devices scores a point, as does each device co-located with the compute device.
+    private static int score(
+        final Map<Integer, Integer> countsBySwitch,
+        final Integer computeSwitch
+    ) {
+        var score = 0;
+        for (var count : countsBySwitch.values()) {
+            score += count * (count - 1) / 2;
+        }
+        if (computeSwitch != null) {
+            score += countsBySwitch.getOrDefault(computeSwitch, 0);
+        }
+        return score;
+    }
+
+    /**
+     * Chooses devices for a machine from a set of available candidates, preferring the set of devices which are
+     * best co-located with each other, with the devices already chosen for the machine, and with the machine's
+     * compute device. If we know nothing about the candidates, we choose the lowest identifiers, as usual.
+     * @param machineName the machine for which devices are being chosen
+     * @param candidates identifiers of the available devices
+     * @param count the number of devices wanted
+     * @param alreadyChosen identifiers of devices already chosen for the machine, which contribute to co-location
+     * @return the chosen identifiers - all the candidates, if there are no more than the number wanted
+     */
+    public IdentifierSet chooseDevices(
+        final String machineName,
+        final IdentifierSet candidates,
+        final int count,
+        final IdentifierSet alreadyChosen
+    ) {
+        if (count >= candidates.size()) {
+            return new IdentifierSet(candidates);
+        }
+
+        var bySwitch = new TreeMap<Integer, IdentifierSet>();
+        var unknown = new IdentifierSet();
+        candidates.forEachId(id -> {
+            var switchId = _switchByDevice.get(id);
+            if (switchId == null) {
+                unknown.addId(id);
+            } else {
+                bySwitch.computeIfAbsent(switchId, k -> new IdentifierSet()).addId(id);
+            }
+        });
+
+        if (bySwitch.isEmpty()) {
+            return new IdentifierSet(candidates.ids().limit(count).toArray());
+        }
+
+        var sizes = new HashMap<Integer, Integer>();
+        bySwitch.forEach((switchId, ids) -> sizes.put(switchId, ids.size()));
+        return chooseDevices(machineName, bySwitch, sizes, unknown, count, alreadyChosen);
+    }
+
+    /**
+     * As above, for more candidates than the number wanted, some of whose locations are known -
+     * already partitioned by switch. Only the lowest count identifiers of each partition are ever chosen,
+     * so the partitions need hold no more than those, provided that sizesBySwitch gives the full number
+     * of candidates on each switch.
+     */
+    IdentifierSet chooseDevices(
+        final String machineName,
+        final SortedMap<Integer, IdentifierSet> bySwitch,
+        final Map<Integer, Integer> sizesBySwitch,
+        final IdentifierSet unknown,
+        final int count,
+        final IdentifierSet alreadyChosen
+    ) {
+        var chosenCounts = new HashMap<Integer, Integer>();
+        alreadyChosen.forEachId(id -> {
+            var switchId = _switchByDevice.get(id);
+            if (switchId != null) {
+                chosenCounts.merge(switchId, 1, Integer::sum);
+            }
+        });
+
+        // Try anchoring the choice on each switch in turn - take what we can from the anchor, then fill
+        // from the compute device's switch, then from the switches where we already have the most devices,
+        // then from the switches with the most candidates. Devices of unknown location are a last resort.
+        var computeSwitch = _switchByMachine.get(machineName);
+        var fillOrder = new LinkedList<>(bySwitch.keySet());
+        fillOrder.sort(Comparator.comparing((Integer sw) -> !Objects.equals(sw, computeSwitch))
+                                 .thenComparing(sw -> -chosenCounts.getOrDefault(sw, 0))
+                                 .thenComparing(sw -> -sizesBySwitch.get(sw))
+                                 .thenComparing(sw -> sw));
+
+        IdentifierSet best = null;
+        var bestScore = -1;
+        for (var anchor : bySwitch.keySet()) {
+            var choice = new IdentifierSet();
+            var counts = new HashMap<>(chosenCounts);
+            var order = new LinkedList<>(fillOrder);
+            order.remove(anchor);
+            order.addFirst(anchor);
+            for (var sw : order) {
+                var available = bySwitch.get(sw);
+                var taken = Math.min(available.size(), count - choice.size());
+                available.ids().limit(taken).forEach(choice::addId);
+                counts.merge(sw, taken, Integer::sum);
+                if (choice.size() == count) {
+                    break;
+                }
+            }
+            unknown.ids().limit(count - choice.size()).forEach(choice::addId);
+
+            var score = score(counts, computeSwitch);
+            if (score > bestScore) {
+                best = choice;
+                bestScore = score;
+            }
+        }
+
+        return best;
+    }
+}
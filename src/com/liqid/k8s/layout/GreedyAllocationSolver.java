@@ -0,0 +1,318 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+/**
+ * Chooses device identifiers for a set of Allocator objects in the order in which they are presented
+ * (most specific resource models first), each allocator taking the first devices in its list which have not
+ * already been taken: devices attached to the allocator's machine, then free devices, then devices attached
+ * to other machines.
+ * Device identifiers are mapped to dense positions, and a shared bitset tracks the devices taken so far.
+ * Allocators which share their sets of free and assigned candidates (see Allocator) share a pool of bitsets
+ * of those candidates; a device is cleared from a pool the first time the pool reaches it, so nobody rescans
+ * the devices which have already been taken.
+ * If a FabricLocality is provided, GPUs are not simply taken lowest-first from the pools - rather, the set of
+ * available devices which is best co-located on the fabric is chosen (see FabricLocality.chooseDevices()).
+ * Such pools keep their available devices partitioned by switch, and every pool holding a device is told when
+ * it is taken - so a choice looks at no more than the wanted number of devices on each switch, however big the pool.
+ */
+public class GreedyAllocationSolver implements AllocationSolver {
+
+    // Candidates which are free, and candidates which are attached to some machine.
+    // These sets are shared by all the allocators for one resource model and set of restrictions, so we key on identity.
+    private record PoolKey(IdentifierSet free, IdentifierSet assigned) {
+
+        @Override
+        public boolean equals(final Object obj) {
+            return (obj instanceof PoolKey key) && (key.free == free) && (key.assigned == assigned);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(free) + System.identityHashCode(assigned);
+        }
+    }
+
+    private record Pool(BitSet free, BitSet assigned) {}
+
+    // The available devices of one candidate set, partitioned by the fabric switch they sit on (null if unknown)
+    private static class SwitchPool {
+
+        private final TreeMap<Integer, BitSet> _bySwitch = new TreeMap<>();
+        private final Map<Integer, Integer> _sizes = new HashMap<>();
+        private final BitSet _unknown = new BitSet();
+        private int _size = 0;
+
+        void add(
+            final int position,
+            final Integer switchId
+        ) {
+            if (switchId == null) {
+                _unknown.set(position);
+            } else {
+                _bySwitch.computeIfAbsent(switchId, k -> new BitSet()).set(position);
+                _sizes.merge(switchId, 1, Integer::sum);
+            }
+            _size++;
+        }
+
+        void remove(
+            final int position,
+            final Integer switchId
+        ) {
+            if (switchId == null) {
+                _unknown.clear(position);
+            } else {
+                var positions = _bySwitch.get(switchId);
+                positions.clear(position);
+                if (positions.isEmpty()) {
+                    _bySwitch.remove(switchId);
+                    _sizes.remove(switchId);
+                } else {
+                    _sizes.merge(switchId, -1, Integer::sum);
+                }
+            }
+            _size--;
+        }
+
+        TreeMap<Integer, BitSet> getBySwitch() { return _bySwitch; }
+        Map<Integer, Integer> getSizes() { return _sizes; }
+        BitSet getUnknown() { return _unknown; }
+        int size() { return _size; }
+    }
+
+    private record SwitchPools(SwitchPool free, SwitchPool assigned) {}
+
+    private final Map<ResourceModel, Collection<Allocator>> _allocators;
+    private final Map<Allocator, Integer> _shortfalls = new IdentityHashMap<>();
+    private final Map<String, Allocation> _allocations = new LinkedHashMap<>();
+
+    private FabricLocality _locality = null;
+    private IdentifierSet _universe;
+    private BitSet _taken;
+    private Map<Integer, Collection<SwitchPool>> _switchPoolsByPosition;
+
+    public GreedyAllocationSolver(
+        final Map<ResourceModel, Collection<Allocator>> allocators
+    ) {
+        _allocators = allocators;
+    }
+
+    public GreedyAllocationSolver setLocality(final FabricLocality value) { _locality = value; return this; }
+
+    private BitSet getPositions(
+        final IdentifierSet identifiers
+    ) {
+        var result = new BitSet(_universe.size());
+        identifiers.forEachId(id -> result.set(_universe.indexOfId(id)));
+        return result;
+    }
+
+    // takes the device at the given position if nobody else has
+    private boolean take(
+        final int position,
+        final Allocation allocation
+    ) {
+        if (_taken.get(position)) {
+            return false;
+        }
+
+        _taken.set(position);
+        allocation.appendDeviceIdentifier(_universe.getId(position));
+
+        var switchPools = _switchPoolsByPosition.get(position);
+        if (switchPools != null) {
+            var switchId = _locality.getSwitchForDevice(_universe.getId(position));
+            switchPools.forEach(pool -> pool.remove(position, switchId));
+        }
+        return true;
+    }
+
+    // creates a switch pool of those of the given devices which are still available
+    private SwitchPool createSwitchPool(
+        final IdentifierSet identifiers
+    ) {
+        var pool = new SwitchPool();
+        identifiers.forEachId(id -> {
+            var px = _universe.indexOfId(id);
+            if (!_taken.get(px)) {
+                pool.add(px, _locality.getSwitchForDevice(id));
+                _switchPoolsByPosition.computeIfAbsent(px, k -> new LinkedList<>()).add(pool);
+            }
+        });
+        return pool;
+    }
+
+    // the identifiers at the lowest of the given positions, up to the given number of them
+    private IdentifierSet getIdentifiers(
+        final BitSet positions,
+        final int limit
+    ) {
+        var result = new IdentifierSet();
+        for (int px = positions.nextSetBit(0); (px >= 0) && (result.size() < limit); px = positions.nextSetBit(px + 1)) {
+            result.addId(_universe.getId(px));
+        }
+        return result;
+    }
+
+    // takes up to the given number of devices from a pool bitset, lowest first
+    private int takeFromPool(
+        final BitSet pool,
+        final int count,
+        final Allocation allocation
+    ) {
+        var remaining = count;
+        for (int px = pool.nextSetBit(0); (px >= 0) && (remaining > 0); px = pool.nextSetBit(px + 1)) {
+            pool.clear(px);
+            if (take(px, allocation)) {
+                remaining--;
+            }
+        }
+        return remaining;
+    }
+
+    // takes up to the given number of devices from a switch pool, choosing those best co-located on the fabric
+    private int takeCoLocatedFromPool(
+        final SwitchPool pool,
+        final int count,
+        final Allocation allocation,
+        final IdentifierSet alreadyChosen
+    ) {
+        IdentifierSet chosen;
+        if (count >= pool.size()) {
+            chosen = getIdentifiers(pool.getUnknown(), count);
+            pool.getBySwitch().values().forEach(positions -> chosen.addAll(getIdentifiers(positions, count)));
+        } else if (pool.getBySwitch().isEmpty()) {
+            chosen = getIdentifiers(pool.getUnknown(), count);
+        } else {
+            var bySwitch = new TreeMap<Integer, IdentifierSet>();
+            pool.getBySwitch().forEach((switchId, positions) -> bySwitch.put(switchId, getIdentifiers(positions, count)));
+            chosen = _locality.chooseDevices(allocation.getMachineName(),
+                                             bySwitch,
+                                             pool.getSizes(),
+                                             getIdentifiers(pool.getUnknown(), count),
+                                             count,
+                                             alreadyChosen);
+        }
+
+        chosen.forEachId(id -> {
+            take(_universe.indexOfId(id), allocation);
+            alreadyChosen.addId(id);
+        });
+        return count - chosen.size();
+    }
+
+    @Override
+    public GreedyAllocationSolver solve() {
+        _shortfalls.clear();
+        _allocations.clear();
+
+        // Every candidate is in a pre-ordered list, or in a free or assigned set - the latter being shared,
+        // we visit each of them only once.
+        var sets = Collections.newSetFromMap(new IdentityHashMap<IdentifierSet, Boolean>());
+        var lists = new LinkedList<Allocator>();
+        for (var allocs : _allocators.values()) {
+            for (var alloc : allocs) {
+                if (alloc.getFreeDeviceIdentifiers() == null) {
+                    lists.add(alloc);
+                } else {
+                    sets.add(alloc.getFreeDeviceIdentifiers());
+                    sets.add(alloc.getAssignedDeviceIdentifiers());
+                }
+            }
+        }
+        var allIds = IntStream.concat(sets.stream().flatMapToInt(IdentifierSet::ids),
+                                      lists.stream().flatMapToInt(alloc -> IntStream.range(0, alloc.getDeviceIdentifierCount())
+                                                                                    .map(alloc::getDeviceIdentifier)))
+                              .toArray();
+        _universe = new IdentifierSet(allIds);
+        _taken = new BitSet(_universe.size());
+        _switchPoolsByPosition = new HashMap<>();
+
+        var pools = new HashMap<PoolKey, Pool>();
+        var switchPools = new HashMap<PoolKey, SwitchPools>();
+        for (var entry : _allocators.entrySet()) {
+            var coLocate = (_locality != null) && (entry.getKey().getGeneralType() == GeneralType.GPU);
+            for (var alloc : entry.getValue()) {
+                var machineName = alloc.getMachineName();
+                var allocation = _allocations.computeIfAbsent(machineName, k -> new Allocation(machineName));
+                var remaining = (int) alloc.getCount();
+
+                if (alloc.getFreeDeviceIdentifiers() == null) {
+                    // the list was provided pre-ordered, so we can only walk it
+                    for (int dx = 0; (dx < alloc.getDeviceIdentifierCount()) && (remaining > 0); ++dx) {
+                        if (take(_universe.indexOfId(alloc.getDeviceIdentifier(dx)), allocation)) {
+                            remaining--;
+                        }
+                    }
+                } else {
+                    var attachedHere = alloc.getAttachedDeviceIdentifiers();
+                    var chosenHere = new IdentifierSet();
+                    for (int dx = 0; (dx < attachedHere.size()) && (remaining > 0); ++dx) {
+                        var id = attachedHere.getId(dx);
+                        if (take(_universe.indexOfId(id), allocation)) {
+                            chosenHere.addId(id);
+                            remaining--;
+                        }
+                    }
+
+                    if (remaining > 0) {
+                        // Once we get here, all the devices attached to this machine are taken - so the pool's
+                        // attached devices which are still available are all attached to other machines.
+                        var key = new PoolKey(alloc.getFreeDeviceIdentifiers(), alloc.getAssignedDeviceIdentifiers());
+                        if (coLocate) {
+                            var pool = switchPools.computeIfAbsent(key, k -> new SwitchPools(createSwitchPool(k.free()),
+                                                                                             createSwitchPool(k.assigned())));
+                            remaining = takeCoLocatedFromPool(pool.free(), remaining, allocation, chosenHere);
+                            if (remaining > 0) {
+                                remaining = takeCoLocatedFromPool(pool.assigned(), remaining, allocation, chosenHere);
+                            }
+                        } else {
+                            var pool = pools.computeIfAbsent(key, k -> new Pool(getPositions(k.free()),
+                                                                                getPositions(k.assigned())));
+                            remaining = takeFromPool(pool.free(), remaining, allocation);
+                            remaining = takeFromPool(pool.assigned(), remaining, allocation);
+                        }
+                    }
+                }
+
+                if (remaining > 0) {
+                    _shortfalls.put(alloc, remaining);
+                }
+            }
+        }
+
+        return this;
+    }
+
+    @Override
+    public Collection<Allocation> getAllocations() {
+        return _allocations.values();
+    }
+
+    @Override
+    public int getShortfall(
+        final Allocator allocator
+    ) {
+        return _shortfalls.getOrDefault(allocator, 0);
+    }
+
+    @Override
+    public boolean isSatisfied() {
+        return _shortfalls.isEmpty();
+    }
+}
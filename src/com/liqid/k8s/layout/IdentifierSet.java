@@ -0,0 +1,353 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * A set of int identifiers (device, machine, or group identifiers) kept as a sorted primitive array.
+ * The primitive methods (addId(), containsId(), getId(), etc.) neither box nor allocate per element,
+ * and iteration is always in ascending order of identifier.
+ * This is also a Set<Integer>, so it can be handed to code which expects one - such code pays for the boxing.
+ * Liqid identifiers carry the device type in their upper bits, so they are too sparse to key a BitSet directly.
+ */
+public class IdentifierSet extends AbstractSet<Integer> {
+
+    private static final int[] EMPTY = new int[0];
+
+    private int[] _ids = EMPTY;
+    private int _size = 0;
+    private int _modCount = 0;
+
+    public IdentifierSet() {}
+
+    public IdentifierSet(
+        final Collection<? extends Integer> identifiers
+    ) {
+        addAll(identifiers);
+    }
+
+    public IdentifierSet(
+        final int[] identifiers
+    ) {
+        _ids = identifiers.clone();
+        Arrays.sort(_ids);
+        // squeeze out duplicates
+        for (int ix = 0; ix < _ids.length; ++ix) {
+            if ((_size == 0) || (_ids[_size - 1] != _ids[ix])) {
+                _ids[_size++] = _ids[ix];
+            }
+        }
+    }
+
+    private int indexOf(
+        final int identifier
+    ) {
+        return Arrays.binarySearch(_ids, 0, _size, identifier);
+    }
+
+    private void ensureCapacity(
+        final int capacity
+    ) {
+        if (capacity > _ids.length) {
+            _ids = Arrays.copyOf(_ids, Math.max(capacity, Math.max(8, _ids.length * 2)));
+        }
+    }
+
+    /**
+     * Adds an identifier to the set
+     * @return true if the set did not already contain the identifier
+     */
+    public boolean addId(
+        final int identifier
+    ) {
+        // identifiers very often arrive in ascending order, so appending is the fast path
+        if ((_size == 0) || (_ids[_size - 1] < identifier)) {
+            ensureCapacity(_size + 1);
+            _ids[_size++] = identifier;
+            _modCount++;
+            return true;
+        }
+
+        var ix = indexOf(identifier);
+        if (ix >= 0) {
+            return false;
+        }
+
+        ix = -(ix + 1);
+        ensureCapacity(_size + 1);
+        System.arraycopy(_ids, ix, _ids, ix + 1, _size - ix);
+        _ids[ix] = identifier;
+        _size++;
+        _modCount++;
+        return true;
+    }
+
+    /**
+     * Removes an identifier from the set
+     * @return true if the set contained the identifier
+     */
+    public boolean removeId(
+        final int identifier
+    ) {
+        var ix = indexOf(identifier);
+        if (ix < 0) {
+            return false;
+        }
+
+        removeAt(ix);
+        return true;
+    }
+
+    private void removeAt(
+        final int index
+    ) {
+        System.arraycopy(_ids, index + 1, _ids, index, _size - index - 1);
+        _size--;
+        _modCount++;
+    }
+
+    /**
+     * Finds the position of an identifier in the (ascending) order of the set
+     * @return the position, or a negative value if the set does not contain the identifier
+     */
+    public int indexOfId(
+        final int identifier
+    ) {
+        return Math.max(indexOf(identifier), -1);
+    }
+
+    public boolean containsId(
+        final int identifier
+    ) {
+        return indexOf(identifier) >= 0;
+    }
+
+    /**
+     * Retrieves an identifier by its position in the (ascending) order of the set
+     */
+    public int getId(
+        final int index
+    ) {
+        if ((index < 0) || (index >= _size)) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return _ids[index];
+    }
+
+    public void forEachId(
+        final IntConsumer action
+    ) {
+        for (int ix = 0; ix < _size; ++ix) {
+            action.accept(_ids[ix]);
+        }
+    }
+
+    public IntStream ids() {
+        return Arrays.stream(_ids, 0, _size);
+    }
+
+    public int[] toIntArray() {
+        return Arrays.copyOf(_ids, _size);
+    }
+
+    @Override
+    public boolean add(
+        final Integer identifier
+    ) {
+        return addId(identifier);
+    }
+
+    @Override
+    public boolean addAll(
+        final Collection<? extends Integer> identifiers
+    ) {
+        if (!(identifiers instanceof IdentifierSet other)) {
+            var changed = false;
+            for (var id : identifiers) {
+                changed |= addId(id);
+            }
+            return changed;
+        }
+
+        // merge the two sorted arrays
+        var merged = new int[_size + other._size];
+        int mx = 0;
+        int tx = 0;
+        int ox = 0;
+        while ((tx < _size) && (ox < other._size)) {
+            var tid = _ids[tx];
+            var oid = other._ids[ox];
+            if (tid < oid) {
+                merged[mx++] = tid;
+                tx++;
+            } else if (oid < tid) {
+                merged[mx++] = oid;
+                ox++;
+            } else {
+                merged[mx++] = tid;
+                tx++;
+                ox++;
+            }
+        }
+        while (tx < _size) {
+            merged[mx++] = _ids[tx++];
+        }
+        while (ox < other._size) {
+            merged[mx++] = other._ids[ox++];
+        }
+
+        if (mx == _size) {
+            return false;
+        }
+
+        _ids = merged;
+        _size = mx;
+        _modCount++;
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        _size = 0;
+        _modCount++;
+    }
+
+    @Override
+    public boolean contains(
+        final Object obj
+    ) {
+        return (obj instanceof Integer id) && containsId(id);
+    }
+
+    @Override
+    public boolean remove(
+        final Object obj
+    ) {
+        return (obj instanceof Integer id) && removeId(id);
+    }
+
+    @Override
+    public boolean removeAll(
+        final Collection<?> identifiers
+    ) {
+        if (!(identifiers instanceof IdentifierSet other)) {
+            return super.removeAll(identifiers);
+        }
+
+        int dx = 0;
+        for (int sx = 0; sx < _size; ++sx) {
+            if (!other.containsId(_ids[sx])) {
+                _ids[dx++] = _ids[sx];
+            }
+        }
+
+        if (dx == _size) {
+            return false;
+        }
+
+        _size = dx;
+        _modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean retainAll(
+        final Collection<?> identifiers
+    ) {
+        if (!(identifiers instanceof IdentifierSet other)) {
+            return super.retainAll(identifiers);
+        }
+
+        int dx = 0;
+        for (int sx = 0; sx < _size; ++sx) {
+            if (other.containsId(_ids[sx])) {
+                _ids[dx++] = _ids[sx];
+            }
+        }
+
+        if (dx == _size) {
+            return false;
+        }
+
+        _size = dx;
+        _modCount++;
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<>() {
+            private int _next = 0;
+            private int _expectedModCount = _modCount;
+            private boolean _canRemove = false;
+
+            @Override
+            public boolean hasNext() {
+                return _next < _size;
+            }
+
+            @Override
+            public Integer next() {
+                if (_expectedModCount != _modCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (_next >= _size) {
+                    throw new NoSuchElementException();
+                }
+                _canRemove = true;
+                return _ids[_next++];
+            }
+
+            @Override
+            public void remove() {
+                if (!_canRemove) {
+                    throw new IllegalStateException();
+                }
+                if (_expectedModCount != _modCount) {
+                    throw new ConcurrentModificationException();
+                }
+                removeAt(--_next);
+                _expectedModCount = _modCount;
+                _canRemove = false;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(
+        final Object obj
+    ) {
+        if (obj == this) {
+            return true;
+        } else if (obj instanceof IdentifierSet other) {
+            return Arrays.equals(_ids, 0, _size, other._ids, 0, other._size);
+        }
+        return super.equals(obj);
+    }
+
+    @Override
+    public int hashCode() {
+        // must agree with AbstractSet.hashCode(), which is the sum of the Integer hash codes
+        int result = 0;
+        for (int ix = 0; ix < _size; ++ix) {
+            result += _ids[ix];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+/**
+ * Describes one change to a LiqidInventory, for the benefit of InventoryListener objects.
+ * Identifiers which do not apply to the event type are null. For DEVICE_MOVED, the group and machine
+ * identifiers are those of the new attachment, and the previous ones are those of the old attachment.
+ */
+public class InventoryEvent {
+
+    private final InventoryEventType _type;
+    private final Integer _deviceId;
+    private final Integer _groupId;
+    private final Integer _machineId;
+    private final Integer _previousGroupId;
+    private final Integer _previousMachineId;
+
+    private InventoryEvent(
+        final InventoryEventType type,
+        final Integer deviceId,
+        final Integer groupId,
+        final Integer machineId,
+        final Integer previousGroupId,
+        final Integer previousMachineId
+    ) {
+        _type = type;
+        _deviceId = deviceId;
+        _groupId = groupId;
+        _machineId = machineId;
+        _previousGroupId = previousGroupId;
+        _previousMachineId = previousMachineId;
+    }
+
+    public static InventoryEvent deviceCreated(final Integer deviceId) {
+        return new InventoryEvent(InventoryEventType.DEVICE_CREATED, deviceId, null, null, null, null);
+    }
+
+    public static InventoryEvent deviceRemoved(final Integer deviceId) {
+        return new InventoryEvent(InventoryEventType.DEVICE_REMOVED, deviceId, null, null, null, null);
+    }
+
+    public static InventoryEvent deviceMoved(
+        final Integer deviceId,
+        final Integer previousGroupId,
+        final Integer previousMachineId,
+        final Integer groupId,
+        final Integer machineId
+    ) {
+        return new InventoryEvent(InventoryEventType.DEVICE_MOVED,
+                                  deviceId, groupId, machineId, previousGroupId, previousMachineId);
+    }
+
+    public static InventoryEvent groupCreated(final Integer groupId) {
+        return new InventoryEvent(InventoryEventType.GROUP_CREATED, null, groupId, null, null, null);
+    }
+
+    public static InventoryEvent groupRemoved(final Integer groupId) {
+        return new InventoryEvent(InventoryEventType.GROUP_REMOVED, null, groupId, null, null, null);
+    }
+
+    public static InventoryEvent machineCreated(final Integer machineId, final Integer groupId) {
+        return new InventoryEvent(InventoryEventType.MACHINE_CREATED, null, groupId, machineId, null, null);
+    }
+
+    public static InventoryEvent machineRemoved(final Integer machineId, final Integer groupId) {
+        return new InventoryEvent(InventoryEventType.MACHINE_REMOVED, null, groupId, machineId, null, null);
+    }
+
+    public InventoryEventType getType() { return _type; }
+    public Integer getDeviceId() { return _deviceId; }
+    public Integer getGroupId() { return _groupId; }
+    public Integer getMachineId() { return _machineId; }
+    public Integer getPreviousGroupId() { return _previousGroupId; }
+    public Integer getPreviousMachineId() { return _previousMachineId; }
+
+    @Override
+    public String toString() {
+        var sb = new StringBuilder();
+        sb.append("{").append(_type);
+        if (_deviceId != null) {
+            sb.append(" device=").append(_deviceId);
+        }
+        if (_type == InventoryEventType.DEVICE_MOVED) {
+            sb.append(" from=").append(_previousGroupId).append("/").append(_previousMachineId);
+            sb.append(" to=").append(_groupId).append("/").append(_machineId);
+        } else {
+            if (_groupId != null) {
+                sb.append(" group=").append(_groupId);
+            }
+            if (_machineId != null) {
+                sb.append(" machine=").append(_machineId);
+            }
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+}
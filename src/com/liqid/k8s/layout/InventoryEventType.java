@@ -0,0 +1,16 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+public enum InventoryEventType {
+    DEVICE_CREATED,
+    DEVICE_REMOVED,
+    DEVICE_MOVED,           // the group and/or machine attachment of a device changed
+    GROUP_CREATED,
+    GROUP_REMOVED,
+    MACHINE_CREATED,
+    MACHINE_REMOVED,
+}
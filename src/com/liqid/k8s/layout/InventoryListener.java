@@ -0,0 +1,19 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+/**
+ * Receives InventoryEvent objects from a LiqidInventory to which it has been added (see addListener()).
+ * Listeners are invoked synchronously, after the inventory has been updated, and must not update the inventory.
+ */
+@FunctionalInterface
+public interface InventoryListener {
+
+    void inventoryChanged(
+        final LiqidInventory inventory,
+        final InventoryEvent event
+    );
+}
@@ -0,0 +1,276 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Selects devices by a combination of criteria, all of which must be met.
+ * A query obtained from LiqidInventory.query() is evaluated against that inventory by intersecting the
+ * sets of device identifiers which the inventory keeps per type, vendor, model, group, and machine
+ * (and by removing those of any negated criteria), so it never visits devices which cannot match.
+ * Any query may also be used as a Predicate to test DeviceItem objects one at a time - which is what
+ * the static filtering helpers in LiqidInventory do.
+ * For example, to find all free NVidia GPUs in a group:
+ *      inventory.query().ofType(GeneralType.GPU).forVendor("NVidia").inGroup(groupId).notInAnyMachine()
+ */
+public class InventoryQuery implements Predicate<DeviceItem> {
+
+    // One criterion, which can be evaluated either against a DeviceItem or against an inventory's indexes
+    private interface Criterion {
+
+        boolean test(final DeviceItem item);
+
+        // Produces the identifiers of all devices in the inventory which meet the criterion.
+        // The result may be the inventory's own index, so it must not be updated.
+        IdentifierSet select(final LiqidInventory inventory);
+    }
+
+    private record Term(Criterion criterion, boolean negated) {}
+
+    private final LiqidInventory _inventory;
+    private final LinkedList<Term> _terms = new LinkedList<>();
+
+    /**
+     * Creates a query which is not attached to an inventory - it can only be used as a Predicate.
+     */
+    public InventoryQuery() {
+        _inventory = null;
+    }
+
+    InventoryQuery(
+        final LiqidInventory inventory
+    ) {
+        _inventory = inventory;
+    }
+
+    private InventoryQuery addTerm(
+        final Criterion criterion,
+        final boolean negated
+    ) {
+        _terms.add(new Term(criterion, negated));
+        return this;
+    }
+
+    private static Criterion typeCriterion(
+        final GeneralType generalType
+    ) {
+        return new Criterion() {
+            public boolean test(final DeviceItem item) { return item.getGeneralType() == generalType; }
+            public IdentifierSet select(final LiqidInventory inv) { return inv.getIndexedDeviceIdsOfType(generalType); }
+        };
+    }
+
+    private static Criterion groupCriterion(
+        final Integer groupId
+    ) {
+        return new Criterion() {
+            public boolean test(final DeviceItem item) { return Objects.equals(item.getGroupId(), groupId); }
+            public IdentifierSet select(final LiqidInventory inv) { return inv.getIndexedDeviceIdsForGroup(groupId); }
+        };
+    }
+
+    private static Criterion machineCriterion(
+        final Integer machineId
+    ) {
+        return new Criterion() {
+            public boolean test(final DeviceItem item) { return Objects.equals(item.getMachineId(), machineId); }
+            public IdentifierSet select(final LiqidInventory inv) { return inv.getIndexedDeviceIdsForMachine(machineId); }
+        };
+    }
+
+    private static final Criterion ANY_MACHINE_CRITERION = new Criterion() {
+        public boolean test(final DeviceItem item) { return item.isAssignedToMachine(); }
+        public IdentifierSet select(final LiqidInventory inv) { return inv.getIndexedDeviceIdsInAnyMachine(); }
+    };
+
+    private static Criterion resourceModelCriterion(
+        final ResourceModel resourceModel
+    ) {
+        return new Criterion() {
+            public boolean test(final DeviceItem item) {
+                return (item.getGeneralType() == resourceModel.getGeneralType())
+                       && resourceModel.accepts(item.getDeviceInfo());
+            }
+            public IdentifierSet select(final LiqidInventory inv) { return inv.getIndexedDeviceIdsAcceptedBy(resourceModel); }
+        };
+    }
+
+    public InventoryQuery ofType(final GeneralType generalType) { return addTerm(typeCriterion(generalType), false); }
+    public InventoryQuery notOfType(final GeneralType generalType) { return addTerm(typeCriterion(generalType), true); }
+
+    /**
+     * Devices of the given vendor (of any type - combine with ofType() as necessary)
+     */
+    public InventoryQuery forVendor(
+        final String vendor
+    ) {
+        return addTerm(new Criterion() {
+            public boolean test(final DeviceItem item) {
+                return (item.getDeviceInfo() != null) && Objects.equals(item.getDeviceInfo().getVendor(), vendor);
+            }
+            public IdentifierSet select(final LiqidInventory inv) { return inv.getIndexedDeviceIdsForVendor(vendor); }
+        }, false);
+    }
+
+    /**
+     * Devices of the given vendor and model (of any type - combine with ofType() as necessary)
+     */
+    public InventoryQuery forVendor(
+        final String vendor,
+        final String model
+    ) {
+        return addTerm(new Criterion() {
+            public boolean test(final DeviceItem item) {
+                return (item.getDeviceInfo() != null)
+                       && Objects.equals(item.getDeviceInfo().getVendor(), vendor)
+                       && Objects.equals(item.getDeviceInfo().getModel(), model);
+            }
+            public IdentifierSet select(final LiqidInventory inv) { return inv.getIndexedDeviceIdsForVendor(vendor, model); }
+        }, false);
+    }
+
+    /**
+     * Devices in the given group - a null groupId selects the devices which are not in any group
+     */
+    public InventoryQuery inGroup(final Integer groupId) { return addTerm(groupCriterion(groupId), false); }
+    public InventoryQuery notInGroup(final Integer groupId) { return addTerm(groupCriterion(groupId), true); }
+
+    /**
+     * Devices attached to the given machine - a null machineId selects the devices which are not in any machine
+     */
+    public InventoryQuery inMachine(final Integer machineId) { return addTerm(machineCriterion(machineId), false); }
+    public InventoryQuery notInMachine(final Integer machineId) { return addTerm(machineCriterion(machineId), true); }
+    public InventoryQuery inAnyMachine() { return addTerm(ANY_MACHINE_CRITERION, false); }
+    public InventoryQuery notInAnyMachine() { return addTerm(ANY_MACHINE_CRITERION, true); }
+
+    /**
+     * Devices which are described by the given resource model
+     */
+    public InventoryQuery acceptedBy(final ResourceModel resourceModel) {
+        return addTerm(resourceModelCriterion(resourceModel), false);
+    }
+
+    /**
+     * Devices which are not described by the given resource model (for excluding restricted models)
+     */
+    public InventoryQuery notAcceptedBy(final ResourceModel resourceModel) {
+        return addTerm(resourceModelCriterion(resourceModel), true);
+    }
+
+    /**
+     * Tests a single DeviceItem against all the criteria of this query
+     */
+    @Override
+    public boolean test(
+        final DeviceItem item
+    ) {
+        for (var term : _terms) {
+            if (term.criterion().test(item) == term.negated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evaluates the query against the given inventory's indexes.
+     * Invoked by LiqidInventory (under whatever locking the inventory requires).
+     */
+    IdentifierSet evaluate(
+        final LiqidInventory inventory
+    ) {
+        var positives = new LinkedList<IdentifierSet>();
+        var negatives = new LinkedList<IdentifierSet>();
+        for (var term : _terms) {
+            var ids = term.criterion().select(inventory);
+            (term.negated() ? negatives : positives).add(ids);
+        }
+
+        IdentifierSet result;
+        if (positives.isEmpty()) {
+            result = inventory.getAllDeviceIds();
+        } else {
+            // start with the smallest set, so that the intersections have the least to do
+            positives.sort(Comparator.comparingInt(IdentifierSet::size));
+            result = new IdentifierSet(positives.removeFirst());
+            for (var ids : positives) {
+                if (result.isEmpty()) {
+                    break;
+                }
+                result.retainAll(ids);
+            }
+        }
+
+        for (var ids : negatives) {
+            if (result.isEmpty()) {
+                break;
+            }
+            result.removeAll(ids);
+        }
+
+        return result;
+    }
+
+    private LiqidInventory getInventory() {
+        if (_inventory == null) {
+            throw new IllegalStateException("Query is not attached to an inventory");
+        }
+        return _inventory;
+    }
+
+    /**
+     * Evaluates the query, producing the identifiers of all the devices which meet its criteria
+     * @return new set of device identifiers
+     */
+    public IdentifierSet getDeviceIds() {
+        return getInventory().evaluateQuery(this);
+    }
+
+    /**
+     * Evaluates the query, producing a view of the DeviceItem objects for all the devices which meet its criteria.
+     * The set of devices is decided here; the DeviceItem objects are retrieved from the inventory as the view is
+     * iterated, so no collection of items is built up front.
+     * @return read-only collection of DeviceItem objects
+     */
+    public Collection<DeviceItem> getDeviceItems() {
+        var inventory = getInventory();
+        var ids = inventory.evaluateQuery(this);
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<DeviceItem> iterator() {
+                return new Iterator<>() {
+                    private int _next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return _next < ids.size();
+                    }
+
+                    @Override
+                    public DeviceItem next() {
+                        if (_next >= ids.size()) {
+                            throw new NoSuchElementException();
+                        }
+                        return inventory.getDeviceItem(ids.getId(_next++));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ids.size();
+            }
+        };
+    }
+}
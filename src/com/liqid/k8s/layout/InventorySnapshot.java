@@ -0,0 +1,264 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.liqid.sdk.DeviceInfo;
+import com.liqid.sdk.DeviceStatus;
+import com.liqid.sdk.Group;
+import com.liqid.sdk.LiqidClient;
+import com.liqid.sdk.LiqidException;
+import com.liqid.sdk.Machine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Persists a LiqidInventory to a local (gzip-compressed) file so that later invocations can skip the full load.
+ * A snapshot is only trusted if it was taken from the same Liqid Director, is not too old, and its fingerprint
+ * matches a fingerprint freshly taken from the director. The fingerprint needs a handful of inexpensive queries
+ * (device status, groups, machines, the free pool of each group, and the compute device descriptions)
+ * rather than the per-machine queries which dominate a full load.
+ * Which devices are attached to each machine comes from the connection history which the director reports
+ * with the machine list, so a device moving from one machine to another changes the fingerprint at no extra cost.
+ * A director which reports no connection history leaves such moves invisible to the fingerprint, hence the age limit;
+ * callers which change the Liqid configuration should discard the snapshot afterward.
+ */
+public class InventorySnapshot {
+
+    private static final int FORMAT_VERSION = 1;
+
+    // Static typing keeps subclasses (including those of the SDK mock) out of the file
+    private static final ObjectMapper MAPPER =
+        JsonMapper.builder()
+                  .enable(MapperFeature.USE_STATIC_TYPING)
+                  .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                  .build();
+
+    private static class Content {
+        public int version;
+        public String address;
+        public long timestamp;
+        public String fingerprint;
+        public List<DeviceEntry> devices = new LinkedList<>();
+        public List<Group> groups = new LinkedList<>();
+        public List<Machine> machines = new LinkedList<>();
+    }
+
+    private static class DeviceEntry {
+        public DeviceStatus status;
+        public DeviceInfo info;
+        public Integer groupId;
+        public Integer machineId;
+    }
+
+    private InventorySnapshot() {}
+
+    /**
+     * Takes a fingerprint of the current Liqid configuration, for comparison with the fingerprint of a snapshot.
+     * @param client LiqidClient object
+     * @return fingerprint string
+     * @throws LiqidException If anything goes wrong while communicating with the Liqid Cluster
+     */
+    public static String createFingerprint(
+        final LiqidClient client
+    ) throws LiqidException {
+        var entries = new TreeSet<String>();
+        for (var ds : client.getAllDevicesStatus()) {
+            entries.add(String.format("device:%d:%s:%s:%s",
+                                      ds.getDeviceId(), ds.getName(), ds.getDeviceType(), ds.getDeviceState()));
+        }
+
+        for (var ci : client.getComputeDeviceInfo()) {
+            entries.add(String.format("compute:%d:%s", ci.getDeviceIdentifier(), ci.getUserDescription()));
+        }
+
+        for (var g : client.getGroups()) {
+            entries.add(String.format("group:%d:%s", g.getGroupId(), g.getGroupName()));
+            for (var pd : client.getPreDevices(null, g.getGroupId(), null)) {
+                entries.add(String.format("pool:%d:%s", g.getGroupId(), pd.getDeviceName()));
+            }
+        }
+
+        for (var m : client.getMachines()) {
+            entries.add(String.format("machine:%d:%s:%d:%s:%s",
+                                      m.getMachineId(), m.getMachineName(), m.getGroupId(),
+                                      m.getComputeName(), m.getP2PEnabled()));
+            if (m.getConnectionHistory() != null) {
+                for (var ch : m.getConnectionHistory()) {
+                    // devices which have not been detached are those which are attached now
+                    if (ch.getDetachTime() == null) {
+                        entries.add(String.format("attached:%d:%s", m.getMachineId(), ch.getName()));
+                    }
+                }
+            }
+        }
+
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            for (var entry : entries) {
+                digest.update(entry.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+
+            var sb = new StringBuilder();
+            for (var b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            // every Java platform is required to support SHA-256
+            throw new LiqidException("Cannot create inventory fingerprint", ex);
+        }
+    }
+
+    /**
+     * Reads a snapshot file, producing the inventory it describes - provided the snapshot is still usable.
+     * @param fileName name of the snapshot file
+     * @param address address of the Liqid Director which we are working with
+     * @param fingerprint fingerprint freshly taken from that director (see createFingerprint())
+     * @param maxAgeInSeconds snapshots older than this are not used
+     * @return the LiqidInventory if the snapshot exists and is usable, else null
+     * @throws IOException if the file exists but cannot be read
+     */
+    public static LiqidInventory read(
+        final String fileName,
+        final String address,
+        final String fingerprint,
+        final int maxAgeInSeconds
+    ) throws IOException {
+        var content = readContent(fileName);
+        if (content == null) {
+            return null;
+        }
+
+        var age = System.currentTimeMillis() - content.timestamp;
+        if (!Objects.equals(content.address, address)
+            || !Objects.equals(content.fingerprint, fingerprint)
+            || (age < 0)
+            || (age > maxAgeInSeconds * 1000L)) {
+            return null;
+        }
+
+        return createInventory(content);
+    }
+
+    /**
+     * Reads a snapshot file regardless of where it came from or how old it is - for offline use, where the
+     * snapshot is not checked against a Liqid Director.
+     * @param fileName name of the snapshot file
+     * @return the LiqidInventory if the snapshot exists and is of the current format, else null
+     * @throws IOException if the file exists but cannot be read
+     */
+    public static LiqidInventory read(
+        final String fileName
+    ) throws IOException {
+        var content = readContent(fileName);
+        return (content == null) ? null : createInventory(content);
+    }
+
+    // reads the content of a snapshot file - null if there is no such file, or it is of some other format
+    private static Content readContent(
+        final String fileName
+    ) throws IOException {
+        var file = new File(fileName);
+        if (!file.exists()) {
+            return null;
+        }
+
+        Content content;
+        try (var stream = new GZIPInputStream(new FileInputStream(file))) {
+            content = MAPPER.readValue(stream, Content.class);
+        }
+
+        return (content.version == FORMAT_VERSION) ? content : null;
+    }
+
+    private static LiqidInventory createInventory(
+        final Content content
+    ) {
+        var inv = new LiqidInventory();
+        for (var g : content.groups) {
+            inv.notifyGroupCreated(g);
+        }
+        for (var m : content.machines) {
+            inv.notifyMachineCreated(m);
+        }
+        for (var de : content.devices) {
+            inv.notifyDeviceCreated(de.status, de.info);
+            inv.restoreDeviceAttachment(de.status.getDeviceId(), de.groupId, de.machineId);
+        }
+
+        return inv;
+    }
+
+    /**
+     * Writes a snapshot of the given inventory
+     * @param fileName name of the snapshot file
+     * @param address address of the Liqid Director from which the inventory was loaded
+     * @param fingerprint fingerprint taken from that director no later than the inventory was loaded
+     * @param inventory the inventory to be written
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(
+        final String fileName,
+        final String address,
+        final String fingerprint,
+        final LiqidInventory inventory
+    ) throws IOException {
+        var content = new Content();
+        content.version = FORMAT_VERSION;
+        content.address = address;
+        content.timestamp = System.currentTimeMillis();
+        content.fingerprint = fingerprint;
+        content.groups.addAll(inventory.getGroups());
+        content.machines.addAll(inventory.getMachines());
+        for (var di : inventory.getDeviceItems()) {
+            var de = new DeviceEntry();
+            de.status = di.getDeviceStatus();
+            de.info = di.getDeviceInfo();
+            de.groupId = di.getGroupId();
+            de.machineId = di.getMachineId();
+            content.devices.add(de);
+        }
+
+        // write to a temporary file and move it into place, so that a reader never sees a partial snapshot
+        var file = new File(fileName);
+        var tempFile = new File(fileName + ".tmp");
+        try (var stream = new GZIPOutputStream(new FileOutputStream(tempFile))) {
+            MAPPER.writeValue(stream, content);
+        }
+
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Cannot replace inventory snapshot " + fileName);
+        }
+    }
+
+    /**
+     * Removes a snapshot file, if it exists
+     * @param fileName name of the snapshot file
+     */
+    public static void discard(
+        final String fileName
+    ) {
+        new File(fileName).delete();
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import com.liqid.sdk.LiqidException;
+import com.liqid.sdk.LiqidClient;
+
+/**
+ * Produces ready-to-use LiqidClient objects for the same Liqid Cluster.
+ * LiqidClient keeps per-request state (response codes, retry counts, credentials, and so on) without
+ * synchronization, so a client must not be shared by threads - each thread which talks to the Liqid Director
+ * at the same time as another obtains its own client from here (see PerThreadLiqidClients), and releases it afterward.
+ */
+@FunctionalInterface
+public interface LiqidClientFactory {
+
+    LiqidClient createLiqidClient() throws LiqidException;
+
+    /**
+     * Disposes of a client which this factory produced, once it is no longer needed - by default, logging it out
+     */
+    default void releaseLiqidClient(
+        final LiqidClient client
+    ) throws LiqidException {
+        if (client.isLoggedIn()) {
+            client.logout();
+        }
+    }
+}
@@ -11,14 +11,24 @@ import com.liqid.sdk.Group;
 import com.liqid.sdk.LiqidClient;
 import com.liqid.sdk.LiqidException;
 import com.liqid.sdk.Machine;
+import com.liqid.sdk.PreDevice;
 
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -26,16 +36,47 @@ import java.util.stream.Collectors;
  * the various Liqid resources can be polled for whatever purposes are necessary.
  * Be aware that this will go out of date, potentially in drastic ways, when other code makes changes
  * to the Liqid Configuration. Use the notify* methods to stay updated, else reload after bulk changes.
+ * Changes made through the notify* methods are published to any registered InventoryListener objects.
  */
 public class LiqidInventory {
 
     // Inventory and quick look-up tables
-    private final Map<Integer, DeviceItem> _deviceItems = new HashMap<>();
-    private final Map<String, Integer> _deviceIdsByName = new HashMap<>();
-    private final Map<Integer, Group> _groups = new HashMap<>();
-    private final Map<String, Integer> _groupIdsByName = new HashMap<>();
-    private final Map<Integer, Machine> _machines = new HashMap<>();
-    private final Map<String, Integer> _machineIdsByName = new HashMap<>();
+    private Map<Integer, DeviceItem> _deviceItems = new HashMap<>();
+    private Map<String, Integer> _deviceIdsByName = new HashMap<>();
+    private Map<Integer, Group> _groups = new HashMap<>();
+    private Map<String, Integer> _groupIdsByName = new HashMap<>();
+    private Map<Integer, Machine> _machines = new HashMap<>();
+    private Map<String, Integer> _machineIdsByName = new HashMap<>();
+
+    // Secondary indexes - these are maintained by the notify* methods (and by nothing else),
+    // so that relationship queries are proportional to the size of the result rather than the inventory.
+    private Map<Integer, IdentifierSet> _deviceIdsByGroup = new HashMap<>();
+    private Map<Integer, IdentifierSet> _deviceIdsByMachine = new HashMap<>();
+    private Map<GeneralType, IdentifierSet> _deviceIdsByType = new HashMap<>();
+    private Map<String, IdentifierSet> _deviceIdsByVendor = new HashMap<>();
+    private Map<String, IdentifierSet> _deviceIdsByVendorModel = new HashMap<>();
+    private Map<Integer, IdentifierSet> _machineIdsByGroup = new HashMap<>();
+
+    // Devices accepted by each ResourceModel, computed on demand (see getDeviceIdsAcceptedBy()).
+    // Attachment changes do not affect acceptance, so this is discarded only when devices are created or removed.
+    // This is filled in by queries, so it is a concurrent map (it may be shared with a ConcurrentLiqidInventory).
+    private Map<ResourceModel, IdentifierSet> _acceptedDeviceIds = new ConcurrentHashMap<>();
+
+    // Copy-on-write bookkeeping. copy() shares all of the above tables with the new inventory, and whichever
+    // inventory is next to be updated takes its own (shallow) copy of the tables first. DeviceItem objects are
+    // shared across copies as well; _ownedDeviceIds tracks the items which this inventory may update in place,
+    // and any other item is replaced by a copy of itself before it is updated.
+    private SharingCount _sharingCount = new SharingCount();
+    private IdentifierSet _ownedDeviceIds = new IdentifierSet();
+
+    // Subscribers to changes in this inventory - these are not carried over by copy()
+    private final List<InventoryListener> _listeners = new LinkedList<>();
+
+    // The number of inventories sharing the tables. A copy taken from a ConcurrentLiqidInventory may be updated
+    // on another thread while the concurrent inventory is copied again, so this is atomic.
+    private static class SharingCount {
+        private final AtomicInteger _count = new AtomicInteger(1);
+    }
 
     /**
      * Default constructor
@@ -44,7 +85,7 @@ public class LiqidInventory {
 
     /**
      * Creates a LiqidInventory object and populates it from the Liqid Cluster represented by the Liqid SDK
-     * LiqidClient object
+     * LiqidClient object. The SDK queries are issued one after another.
      * @param client LiqidClient object
      * @return The newly-created LiqidInventory object
      * @throws LiqidException If anything goes wrong while communicating with the Liqid Cluster
@@ -52,8 +93,6 @@ public class LiqidInventory {
     public static LiqidInventory createLiqidInventory(
         final LiqidClient client
     ) throws LiqidException {
-        var inv = new LiqidInventory();
-
         // get all the DeviceStatus objects
         var devStats = client.getAllDevicesStatus();
 
@@ -65,34 +104,219 @@ public class LiqidInventory {
         devInfos.addAll(client.getMemoryDeviceInfo());
         devInfos.addAll(client.getNetworkDeviceInfo());
         devInfos.addAll(client.getStorageDeviceInfo());
+
+        // get the groups and machines, along with the devices attached to each
+        var groups = client.getGroups();
+        var groupDevices = new LinkedList<Collection<PreDevice>>();
+        for (var g : groups) {
+            groupDevices.add(client.getPreDevices(null, g.getGroupId(), null));
+        }
+
+        var machines = client.getMachines();
+        var machineDevices = new LinkedList<Collection<PreDevice>>();
+        for (var m : machines) {
+            machineDevices.add(client.getPreDevices(null, m.getGroupId(), m.getMachineId()));
+        }
+
+        return populate(devStats, devInfos, groups, groupDevices, machines, machineDevices);
+    }
+
+    /**
+     * Creates a LiqidInventory object and populates it from the Liqid Cluster for which the given factory
+     * produces LiqidClient objects. The SDK queries are fanned out across at most maxConcurrency threads -
+     * first the device, group, and machine lists, then the per-group and per-machine device queries.
+     * Each thread uses its own client, as a LiqidClient is not safe to share between threads;
+     * every client is released once the load is done.
+     * Results are merged in the same order as the serial load, so the content is identical either way.
+     * @param clientFactory produces a client for each thread
+     * @param maxConcurrency maximum number of SDK requests in flight at any one time;
+     *                       a value of one (or less) produces a serial load with a single client.
+     * @return The newly-created LiqidInventory object
+     * @throws LiqidException If anything goes wrong while communicating with the Liqid Cluster
+     */
+    public static LiqidInventory createLiqidInventory(
+        final LiqidClientFactory clientFactory,
+        final int maxConcurrency
+    ) throws LiqidException {
+        var clients = new PerThreadLiqidClients(clientFactory);
+        if (maxConcurrency <= 1) {
+            try {
+                return createLiqidInventory(clients.getLiqidClient());
+            } finally {
+                clients.close();
+            }
+        }
+
+        var executor = Executors.newFixedThreadPool(maxConcurrency);
+        try {
+            var devStatsTask = submit(executor, clients, LiqidClient::getAllDevicesStatus);
+            var devInfoTasks = new LinkedList<Future<? extends Collection<? extends DeviceInfo>>>();
+            devInfoTasks.add(submit(executor, clients, LiqidClient::getComputeDeviceInfo));
+            devInfoTasks.add(submit(executor, clients, LiqidClient::getFPGADeviceInfo));
+            devInfoTasks.add(submit(executor, clients, LiqidClient::getGPUDeviceInfo));
+            devInfoTasks.add(submit(executor, clients, LiqidClient::getMemoryDeviceInfo));
+            devInfoTasks.add(submit(executor, clients, LiqidClient::getNetworkDeviceInfo));
+            devInfoTasks.add(submit(executor, clients, LiqidClient::getStorageDeviceInfo));
+            var groupsTask = submit(executor, clients, LiqidClient::getGroups);
+            var machinesTask = submit(executor, clients, LiqidClient::getMachines);
+
+            // the relationship queries need the group and machine identifiers, so they wait on those lists
+            var groups = awaitResult(groupsTask);
+            var groupDeviceTasks = new LinkedList<Future<LinkedList<PreDevice>>>();
+            for (var g : groups) {
+                groupDeviceTasks.add(submit(executor, clients,
+                                            client -> client.getPreDevices(null, g.getGroupId(), null)));
+            }
+
+            var machines = awaitResult(machinesTask);
+            var machineDeviceTasks = new LinkedList<Future<LinkedList<PreDevice>>>();
+            for (var m : machines) {
+                machineDeviceTasks.add(submit(executor, clients,
+                                              client -> client.getPreDevices(null, m.getGroupId(), m.getMachineId())));
+            }
+
+            var devStats = awaitResult(devStatsTask);
+            var devInfos = new LinkedList<DeviceInfo>();
+            for (var task : devInfoTasks) {
+                devInfos.addAll(awaitResult(task));
+            }
+
+            var groupDevices = new LinkedList<Collection<PreDevice>>();
+            for (var task : groupDeviceTasks) {
+                groupDevices.add(awaitResult(task));
+            }
+
+            var machineDevices = new LinkedList<Collection<PreDevice>>();
+            for (var task : machineDeviceTasks) {
+                machineDevices.add(awaitResult(task));
+            }
+
+            return populate(devStats, devInfos, groups, groupDevices, machines, machineDevices);
+        } finally {
+            shutdown(executor, clients);
+        }
+    }
+
+    /**
+     * Retrieves the devices which are attached to each of the given machines, as a full load does -
+     * fanned out across at most maxConcurrency threads, each with a client of its own from the given factory.
+     * @param clientFactory produces a client for each thread
+     * @param maxConcurrency maximum number of SDK requests in flight at any one time
+     * @param machines the machines of interest
+     * @return the devices of each machine, keyed by machine identifier
+     * @throws LiqidException If anything goes wrong while communicating with the Liqid Cluster
+     */
+    public static Map<Integer, Collection<PreDevice>> getMachineDevices(
+        final LiqidClientFactory clientFactory,
+        final int maxConcurrency,
+        final Collection<Machine> machines
+    ) throws LiqidException {
+        var clients = new PerThreadLiqidClients(clientFactory);
+        var executor = Executors.newFixedThreadPool(Math.max(1, maxConcurrency));
+        try {
+            var tasks = new LinkedHashMap<Integer, Future<LinkedList<PreDevice>>>();
+            for (var m : machines) {
+                tasks.put(m.getMachineId(), submit(executor, clients,
+                                                   client -> client.getPreDevices(null, m.getGroupId(), m.getMachineId())));
+            }
+
+            var result = new HashMap<Integer, Collection<PreDevice>>();
+            for (var entry : tasks.entrySet()) {
+                result.put(entry.getKey(), awaitResult(entry.getValue()));
+            }
+            return result;
+        } finally {
+            shutdown(executor, clients);
+        }
+    }
+
+    // Stops the executor, and releases the clients once no thread is using them
+    private static void shutdown(
+        final ExecutorService executor,
+        final PerThreadLiqidClients clients
+    ) {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        clients.close();
+    }
+
+    // An SDK query, to be made with a particular client
+    @FunctionalInterface
+    private interface ClientQuery<T> {
+        T query(final LiqidClient client) throws LiqidException;
+    }
+
+    /**
+     * Submits an SDK query to an executor, to be made with the client belonging to whichever thread runs it
+     * (the client is created the first time the thread needs one).
+     */
+    private static <T> Future<T> submit(
+        final ExecutorService executor,
+        final PerThreadLiqidClients clients,
+        final ClientQuery<T> query
+    ) {
+        return executor.submit(() -> query.query(clients.getLiqidClient()));
+    }
+
+    /**
+     * Waits for the result of an SDK query which was submitted to an executor,
+     * unwrapping any LiqidException thrown by the query itself.
+     */
+    private static <T> T awaitResult(
+        final Future<T> future
+    ) throws LiqidException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new LiqidException("Interrupted while loading the Liqid inventory", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof LiqidException lex) {
+                throw lex;
+            }
+            throw new LiqidException("Failed while loading the Liqid inventory", ex.getCause());
+        }
+    }
+
+    /**
+     * Builds an inventory from the raw results of the SDK queries.
+     * groupDevices and machineDevices are parallel to groups and machines respectively.
+     */
+    private static LiqidInventory populate(
+        final Collection<DeviceStatus> devStats,
+        final Collection<DeviceInfo> devInfos,
+        final Collection<Group> groups,
+        final Collection<Collection<PreDevice>> groupDevices,
+        final Collection<Machine> machines,
+        final Collection<Collection<PreDevice>> machineDevices
+    ) {
+        var inv = new LiqidInventory();
         var infoMap = devInfos.stream()
                               .collect(Collectors.toMap(DeviceInfo::getDeviceIdentifier, di -> di, (a, b) -> b, HashMap::new));
 
-        // now build the inventory
         for (var ds : devStats) {
-            inv._deviceItems.put(ds.getDeviceId(), new DeviceItem(ds, infoMap.get(ds.getDeviceId())));
-            inv._deviceIdsByName.put(ds.getName(), ds.getDeviceId());
+            inv.notifyDeviceCreated(ds, infoMap.get(ds.getDeviceId()));
         }
 
-        var groups = client.getGroups();
+        var groupDevIter = groupDevices.iterator();
         for (var g : groups) {
-            inv._groups.put(g.getGroupId(), g);
-            inv._groupIdsByName.put(g.getGroupName(), g.getGroupId());
-
-            for (var rel : client.getPreDevices(null, g.getGroupId(), null)) {
+            inv.notifyGroupCreated(g);
+            for (var rel : groupDevIter.next()) {
                 var devId = inv._deviceIdsByName.get(rel.getDeviceName());
-                inv._deviceItems.get(devId).setGroupId(g.getGroupId());
+                inv.notifyDeviceAssignedToGroup(devId, g.getGroupId());
             }
         }
 
-        var machines = client.getMachines();
+        var machineDevIter = machineDevices.iterator();
         for (var m : machines) {
-            inv._machines.put(m.getMachineId(), m);
-            inv._machineIdsByName.put(m.getMachineName(), m.getMachineId());
-
-            for (var rel : client.getPreDevices(null, m.getGroupId(), m.getMachineId())) {
+            inv.notifyMachineCreated(m);
+            for (var rel : machineDevIter.next()) {
                 var devId = inv._deviceIdsByName.get(rel.getDeviceName());
-                inv._deviceItems.get(devId).setMachineId(m.getMachineId());
+                inv.restoreDeviceAttachment(devId, inv._deviceItems.get(devId).getGroupId(), m.getMachineId());
             }
         }
 
@@ -100,22 +324,367 @@ public class LiqidInventory {
     }
 
     /**
-     * Creates a shallow-ish copy of this object.
-     * Liqid SDK objects don't need to be copied; the reference can be moved over intact.
-     * However, DeviceItem objects *do* need to be copied at their first level.
+     * Registers a listener to be told of every change to this inventory made via the notify* methods.
+     * Listeners are not inherited by copies of this inventory.
+     */
+    public LiqidInventory addListener(
+        final InventoryListener listener
+    ) {
+        _listeners.add(listener);
+        return this;
+    }
+
+    public LiqidInventory removeListener(
+        final InventoryListener listener
+    ) {
+        _listeners.remove(listener);
+        return this;
+    }
+
+    private void fireEvent(
+        final InventoryEvent event
+    ) {
+        if (!_listeners.isEmpty()) {
+            // iterate over a copy, so that a listener may unsubscribe itself
+            for (var listener : new LinkedList<>(_listeners)) {
+                listener.inventoryChanged(this, event);
+            }
+        }
+    }
+
+    /**
+     * Creates a copy of this object which shares its content with this object until either one is updated.
+     * This is a constant-time operation, so it is cheap to fork an inventory for what-if planning.
+     * The first update to either inventory afterward takes a shallow copy of the look-up tables,
+     * and only those DeviceItem objects which are actually updated are copied.
+     * DeviceItem objects retrieved from an inventory before such an update are not affected by it,
+     * so they should be retrieved again afterward.
      * @return LiqidInventory object which is a copy of this object
      */
     public LiqidInventory copy() {
-        var newInv = new LiqidInventory();
-        _deviceItems.forEach((key, value) -> newInv._deviceItems.put(key, value.copy()));
-        newInv._deviceIdsByName.putAll(_deviceIdsByName);
-        newInv._groups.putAll(_groups);
-        newInv._groupIdsByName.putAll(_groupIdsByName);
-        newInv._machines.putAll(_machines);
-        newInv._machineIdsByName.putAll(_machineIdsByName);
+        return shareContentWith(new LiqidInventory());
+    }
+
+    // Makes the given (new, empty) inventory share the content of this one - see copy()
+    LiqidInventory shareContentWith(
+        final LiqidInventory newInv
+    ) {
+        newInv._deviceItems = _deviceItems;
+        newInv._deviceIdsByName = _deviceIdsByName;
+        newInv._groups = _groups;
+        newInv._groupIdsByName = _groupIdsByName;
+        newInv._machines = _machines;
+        newInv._machineIdsByName = _machineIdsByName;
+        newInv._deviceIdsByGroup = _deviceIdsByGroup;
+        newInv._deviceIdsByMachine = _deviceIdsByMachine;
+        newInv._deviceIdsByType = _deviceIdsByType;
+        newInv._deviceIdsByVendor = _deviceIdsByVendor;
+        newInv._deviceIdsByVendorModel = _deviceIdsByVendorModel;
+        newInv._machineIdsByGroup = _machineIdsByGroup;
+        newInv._acceptedDeviceIds = _acceptedDeviceIds;
+
+        _sharingCount._count.incrementAndGet();
+        newInv._sharingCount = _sharingCount;
+
+        // Every DeviceItem is now visible to both inventories, so neither one may update any of them in place.
+        _ownedDeviceIds = new IdentifierSet();
         return newInv;
     }
 
+    private static <K> Map<K, IdentifierSet> copyIndex(
+        final Map<K, IdentifierSet> source
+    ) {
+        var result = new HashMap<K, IdentifierSet>();
+        source.forEach((key, value) -> result.put(key, new IdentifierSet(value)));
+        return result;
+    }
+
+    // Invoked before any update - if the tables are shared with another inventory, we take our own copy of them.
+    private void prepareForUpdate() {
+        if (releaseSharedTables()) {
+            _sharingCount = new SharingCount();
+
+            _deviceItems = new HashMap<>(_deviceItems);
+            _deviceIdsByName = new HashMap<>(_deviceIdsByName);
+            _groups = new HashMap<>(_groups);
+            _groupIdsByName = new HashMap<>(_groupIdsByName);
+            _machines = new HashMap<>(_machines);
+            _machineIdsByName = new HashMap<>(_machineIdsByName);
+            _deviceIdsByGroup = copyIndex(_deviceIdsByGroup);
+            _deviceIdsByMachine = copyIndex(_deviceIdsByMachine);
+            _deviceIdsByType = copyIndex(_deviceIdsByType);
+            _deviceIdsByVendor = copyIndex(_deviceIdsByVendor);
+            _deviceIdsByVendorModel = copyIndex(_deviceIdsByVendorModel);
+            _machineIdsByGroup = copyIndex(_machineIdsByGroup);
+        }
+    }
+
+    // The number of inventories sharing our tables (including this one) - for testing
+    int getSharingCount() { return _sharingCount._count.get(); }
+
+    // Stops sharing the tables, if they are shared - returns true if so (in which case, we must copy them).
+    // If the count is one, no other inventory holds it, so nothing can raise it while we look.
+    private boolean releaseSharedTables() {
+        var count = _sharingCount._count;
+        while (true) {
+            var value = count.get();
+            if (value <= 1) {
+                return false;
+            } else if (count.compareAndSet(value, value - 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Indicates whether DeviceItem objects which are not shared with a copy may be updated in place.
+     * If not, every update replaces the DeviceItem with an updated copy, so that an item once retrieved never changes.
+     */
+    protected boolean updatesDeviceItemsInPlace() { return true; }
+
+    // Retrieves a DeviceItem which may be updated in place, copying it first if it might be shared.
+    private DeviceItem getUpdatableDeviceItem(
+        final Integer deviceId
+    ) {
+        var item = _deviceItems.get(deviceId);
+        if (!updatesDeviceItemsInPlace() || !_ownedDeviceIds.containsId(deviceId)) {
+            item = item.copy();
+            _deviceItems.put(deviceId, item);
+            _ownedDeviceIds.addId(deviceId);
+        }
+        return item;
+    }
+
+    private static <K> void addToIndex(
+        final Map<K, IdentifierSet> index,
+        final K key,
+        final int identifier
+    ) {
+        if (key != null) {
+            index.computeIfAbsent(key, k -> new IdentifierSet()).addId(identifier);
+        }
+    }
+
+    private static <K> void removeFromIndex(
+        final Map<K, IdentifierSet> index,
+        final K key,
+        final int identifier
+    ) {
+        if (key != null) {
+            var ids = index.get(key);
+            if (ids != null) {
+                ids.removeId(identifier);
+                if (ids.isEmpty()) {
+                    index.remove(key);
+                }
+            }
+        }
+    }
+
+    private static String createVendorModelKey(
+        final String vendor,
+        final String model
+    ) {
+        return vendor + ":" + model;
+    }
+
+    // Adds (or removes) a device to (or from) the type and vendor/model indexes
+    private void indexDevice(
+        final DeviceItem item,
+        final boolean add
+    ) {
+        var devId = item.getDeviceId();
+        var info = item.getDeviceInfo();
+        var vendor = info == null ? null : info.getVendor();
+        var vmKey = vendor == null ? null : createVendorModelKey(vendor, info.getModel());
+        if (add) {
+            addToIndex(_deviceIdsByType, item.getGeneralType(), devId);
+            addToIndex(_deviceIdsByVendor, vendor, devId);
+            addToIndex(_deviceIdsByVendorModel, vmKey, devId);
+        } else {
+            removeFromIndex(_deviceIdsByType, item.getGeneralType(), devId);
+            removeFromIndex(_deviceIdsByVendor, vendor, devId);
+            removeFromIndex(_deviceIdsByVendorModel, vmKey, devId);
+        }
+    }
+
+    // Removes a device from the group and machine indexes, without updating the device itself
+    private void unindexDeviceAttachment(
+        final DeviceItem item
+    ) {
+        removeFromIndex(_deviceIdsByGroup, item.getGroupId(), item.getDeviceId());
+        removeFromIndex(_deviceIdsByMachine, item.getMachineId(), item.getDeviceId());
+    }
+
+    // Updates the group and machine attachment of a device, along with the corresponding indexes
+    private void setDeviceAttachment(
+        final Integer deviceId,
+        final Integer groupId,
+        final Integer machineId
+    ) {
+        var item = getUpdatableDeviceItem(deviceId);
+        var previousGroupId = item.getGroupId();
+        var previousMachineId = item.getMachineId();
+        unindexDeviceAttachment(item);
+        item.setGroupId(groupId);
+        item.setMachineId(machineId);
+        addToIndex(_deviceIdsByGroup, groupId, deviceId);
+        addToIndex(_deviceIdsByMachine, machineId, deviceId);
+
+        if (!Objects.equals(previousGroupId, groupId) || !Objects.equals(previousMachineId, machineId)) {
+            fireEvent(InventoryEvent.deviceMoved(deviceId, previousGroupId, previousMachineId, groupId, machineId));
+        }
+    }
+
+    /**
+     * Sets the group and machine attachment of a device exactly as given - for use while populating an inventory
+     * from data which came from the Liqid Cluster (directly, or by way of a snapshot).
+     */
+    void restoreDeviceAttachment(
+        final Integer deviceId,
+        final Integer groupId,
+        final Integer machineId
+    ) {
+        prepareForUpdate();
+        setDeviceAttachment(deviceId, groupId, machineId);
+    }
+
+    // Converts a set of device identifiers from one of the indexes, into a new collection of DeviceItem objects
+    private Collection<DeviceItem> getDeviceItemsFromIds(
+        final IdentifierSet deviceIds
+    ) {
+        var result = new HashSet<DeviceItem>();
+        if (deviceIds != null) {
+            deviceIds.forEachId(devId -> result.add(_deviceItems.get(devId)));
+        }
+        return result;
+    }
+
+    // Replaces (rather than clears) the acceptance cache, since it may be shared with copies of this inventory
+    private void discardAcceptedDeviceIds() {
+        _acceptedDeviceIds = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Retrieves the identifiers of all devices accepted by the given ResourceModel.
+     * The result is computed once per model (narrowed by the type and vendor/model indexes before
+     * ResourceModel.accepts() is consulted) and then kept until devices are created or removed.
+     * @param resourceModel the resource model of interest
+     * @return new set of device identifiers
+     */
+    public IdentifierSet getDeviceIdsAcceptedBy(
+        final ResourceModel resourceModel
+    ) {
+        return new IdentifierSet(getIndexedDeviceIdsAcceptedBy(resourceModel));
+    }
+
+    //  ----------------------------------------------------------------------------------------------------------------
+    //  Index access for InventoryQuery - these return our own sets (which must not be updated) where possible
+
+    private static final IdentifierSet NO_IDS = new IdentifierSet();
+
+    /**
+     * Creates a query which is evaluated against this inventory
+     */
+    public InventoryQuery query() {
+        return new InventoryQuery(this);
+    }
+
+    IdentifierSet evaluateQuery(
+        final InventoryQuery query
+    ) {
+        return query.evaluate(this);
+    }
+
+    IdentifierSet getAllDeviceIds() {
+        var result = new IdentifierSet();
+        _deviceItems.keySet().forEach(result::addId);
+        return result;
+    }
+
+    IdentifierSet getIndexedDeviceIdsAcceptedBy(
+        final ResourceModel resourceModel
+    ) {
+        var result = _acceptedDeviceIds.get(resourceModel);
+        if (result == null) {
+            var candidates = _deviceIdsByType.get(resourceModel.getGeneralType());
+            var vendor = resourceModel.getVendorName();
+            var model = resourceModel.getModelName();
+            IdentifierSet narrowing = null;
+            if ((vendor != null) && (model != null)) {
+                narrowing = _deviceIdsByVendorModel.get(createVendorModelKey(vendor, model));
+            } else if (vendor != null) {
+                narrowing = _deviceIdsByVendor.get(vendor);
+            }
+
+            result = new IdentifierSet();
+            if ((candidates != null) && ((narrowing != null) || (vendor == null))) {
+                for (int cx = 0; cx < candidates.size(); ++cx) {
+                    var devId = candidates.getId(cx);
+                    if (((narrowing == null) || narrowing.containsId(devId))
+                        && resourceModel.accepts(_deviceItems.get(devId).getDeviceInfo())) {
+                        result.addId(devId);
+                    }
+                }
+            }
+
+            _acceptedDeviceIds.put(ResourceModel.intern(resourceModel), result);
+        }
+
+        return result;
+    }
+
+    IdentifierSet getIndexedDeviceIdsOfType(
+        final GeneralType generalType
+    ) {
+        return _deviceIdsByType.getOrDefault(generalType, NO_IDS);
+    }
+
+    IdentifierSet getIndexedDeviceIdsForVendor(
+        final String vendor
+    ) {
+        return _deviceIdsByVendor.getOrDefault(vendor, NO_IDS);
+    }
+
+    IdentifierSet getIndexedDeviceIdsForVendor(
+        final String vendor,
+        final String model
+    ) {
+        return _deviceIdsByVendorModel.getOrDefault(createVendorModelKey(vendor, model), NO_IDS);
+    }
+
+    // A null groupId selects the devices in no group
+    IdentifierSet getIndexedDeviceIdsForGroup(
+        final Integer groupId
+    ) {
+        if (groupId == null) {
+            var result = getAllDeviceIds();
+            _deviceIdsByGroup.values().forEach(result::removeAll);
+            return result;
+        }
+        return _deviceIdsByGroup.getOrDefault(groupId, NO_IDS);
+    }
+
+    // A null machineId selects the devices in no machine
+    IdentifierSet getIndexedDeviceIdsForMachine(
+        final Integer machineId
+    ) {
+        if (machineId == null) {
+            var result = getAllDeviceIds();
+            result.removeAll(getIndexedDeviceIdsInAnyMachine());
+            return result;
+        }
+        return _deviceIdsByMachine.getOrDefault(machineId, NO_IDS);
+    }
+
+    IdentifierSet getIndexedDeviceIdsInAnyMachine() {
+        var result = new IdentifierSet();
+        _deviceIdsByMachine.values().forEach(result::addAll);
+        return result;
+    }
+
+    //  ----------------------------------------------------------------------------------------------------------------
+
     /**
      * Finds the first compute device resource assigned to a particular machine.
      * There should actually only be one.
@@ -126,10 +695,16 @@ public class LiqidInventory {
     public DeviceItem getComputeDeviceItemForMachine(
         final Integer machineId
     ) {
-        return getDeviceItemsForMachine(machineId).stream()
-                                                  .filter(di -> di.getGeneralType() == GeneralType.CPU)
-                                                  .findFirst()
-                                                  .orElse(null);
+        var devIds = _deviceIdsByMachine.get(machineId);
+        if (devIds != null) {
+            for (int dx = 0; dx < devIds.size(); ++dx) {
+                var devItem = _deviceItems.get(devIds.getId(dx));
+                if (devItem.getGeneralType() == GeneralType.CPU) {
+                    return devItem;
+                }
+            }
+        }
+        return null;
     }
 
     /**
@@ -137,12 +712,12 @@ public class LiqidInventory {
      * @param deviceItems collection of DeviceItem objects
      * @return collection of device identifiers
      */
-    public static Set<Integer> getDeviceIdsFromItems(
+    public static IdentifierSet getDeviceIdsFromItems(
         final Collection<DeviceItem> deviceItems
     ) {
-        return deviceItems.stream()
-                          .map(DeviceItem::getDeviceId)
-                          .collect(Collectors.toCollection(HashSet::new));
+        var result = new IdentifierSet();
+        deviceItems.forEach(item -> result.addId(item.getDeviceId()));
+        return result;
     }
 
     /**
@@ -184,10 +759,7 @@ public class LiqidInventory {
     public Collection<DeviceItem> getDeviceItemsForGroup(
         final Integer groupId
     ) {
-        return _deviceItems.values()
-                           .stream()
-                           .filter(d -> Objects.equals(d.getGroupId(), groupId))
-                           .collect(Collectors.toCollection(HashSet::new));
+        return getDeviceItemsFromIds(_deviceIdsByGroup.get(groupId));
     }
 
     /**
@@ -200,10 +772,7 @@ public class LiqidInventory {
         final String groupName
     ) {
         var gid = _groupIdsByName.get(groupName);
-        return _deviceItems.values()
-                           .stream()
-                           .filter(d -> Objects.equals(d.getGroupId(), gid))
-                           .collect(Collectors.toCollection(HashSet::new));
+        return getDeviceItemsFromIds(_deviceIdsByGroup.get(gid));
     }
 
     /**
@@ -214,10 +783,7 @@ public class LiqidInventory {
     public Collection<DeviceItem> getDeviceItemsForMachine(
         final Integer machineId
     ) {
-        return _deviceItems.values()
-                           .stream()
-                           .filter(d -> Objects.equals(d.getMachineId(), machineId))
-                           .collect(Collectors.toCollection(HashSet::new));
+        return getDeviceItemsFromIds(_deviceIdsByMachine.get(machineId));
     }
 
     /**
@@ -228,11 +794,43 @@ public class LiqidInventory {
     public Collection<DeviceItem> getDeviceItemsForMachine(
         final String machineName
     ) {
-        var mid = _groupIdsByName.get(machineName);
-        return _deviceItems.values()
-                           .stream()
-                           .filter(d -> Objects.equals(d.getMachineId(), mid))
-                           .collect(Collectors.toCollection(HashSet::new));
+        var mid = _machineIdsByName.get(machineName);
+        return getDeviceItemsFromIds(_deviceIdsByMachine.get(mid));
+    }
+
+    /**
+     * Retrieves a collection of DeviceItem objects for all the devices of a particular general type.
+     * @param generalType general type of interest
+     * @return collection of DeviceItem objects
+     */
+    public Collection<DeviceItem> getDeviceItemsOfType(
+        final GeneralType generalType
+    ) {
+        return getDeviceItemsFromIds(_deviceIdsByType.get(generalType));
+    }
+
+    /**
+     * Retrieves a collection of DeviceItem objects for all the devices from a particular vendor.
+     * @param vendor vendor name
+     * @return collection of DeviceItem objects
+     */
+    public Collection<DeviceItem> getDeviceItemsForVendor(
+        final String vendor
+    ) {
+        return getDeviceItemsFromIds(_deviceIdsByVendor.get(vendor));
+    }
+
+    /**
+     * Retrieves a collection of DeviceItem objects for all the devices of a particular vendor and model.
+     * @param vendor vendor name
+     * @param model model name
+     * @return collection of DeviceItem objects
+     */
+    public Collection<DeviceItem> getDeviceItemsForVendor(
+        final String vendor,
+        final String model
+    ) {
+        return getDeviceItemsFromIds(_deviceIdsByVendorModel.get(createVendorModelKey(vendor, model)));
     }
 
     /**
@@ -408,10 +1006,12 @@ public class LiqidInventory {
     public Collection<Machine> getMachinesInGroup(
         final Integer groupId
     ) {
-        return _machines.values()
-                        .stream()
-                        .filter(m -> Objects.equals(m.getGroupId(), groupId))
-                        .collect(Collectors.toCollection(HashSet::new));
+        var result = new HashSet<Machine>();
+        var machineIds = _machineIdsByGroup.get(groupId);
+        if (machineIds != null) {
+            machineIds.forEachId(machineId -> result.add(_machines.get(machineId)));
+        }
+        return result;
     }
 
     /**
@@ -422,10 +1022,8 @@ public class LiqidInventory {
     public Collection<Integer> getMachineIdsInGroup(
         final Integer groupId
     ) {
-        return _machines.values()
-                        .stream()
-                        .filter(m -> Objects.equals(m.getGroupId(), groupId))
-                        .map(Machine::getMachineId).collect(Collectors.toCollection(HashSet::new));
+        var machineIds = _machineIdsByGroup.get(groupId);
+        return machineIds == null ? new IdentifierSet() : new IdentifierSet(machineIds);
     }
 
     /**
@@ -435,10 +1033,7 @@ public class LiqidInventory {
         final String vendor,
         final String model
     ) {
-        return _deviceItems.values()
-                           .stream()
-                           .anyMatch(di -> di.getDeviceInfo().getVendor().equals(vendor)
-                                           && di.getDeviceInfo().getModel().equals(model));
+        return _deviceIdsByVendorModel.containsKey(createVendorModelKey(vendor, model));
     }
 
     /**
@@ -447,7 +1042,7 @@ public class LiqidInventory {
     public boolean hasDevice(
         final String vendor
     ) {
-        return _deviceItems.values().stream().anyMatch(di -> di.getDeviceInfo().getVendor().equals(vendor));
+        return _deviceIdsByVendor.containsKey(vendor);
     }
 
     /**
@@ -458,8 +1053,8 @@ public class LiqidInventory {
         final Integer deviceId,
         final Integer groupId
     ) {
-        _deviceItems.get(deviceId).setGroupId(groupId);
-        _deviceItems.get(deviceId).setMachineId(null);
+        prepareForUpdate();
+        setDeviceAttachment(deviceId, groupId, null);
     }
 
     /**
@@ -470,9 +1065,9 @@ public class LiqidInventory {
         final Integer deviceId,
         final Integer machineId
     ) {
+        prepareForUpdate();
         var groupId = _machines.get(machineId).getGroupId();
-        _deviceItems.get(deviceId).setGroupId(groupId);
-        _deviceItems.get(deviceId).setMachineId(machineId);
+        setDeviceAttachment(deviceId, groupId, machineId);
     }
 
     /**
@@ -483,9 +1078,20 @@ public class LiqidInventory {
         final DeviceStatus status,
         final DeviceInfo info
     ) {
+        prepareForUpdate();
+        var existing = _deviceItems.get(status.getDeviceId());
+        if (existing != null) {
+            unindexDeviceAttachment(existing);
+            indexDevice(existing, false);
+        }
+
+        discardAcceptedDeviceIds();
         var item = new DeviceItem(status, info);
         _deviceItems.put(status.getDeviceId(), item);
+        _ownedDeviceIds.addId(status.getDeviceId());
         _deviceIdsByName.put(status.getName(), status.getDeviceId());
+        indexDevice(item, true);
+        fireEvent(InventoryEvent.deviceCreated(status.getDeviceId()));
     }
 
     /**
@@ -496,9 +1102,15 @@ public class LiqidInventory {
         final Integer deviceId
     ) {
         if (_deviceItems.containsKey(deviceId)) {
+            prepareForUpdate();
             var di = _deviceItems.get(deviceId);
+            unindexDeviceAttachment(di);
+            indexDevice(di, false);
             _deviceIdsByName.remove(di.getDeviceStatus().getName());
             _deviceItems.remove(deviceId);
+            _ownedDeviceIds.removeId(deviceId);
+            discardAcceptedDeviceIds();
+            fireEvent(InventoryEvent.deviceRemoved(deviceId));
         }
     }
 
@@ -509,8 +1121,8 @@ public class LiqidInventory {
     public void notifyDeviceRemovedFromGroup(
         final Integer deviceId
     ) {
-        _deviceItems.get(deviceId).setGroupId(null);
-        _deviceItems.get(deviceId).setMachineId(null);
+        prepareForUpdate();
+        setDeviceAttachment(deviceId, null, null);
     }
 
     /**
@@ -520,7 +1132,8 @@ public class LiqidInventory {
     public void notifyDeviceRemovedFromMachine(
         final Integer deviceId
     ) {
-        _deviceItems.get(deviceId).setMachineId(null);
+        prepareForUpdate();
+        setDeviceAttachment(deviceId, _deviceItems.get(deviceId).getGroupId(), null);
     }
 
     /**
@@ -530,8 +1143,10 @@ public class LiqidInventory {
     public void notifyGroupCreated(
         final Group group
     ) {
+        prepareForUpdate();
         _groups.put(group.getGroupId(), group);
         _groupIdsByName.put(group.getGroupName(), group.getGroupId());
+        fireEvent(InventoryEvent.groupCreated(group.getGroupId()));
     }
 
     /**
@@ -542,9 +1157,11 @@ public class LiqidInventory {
         final Integer groupId
     ) {
         if (_groups.containsKey(groupId)) {
+            prepareForUpdate();
             var g = _groups.get(groupId);
             _groupIdsByName.remove(g.getGroupName());
             _groups.remove(groupId);
+            fireEvent(InventoryEvent.groupRemoved(groupId));
         }
     }
 
@@ -555,8 +1172,12 @@ public class LiqidInventory {
     public void notifyMachineCreated(
         final Machine machine
     ) {
+        prepareForUpdate();
+        notifyMachineRemoved(machine.getMachineId());
         _machines.put(machine.getMachineId(), machine);
         _machineIdsByName.put(machine.getMachineName(), machine.getMachineId());
+        addToIndex(_machineIdsByGroup, machine.getGroupId(), machine.getMachineId());
+        fireEvent(InventoryEvent.machineCreated(machine.getMachineId(), machine.getGroupId()));
     }
 
     /**
@@ -567,9 +1188,12 @@ public class LiqidInventory {
         final Integer machineId
     ) {
         if (_machines.containsKey(machineId)) {
+            prepareForUpdate();
             var m = _machines.get(machineId);
+            removeFromIndex(_machineIdsByGroup, m.getGroupId(), machineId);
             _machineIdsByName.remove(m.getMachineName());
             _machines.remove(machineId);
+            fireEvent(InventoryEvent.machineRemoved(machineId, m.getGroupId()));
         }
     }
 
@@ -592,21 +1216,21 @@ public class LiqidInventory {
         final Collection<DeviceItem> deviceItems,
         final GeneralType generalType
     ) {
-        deviceItems.removeIf(di -> di.getGeneralType() == generalType);
+        deviceItems.removeIf(new InventoryQuery().ofType(generalType));
     }
 
     public static void removeDeviceItemsNotOfType(
         final Collection<DeviceItem> deviceItems,
         final GeneralType generalType
     ) {
-        deviceItems.removeIf(di -> di.getGeneralType() != generalType);
+        deviceItems.removeIf(new InventoryQuery().notOfType(generalType));
     }
 
     public static void removeDeviceItemsInGroup(
         final Collection<DeviceItem> deviceItems,
         final Integer groupId
     ) {
-        deviceItems.removeIf(di -> Objects.equals(di.getGroupId(), groupId));
+        deviceItems.removeIf(new InventoryQuery().inGroup(groupId));
     }
 
     /**
@@ -618,7 +1242,7 @@ public class LiqidInventory {
         final Collection<DeviceItem> deviceItems,
         final Integer groupId
     ) {
-        deviceItems.removeIf(di -> !Objects.equals(di.getGroupId(), groupId));
+        deviceItems.removeIf(new InventoryQuery().notInGroup(groupId));
     }
 
     /**
@@ -628,7 +1252,7 @@ public class LiqidInventory {
     public static void removeDeviceItemsInAnyMachine(
         final Collection<DeviceItem> deviceItems
     ) {
-        deviceItems.removeIf(di -> di.getMachineId() != null);
+        deviceItems.removeIf(new InventoryQuery().inAnyMachine());
     }
 
     /**
@@ -5,7 +5,10 @@
 
 package com.liqid.k8s.layout;
 
-import com.liqid.sdk.Machine;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.TreeSet;
 
 /**
  * A Profile object tied to a particular machine
@@ -21,4 +24,43 @@ public class MachineProfile extends Profile {
     }
 
     public String getMachineName() { return _machineName; }
+
+    /**
+     * Creates a fingerprint of this profile together with the devices which satisfy it.
+     * Compose stores the fingerprint for each machine it has allocated, and a machine whose profile and devices
+     * still produce the stored fingerprint has not changed since then, so it need not be re-planned.
+     * @param deviceIdentifiers identifiers of the (non-compute) devices attached to, or allocated to, the machine
+     * @return fingerprint string
+     */
+    public String createFingerprint(
+        final IdentifierSet deviceIdentifiers
+    ) {
+        var entries = new TreeSet<String>();
+        for (var resModel : getResourceModels()) {
+            entries.add(String.format("%s=%d", resModel, getCount(resModel)));
+        }
+
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            for (var entry : entries) {
+                digest.update(entry.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            deviceIdentifiers.forEachId(id -> {
+                digest.update(Integer.toString(id).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) ',');
+            });
+
+            // half the digest is plenty for telling one layout of a machine from another
+            var sb = new StringBuilder();
+            var bytes = digest.digest();
+            for (int bx = 0; bx < bytes.length / 2; ++bx) {
+                sb.append(String.format("%02x", bytes[bx]));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
 }
@@ -0,0 +1,86 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Moves as few devices as possible. Each machine keeps the devices of each type which are already attached to it,
+ * and the remaining devices go to whichever machines have the fewest, so far.
+ * Device identifiers are chosen by solving for the allocation which moves the fewest devices
+ * (see OptimalAllocationSolver).
+ */
+public class MinimalDisruptionAllocationStrategy implements AllocationStrategy {
+
+    @Override
+    public String getName() {
+        return "minimal-disruption";
+    }
+
+    /**
+     * Counts the given devices which are currently attached to the machine of each compute device
+     * @return counts, in the order of computeDeviceItems
+     */
+    static int[] getCurrentCounts(
+        final List<DeviceItem> computeDeviceItems,
+        final Collection<DeviceItem> deviceItems
+    ) {
+        var countsByMachine = new HashMap<Integer, Integer>();
+        for (var devItem : deviceItems) {
+            if (devItem.isAssignedToMachine()) {
+                countsByMachine.merge(devItem.getMachineId(), 1, Integer::sum);
+            }
+        }
+
+        var counts = new int[computeDeviceItems.size()];
+        var cx = 0;
+        for (var compItem : computeDeviceItems) {
+            if (compItem.isAssignedToMachine()) {
+                counts[cx] = countsByMachine.getOrDefault(compItem.getMachineId(), 0);
+            }
+            cx++;
+        }
+        return counts;
+    }
+
+    @Override
+    public int[] distribute(
+        final List<DeviceItem> computeDeviceItems,
+        final Collection<DeviceItem> deviceItems
+    ) {
+        var counts = getCurrentCounts(computeDeviceItems, deviceItems);
+        var remainingDevices = deviceItems.size();
+        for (var count : counts) {
+            remainingDevices -= count;
+        }
+
+        // The rest go to the machines with the fewest, the earlier machines first where there is a tie
+        var queue = new PriorityQueue<Integer>((a, b) -> (counts[a] != counts[b])
+                                                         ? Integer.compare(counts[a], counts[b])
+                                                         : Integer.compare(a, b));
+        for (int cx = 0; cx < counts.length; ++cx) {
+            queue.add(cx);
+        }
+        while ((remainingDevices > 0) && !queue.isEmpty()) {
+            var cx = queue.poll();
+            counts[cx]++;
+            remainingDevices--;
+            queue.add(cx);
+        }
+        return counts;
+    }
+
+    @Override
+    public AllocationSolver createSolver(
+        final Map<ResourceModel, Collection<Allocator>> allocators
+    ) {
+        return new OptimalAllocationSolver(allocators);
+    }
+}
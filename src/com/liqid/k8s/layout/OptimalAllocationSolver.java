@@ -0,0 +1,429 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Chooses device identifiers for a set of Allocator objects by solving a min-cost flow problem, as an alternative
+ * to the greedy approach in which each allocator takes the first devices in its list which nobody has yet taken.
+ * The result satisfies every allocator whenever that is possible at all, and among such results it is one which
+ * disturbs the fewest devices - devices stay where they are if they can, then free devices are used, and only
+ * then are devices taken from other machines (see Allocator.getPlacementCost()).
+ * The flow network is:
+ *      source -> allocator (capacity is the allocator's count)
+ *      allocator -> device class (cost is the placement cost)
+ *      device class -> sink (capacity is the number of devices in the class)
+ * A device class is the set of devices which are candidates for exactly the same allocators at exactly the same
+ * placement costs - such devices are interchangeable, so the network is sized by the number of classes
+ * (roughly, models times machines) rather than by the number of devices.
+ * Which devices of a class an allocator receives does not affect the cost, so if a FabricLocality is provided,
+ * GPUs are chosen from each class to be best co-located on the fabric.
+ */
+public class OptimalAllocationSolver implements AllocationSolver {
+
+    // identifies the allocators for which a device is a candidate, and at what cost
+    private static class ClassKey {
+
+        private int[] _terms = new int[4];
+        private int _length = 0;
+        private int _hashCode;
+
+        private void add(
+            final int allocatorIndex,
+            final int cost
+        ) {
+            if (_length == _terms.length) {
+                _terms = Arrays.copyOf(_terms, _length * 2);
+            }
+            _terms[_length++] = (allocatorIndex << 2) | cost;
+        }
+
+        private ClassKey seal() {
+            _terms = Arrays.copyOf(_terms, _length);
+            _hashCode = Arrays.hashCode(_terms);
+            return this;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return (obj instanceof ClassKey key) && Arrays.equals(_terms, key._terms);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hashCode;
+        }
+    }
+
+    // the flow network, as adjacency lists of edges in parallel arrays - each edge is followed by its reverse
+    private static class Network {
+
+        private final int _nodeCount;
+        private final int[] _firstEdge;
+        private int[] _nextEdge = new int[64];
+        private int[] _target = new int[64];
+        private int[] _capacity = new int[64];
+        private int[] _cost = new int[64];
+        private int _edgeCount = 0;
+
+        private Network(
+            final int nodeCount
+        ) {
+            _nodeCount = nodeCount;
+            _firstEdge = new int[nodeCount];
+            Arrays.fill(_firstEdge, -1);
+        }
+
+        private void addHalfEdge(
+            final int from,
+            final int to,
+            final int capacity,
+            final int cost
+        ) {
+            if (_edgeCount == _target.length) {
+                var length = _edgeCount * 2;
+                _nextEdge = Arrays.copyOf(_nextEdge, length);
+                _target = Arrays.copyOf(_target, length);
+                _capacity = Arrays.copyOf(_capacity, length);
+                _cost = Arrays.copyOf(_cost, length);
+            }
+            _target[_edgeCount] = to;
+            _capacity[_edgeCount] = capacity;
+            _cost[_edgeCount] = cost;
+            _nextEdge[_edgeCount] = _firstEdge[from];
+            _firstEdge[from] = _edgeCount++;
+        }
+
+        // returns the index of the forward edge, so that its flow can be read back later
+        private int addEdge(
+            final int from,
+            final int to,
+            final int capacity,
+            final int cost
+        ) {
+            var edge = _edgeCount;
+            addHalfEdge(from, to, capacity, cost);
+            addHalfEdge(to, from, 0, -cost);
+            return edge;
+        }
+
+        private int getFlow(
+            final int edge
+        ) {
+            return _capacity[edge ^ 1];
+        }
+
+        private long reducedCost(
+            final int edge,
+            final long[] potential
+        ) {
+            return _cost[edge] + potential[_target[edge ^ 1]] - potential[_target[edge]];
+        }
+
+        /**
+         * Primal-dual min-cost max-flow. Dijkstra (all the initial costs are non-negative, and node potentials
+         * keep the reduced costs so) finds the current shortest distance to the sink; then Dinic's algorithm
+         * pushes a blocking flow through the edges which lie on shortest paths. There are as many phases as
+         * there are distinct path costs, which for our small costs is very few.
+         */
+        private void solve(
+            final int source,
+            final int sink
+        ) {
+            var potential = new long[_nodeCount];
+            var distance = new long[_nodeCount];
+            var level = new int[_nodeCount];
+            var currentEdge = new int[_nodeCount];
+            var queue = new int[_nodeCount];
+            while (true) {
+                // Dijkstra, with a heap of (distance, node) packed into longs (distances are small)
+                Arrays.fill(distance, Long.MAX_VALUE);
+                distance[source] = 0;
+                var heap = new long[16];
+                var heapSize = 0;
+                heap[heapSize++] = source;
+                while (heapSize > 0) {
+                    var entry = heap[0];
+                    heap[0] = heap[--heapSize];
+                    siftDown(heap, heapSize);
+                    var node = (int) (entry & 0xFFFFFFFFL);
+                    if ((entry >>> 32) > distance[node]) {
+                        continue;
+                    }
+                    for (var edge = _firstEdge[node]; edge >= 0; edge = _nextEdge[edge]) {
+                        if (_capacity[edge] > 0) {
+                            var to = _target[edge];
+                            var dist = distance[node] + reducedCost(edge, potential);
+                            if (dist < distance[to]) {
+                                distance[to] = dist;
+                                if (heapSize == heap.length) {
+                                    heap = Arrays.copyOf(heap, heapSize * 2);
+                                }
+                                heap[heapSize++] = (dist << 32) | to;
+                                siftUp(heap, heapSize - 1);
+                            }
+                        }
+                    }
+                }
+
+                if (distance[sink] == Long.MAX_VALUE) {
+                    return;
+                }
+
+                // nodes beyond the sink are capped at its distance, which keeps all the reduced costs non-negative
+                for (int nx = 0; nx < _nodeCount; ++nx) {
+                    potential[nx] += Math.min(distance[nx], distance[sink]);
+                }
+
+                // Dinic over the edges with zero reduced cost, until the sink is no longer reachable through them
+                while (true) {
+                    Arrays.fill(level, -1);
+                    level[source] = 0;
+                    int head = 0;
+                    int tail = 0;
+                    queue[tail++] = source;
+                    while (head < tail) {
+                        var node = queue[head++];
+                        for (var edge = _firstEdge[node]; edge >= 0; edge = _nextEdge[edge]) {
+                            var to = _target[edge];
+                            if ((_capacity[edge] > 0) && (level[to] < 0) && (reducedCost(edge, potential) == 0)) {
+                                level[to] = level[node] + 1;
+                                queue[tail++] = to;
+                            }
+                        }
+                    }
+
+                    if (level[sink] < 0) {
+                        break;
+                    }
+
+                    System.arraycopy(_firstEdge, 0, currentEdge, 0, _nodeCount);
+                    while (augment(source, sink, Integer.MAX_VALUE, level, currentEdge, potential) > 0) {
+                        // keep pushing
+                    }
+                }
+            }
+        }
+
+        // finds one path through the level graph and pushes as much as it can along it
+        private int augment(
+            final int node,
+            final int sink,
+            final int limit,
+            final int[] level,
+            final int[] currentEdge,
+            final long[] potential
+        ) {
+            if (node == sink) {
+                return limit;
+            }
+
+            for (; currentEdge[node] >= 0; currentEdge[node] = _nextEdge[currentEdge[node]]) {
+                var edge = currentEdge[node];
+                var to = _target[edge];
+                if ((_capacity[edge] > 0) && (level[to] == level[node] + 1) && (reducedCost(edge, potential) == 0)) {
+                    var pushed = augment(to, sink, Math.min(limit, _capacity[edge]), level, currentEdge, potential);
+                    if (pushed > 0) {
+                        _capacity[edge] -= pushed;
+                        _capacity[edge ^ 1] += pushed;
+                        return pushed;
+                    }
+                }
+            }
+            return 0;
+        }
+
+        private static void siftUp(
+            final long[] heap,
+            final int index
+        ) {
+            var ix = index;
+            while (ix > 0) {
+                var parent = (ix - 1) / 2;
+                if (heap[parent] <= heap[ix]) {
+                    break;
+                }
+                var temp = heap[parent];
+                heap[parent] = heap[ix];
+                heap[ix] = temp;
+                ix = parent;
+            }
+        }
+
+        private static void siftDown(
+            final long[] heap,
+            final int size
+        ) {
+            var ix = 0;
+            while (true) {
+                var smallest = ix;
+                var left = 2 * ix + 1;
+                var right = left + 1;
+                if ((left < size) && (heap[left] < heap[smallest])) {
+                    smallest = left;
+                }
+                if ((right < size) && (heap[right] < heap[smallest])) {
+                    smallest = right;
+                }
+                if (smallest == ix) {
+                    break;
+                }
+                var temp = heap[smallest];
+                heap[smallest] = heap[ix];
+                heap[ix] = temp;
+                ix = smallest;
+            }
+        }
+    }
+
+    private final Map<ResourceModel, Collection<Allocator>> _allocators;
+    private final Map<Allocator, Integer> _shortfalls = new IdentityHashMap<>();
+    private final Map<String, Allocation> _allocations = new LinkedHashMap<>();
+    private FabricLocality _locality = null;
+
+    public OptimalAllocationSolver(
+        final Map<ResourceModel, Collection<Allocator>> allocators
+    ) {
+        _allocators = allocators;
+    }
+
+    public OptimalAllocationSolver setLocality(final FabricLocality value) { _locality = value; return this; }
+
+    @Override
+    public OptimalAllocationSolver solve() {
+        _shortfalls.clear();
+        _allocations.clear();
+
+        var allocList = new LinkedList<Allocator>();
+        var coLocateList = new LinkedList<Boolean>();
+        for (var entry : _allocators.entrySet()) {
+            var coLocate = (_locality != null) && (entry.getKey().getGeneralType() == GeneralType.GPU);
+            for (var alloc : entry.getValue()) {
+                allocList.add(alloc);
+                coLocateList.add(coLocate);
+            }
+        }
+        var allocators = allocList.toArray(new Allocator[0]);
+        var coLocate = new boolean[allocators.length];
+        for (int ax = 0; ax < allocators.length; ++ax) {
+            coLocate[ax] = coLocateList.removeFirst();
+        }
+
+        // Partition the candidate devices into classes. Allocators are visited in order, so each key
+        // lists its allocators in ascending order and identical keys compare equal.
+        var keys = new HashMap<Integer, ClassKey>();
+        for (int ax = 0; ax < allocators.length; ++ax) {
+            var alloc = allocators[ax];
+            for (int dx = 0; dx < alloc.getDeviceIdentifierCount(); ++dx) {
+                keys.computeIfAbsent(alloc.getDeviceIdentifier(dx), k -> new ClassKey()).add(ax, alloc.getPlacementCost(dx));
+            }
+        }
+
+        var classIndices = new HashMap<ClassKey, Integer>();
+        var classMembers = new LinkedList<IdentifierSet>();
+        for (var entry : keys.entrySet()) {
+            var classIndex = classIndices.computeIfAbsent(entry.getValue().seal(), k -> {
+                classMembers.add(new IdentifierSet());
+                return classMembers.size() - 1;
+            });
+            classMembers.get(classIndex).addId(entry.getKey());
+        }
+        var classes = classMembers.toArray(new IdentifierSet[0]);
+        var classKeys = new ClassKey[classes.length];
+        classIndices.forEach((key, index) -> classKeys[index] = key);
+
+        // nodes: source, allocators, classes, sink
+        var source = 0;
+        var firstClassNode = allocators.length + 1;
+        var sink = firstClassNode + classes.length;
+        var network = new Network(sink + 1);
+
+        for (int ax = 0; ax < allocators.length; ++ax) {
+            network.addEdge(source, ax + 1, allocators[ax].getCount(), 0);
+        }
+
+        // allocator -> class edges, keyed by allocator, in class order
+        var allocEdges = new int[allocators.length][];
+        var allocEdgeClasses = new int[allocators.length][];
+        var edgeCounts = new int[allocators.length];
+        for (var key : classKeys) {
+            for (int tx = 0; tx < key._terms.length; ++tx) {
+                edgeCounts[key._terms[tx] >> 2]++;
+            }
+        }
+        for (int ax = 0; ax < allocators.length; ++ax) {
+            allocEdges[ax] = new int[edgeCounts[ax]];
+            allocEdgeClasses[ax] = new int[edgeCounts[ax]];
+            edgeCounts[ax] = 0;
+        }
+        for (int cx = 0; cx < classes.length; ++cx) {
+            for (var term : classKeys[cx]._terms) {
+                var ax = term >> 2;
+                var capacity = Math.min(allocators[ax].getCount(), classes[cx].size());
+                var ex = edgeCounts[ax]++;
+                allocEdges[ax][ex] = network.addEdge(ax + 1, firstClassNode + cx, capacity, term & 0x03);
+                allocEdgeClasses[ax][ex] = cx;
+            }
+            network.addEdge(firstClassNode + cx, sink, classes[cx].size(), 0);
+        }
+
+        network.solve(source, sink);
+
+        // Hand out the actual devices - within a class they are interchangeable as far as the flow is concerned,
+        // so each allocator takes the lowest identifiers remaining in the class (or, if we have a FabricLocality
+        // and the devices are GPUs, those which are best co-located).
+        for (int ax = 0; ax < allocators.length; ++ax) {
+            var alloc = allocators[ax];
+            var machineName = alloc.getMachineName();
+            var allocation = _allocations.computeIfAbsent(machineName, k -> new Allocation(machineName));
+            var chosenHere = new IdentifierSet();
+            var allocated = 0;
+            for (int ex = 0; ex < allocEdges[ax].length; ++ex) {
+                var cx = allocEdgeClasses[ax][ex];
+                var flow = network.getFlow(allocEdges[ax][ex]);
+                if (flow > 0) {
+                    var chosen = coLocate[ax]
+                                 ? _locality.chooseDevices(machineName, classes[cx], flow, chosenHere)
+                                 : new IdentifierSet(classes[cx].ids().limit(flow).toArray());
+                    classes[cx].removeAll(chosen);
+                    chosenHere.addAll(chosen);
+                    allocation.appendDeviceIdentifiers(chosen);
+                    allocated += flow;
+                }
+            }
+
+            if (allocated < alloc.getCount()) {
+                _shortfalls.put(alloc, alloc.getCount() - allocated);
+            }
+        }
+
+        return this;
+    }
+
+    @Override
+    public Collection<Allocation> getAllocations() {
+        return _allocations.values();
+    }
+
+    @Override
+    public int getShortfall(
+        final Allocator allocator
+    ) {
+        return _shortfalls.getOrDefault(allocator, 0);
+    }
+
+    @Override
+    public boolean isSatisfied() {
+        return _shortfalls.isEmpty();
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Packs the devices of each type onto as few machines as possible, keeping whole machines free of that type,
+ * so that a later request for many devices on one machine can be satisfied.
+ * Each machine is filled up to a capacity in turn - machines which already have the most devices of the type
+ * are filled first, so that packing moves as few devices as it can. If there are too many devices to pack
+ * within the capacity, the capacity is raised so that every device is placed.
+ * Device identifiers are chosen greedily (see GreedyAllocationSolver).
+ */
+public class PackAllocationStrategy implements AllocationStrategy {
+
+    public static final int DEFAULT_MACHINE_CAPACITY = 8;
+
+    private final int _machineCapacity;
+
+    public PackAllocationStrategy() {
+        this(DEFAULT_MACHINE_CAPACITY);
+    }
+
+    public PackAllocationStrategy(
+        final int machineCapacity
+    ) {
+        _machineCapacity = machineCapacity;
+    }
+
+    @Override
+    public String getName() {
+        return "pack";
+    }
+
+    @Override
+    public int[] distribute(
+        final List<DeviceItem> computeDeviceItems,
+        final Collection<DeviceItem> deviceItems
+    ) {
+        var counts = new int[computeDeviceItems.size()];
+        if (counts.length == 0) {
+            return counts;
+        }
+
+        var current = MinimalDisruptionAllocationStrategy.getCurrentCounts(computeDeviceItems, deviceItems);
+        var order = new Integer[counts.length];
+        for (int cx = 0; cx < order.length; ++cx) {
+            order[cx] = cx;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(current[b], current[a]));
+
+        var capacity = Math.max(_machineCapacity, (deviceItems.size() + counts.length - 1) / counts.length);
+        var remainingDevices = deviceItems.size();
+        for (var cx : order) {
+            counts[cx] = Math.min(capacity, remainingDevices);
+            remainingDevices -= counts[cx];
+        }
+        return counts;
+    }
+
+    @Override
+    public AllocationSolver createSolver(
+        final Map<ResourceModel, Collection<Allocator>> allocators
+    ) {
+        return new GreedyAllocationSolver(allocators);
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+/**
+ * Splits an allocation problem by GeneralType, and solves the parts concurrently.
+ * A resource model describes devices of exactly one general type, so allocators for different types never
+ * compete for a device - each part can be solved on its own, by whatever solver the factory creates,
+ * and the per-machine allocations merged afterward. The result is what the same solver would produce for
+ * the whole problem.
+ */
+public class PartitionedAllocationSolver implements AllocationSolver {
+
+    private final Map<ResourceModel, Collection<Allocator>> _allocators;
+    private final Function<Map<ResourceModel, Collection<Allocator>>, AllocationSolver> _solverFactory;
+    private final Map<Allocator, AllocationSolver> _solverByAllocator = new IdentityHashMap<>();
+    private final Map<String, Allocation> _allocations = new LinkedHashMap<>();
+
+    private FabricLocality _locality = null;
+    private ForkJoinPool _pool = ForkJoinPool.commonPool();
+    private boolean _satisfied = true;
+
+    /**
+     * @param allocators the allocators, in order of ResourceModel specificity (see Command.createAllocators())
+     * @param solverFactory creates a solver for the allocators of one general type
+     */
+    public PartitionedAllocationSolver(
+        final Map<ResourceModel, Collection<Allocator>> allocators,
+        final Function<Map<ResourceModel, Collection<Allocator>>, AllocationSolver> solverFactory
+    ) {
+        _allocators = allocators;
+        _solverFactory = solverFactory;
+    }
+
+    public PartitionedAllocationSolver setLocality(final FabricLocality value) { _locality = value; return this; }
+    public PartitionedAllocationSolver setPool(final ForkJoinPool value) { _pool = value; return this; }
+
+    @Override
+    public PartitionedAllocationSolver solve() {
+        _solverByAllocator.clear();
+        _allocations.clear();
+
+        // Each part keeps the order in which the allocators were given to us
+        var parts = new EnumMap<GeneralType, Map<ResourceModel, Collection<Allocator>>>(GeneralType.class);
+        for (var entry : _allocators.entrySet()) {
+            parts.computeIfAbsent(entry.getKey().getGeneralType(), k -> new LinkedHashMap<>())
+                 .put(entry.getKey(), entry.getValue());
+        }
+
+        var solvers = new LinkedList<AllocationSolver>();
+        for (var part : parts.values()) {
+            var solver = _solverFactory.apply(part).setLocality(_locality);
+            part.values().forEach(allocs -> allocs.forEach(alloc -> _solverByAllocator.put(alloc, solver)));
+            solvers.add(solver);
+        }
+
+        if (solvers.size() == 1) {
+            solvers.getFirst().solve();
+        } else {
+            var tasks = new LinkedList<ForkJoinTask<?>>();
+            solvers.forEach(solver -> tasks.add(_pool.submit(solver::solve)));
+            tasks.forEach(ForkJoinTask::join);
+        }
+
+        _satisfied = true;
+        for (var solver : solvers) {
+            _satisfied &= solver.isSatisfied();
+            for (var alloc : solver.getAllocations()) {
+                var merged = _allocations.computeIfAbsent(alloc.getMachineName(), Allocation::new);
+                alloc.getDeviceIdentifiers().forEachId(merged::appendDeviceIdentifier);
+            }
+        }
+
+        return this;
+    }
+
+    @Override
+    public Collection<Allocation> getAllocations() {
+        return _allocations.values();
+    }
+
+    @Override
+    public int getShortfall(
+        final Allocator allocator
+    ) {
+        var solver = _solverByAllocator.get(allocator);
+        return (solver == null) ? 0 : solver.getShortfall(allocator);
+    }
+
+    @Override
+    public boolean isSatisfied() {
+        return _satisfied;
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import com.liqid.sdk.LiqidClient;
+import com.liqid.sdk.LiqidException;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Gives each thread a LiqidClient of its own, obtained from a LiqidClientFactory the first time the thread
+ * asks for one. When closed, every client handed out is released (see LiqidClientFactory.releaseLiqidClient()),
+ * so that no sessions are left open on the Liqid Director.
+ */
+public class PerThreadLiqidClients implements AutoCloseable {
+
+    private final LiqidClientFactory _clientFactory;
+    private final ThreadLocal<LiqidClient> _clients = new ThreadLocal<>();
+    private final Queue<LiqidClient> _created = new ConcurrentLinkedQueue<>();
+
+    public PerThreadLiqidClients(
+        final LiqidClientFactory clientFactory
+    ) {
+        _clientFactory = clientFactory;
+    }
+
+    /**
+     * Retrieves the client belonging to the calling thread, creating it if necessary
+     */
+    public LiqidClient getLiqidClient() throws LiqidException {
+        var client = _clients.get();
+        if (client == null) {
+            client = _clientFactory.createLiqidClient();
+            _clients.set(client);
+            _created.add(client);
+        }
+        return client;
+    }
+
+    /**
+     * Releases every client handed out so far - the threads which used them must be done with them.
+     * A failure is reported, but does not prevent the other clients being released.
+     */
+    @Override
+    public void close() {
+        LiqidClient client;
+        while ((client = _created.poll()) != null) {
+            try {
+                _clientFactory.releaseLiqidClient(client);
+            } catch (LiqidException lex) {
+                System.err.printf("ERROR:Could not log out of the Liqid Cluster:%s\n", lex.getMessage());
+            }
+        }
+    }
+}
@@ -7,10 +7,33 @@ package com.liqid.k8s.layout;
 
 import com.liqid.sdk.DeviceInfo;
 
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class ResourceModel implements Comparable<ResourceModel> {
 
+    // Canonical instances - see intern()
+    private static final Map<ResourceModel, ResourceModel> REGISTRY = new ConcurrentHashMap<>();
+
+    // Lazily computed - zero means not yet computed
+    private int _hashCode = 0;
+
+    /**
+     * Retrieves the canonical instance of a ResourceModel equal to the given one, registering the given one
+     * as the canonical instance if there is none yet. Using canonical instances lets map look-ups
+     * succeed on the identity check, and lets per-model caches (see LiqidInventory) be shared.
+     * @param resourceModel the model of interest
+     * @return the canonical instance
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends ResourceModel> T intern(
+        final T resourceModel
+    ) {
+        // equal models are necessarily of the same ResourceModelType, and thus of the same class
+        return (T) REGISTRY.computeIfAbsent(resourceModel, key -> resourceModel);
+    }
+
     public abstract ResourceModelType getResourceModelType();
     public abstract GeneralType getGeneralType();
     public abstract String getVendorName();
@@ -48,6 +71,9 @@ public abstract class ResourceModel implements Comparable<ResourceModel> {
 
     @Override
     public final boolean equals(final Object obj) {
+        if (obj == this) {
+            return true;
+        }
         return (obj instanceof ResourceModel rm)
             && (getResourceModelType().equals(rm.getResourceModelType()))
             && (getGeneralType().equals(rm.getGeneralType()))
@@ -56,10 +82,11 @@ public abstract class ResourceModel implements Comparable<ResourceModel> {
     }
 
     @Override
-    public int hashCode() {
-        int code = getResourceModelType().hashCode() ^ getGeneralType().hashCode();
-        if (this instanceof VendorResourceModel) {
-            code ^= getVendorName().hashCode();
+    public final int hashCode() {
+        var code = _hashCode;
+        if (code == 0) {
+            code = Objects.hash(getResourceModelType(), getGeneralType(), getVendorName(), getModelName());
+            _hashCode = code;
         }
         return code;
     }
@@ -0,0 +1,115 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Describes a pool of spare devices - a number of devices of each general type which are to be kept free
+ * in the group, so that they can be attached to a machine without first being moved into the group.
+ * When the devices we are composing use up the spares, we restock the pool from devices which are not
+ * in any group (never from other groups, nor from machines).
+ * The pool is described by a specification such as "gpu:2,ssd:1".
+ */
+public class SparePool {
+
+    private final Map<GeneralType, Integer> _targets = new EnumMap<>(GeneralType.class);
+
+    SparePool() {}
+
+    /**
+     * Creates a SparePool from a specification - a comma-separated list of {type}:{count} entries,
+     * where type is the name of a general type other than cpu (case does not matter).
+     * @param specification the specification
+     * @return the SparePool, or null if the specification is not valid
+     */
+    public static SparePool parse(
+        final String specification
+    ) {
+        var pool = new SparePool();
+        for (var entry : specification.split(",")) {
+            var split = entry.trim().split(":");
+            if (split.length != 2) {
+                return null;
+            }
+
+            try {
+                var genType = GeneralType.valueOf(split[0].trim().toUpperCase());
+                var count = Integer.parseInt(split[1].trim());
+                if ((genType == GeneralType.CPU) || (count < 0)) {
+                    return null;
+                }
+                pool._targets.put(genType, count);
+            } catch (IllegalArgumentException ex) {
+                // includes NumberFormatException
+                return null;
+            }
+        }
+
+        return pool;
+    }
+
+    public int getTarget(final GeneralType generalType) { return _targets.getOrDefault(generalType, 0); }
+
+    SparePool setTarget(final GeneralType generalType, final int count) {
+        _targets.put(generalType, count);
+        return this;
+    }
+
+    /**
+     * Chooses the devices which must be moved into the group so that, once the devices which are to be
+     * attached to machines have been attached, the group holds as many free devices of each type as the pool wants.
+     * Only devices which are not in any group, nor attached to any machine, are chosen - in order of name.
+     * @param inventory the current configuration
+     * @param groupId identifier of the group which holds the pool
+     * @param attachedDeviceIds identifiers of all the devices which are to be attached to machines
+     * @return the devices to be moved into the group - there may be fewer than are wanted, if we run out
+     */
+    public Collection<DeviceItem> getReplenishment(
+        final LiqidInventory inventory,
+        final Integer groupId,
+        final IdentifierSet attachedDeviceIds
+    ) {
+        var result = new LinkedList<DeviceItem>();
+        for (var entry : _targets.entrySet()) {
+            var genType = entry.getKey();
+            var spares = inventory.query().ofType(genType).inGroup(groupId).notInAnyMachine().getDeviceIds();
+            spares = new IdentifierSet(spares);
+            spares.removeAll(attachedDeviceIds);
+
+            var wanted = entry.getValue() - spares.size();
+            if (wanted > 0) {
+                inventory.query()
+                         .ofType(genType)
+                         .notInAnyMachine()
+                         .getDeviceItems()
+                         .stream()
+                         .filter(devItem -> !devItem.isAssignedToGroup())
+                         .sorted(Comparator.comparing(DeviceItem::getDeviceName))
+                         .limit(wanted)
+                         .forEach(result::add);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Produces the specification from which this pool could be parsed
+     */
+    @Override
+    public String toString() {
+        return _targets.entrySet()
+                       .stream()
+                       .map(entry -> String.format("%s:%d", entry.getKey().name().toLowerCase(), entry.getValue()))
+                       .collect(Collectors.joining(","));
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spreads the devices of each type as evenly as possible among the machines - the earlier machines
+ * getting one more device than the later machines, if the devices do not divide evenly.
+ * Device identifiers are chosen greedily (see GreedyAllocationSolver).
+ */
+public class SpreadAllocationStrategy implements AllocationStrategy {
+
+    @Override
+    public String getName() {
+        return "spread";
+    }
+
+    @Override
+    public int[] distribute(
+        final List<DeviceItem> computeDeviceItems,
+        final Collection<DeviceItem> deviceItems
+    ) {
+        var counts = new int[computeDeviceItems.size()];
+        var remainingDevices = deviceItems.size();
+        for (int cx = 0; cx < counts.length; ++cx) {
+            var remainingMachines = counts.length - cx;
+            counts[cx] = (remainingDevices + remainingMachines - 1) / remainingMachines;
+            remainingDevices -= counts[cx];
+        }
+        return counts;
+    }
+
+    @Override
+    public AllocationSolver createSolver(
+        final Map<ResourceModel, Collection<Allocator>> allocators
+    ) {
+        return new GreedyAllocationSolver(allocators);
+    }
+}
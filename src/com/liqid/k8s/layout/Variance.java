@@ -15,15 +15,14 @@ import com.liqid.sdk.Machine;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
-import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 public class Variance {
 
     private final Machine _machine;
-    private final List<Integer> _deviceIdsToAdd = new LinkedList<>();
-    private final List<Integer> _deviceIdsToRemove = new LinkedList<>();
+    private final IdentifierSet _deviceIdsToAdd = new IdentifierSet();
+    private final IdentifierSet _deviceIdsToRemove = new IdentifierSet();
 
     public Variance(
         final Machine machine,
@@ -37,8 +36,8 @@ public class Variance {
 
     public boolean canBifurcate() { return hasAdditions() && hasRemovals(); }
     public Machine getMachine() { return _machine; }
-    public Collection<Integer> getDeviceIdsToAdd() { return _deviceIdsToAdd; }
-    public Collection<Integer> getDeviceIdsToRemove() { return _deviceIdsToRemove; }
+    public IdentifierSet getDeviceIdsToAdd() { return _deviceIdsToAdd; }
+    public IdentifierSet getDeviceIdsToRemove() { return _deviceIdsToRemove; }
     public boolean hasAdditions() { return !_deviceIdsToAdd.isEmpty(); }
     public boolean hasRemovals() { return !_deviceIdsToRemove.isEmpty(); }
 
@@ -54,10 +53,10 @@ public class Variance {
      */
     public Action createAction(
         final LiqidInventory inventory,
-        final Set<Integer> unassignedDevices
+        final IdentifierSet unassignedDevices
     ) {
-        for (var devs : _deviceIdsToAdd) {
-            if (!unassignedDevices.contains(devs)) {
+        for (int ax = 0; ax < _deviceIdsToAdd.size(); ++ax) {
+            if (!unassignedDevices.containsId(_deviceIdsToAdd.getId(ax))) {
                 return null;
             }
         }
@@ -71,25 +70,25 @@ public class Variance {
             action.setMachineName(_machine.getMachineName());
             action.setNodeName(nodeName);
 
-            for (Integer id : _deviceIdsToAdd) {
+            _deviceIdsToAdd.forEachId(id -> {
                 action.addDeviceNameToAdd(inventory.getDeviceItem(id).getDeviceName());
-                unassignedDevices.remove(id);
-            }
+                unassignedDevices.removeId(id);
+            });
 
-            for (Integer id : _deviceIdsToRemove) {
+            _deviceIdsToRemove.forEachId(id -> {
                 action.addDeviceNameToRemove(inventory.getDeviceItem(id).getDeviceName());
-                unassignedDevices.add(id);
-            }
+                unassignedDevices.addId(id);
+            });
 
             return action;
         } else if (add) {
             var action = new AssignToMachineAction();
             action.setMachineName(_machine.getMachineName());
 
-            for (Integer id : _deviceIdsToAdd) {
+            _deviceIdsToAdd.forEachId(id -> {
                 action.addDeviceName(inventory.getDeviceItem(id).getDeviceName());
-                unassignedDevices.remove(id);
-            }
+                unassignedDevices.removeId(id);
+            });
 
             return action;
         } else if (remove) {
@@ -97,10 +96,10 @@ public class Variance {
             action.setMachineName(_machine.getMachineName());
             action.setNodeName(nodeName);
 
-            for (Integer id : _deviceIdsToRemove) {
+            _deviceIdsToRemove.forEachId(id -> {
                 action.addDeviceName(inventory.getDeviceItem(id).getDeviceName());
-                unassignedDevices.add(id);
-            }
+                unassignedDevices.addId(id);
+            });
 
             return action;
         }
@@ -108,6 +107,22 @@ public class Variance {
         return new NoOperationAction();
     }
 
+    /**
+     * As above, for callers which keep the unassigned devices in some other kind of set
+     */
+    public Action createAction(
+        final LiqidInventory inventory,
+        final Set<Integer> unassignedDevices
+    ) {
+        var working = new IdentifierSet(unassignedDevices);
+        var action = createAction(inventory, working);
+        if (action != null) {
+            unassignedDevices.clear();
+            unassignedDevices.addAll(working);
+        }
+        return action;
+    }
+
     /**
      * Splits this variance into two unique Variance objects, one for removing devices, and one for adding them,
      * May return an empty list or a singleton depending on what there is to be done.
@@ -132,14 +147,14 @@ public class Variance {
         var sb = new StringBuilder();
         sb.append("{machine='").append(_machine.getMachineName()).append("'");
 
-        var addStrings = _deviceIdsToAdd.stream()
-                                        .map(String::valueOf)
+        var addStrings = _deviceIdsToAdd.ids()
+                                        .mapToObj(String::valueOf)
                                         .collect(Collectors.toCollection(LinkedList::new));
         var addStr = String.join(", ", addStrings);
         sb.append(", adding=[").append(addStr).append("]");
 
-        var remStrings = _deviceIdsToRemove.stream()
-                                           .map(String::valueOf)
+        var remStrings = _deviceIdsToRemove.ids()
+                                           .mapToObj(String::valueOf)
                                            .collect(Collectors.toCollection(LinkedList::new));
         var remStr = String.join(", ", remStrings);
         sb.append(", removing=[").append(remStr).append("]}");
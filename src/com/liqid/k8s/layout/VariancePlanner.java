@@ -0,0 +1,291 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Orders a collection of variances so that each can be actioned in turn - that is, so that every device which
+ * a variance adds is either free to begin with, or is removed by some earlier variance.
+ * We build a graph once, with an edge from each variance which removes a device to the variance which adds it.
+ * A cycle in the graph (machine A wants a device from B, which wants one from A) can only be broken by bifurcating
+ * one of the variances in it (see Variance.bifurcate()), so that its removals are done before, and its additions
+ * after, the rest of the cycle. We bifurcate as few variances as we can - exactly as few, for any strongly-connected
+ * component of no more than EXACT_LIMIT variances - and then emit the variances in a single topological pass.
+ * A variance which adds a device which is neither free nor removed by anybody can never be actioned;
+ * it (and anything which depends upon it) is left at the end of the order.
+ */
+class VariancePlanner {
+
+    // Strongly-connected components up to this size are searched exhaustively for the fewest bifurcations.
+    // Finding the fewest in general is NP-hard (it is the minimum feedback vertex set problem),
+    // so larger components are reduced greedily until the pieces are small enough to search.
+    static final int EXACT_LIMIT = 12;
+
+    // a vertex on the depth-first search stack, and where we are among its successors
+    private record Frame(Integer vertex, Iterator<Integer> successors) {}
+
+    private final List<Variance> _variances;
+    private final List<Set<Integer>> _successors = new ArrayList<>();
+    private final int[] _predecessorCounts;
+    private final boolean[] _blocked;
+
+    private VariancePlanner(
+        final List<Variance> variances,
+        final IdentifierSet unassignedDevices
+    ) {
+        _variances = variances;
+        _predecessorCounts = new int[variances.size()];
+        _blocked = new boolean[variances.size()];
+
+        var releasers = new HashMap<Integer, Integer>();
+        for (int vx = 0; vx < variances.size(); ++vx) {
+            _successors.add(new LinkedHashSet<>());
+            var releaser = vx;
+            variances.get(vx).getDeviceIdsToRemove().forEachId(id -> releasers.put(id, releaser));
+        }
+
+        for (int vx = 0; vx < variances.size(); ++vx) {
+            var adds = variances.get(vx).getDeviceIdsToAdd();
+            for (int ax = 0; ax < adds.size(); ++ax) {
+                var id = adds.getId(ax);
+                if (!unassignedDevices.containsId(id)) {
+                    var releaser = releasers.get(id);
+                    if (releaser == null) {
+                        _blocked[vx] = true;
+                    } else if (_successors.get(releaser).add(vx)) {
+                        _predecessorCounts[vx]++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Produces the variances in an order in which they can be actioned, bifurcating some of them if need be.
+     * @param variances the variances - those which have nothing to add or remove are dropped
+     * @param unassignedDevices identifiers of the devices which are currently free
+     * @return the ordered variances
+     */
+    static List<Variance> schedule(
+        final Collection<Variance> variances,
+        final IdentifierSet unassignedDevices
+    ) {
+        var working = new ArrayList<Variance>();
+        variances.stream().filter(v -> v.hasAdditions() || v.hasRemovals()).forEach(working::add);
+
+        var planner = new VariancePlanner(working, unassignedDevices);
+        var bifurcations = planner.chooseBifurcations();
+        if (!bifurcations.isEmpty()) {
+            var split = new ArrayList<Variance>();
+            for (int vx = 0; vx < working.size(); ++vx) {
+                if (bifurcations.contains(vx)) {
+                    split.addAll(working.get(vx).bifurcate());
+                } else {
+                    split.add(working.get(vx));
+                }
+            }
+            planner = new VariancePlanner(split, unassignedDevices);
+        }
+
+        return planner.sort();
+    }
+
+    /**
+     * Emits the variances in topological order - those which are ready in the order in which they were given.
+     * Blocked variances, and any which are waiting for them, go at the end.
+     */
+    private List<Variance> sort() {
+        var result = new LinkedList<Variance>();
+        var counts = _predecessorCounts.clone();
+        var ready = new ArrayDeque<Integer>();
+        for (int vx = 0; vx < _variances.size(); ++vx) {
+            if (_blocked[vx]) {
+                counts[vx]++;
+            } else if (counts[vx] == 0) {
+                ready.add(vx);
+            }
+        }
+
+        var emitted = new boolean[_variances.size()];
+        while (!ready.isEmpty()) {
+            var vx = ready.poll();
+            result.add(_variances.get(vx));
+            emitted[vx] = true;
+            for (var sx : _successors.get(vx)) {
+                if (--counts[sx] == 0) {
+                    ready.add(sx);
+                }
+            }
+        }
+
+        for (int vx = 0; vx < _variances.size(); ++vx) {
+            if (!emitted[vx]) {
+                result.add(_variances.get(vx));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Chooses the variances to be bifurcated so that no cycles remain
+     */
+    private Set<Integer> chooseBifurcations() {
+        var all = new LinkedList<Integer>();
+        for (int vx = 0; vx < _variances.size(); ++vx) {
+            all.add(vx);
+        }
+
+        var result = new HashSet<Integer>();
+        for (var component : getCyclicComponents(all)) {
+            result.addAll(chooseBifurcations(component));
+        }
+        return result;
+    }
+
+    private Set<Integer> chooseBifurcations(
+        final List<Integer> component
+    ) {
+        if (component.size() <= EXACT_LIMIT) {
+            for (int count = 1; count < component.size(); ++count) {
+                var chosen = chooseExactly(component, count, 0, new LinkedList<>());
+                if (chosen != null) {
+                    return chosen;
+                }
+            }
+        }
+
+        // Bifurcate the variance with the most paths through it, and deal with what remains of the component.
+        // Every variance in the component has both additions and removals, so it can be bifurcated.
+        var members = new HashSet<>(component);
+        var best = component.get(0);
+        var bestScore = -1L;
+        for (var vx : component) {
+            long out = _successors.get(vx).stream().filter(members::contains).count();
+            long in = component.stream().filter(ux -> _successors.get(ux).contains(vx)).count();
+            if (in * out > bestScore) {
+                best = vx;
+                bestScore = in * out;
+            }
+        }
+
+        var result = new HashSet<Integer>();
+        result.add(best);
+        var remaining = new LinkedList<>(component);
+        remaining.remove(best);
+        for (var sub : getCyclicComponents(remaining)) {
+            result.addAll(chooseBifurcations(sub));
+        }
+        return result;
+    }
+
+    // Tries every way of choosing the given number of variances from the component (beyond those already chosen),
+    // returning the first which leaves the rest of the component acyclic - or null if there is none.
+    private Set<Integer> chooseExactly(
+        final List<Integer> component,
+        final int count,
+        final int start,
+        final LinkedList<Integer> chosen
+    ) {
+        if (chosen.size() == count) {
+            var rest = new LinkedList<>(component);
+            rest.removeAll(chosen);
+            return getCyclicComponents(rest).isEmpty() ? new HashSet<>(chosen) : null;
+        }
+
+        for (int cx = start; cx <= component.size() - (count - chosen.size()); ++cx) {
+            chosen.addLast(component.get(cx));
+            var result = chooseExactly(component, count, cx + 1, chosen);
+            chosen.removeLast();
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the strongly-connected components of more than one variance, among the given variances
+     * (considering only the edges between them) - that is, the parts of the graph which contain cycles.
+     * This is Tarjan's algorithm, done iteratively so that a long chain of variances cannot overflow the stack.
+     */
+    private List<List<Integer>> getCyclicComponents(
+        final Collection<Integer> vertices
+    ) {
+        var members = new HashSet<>(vertices);
+        var index = new HashMap<Integer, Integer>();
+        var lowLink = new HashMap<Integer, Integer>();
+        var onStack = new HashSet<Integer>();
+        var stack = new ArrayDeque<Integer>();
+        var result = new LinkedList<List<Integer>>();
+        var nextIndex = 0;
+
+        for (var root : vertices) {
+            if (index.containsKey(root)) {
+                continue;
+            }
+
+            var frames = new ArrayDeque<Frame>();
+            index.put(root, nextIndex);
+            lowLink.put(root, nextIndex++);
+            stack.push(root);
+            onStack.add(root);
+            frames.push(new Frame(root, _successors.get(root).iterator()));
+
+            while (!frames.isEmpty()) {
+                var frame = frames.peek();
+                var vx = frame.vertex();
+                if (frame.successors().hasNext()) {
+                    var sx = frame.successors().next();
+                    if (!members.contains(sx)) {
+                        continue;
+                    }
+                    if (!index.containsKey(sx)) {
+                        index.put(sx, nextIndex);
+                        lowLink.put(sx, nextIndex++);
+                        stack.push(sx);
+                        onStack.add(sx);
+                        frames.push(new Frame(sx, _successors.get(sx).iterator()));
+                    } else if (onStack.contains(sx)) {
+                        lowLink.put(vx, Math.min(lowLink.get(vx), index.get(sx)));
+                    }
+                } else {
+                    frames.pop();
+                    if (!frames.isEmpty()) {
+                        var parent = frames.peek().vertex();
+                        lowLink.put(parent, Math.min(lowLink.get(parent), lowLink.get(vx)));
+                    }
+
+                    if (lowLink.get(vx).equals(index.get(vx))) {
+                        var component = new LinkedList<Integer>();
+                        Integer wx;
+                        do {
+                            wx = stack.pop();
+                            onStack.remove(wx);
+                            component.addFirst(wx);
+                        } while (!wx.equals(vx));
+                        if (component.size() > 1) {
+                            component.sort(Integer::compare);
+                            result.add(component);
+                        }
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+}
@@ -13,10 +13,8 @@ import com.liqid.sdk.Machine;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
  * Does things that involve a set of variances.
@@ -26,9 +24,10 @@ import java.util.stream.Collectors;
  */
 public class VarianceSet {
 
-    private final HashSet<Variance> _content = new HashSet<>();
+    private final LinkedHashSet<Variance> _content = new LinkedHashSet<>();
+    private boolean _scheduled = false;
 
-    public void addVariance(final Variance value) { _content.add(value); }
+    public void addVariance(final Variance value) { _content.add(value); _scheduled = false; }
     public Set<Variance> getVariances() { return _content; }
 
     /**
@@ -41,6 +40,22 @@ public class VarianceSet {
     public static VarianceSet createVarianceSet(
         final LiqidInventory inventory,
         final Collection<Allocation> allocations
+    ) {
+        return createVarianceSet(inventory, allocations, inventory.getMachines());
+    }
+
+    /**
+     * As above, but considering only the given machines - any other machines are left as they are,
+     * whether or not there is an allocation for them.
+     * @param inventory the state of the configuration as it currently exists
+     * @param allocations a map describing, per machine, where we want devices to be
+     * @param machines the machines to be considered
+     * @return a VarianceSet which describes how to get from the inventory to the assignments
+     */
+    public static VarianceSet createVarianceSet(
+        final LiqidInventory inventory,
+        final Collection<Allocation> allocations,
+        final Collection<Machine> machines
     ) {
         var vs = new VarianceSet();
 
@@ -50,29 +65,26 @@ public class VarianceSet {
             allocMap.put(machine, alloc);
         }
 
-        for (var mach : inventory.getMachines()) {
+        for (var mach : machines) {
             if (allocMap.containsKey(mach)) {
-                var devItems = inventory.getDeviceItemsForMachine(mach.getMachineId());
-                LiqidInventory.removeDeviceItemsOfType(devItems, GeneralType.CPU);
-                var machHasResourceIds = LiqidInventory.getDeviceIdsFromItems(devItems);
+                var machHasResourceIds = inventory.query()
+                                                  .inMachine(mach.getMachineId())
+                                                  .notOfType(GeneralType.CPU)
+                                                  .getDeviceIds();
                 var machWantsResourceIds = allocMap.get(mach).getDeviceIdentifiers();
 
-                var gainingIds = machWantsResourceIds.stream()
-                                                      .filter(devId -> !machHasResourceIds.contains(devId))
-                                                      .collect(Collectors.toCollection(LinkedList::new));
-
-                var losingIds = machHasResourceIds.stream()
-                                                  .filter(devId -> !machWantsResourceIds.contains(devId))
-                                                  .collect(Collectors.toCollection(LinkedList::new));
+                var gainingIds = new IdentifierSet(machWantsResourceIds);
+                gainingIds.removeAll(machHasResourceIds);
+                var losingIds = new IdentifierSet(machHasResourceIds);
+                losingIds.removeAll(machWantsResourceIds);
 
                 if (!gainingIds.isEmpty() || !losingIds.isEmpty()) {
                     vs._content.add(new Variance(mach, gainingIds, losingIds));
                 }
             } else {
-                var devItems = inventory.getDeviceItemsForMachine(mach.getMachineId());
-                LiqidInventory.removeDeviceItemsOfType(devItems, GeneralType.CPU);
-                if (!devItems.isEmpty()) {
-                    vs._content.add(new Variance(mach, Collections.emptyList(), LiqidInventory.getDeviceIdsFromItems(devItems)));
+                var devIds = inventory.query().inMachine(mach.getMachineId()).notOfType(GeneralType.CPU).getDeviceIds();
+                if (!devIds.isEmpty()) {
+                    vs._content.add(new Variance(mach, Collections.emptyList(), devIds));
                 }
             }
         }
@@ -81,59 +93,75 @@ public class VarianceSet {
     }
 
     /**
-     * Given a list of variances, return an action created from the first variance in the list which
-     * can create one (removing that variance from the list).
-     * If no variance can create an action, we bifurcate one of our Variance objects and try again.
-     * Bifurcation *should* work - if it does not, something is badly wrong.
+     * Returns an action created from the next variance (removing that variance from the set).
+     * The first time we are asked, we put the variances in an order in which each of them can be actioned,
+     * bifurcating as few of them as possible to break any cycles (see VariancePlanner) - so that thereafter,
+     * each variance in turn produces an action, provided that the caller keeps the set of unassigned resources
+     * as the actions leave it. If the next variance cannot produce an action anyway, we re-order what remains
+     * and try once more.
      * @return null only if we have no Variances; otherwise, we return an Action and update ourselves accordingly
-     * @throws InternalErrorException if we cannot create an Action (due to no variances being able to create one)
-     * and bifurcation does not accomplish anything.
+     * @throws InternalErrorException if we cannot create an Action - which is to say that some variance wants
+     * a device which is neither free nor to be removed from any machine.
      */
     public Action getAction(
         final LiqidInventory inventory,
-        final Set<Integer> unassignedResources
+        final IdentifierSet unassignedResources
     ) throws InternalErrorException {
-        var iter = _content.iterator();
-        while (iter.hasNext()) {
-            var variance = iter.next();
+        if (!_scheduled) {
+            schedule(unassignedResources);
+        }
+
+        var rescheduled = false;
+        while (!_content.isEmpty()) {
+            var variance = _content.iterator().next();
             var action = variance.createAction(inventory, unassignedResources);
             if (action instanceof NoOperationAction) {
                 //  variance has nothing to add or remove - so we got a do-nothing.
                 //  remove the variance and try again.
-                iter.remove();
+                _content.remove(variance);
                 continue;
             }
 
             if (action != null) {
                 //  we have an action. remove the variance and return the action.
-                iter.remove();
+                _content.remove(variance);
                 return action;
             }
 
-            //  If we get here, the variance could not generate an action.
-            //  Continue until we find one which *can* generate an action.
+            //  If we get here, the variance could not generate an action, though the schedule says it should.
+            //  Somebody has changed the unassigned resources under us - so schedule what remains, and try again.
+            if (rescheduled) {
+                throw new InternalErrorException("Deadlock in variance set");
+            }
+            schedule(unassignedResources);
+            rescheduled = true;
         }
 
-        //  If we get here, we cannot generate any action.
-        //  If we don't actually have any actions left, just return null.
-        if (_content.isEmpty()) {
-            return null;
-        }
+        //  If we get here, we don't actually have any actions left.
+        return null;
+    }
 
-        //  Find the the first variance which has both additions and removals and bifurcate it,
-        //  replacing it in _content with its component parts.
-        //  If we can find nothing to bifurcate, then we are in a right pickle.
-        iter = _content.iterator();
-        while (iter.hasNext()) {
-            var variance = iter.next();
-            if (variance.canBifurcate()) {
-                _content.remove(variance);
-                _content.addAll(variance.bifurcate());
-                return getAction(inventory, unassignedResources);
-            }
-        }
+    private void schedule(
+        final IdentifierSet unassignedResources
+    ) {
+        var ordered = VariancePlanner.schedule(_content, unassignedResources);
+        _content.clear();
+        _content.addAll(ordered);
+        _scheduled = true;
+    }
 
-        throw new InternalErrorException("Deadlock in variance set");
+    /**
+     * As above, for callers which keep the unassigned resources in some other kind of set
+     */
+    public Action getAction(
+        final LiqidInventory inventory,
+        final Set<Integer> unassignedResources
+    ) throws InternalErrorException {
+        var working = new IdentifierSet(unassignedResources);
+        var action = getAction(inventory, working);
+        unassignedResources.clear();
+        unassignedResources.addAll(working);
+        return action;
     }
 
     public boolean isEmpty() { return _content.isEmpty(); }
@@ -0,0 +1,89 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Distributes the devices of each type among the machines in proportion to a weight for each machine,
+ * by the largest remainder method - each machine gets the whole part of its share, and the devices left over go
+ * to the machines with the largest fractional parts (the earlier machines first, where there is a tie).
+ * Device identifiers are chosen by the solver of an underlying strategy, which also distributes the devices
+ * if no machine has any weight.
+ */
+public class WeightedAllocationStrategy implements AllocationStrategy {
+
+    private final AllocationStrategy _baseStrategy;
+    private final Map<Integer, Double> _weights;
+
+    /**
+     * @param baseStrategy the strategy which provides the solver
+     * @param weights weight per compute device identifier - compute devices which are not present have no weight
+     */
+    public WeightedAllocationStrategy(
+        final AllocationStrategy baseStrategy,
+        final Map<Integer, Double> weights
+    ) {
+        _baseStrategy = baseStrategy;
+        _weights = weights;
+    }
+
+    @Override
+    public String getName() {
+        return "weighted-" + _baseStrategy.getName();
+    }
+
+    @Override
+    public int[] distribute(
+        final List<DeviceItem> computeDeviceItems,
+        final Collection<DeviceItem> deviceItems
+    ) {
+        var weights = computeDeviceItems.stream()
+                                        .mapToDouble(item -> Math.max(0.0, _weights.getOrDefault(item.getDeviceId(), 0.0)))
+                                        .toArray();
+        var totalWeight = 0.0;
+        for (var weight : weights) {
+            totalWeight += weight;
+        }
+        if (totalWeight <= 0.0) {
+            return _baseStrategy.distribute(computeDeviceItems, deviceItems);
+        }
+
+        var counts = new int[weights.length];
+        var remainders = new double[weights.length];
+        var remainingDevices = deviceItems.size();
+        for (int cx = 0; cx < weights.length; ++cx) {
+            var share = deviceItems.size() * weights[cx] / totalWeight;
+            counts[cx] = (int) Math.floor(share);
+            remainders[cx] = share - counts[cx];
+            remainingDevices -= counts[cx];
+        }
+
+        var queue = new PriorityQueue<Integer>((a, b) -> (remainders[a] != remainders[b])
+                                                         ? Double.compare(remainders[b], remainders[a])
+                                                         : Integer.compare(a, b));
+        for (int cx = 0; cx < weights.length; ++cx) {
+            if (weights[cx] > 0.0) {
+                queue.add(cx);
+            }
+        }
+        while ((remainingDevices > 0) && !queue.isEmpty()) {
+            counts[queue.poll()]++;
+            remainingDevices--;
+        }
+        return counts;
+    }
+
+    @Override
+    public AllocationSolver createSolver(
+        final Map<ResourceModel, Collection<Allocator>> allocators
+    ) {
+        return _baseStrategy.createSolver(allocators);
+    }
+}
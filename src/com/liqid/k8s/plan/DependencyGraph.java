@@ -0,0 +1,125 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.plan;
+
+import com.liqid.k8s.plan.actions.Action;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The dependencies between the steps of a plan, derived once from what each step reads and updates.
+ * One step depends upon an earlier step if it reads or updates anything which the earlier step updates,
+ * or updates anything which the earlier step reads (see Action.getResources()) - so, for example,
+ * a device is released before it is re-assigned, a machine is created before devices are assigned to it,
+ * and a group is created before its machines. A step which might affect anything depends upon every step
+ * before it, and every step after it depends upon it.
+ * Steps are identified by their (zero-based) position in the plan.
+ */
+class DependencyGraph {
+
+    private final List<Set<Integer>> _predecessors = new ArrayList<>();
+    private final List<Set<Integer>> _successors = new ArrayList<>();
+
+    DependencyGraph(
+        final List<Action> steps
+    ) {
+        var lastUpdaters = new HashMap<String, Integer>();
+        var readersSinceUpdate = new HashMap<String, List<Integer>>();
+        var sinceBarrier = new LinkedList<Integer>();
+        Integer lastBarrier = null;
+        for (int sx = 0; sx < steps.size(); ++sx) {
+            _predecessors.add(new LinkedHashSet<>());
+            _successors.add(new LinkedHashSet<>());
+            var resources = steps.get(sx).getResources();
+            if (resources == null) {
+                for (var px : sinceBarrier) {
+                    addDependency(px, sx);
+                }
+                if (sinceBarrier.isEmpty() && (lastBarrier != null)) {
+                    addDependency(lastBarrier, sx);
+                }
+                lastBarrier = sx;
+                sinceBarrier.clear();
+                lastUpdaters.clear();
+                readersSinceUpdate.clear();
+                continue;
+            }
+
+            if (lastBarrier != null) {
+                addDependency(lastBarrier, sx);
+            }
+            for (var key : resources.getReadKeys()) {
+                var updater = lastUpdaters.get(key);
+                if (updater != null) {
+                    addDependency(updater, sx);
+                }
+                readersSinceUpdate.computeIfAbsent(key, k -> new LinkedList<>()).add(sx);
+            }
+            for (var key : resources.getUpdatedKeys()) {
+                var updater = lastUpdaters.get(key);
+                if (updater != null) {
+                    addDependency(updater, sx);
+                }
+                var readers = readersSinceUpdate.remove(key);
+                if (readers != null) {
+                    for (var rx : readers) {
+                        addDependency(rx, sx);
+                    }
+                }
+                lastUpdaters.put(key, sx);
+            }
+            sinceBarrier.add(sx);
+        }
+    }
+
+    private void addDependency(
+        final int earlierStep,
+        final int laterStep
+    ) {
+        _successors.get(earlierStep).add(laterStep);
+        _predecessors.get(laterStep).add(earlierStep);
+    }
+
+    boolean dependsOn(final int laterStep, final int earlierStep) { return _successors.get(earlierStep).contains(laterStep); }
+    Set<Integer> getPredecessors(final int step) { return _predecessors.get(step); }
+    Set<Integer> getSuccessors(final int step) { return _successors.get(step); }
+    int size() { return _successors.size(); }
+
+    /**
+     * Finds every step which must come before any of the given steps (not including the given steps themselves)
+     */
+    Set<Integer> getAncestors(final Collection<Integer> steps) { return reach(steps, _predecessors); }
+
+    /**
+     * Finds every step which must come after any of the given steps (not including the given steps themselves)
+     */
+    Set<Integer> getDescendants(final Collection<Integer> steps) { return reach(steps, _successors); }
+
+    private static Set<Integer> reach(
+        final Collection<Integer> steps,
+        final List<Set<Integer>> edges
+    ) {
+        var result = new HashSet<Integer>();
+        var pending = new ArrayDeque<>(steps);
+        while (!pending.isEmpty()) {
+            for (var next : edges.get(pending.pop())) {
+                if (result.add(next)) {
+                    pending.push(next);
+                }
+            }
+        }
+        result.removeAll(steps);
+        return result;
+    }
+}
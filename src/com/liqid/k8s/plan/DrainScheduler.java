@@ -0,0 +1,230 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.plan;
+
+import com.liqid.k8s.plan.actions.Action;
+import com.liqid.k8s.plan.actions.ActionResources;
+import com.liqid.k8s.plan.actions.CordonNodeAction;
+import com.liqid.k8s.plan.actions.UncordonNodeAction;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static com.liqid.k8s.Constants.PLAN_ESTIMATED_EVICTION_SECONDS;
+import static com.liqid.k8s.Constants.PLAN_ESTIMATED_REPROGRAM_SECONDS;
+
+/**
+ * Arranges for a node which would otherwise be drained by more than one step of a plan, to be drained only once.
+ * Those steps are brought together (as far as their dependencies allow) between a CordonNodeAction and
+ * an UncordonNodeAction, and they do not drain the node themselves.
+ * Anything which the draining steps depend upon, but which need not come between them, is moved ahead
+ * of the cordon; everything else stays where it was. Thus, a node is unavailable for one eviction and
+ * the fabric edits it needs, rather than for one eviction per fabric edit - and it is not kept waiting on
+ * other nodes' work in the meantime.
+ * <p>
+ * If the steps of two nodes are interleaved (so that one node's steps must come between the other's),
+ * the two share a window, so that each is still drained only once.
+ * <p>
+ * When steps are performed concurrently (see PlanExecutor), windows for different nodes overlap, so their order
+ * does not matter so much as when each cordon happens - a cordon waits for everything which the window's steps
+ * depend upon, so that a node is not left cordoned while its window cannot make progress.
+ * We do not otherwise reorder windows; a window may still wait for a free execution slot once it is open.
+ */
+class DrainScheduler {
+
+    /**
+     * The estimated time for which a node is unavailable during a plan
+     */
+    static class Downtime {
+
+        private final List<String> _spans = new LinkedList<>();
+        private int _seconds = 0;
+
+        List<String> getSpans() { return _spans; }
+        int getSeconds() { return _seconds; }
+    }
+
+    private final List<Action> _steps;
+    private final DependencyGraph _graph;
+    private final Map<String, List<Integer>> _pendingWindows;
+    private final boolean[] _scheduled;
+    private final List<Action> _result = new ArrayList<>();
+
+    private DrainScheduler(
+        final List<Action> steps,
+        final Map<String, List<Integer>> pendingWindows
+    ) {
+        _steps = steps;
+        _graph = new DependencyGraph(steps);
+        _pendingWindows = pendingWindows;
+        _scheduled = new boolean[steps.size()];
+    }
+
+    static List<Action> schedule(
+        final List<Action> steps
+    ) {
+        var drainingSteps = new LinkedHashMap<String, List<Integer>>();
+        for (int sx = 0; sx < steps.size(); ++sx) {
+            var nodeName = steps.get(sx).getDrainedNodeName();
+            if (nodeName != null) {
+                drainingSteps.computeIfAbsent(nodeName, k -> new LinkedList<>()).add(sx);
+            }
+        }
+        drainingSteps.values().removeIf(list -> list.size() < 2);
+        if (drainingSteps.isEmpty()) {
+            return steps;
+        }
+
+        var scheduler = new DrainScheduler(steps, drainingSteps);
+        for (int sx = 0; sx < steps.size(); ++sx) {
+            scheduler.place(sx);
+        }
+        return scheduler._result;
+    }
+
+    /**
+     * Adds a step to the result, after anything it depends upon which is not already there.
+     * If the step drains a node which is to have a window, the whole window is added instead.
+     */
+    private void place(
+        final int step
+    ) {
+        if (_scheduled[step]) {
+            return;
+        }
+
+        var nodeName = _steps.get(step).getDrainedNodeName();
+        if ((nodeName != null) && _pendingWindows.containsKey(nodeName)) {
+            placeWindow(nodeName);
+            return;
+        }
+
+        for (var px : new TreeSet<>(_graph.getPredecessors(step))) {
+            place(px);
+        }
+        _scheduled[step] = true;
+        _result.add(_steps.get(step));
+    }
+
+    /**
+     * Adds the window for a node - along with the windows of any nodes whose steps are interleaved with it.
+     */
+    private void placeWindow(
+        final String nodeName
+    ) {
+        var nodeNames = new LinkedHashSet<String>();
+        nodeNames.add(nodeName);
+        var window = new TreeSet<>(_pendingWindows.remove(nodeName));
+        var ancestors = _graph.getAncestors(window);
+        var descendants = _graph.getDescendants(window);
+        var other = findInterleavedNode(ancestors, descendants);
+        while (other != null) {
+            nodeNames.add(other);
+            window.addAll(_pendingWindows.remove(other));
+            ancestors = _graph.getAncestors(window);
+            descendants = _graph.getDescendants(window);
+            other = findInterleavedNode(ancestors, descendants);
+        }
+
+        // what the draining steps need, and which can go before the cordon, goes before the cordon
+        for (var ax : new TreeSet<>(ancestors)) {
+            if (!descendants.contains(ax)) {
+                place(ax);
+            }
+        }
+
+        // the rest of the window - every multi-drain node with a step in here is one of ours
+        var awaited = new ActionResources();
+        var inside = new TreeSet<>(window);
+        for (var ax : ancestors) {
+            if (!_scheduled[ax]) {
+                inside.add(ax);
+            }
+        }
+        for (var ix : inside) {
+            var resources = _steps.get(ix).getResources();
+            if (resources != null) {
+                awaited.addReads(resources);
+            }
+        }
+
+        for (var name : nodeNames) {
+            _result.add(new CordonNodeAction().setNodeName(name).setAwaitedResources(awaited));
+        }
+        for (var ix : inside) {
+            _scheduled[ix] = true;
+            _result.add(_steps.get(ix));
+        }
+        for (var name : nodeNames) {
+            _result.add(new UncordonNodeAction().setNodeName(name));
+        }
+    }
+
+    /**
+     * Finds a node (still to have its window) which has a step which must come between the given steps,
+     * or which has steps both before and after them - either way, it cannot have a window of its own.
+     */
+    private String findInterleavedNode(
+        final Set<Integer> ancestors,
+        final Set<Integer> descendants
+    ) {
+        for (var entry : _pendingWindows.entrySet()) {
+            var before = false;
+            var after = false;
+            for (var sx : entry.getValue()) {
+                before |= ancestors.contains(sx);
+                after |= descendants.contains(sx);
+            }
+            if (before && after) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Estimates how long each node is unavailable during the given plan. A node which is drained by a step
+     * on its own is down for one eviction and one fabric reprogram; a node in a drain window is down for
+     * one eviction and a fabric reprogram for each of its steps in the window.
+     */
+    static Map<String, Downtime> estimateDowntime(
+        final List<Action> steps
+    ) {
+        var result = new TreeMap<String, Downtime>();
+        var openWindows = new TreeMap<String, Integer>();
+        for (int sx = 0; sx < steps.size(); ++sx) {
+            var step = steps.get(sx);
+            if (step instanceof CordonNodeAction cordon) {
+                openWindows.put(cordon.getNodeName(), sx);
+                result.computeIfAbsent(cordon.getNodeName(), k -> new Downtime())._seconds += PLAN_ESTIMATED_EVICTION_SECONDS;
+            } else if (step instanceof UncordonNodeAction uncordon) {
+                var start = openWindows.remove(uncordon.getNodeName());
+                if (start != null) {
+                    result.get(uncordon.getNodeName())._spans.add(String.format("steps %d-%d", start + 1, sx + 1));
+                }
+            } else {
+                var nodeName = step.getDrainedNodeName();
+                if (nodeName != null) {
+                    var downtime = result.computeIfAbsent(nodeName, k -> new Downtime());
+                    downtime._seconds += PLAN_ESTIMATED_REPROGRAM_SECONDS;
+                    if (!openWindows.containsKey(nodeName)) {
+                        downtime._seconds += PLAN_ESTIMATED_EVICTION_SECONDS;
+                        downtime._spans.add(String.format("step %d", sx + 1));
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+}
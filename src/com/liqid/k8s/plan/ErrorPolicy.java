@@ -0,0 +1,17 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.plan;
+
+/**
+ * What we do when a step of a plan fails
+ */
+public enum ErrorPolicy {
+    // start no more steps - those already running are allowed to finish
+    FAIL_FAST,
+
+    // carry on with every step which does not depend upon a failed step
+    CONTINUE_ON_ERROR,
+}
@@ -6,24 +6,63 @@
 package com.liqid.k8s.plan;
 
 import com.bearsnake.klog.Logger;
+import com.liqid.k8s.layout.LiqidClientFactory;
 import com.liqid.k8s.layout.LiqidInventory;
 import com.bearsnake.k8sclient.K8SClient;
+import com.liqid.k8s.layout.PerThreadLiqidClients;
 import com.liqid.sdk.LiqidClient;
+import com.liqid.sdk.LiqidException;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ExecutionContext {
 
     private K8SClient _k8sClient;
     private LiqidClient _liqidClient;
+    private LiqidClientFactory _liqidClientFactory;
     private LiqidInventory _liqidInventory;
     private Logger _logger;
 
+    // clients for the threads which perform steps concurrently - see PlanExecutor
+    private PerThreadLiqidClients _workerLiqidClients;
+
+    // nodes which are currently cordoned and drained by a CordonNodeAction
+    private final Set<String> _drainedNodeNames = ConcurrentHashMap.newKeySet();
+
     public K8SClient getK8SClient() { return _k8sClient; }
-    public LiqidClient getLiqidClient() { return _liqidClient; }
+    public LiqidClientFactory getLiqidClientFactory() { return _liqidClientFactory; }
     public LiqidInventory getLiqidInventory() { return _liqidInventory; }
     public Logger getLogger() { return _logger; }
+    public Set<String> getDrainedNodeNames() { return new TreeSet<>(_drainedNodeNames); }
+    public boolean isNodeDrained(final String nodeName) { return _drainedNodeNames.contains(nodeName); }
 
     public ExecutionContext setK8SClient(final K8SClient value) { _k8sClient = value; return this; }
     public ExecutionContext setLiqidClient(final LiqidClient value) { _liqidClient = value; return this; }
+    public ExecutionContext setLiqidClientFactory(final LiqidClientFactory value) { _liqidClientFactory = value; return this; }
     public ExecutionContext setLiqidInventory(final LiqidInventory value) { _liqidInventory = value; return this; }
     public ExecutionContext setLogger(final Logger value) { _logger = value; return this; }
+
+    ExecutionContext setWorkerLiqidClients(final PerThreadLiqidClients value) { _workerLiqidClients = value; return this; }
+
+    /**
+     * Retrieves the LiqidClient for the calling thread. A LiqidClient is not safe to share between threads,
+     * so while steps are performed on worker threads, each worker has a client of its own.
+     */
+    public LiqidClient getLiqidClient() throws LiqidException {
+        return (_workerLiqidClients != null) ? _workerLiqidClients.getLiqidClient() : _liqidClient;
+    }
+
+    public ExecutionContext setNodeDrained(
+        final String nodeName,
+        final boolean flag
+    ) {
+        if (flag) {
+            _drainedNodeNames.add(nodeName);
+        } else {
+            _drainedNodeNames.remove(nodeName);
+        }
+        return this;
+    }
 }
@@ -7,6 +7,10 @@ package com.liqid.k8s.plan;
 
 import com.bearsnake.k8sclient.K8SException;
 import com.bearsnake.klog.Logger;
+import com.liqid.k8s.layout.ConcurrentLiqidInventory;
+import com.liqid.k8s.layout.DeviceItem;
+import com.liqid.k8s.layout.InventorySnapshot;
+import com.liqid.k8s.layout.LiqidClientFactory;
 import com.liqid.k8s.layout.LiqidInventory;
 import com.liqid.k8s.exceptions.InternalErrorException;
 import com.bearsnake.k8sclient.K8SClient;
@@ -14,41 +18,236 @@ import com.liqid.k8s.exceptions.ProcessingException;
 import com.liqid.k8s.plan.actions.Action;
 import com.liqid.sdk.LiqidClient;
 import com.liqid.sdk.LiqidException;
+import com.liqid.sdk.PreDevice;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static com.liqid.k8s.Constants.PLAN_ATTACHMENT_CHECK_MAX_PERCENT;
+import static com.liqid.k8s.Constants.PLAN_DRAIN_LOOKAHEAD;
+import static com.liqid.k8s.Constants.PLAN_EXECUTION_CONCURRENCY;
 
 public class Plan {
 
     private final ArrayList<Action> _actions = new ArrayList<>();
+    private boolean _optimized = false;
+    private int _executionConcurrency = PLAN_EXECUTION_CONCURRENCY;
+    private int _drainLookahead = PLAN_DRAIN_LOOKAHEAD;
+    private ErrorPolicy _errorPolicy = ErrorPolicy.FAIL_FAST;
+    private LiqidClientFactory _liqidClientFactory = null;
+    private int _inventoryConcurrency = 1;
 
-    public Plan addAction(final Action action) { _actions.add(action); return this; }
+    public Plan addAction(final Action action) { _actions.add(action); _optimized = false; return this; }
+    public Plan setDrainLookahead(final int value) { _drainLookahead = value; return this; }
+    public Plan setErrorPolicy(final ErrorPolicy value) { _errorPolicy = value; return this; }
+    public Plan setExecutionConcurrency(final int value) { _executionConcurrency = value; return this; }
+    public Plan setInventoryConcurrency(final int value) { _inventoryConcurrency = value; return this; }
+    public Plan setLiqidClientFactory(final LiqidClientFactory value) { _liqidClientFactory = value; return this; }
 
+    /**
+     * Executes the plan against a freshly-loaded Liqid inventory
+     */
     public void execute(
         final K8SClient k8SClient,
         final LiqidClient liqidClient,
         final Logger logger
     ) throws InternalErrorException, K8SException, LiqidException, ProcessingException {
+        execute(k8SClient, liqidClient, null, null, logger);
+    }
+
+    /**
+     * Executes the plan, reusing the inventory from which the plan was developed if the Liqid configuration
+     * has not changed since then (as determined by comparing the given fingerprint with a fresh one).
+     * The planning inventory is not updated; execution works on a copy of it.
+     * If the execution concurrency is more than one, steps which do not depend upon each other are performed
+     * at the same time; if the drain lookahead is more than zero, nodes are drained ahead of the steps which need
+     * them, while earlier steps are still running (see PlanExecutor).
+     * If a LiqidClientFactory is set, the inventory is checked or reloaded with the inventory concurrency,
+     * and steps are performed with the execution concurrency - each thread using a client of its own.
+     * Without one, steps are performed one at a time, as they share the given client.
+     * @param k8SClient K8SClient object
+     * @param liqidClient LiqidClient object
+     * @param planningInventory inventory from which the plan was developed - may be null
+     * @param planningFingerprint fingerprint taken no later than the planning inventory was loaded
+     *                            (see InventorySnapshot.createFingerprint()) - may be null
+     * @param logger Logger object
+     */
+    public void execute(
+        final K8SClient k8SClient,
+        final LiqidClient liqidClient,
+        final LiqidInventory planningInventory,
+        final String planningFingerprint,
+        final Logger logger
+    ) throws InternalErrorException, K8SException, LiqidException, ProcessingException {
+        optimize();
         for (var action : _actions) {
             action.checkParameters();
         }
 
+        var inventory = getExecutionInventory(liqidClient, planningInventory, planningFingerprint, _actions, logger);
+
         var context = new ExecutionContext().setK8SClient(k8SClient)
                                             .setLiqidClient(liqidClient)
-                                            .setLiqidInventory(LiqidInventory.createLiqidInventory(liqidClient))
+                                            .setLiqidClientFactory(_liqidClientFactory)
+                                            .setLiqidInventory(inventory)
                                             .setLogger(logger);
 
-        for (int sx = 0; sx < _actions.size(); ++sx) {
-            var step = _actions.get(sx);
-            System.out.printf("---| Executing Step %d: %s...\n", sx + 1, step.toString());
-            step.perform(context);
+        try {
+            new PlanExecutor(_actions).setConcurrency(_executionConcurrency)
+                                      .setDrainLookahead(_drainLookahead)
+                                      .setErrorPolicy(_errorPolicy)
+                                      .execute(context);
+        } finally {
+            // a failure inside a drain window leaves the node cordoned - put it back
+            for (var nodeName : context.getDrainedNodeNames()) {
+                try {
+                    System.out.printf("Uncordoning node %s...\n", nodeName);
+                    k8SClient.uncordonNode(nodeName);
+                } catch (K8SException kex) {
+                    logger.catching(kex);
+                    System.err.printf("ERROR:Could not un-cordon Kubernetes node %s\n", nodeName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Produces the inventory for execution - a copy of the planning inventory if it is still current,
+     * else a freshly-loaded inventory. For concurrent execution, this is a ConcurrentLiqidInventory.
+     * The fingerprint does not show which machine each device is attached to (unless the director reports
+     * connection history), so we also re-fetch the devices of every machine which the actions touch,
+     * or which holds a device that the actions touch - unless that is most of the machines,
+     * in which case a fresh load costs the director little more, so we just do that.
+     */
+    LiqidInventory getExecutionInventory(
+        final LiqidClient liqidClient,
+        final LiqidInventory planningInventory,
+        final String planningFingerprint,
+        final Collection<Action> actions,
+        final Logger logger
+    ) throws LiqidException {
+        LiqidInventory inventory = null;
+        if ((planningInventory != null) && (planningFingerprint != null)) {
+            var fingerprint = InventorySnapshot.createFingerprint(liqidClient);
+            var machineIds = getAffectedMachineIds(planningInventory, actions);
+            if (!fingerprint.equals(planningFingerprint)) {
+                logger.trace("Liqid configuration changed since planning - reloading inventory");
+            } else if (machineIds.size() * 100 > planningInventory.getMachines().size() * PLAN_ATTACHMENT_CHECK_MAX_PERCENT) {
+                logger.trace("Plan affects %d machines - reloading inventory", machineIds.size());
+            } else if (!attachmentsAreCurrent(liqidClient, planningInventory, machineIds)) {
+                logger.trace("Device attachments changed since planning - reloading inventory");
+            } else {
+                inventory = planningInventory;
+            }
+        }
+
+        if (inventory == null) {
+            inventory = usesClientFactory()
+                        ? LiqidInventory.createLiqidInventory(_liqidClientFactory, _inventoryConcurrency)
+                        : LiqidInventory.createLiqidInventory(liqidClient);
+        }
+
+        // The planning inventory is not updated by execution - we work on an inventory which shares its content
+        if (_executionConcurrency > 1) {
+            return new ConcurrentLiqidInventory(inventory);
+        }
+        return (inventory == planningInventory) ? inventory.copy() : inventory;
+    }
+
+    private boolean usesClientFactory() {
+        return (_liqidClientFactory != null) && (_inventoryConcurrency > 1);
+    }
+
+    /**
+     * Identifies the existing machines which the given actions touch, or which hold a device that they touch
+     */
+    private static TreeSet<Integer> getAffectedMachineIds(
+        final LiqidInventory inventory,
+        final Collection<Action> actions
+    ) {
+        var machineIds = new TreeSet<Integer>();
+        for (var action : actions) {
+            var resources = action.getResources();
+            if (resources != null) {
+                for (var machineName : resources.getMachineNames()) {
+                    // machines which do not exist yet are created by the plan
+                    var machineId = inventory.getMachineId(machineName);
+                    if (machineId != null) {
+                        machineIds.add(machineId);
+                    }
+                }
+                for (var deviceName : resources.getDeviceNames()) {
+                    var devItem = inventory.getDeviceItem(deviceName);
+                    if ((devItem != null) && (devItem.getMachineId() != null)) {
+                        machineIds.add(devItem.getMachineId());
+                    }
+                }
+            }
         }
+        return machineIds;
+    }
+
+    /**
+     * Checks that the given machines still have the devices which the inventory says they have
+     */
+    private boolean attachmentsAreCurrent(
+        final LiqidClient liqidClient,
+        final LiqidInventory inventory,
+        final Collection<Integer> machineIds
+    ) throws LiqidException {
+        var machines = machineIds.stream().map(inventory::getMachine).toList();
+        Map<Integer, Collection<PreDevice>> actualDevices;
+        if (usesClientFactory()) {
+            actualDevices = LiqidInventory.getMachineDevices(_liqidClientFactory, _inventoryConcurrency, machines);
+        } else {
+            actualDevices = new HashMap<>();
+            for (var machine : machines) {
+                actualDevices.put(machine.getMachineId(),
+                                  liqidClient.getPreDevices(null, machine.getGroupId(), machine.getMachineId()));
+            }
+        }
+
+        for (var machineId : machineIds) {
+            var expected = inventory.getDeviceItemsForMachine(machineId)
+                                    .stream()
+                                    .map(DeviceItem::getDeviceName)
+                                    .collect(Collectors.toCollection(TreeSet::new));
+            var actual = actualDevices.get(machineId)
+                                      .stream()
+                                      .map(PreDevice::getDeviceName)
+                                      .collect(Collectors.toCollection(TreeSet::new));
+            if (!expected.equals(actual)) {
+                return false;
+            }
+        }
+
+        return true;
     }
 
     public Collection<Action> getActions() { return new LinkedList<>(_actions); }
 
+    /**
+     * Fuses the actions which touch the same machine, and drops those which do nothing (see PlanOptimizer),
+     * then drains each node at most once (see DrainScheduler).
+     * This is done automatically before the plan is shown or executed.
+     */
+    public Plan optimize() {
+        if (!_optimized) {
+            var actions = DrainScheduler.schedule(PlanOptimizer.optimize(_actions));
+            _actions.clear();
+            _actions.addAll(actions);
+            _optimized = true;
+        }
+        return this;
+    }
+
     public void show() {
+        optimize();
         System.out.println();
         System.out.println("Plan----------------------------------");
         if (_actions.isEmpty()) {
@@ -59,6 +258,19 @@ public class Plan {
             }
         }
         System.out.println("--------------------------------------");
+
+        var downtimes = DrainScheduler.estimateDowntime(_actions);
+        if (!downtimes.isEmpty()) {
+            System.out.println();
+            System.out.println("Node downtime-------------------------");
+            for (var entry : downtimes.entrySet()) {
+                System.out.printf("| %s: %s, about %d seconds\n",
+                                  entry.getKey(),
+                                  String.join(", ", entry.getValue().getSpans()),
+                                  entry.getValue().getSeconds());
+            }
+            System.out.println("--------------------------------------");
+        }
     }
 
     @Override
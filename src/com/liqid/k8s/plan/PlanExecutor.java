@@ -0,0 +1,416 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.plan;
+
+import com.bearsnake.k8sclient.K8SException;
+import com.liqid.k8s.exceptions.InternalErrorException;
+import com.liqid.k8s.exceptions.ProcessingException;
+import com.liqid.k8s.layout.PerThreadLiqidClients;
+import com.liqid.k8s.plan.actions.Action;
+import com.liqid.sdk.LiqidException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Performs the steps of a plan, running steps which do not depend upon each other (see DependencyGraph)
+ * at the same time. Steps are started in plan order as they become ready, so with a concurrency of one
+ * and no drain lookahead, the plan runs exactly as written (and it runs on the calling thread).
+ * <p>
+ * With a drain lookahead, we cordon and evict the nodes of upcoming draining steps (see Action.getDrainedNodeName())
+ * while earlier steps are still reprogramming the fabric, so that a node's drain overlaps other work rather than
+ * following it. Such a step starts once its node is drained, does not drain the node again, and un-cordons it
+ * when done. The cordon which opens a drain window (see DrainScheduler and Action.getCordonedNodeName()) is
+ * drained ahead in the same way - it then has nothing left to do, and the node stays drained for the window.
+ * A node is only drained ahead once every earlier step which touches it is done, and at most
+ * lookahead nodes are drained ahead of their steps at any one time.
+ * <p>
+ * Steps performed on worker threads each use a LiqidClient belonging to the thread, from the context's
+ * LiqidClientFactory - all of which are released once execution is done. Without a factory, steps run
+ * one at a time, so that they can take turns with the context's single client.
+ */
+class PlanExecutor {
+
+    private enum DrainState {
+        NONE,
+        DRAINING,
+        DRAINED,
+    }
+
+    // something done in the background - a step, or the drain of a node ahead of its step - and how it went
+    // (failure is null if it succeeded). Only the coordinating thread updates our status arrays, from these.
+    private record Completion(int step, boolean drain, Exception failure) {}
+
+    private final List<Action> _steps;
+    private final DependencyGraph _graph;
+    private final StepStatus[] _statuses;
+    private final Exception[] _failures;
+    private final DrainState[] _drainStates;
+    private final Integer[] _nodePredecessors;
+    private int _concurrency = 1;
+    private int _drainLookahead = 0;
+    private ErrorPolicy _errorPolicy = ErrorPolicy.FAIL_FAST;
+
+    PlanExecutor(
+        final List<Action> steps
+    ) {
+        _steps = new ArrayList<>(steps);
+        _graph = new DependencyGraph(_steps);
+        _statuses = new StepStatus[_steps.size()];
+        _failures = new Exception[_steps.size()];
+        Arrays.fill(_statuses, StepStatus.PENDING);
+        _drainStates = new DrainState[_steps.size()];
+        Arrays.fill(_drainStates, DrainState.NONE);
+
+        // for each draining step, the last earlier step which touches its node (or might touch anything)
+        _nodePredecessors = new Integer[_steps.size()];
+        for (int sx = 0; sx < _steps.size(); ++sx) {
+            var nodeName = getDrainAheadNodeName(sx);
+            if (nodeName != null) {
+                var key = "node:" + nodeName;
+                for (int px = sx - 1; px >= 0; --px) {
+                    var resources = _steps.get(px).getResources();
+                    if ((resources == null) || resources.getUpdatedKeys().contains(key)) {
+                        _nodePredecessors[sx] = px;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    PlanExecutor setConcurrency(final int value) { _concurrency = Math.max(1, value); return this; }
+    PlanExecutor setDrainLookahead(final int value) { _drainLookahead = Math.max(0, value); return this; }
+    PlanExecutor setErrorPolicy(final ErrorPolicy value) { _errorPolicy = value; return this; }
+
+    boolean dependsOn(final int laterStep, final int earlierStep) { return _graph.dependsOn(laterStep, earlierStep); }
+    StepStatus getStatus(final int step) { return _statuses[step]; }
+
+    /**
+     * Performs the steps, according to our concurrency and error policy.
+     * If any step fails, then once no steps are running, we show the status of every step and throw -
+     * for FAIL_FAST, the exception thrown by the first step to fail; otherwise, a ProcessingException.
+     */
+    void execute(
+        final ExecutionContext context
+    ) throws InternalErrorException, K8SException, LiqidException, ProcessingException {
+        var fn = "execute";
+        context.getLogger().trace("Entering %s concurrency=%d drainLookahead=%d errorPolicy=%s",
+                                  fn, _concurrency, _drainLookahead, _errorPolicy);
+
+        var counts = new int[_steps.size()];
+        for (int sx = 0; sx < _steps.size(); ++sx) {
+            counts[sx] = _graph.getPredecessors(sx).size();
+        }
+
+        var ready = new TreeSet<Integer>();
+        var drainable = new TreeSet<Integer>();
+        for (int sx = 0; sx < _steps.size(); ++sx) {
+            if (counts[sx] == 0) {
+                ready.add(sx);
+            }
+            if (getDrainAheadNodeName(sx) != null) {
+                drainable.add(sx);
+            }
+        }
+
+        var concurrency = (context.getLiqidClientFactory() != null) ? _concurrency : 1;
+        var abandoned = new boolean[_steps.size()];
+        var completed = new LinkedBlockingQueue<Completion>();
+        ExecutorService pool = ((concurrency > 1) || (_drainLookahead > 0)) ? Executors.newFixedThreadPool(concurrency) : null;
+        PerThreadLiqidClients workerClients = null;
+        if ((pool != null) && (context.getLiqidClientFactory() != null)) {
+            workerClients = new PerThreadLiqidClients(context.getLiqidClientFactory());
+            context.setWorkerLiqidClients(workerClients);
+        }
+        ExecutorService drainPool = (_drainLookahead > 0) ? Executors.newFixedThreadPool(_drainLookahead) : null;
+        Integer firstFailure = null;
+        var running = 0;
+        var draining = 0;
+        var drainedAhead = 0;
+        try {
+            while (true) {
+                var stopping = (firstFailure != null) && (_errorPolicy == ErrorPolicy.FAIL_FAST);
+                var iter = ready.iterator();
+                while (!stopping && iter.hasNext() && (running < concurrency)) {
+                    var sx = iter.next();
+                    if (_statuses[sx] != StepStatus.PENDING) {
+                        // its node could not be drained ahead of it
+                        iter.remove();
+                        continue;
+                    } else if (_drainStates[sx] == DrainState.DRAINING) {
+                        continue;
+                    }
+
+                    iter.remove();
+                    drainable.remove(sx);
+                    var predrained = (_drainStates[sx] == DrainState.DRAINED);
+                    if (predrained) {
+                        drainedAhead--;
+                    }
+                    _statuses[sx] = StepStatus.RUNNING;
+                    if (predrained && (_steps.get(sx).getCordonedNodeName() != null)) {
+                        // the node was drained ahead of the cordon, which leaves the cordon nothing to do
+                        System.out.printf("---| Step %d: node %s already drained\n", sx + 1, _steps.get(sx).getCordonedNodeName());
+                        completed.add(new Completion(sx, false, null));
+                        running++;
+                        continue;
+                    }
+
+                    System.out.printf("---| Executing Step %d: %s...\n", sx + 1, _steps.get(sx).toString());
+                    if (pool == null) {
+                        perform(sx, predrained, context, completed);
+                    } else {
+                        pool.submit(() -> perform(sx, predrained, context, completed));
+                    }
+                    running++;
+                }
+
+                // drain nodes ahead of their steps, in plan order
+                var dIter = drainable.iterator();
+                while (!stopping && (drainPool != null) && dIter.hasNext() && (drainedAhead < _drainLookahead)) {
+                    var sx = dIter.next();
+                    var nodePredecessor = _nodePredecessors[sx];
+                    if (((nodePredecessor == null) || (_statuses[nodePredecessor] == StepStatus.SUCCEEDED))
+                        && !context.isNodeDrained(getDrainAheadNodeName(sx))) {
+                        dIter.remove();
+                        _drainStates[sx] = DrainState.DRAINING;
+                        drainPool.submit(() -> drain(sx, context, completed));
+                        draining++;
+                        drainedAhead++;
+                    }
+                }
+
+                if ((running == 0) && (draining == 0)) {
+                    break;
+                }
+
+                var completion = completed.take();
+                var sx = completion.step();
+                if (completion.failure() != null) {
+                    _failures[sx] = completion.failure();
+                    _statuses[sx] = StepStatus.FAILED;
+                } else if (!completion.drain()) {
+                    _statuses[sx] = StepStatus.SUCCEEDED;
+                }
+
+                if (completion.drain()) {
+                    draining--;
+                    if (_statuses[sx] == StepStatus.FAILED) {
+                        _drainStates[sx] = DrainState.NONE;
+                        drainedAhead--;
+                    } else if (abandoned[sx]) {
+                        uncordon(getDrainAheadNodeName(sx), context);
+                        _drainStates[sx] = DrainState.NONE;
+                        drainedAhead--;
+                    } else {
+                        _drainStates[sx] = DrainState.DRAINED;
+                    }
+                } else {
+                    running--;
+                }
+
+                if (_statuses[sx] == StepStatus.FAILED) {
+                    if (firstFailure == null) {
+                        firstFailure = sx;
+                    }
+
+                    // nothing which depends upon the failed step will happen, so none of it needs a drained node
+                    for (var dx : _graph.getDescendants(List.of(sx))) {
+                        abandoned[dx] = true;
+                        drainable.remove(dx);
+                        if (_drainStates[dx] == DrainState.DRAINED) {
+                            uncordon(getDrainAheadNodeName(dx), context);
+                            _drainStates[dx] = DrainState.NONE;
+                            drainedAhead--;
+                        }
+                    }
+                } else if (!completion.drain()) {
+                    if (pool != null) {
+                        System.out.printf("---| Step %d completed\n", sx + 1);
+                    }
+                    for (var successor : _graph.getSuccessors(sx)) {
+                        if (--counts[successor] == 0) {
+                            ready.add(successor);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            var pex = new ProcessingException("Interrupted while executing the plan");
+            context.getLogger().throwing(pex);
+            throw pex;
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+            if (drainPool != null) {
+                drainPool.shutdownNow();
+            }
+            if (workerClients != null) {
+                // the workers' clients may only be released once no worker is using them
+                awaitTermination(pool, context);
+                context.setWorkerLiqidClients(null);
+                workerClients.close();
+            }
+        }
+
+        for (int sx = 0; sx < _steps.size(); ++sx) {
+            if (_statuses[sx] == StepStatus.PENDING) {
+                // do not leave a node drained for a step which will not happen
+                if (_drainStates[sx] == DrainState.DRAINED) {
+                    uncordon(getDrainAheadNodeName(sx), context);
+                }
+                _statuses[sx] = StepStatus.SKIPPED;
+            }
+        }
+
+        if ((concurrency > 1) || (firstFailure != null)) {
+            showStatus();
+        }
+
+        if (firstFailure != null) {
+            if (_errorPolicy == ErrorPolicy.FAIL_FAST) {
+                rethrow(_failures[firstFailure], context);
+            }
+
+            var failed = Arrays.stream(_statuses).filter(status -> status == StepStatus.FAILED).count();
+            var pex = new ProcessingException(String.format("%d step(s) of the plan failed", failed));
+            context.getLogger().throwing(pex);
+            throw pex;
+        }
+
+        context.getLogger().trace("%s returning", fn);
+    }
+
+    // the node which may be drained ahead of a step - the node it drains, or the node which it leaves drained
+    private String getDrainAheadNodeName(
+        final int step
+    ) {
+        var action = _steps.get(step);
+        return (action.getDrainedNodeName() != null) ? action.getDrainedNodeName() : action.getCordonedNodeName();
+    }
+
+    /**
+     * Performs one step, and then tells the coordinating thread how it went.
+     * If we drained the step's node ahead of it, we un-cordon the node afterward.
+     */
+    private void perform(
+        final int step,
+        final boolean predrained,
+        final ExecutionContext context,
+        final LinkedBlockingQueue<Completion> completed
+    ) {
+        Exception failure = null;
+        try {
+            _steps.get(step).perform(context);
+        } catch (Exception ex) {
+            context.getLogger().catching(ex);
+            System.err.printf("ERROR:Step %d failed:%s\n", step + 1, ex.getMessage());
+            failure = ex;
+        } finally {
+            if (predrained) {
+                uncordon(_steps.get(step).getDrainedNodeName(), context);
+            }
+            completed.add(new Completion(step, false, failure));
+        }
+    }
+
+    /**
+     * Cordons and evicts the node of a step ahead of the step. If this fails, so does the step.
+     */
+    private void drain(
+        final int step,
+        final ExecutionContext context,
+        final LinkedBlockingQueue<Completion> completed
+    ) {
+        var nodeName = getDrainAheadNodeName(step);
+        var nodeCordoned = false;
+        Exception failure = null;
+        try {
+            System.out.printf("Cordoning node %s ahead of step %d...\n", nodeName, step + 1);
+            context.getK8SClient().cordonNode(nodeName);
+            nodeCordoned = true;
+            context.setNodeDrained(nodeName, true);
+            context.getK8SClient().evictPodsForNode(nodeName, true);
+        } catch (Exception ex) {
+            context.getLogger().catching(ex);
+            System.err.printf("ERROR:Step %d failed:%s\n", step + 1, ex.getMessage());
+            failure = ex;
+            if (nodeCordoned) {
+                uncordon(nodeName, context);
+            }
+        } finally {
+            completed.add(new Completion(step, true, failure));
+        }
+    }
+
+    private static void awaitTermination(
+        final ExecutorService pool,
+        final ExecutionContext context
+    ) {
+        try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            context.getLogger().catching(ex);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void uncordon(
+        final String nodeName,
+        final ExecutionContext context
+    ) {
+        try {
+            System.out.printf("Uncordoning node %s...\n", nodeName);
+            context.getK8SClient().uncordonNode(nodeName);
+            context.setNodeDrained(nodeName, false);
+        } catch (K8SException kex) {
+            // cannot fix this
+            context.getLogger().catching(kex);
+            System.err.printf("ERROR:Could not un-cordon Kubernetes node %s\n", nodeName);
+        }
+    }
+
+    private static void rethrow(
+        final Exception ex,
+        final ExecutionContext context
+    ) throws InternalErrorException, K8SException, LiqidException, ProcessingException {
+        context.getLogger().throwing(ex);
+        if (ex instanceof InternalErrorException iex) {
+            throw iex;
+        } else if (ex instanceof K8SException kex) {
+            throw kex;
+        } else if (ex instanceof LiqidException lex) {
+            throw lex;
+        } else if (ex instanceof ProcessingException pex) {
+            throw pex;
+        } else if (ex instanceof RuntimeException rex) {
+            throw rex;
+        }
+        throw new ProcessingException(ex.getMessage());
+    }
+
+    void showStatus() {
+        System.out.println();
+        System.out.println("Execution-----------------------------");
+        for (int sx = 0; sx < _steps.size(); ++sx) {
+            System.out.printf("| Step %d: %s", sx + 1, _statuses[sx]);
+            if (_failures[sx] != null) {
+                System.out.printf(" - %s", _failures[sx].getMessage());
+            }
+            System.out.println();
+        }
+        System.out.println("--------------------------------------");
+    }
+}
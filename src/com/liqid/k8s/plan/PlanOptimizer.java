@@ -0,0 +1,260 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.plan;
+
+import com.liqid.k8s.plan.actions.Action;
+import com.liqid.k8s.plan.actions.AnnotateNodeAction;
+import com.liqid.k8s.plan.actions.AssignToMachineAction;
+import com.liqid.k8s.plan.actions.CreateMachineAction;
+import com.liqid.k8s.plan.actions.EnableP2PForMachineAction;
+import com.liqid.k8s.plan.actions.FusedMachineAction;
+import com.liqid.k8s.plan.actions.NoOperationAction;
+import com.liqid.k8s.plan.actions.ReconfigureMachineAction;
+import com.liqid.k8s.plan.actions.RemoveFromMachineAction;
+import com.liqid.k8s.plan.actions.SetUserDescriptionAction;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.liqid.k8s.Constants.K8S_ANNOTATION_MACHINE_NAME;
+
+/**
+ * Rewrites a list of actions so that the steps which touch one machine (and its node) are done by a single
+ * FusedMachineAction - one fabric edit, and at most one drain of the node - and drops steps which do nothing.
+ * A machine-level step (create, assign, remove, reconfigure, enable P2P) is moved back to join an earlier step
+ * for the same machine, provided that nothing in between refers to the same machine, node, or any of its devices.
+ * User descriptions and node annotations are only fused with the step immediately before them, since they are
+ * sometimes deliberately placed after everything else. Nothing is moved past a step which might affect anything
+ * (see Action.getResources()).
+ */
+class PlanOptimizer {
+
+    // one or more actions which are to be performed at one point in the plan
+    private static class Run {
+
+        private final List<Action> _members = new LinkedList<>();
+        private final int _position;
+        private final String _machineName;
+        private String _nodeName;
+        private final Set<String> _deviceNamesToAdd = new HashSet<>();
+        private final Set<String> _deviceNamesToRemove = new HashSet<>();
+
+        private Run(
+            final int position,
+            final Action action,
+            final String machineName
+        ) {
+            _position = position;
+            _machineName = machineName;
+            join(action);
+        }
+
+        private boolean accepts(
+            final Action action
+        ) {
+            if (action instanceof AssignToMachineAction assign) {
+                return Collections.disjoint(assign.getDeviceNames(), _deviceNamesToRemove);
+            } else if (action instanceof ReconfigureMachineAction reconfig) {
+                return acceptsNode(reconfig.getNodeName())
+                       && Collections.disjoint(reconfig.getDeviceNamesToAdd(), _deviceNamesToRemove)
+                       && Collections.disjoint(reconfig.getDeviceNamesToRemove(), _deviceNamesToAdd);
+            } else if (action instanceof RemoveFromMachineAction remove) {
+                return acceptsNode(remove.getNodeName())
+                       && Collections.disjoint(remove.getDeviceNames(), _deviceNamesToAdd);
+            } else if (action instanceof EnableP2PForMachineAction) {
+                return true;
+            } else if (action instanceof SetUserDescriptionAction setDesc) {
+                return _deviceNamesToAdd.contains(setDesc.getDeviceName());
+            } else if (action instanceof AnnotateNodeAction annotate) {
+                // if we do not yet know the node, the annotations must tell us that it belongs to our machine
+                return (_nodeName != null)
+                       ? _nodeName.equals(annotate.getNodeName())
+                       : _machineName.equals(annotate.getAnnotations().get(K8S_ANNOTATION_MACHINE_NAME));
+            }
+            return false;
+        }
+
+        private boolean acceptsNode(
+            final String nodeName
+        ) {
+            return (nodeName == null) || (_nodeName == null) || _nodeName.equals(nodeName);
+        }
+
+        private void join(
+            final Action action
+        ) {
+            _members.add(action);
+            if (action instanceof AssignToMachineAction assign) {
+                _deviceNamesToAdd.addAll(assign.getDeviceNames());
+            } else if (action instanceof ReconfigureMachineAction reconfig) {
+                _deviceNamesToAdd.addAll(reconfig.getDeviceNamesToAdd());
+                _deviceNamesToRemove.addAll(reconfig.getDeviceNamesToRemove());
+                setNodeName(reconfig.getNodeName());
+            } else if (action instanceof RemoveFromMachineAction remove) {
+                _deviceNamesToRemove.addAll(remove.getDeviceNames());
+                setNodeName(remove.getNodeName());
+            } else if (action instanceof AnnotateNodeAction annotate) {
+                setNodeName(annotate.getNodeName());
+            }
+        }
+
+        private void setNodeName(
+            final String nodeName
+        ) {
+            if (nodeName != null) {
+                _nodeName = nodeName;
+            }
+        }
+
+        private Action toAction() {
+            if (_members.size() == 1) {
+                return _members.get(0);
+            }
+
+            var fused = new FusedMachineAction().setMachineName(_machineName).setNodeName(_nodeName);
+            for (var action : _members) {
+                if (action instanceof CreateMachineAction create) {
+                    fused.setCreateMachine(true).setGroupName(create.getGroupName());
+                } else if (action instanceof AssignToMachineAction assign) {
+                    fused.addDeviceNamesToAdd(assign.getDeviceNames());
+                } else if (action instanceof ReconfigureMachineAction reconfig) {
+                    fused.addDeviceNamesToAdd(reconfig.getDeviceNamesToAdd())
+                         .addDeviceNamesToRemove(reconfig.getDeviceNamesToRemove());
+                    if (reconfig.getNodeName() != null) {
+                        fused.setDrainNode(true);
+                    }
+                } else if (action instanceof RemoveFromMachineAction remove) {
+                    fused.addDeviceNamesToRemove(remove.getDeviceNames());
+                    if (remove.getNodeName() != null) {
+                        fused.setDrainNode(true);
+                    }
+                } else if (action instanceof EnableP2PForMachineAction) {
+                    fused.setEnableP2P(true);
+                } else if (action instanceof SetUserDescriptionAction setDesc) {
+                    fused.addDescription(setDesc.getDeviceName(), setDesc.getDescription());
+                } else if (action instanceof AnnotateNodeAction annotate) {
+                    annotate.getAnnotations().forEach(fused::addAnnotation);
+                }
+            }
+            return fused;
+        }
+    }
+
+    private PlanOptimizer() {}
+
+    /**
+     * Produces the optimized equivalent of the given actions
+     * @param actions the actions, in the order in which they would be performed
+     * @return a new list of actions
+     */
+    static List<Action> optimize(
+        final Collection<Action> actions
+    ) {
+        var runs = new ArrayList<Run>();
+        var openRuns = new HashMap<String, Run>();
+
+        // the position of the last run to refer to each machine, node, or device
+        var lastPositions = new HashMap<String, Integer>();
+
+        for (var action : actions) {
+            if (isNoOperation(action)) {
+                continue;
+            }
+
+            var resources = action.getResources();
+            if (resources == null) {
+                // this might affect anything - nothing may be moved past it
+                openRuns.clear();
+                runs.add(new Run(runs.size(), action, null));
+                continue;
+            }
+
+            var footprint = new HashSet<>(resources.getUpdatedKeys());
+            footprint.addAll(resources.getReadKeys());
+            var machineName = getMachineName(action);
+            Run target = null;
+            if ((machineName != null) && !(action instanceof CreateMachineAction)) {
+                var run = openRuns.get(machineName);
+                if ((run != null) && isUntouchedAfter(footprint, run._position, lastPositions) && run.accepts(action)) {
+                    target = run;
+                }
+            } else if ((machineName == null) && !runs.isEmpty()) {
+                var run = runs.get(runs.size() - 1);
+                if ((run._machineName != null) && (openRuns.get(run._machineName) == run) && run.accepts(action)) {
+                    target = run;
+                }
+            }
+
+            if (target != null) {
+                target.join(action);
+            } else {
+                target = new Run(runs.size(), action, machineName);
+                runs.add(target);
+                if (machineName != null) {
+                    openRuns.put(machineName, target);
+                }
+            }
+
+            // Whatever now comes after this action must not be moved back past it
+            for (var key : footprint) {
+                lastPositions.merge(key, target._position, Math::max);
+            }
+        }
+
+        var result = new LinkedList<Action>();
+        runs.forEach(run -> result.add(run.toAction()));
+        return result;
+    }
+
+    private static boolean isUntouchedAfter(
+        final Collection<String> footprint,
+        final int position,
+        final Map<String, Integer> lastPositions
+    ) {
+        return footprint.stream().allMatch(key -> lastPositions.getOrDefault(key, position) <= position);
+    }
+
+    private static String getMachineName(
+        final Action action
+    ) {
+        if (action instanceof CreateMachineAction create) {
+            return create.getMachineName();
+        } else if (action instanceof AssignToMachineAction assign) {
+            return assign.getMachineName();
+        } else if (action instanceof ReconfigureMachineAction reconfig) {
+            return reconfig.getMachineName();
+        } else if (action instanceof RemoveFromMachineAction remove) {
+            return remove.getMachineName();
+        } else if (action instanceof EnableP2PForMachineAction enable) {
+            return enable.getMachineName();
+        }
+        return null;
+    }
+
+    private static boolean isNoOperation(
+        final Action action
+    ) {
+        if (action instanceof NoOperationAction) {
+            return true;
+        } else if (action instanceof AssignToMachineAction assign) {
+            return assign.getDeviceNames().isEmpty();
+        } else if (action instanceof ReconfigureMachineAction reconfig) {
+            return reconfig.getDeviceNamesToAdd().isEmpty() && reconfig.getDeviceNamesToRemove().isEmpty();
+        } else if (action instanceof RemoveFromMachineAction remove) {
+            return remove.getDeviceNames().isEmpty();
+        } else if (action instanceof AnnotateNodeAction annotate) {
+            return annotate.getAnnotations().isEmpty();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.plan;
+
+/**
+ * The state of a step of a plan, during and after execution
+ */
+public enum StepStatus {
+    PENDING,
+    RUNNING,
+    SUCCEEDED,
+    FAILED,
+    SKIPPED,    // not performed, because an earlier step failed
+}
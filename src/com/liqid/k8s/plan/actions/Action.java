@@ -37,6 +37,29 @@ public abstract class Action {
 
     public abstract void checkParameters() throws InternalErrorException;
 
+    /**
+     * Describes what this action reads and updates, so that we can tell which actions depend upon which others.
+     * @return the resources, or null (the default) if the action might affect anything at all -
+     * in which case it is performed after everything before it, and before everything after it.
+     */
+    public ActionResources getResources() { return null; }
+
+    /**
+     * Identifies the Kubernetes node which this action cordons and drains (and then un-cordons) while it works.
+     * An action does not drain a node which has already been drained by a preceding CordonNodeAction
+     * (see ExecutionContext.isNodeDrained()).
+     * @return the node name, or null (the default) if the action drains no node
+     */
+    public String getDrainedNodeName() { return null; }
+
+    /**
+     * Identifies the Kubernetes node which this action cordons and drains, and leaves that way for the actions
+     * which follow it (see CordonNodeAction). If the node has been drained ahead of the action (see PlanExecutor),
+     * the action has nothing left to do.
+     * @return the node name, or null (the default) if the action leaves no node drained
+     */
+    public String getCordonedNodeName() { return null; }
+
     /**
      * Helpful wrapper to create a full annotation key
      */
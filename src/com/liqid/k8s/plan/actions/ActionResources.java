@@ -0,0 +1,76 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.plan.actions;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Describes the things (devices, groups, machines, and nodes) which an action reads or updates.
+ * Two actions which share nothing that either of them updates may be performed in either order,
+ * or at the same time.
+ */
+public class ActionResources {
+
+    private final Set<String> _readKeys = new HashSet<>();
+    private final Set<String> _updatedKeys = new HashSet<>();
+
+    public ActionResources addDevice(final String name) { _updatedKeys.add("device:" + name); return this; }
+    public ActionResources addGroup(final String name) { _updatedKeys.add("group:" + name); return this; }
+    public ActionResources addMachine(final String name) { _updatedKeys.add("machine:" + name); return this; }
+    public ActionResources addNode(final String name) { if (name != null) { _updatedKeys.add("node:" + name); } return this; }
+    public ActionResources readGroup(final String name) { _readKeys.add("group:" + name); return this; }
+
+    /**
+     * Reads everything which another set of resources reads or updates
+     */
+    public ActionResources addReads(
+        final ActionResources other
+    ) {
+        _readKeys.addAll(other._readKeys);
+        _readKeys.addAll(other._updatedKeys);
+        return this;
+    }
+
+    public ActionResources addDevices(
+        final Collection<String> names
+    ) {
+        names.forEach(this::addDevice);
+        return this;
+    }
+
+    /**
+     * Produces keys for everything which is read but not updated
+     */
+    public Set<String> getReadKeys() {
+        var result = new HashSet<>(_readKeys);
+        result.removeAll(_updatedKeys);
+        return result;
+    }
+
+    public Set<String> getUpdatedKeys() { return Collections.unmodifiableSet(_updatedKeys); }
+
+    public Set<String> getDeviceNames() { return getNames("device:"); }
+    public Set<String> getMachineNames() { return getNames("machine:"); }
+
+    // Produces the names of everything of one kind which is read or updated
+    private Set<String> getNames(
+        final String prefix
+    ) {
+        var result = new HashSet<String>();
+        for (var keys : List.of(_readKeys, _updatedKeys)) {
+            for (var key : keys) {
+                if (key.startsWith(prefix)) {
+                    result.add(key.substring(prefix.length()));
+                }
+            }
+        }
+        return result;
+    }
+}
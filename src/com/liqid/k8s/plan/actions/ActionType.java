@@ -10,12 +10,14 @@ public enum ActionType {
     ASSIGN_RESOURCES_TO_GROUP,
     ASSIGN_RESOURCES_TO_MACHINE,
     CLEAR_CONFIGURATION,
+    CORDON_NODE,
     CREATE_GROUP,
     CREATE_LINKAGE,
     CREATE_MACHINE,
     DELETE_GROUP,
     DELETE_MACHINE,
     ENABLE_P2P_FOR_MACHINE,
+    FUSED_MACHINE,
     NO_OPERATION,
     RECONFIGURE_MACHINE,
     REMOVE_ALL_ANNOTATIONS,
@@ -24,4 +26,5 @@ public enum ActionType {
     REMOVE_RESOURCES_FROM_GROUP,
     REMOVE_RESOURCES_FROM_MACHINE,
     SET_USER_DESCRIPTION,
+    UNCORDON_NODE,
 }
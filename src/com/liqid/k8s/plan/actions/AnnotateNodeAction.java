@@ -39,6 +39,11 @@ public class AnnotateNodeAction extends Action {
         checkForNull("NodeName", _nodeName);
     }
 
+    @Override
+    public ActionResources getResources() {
+        return new ActionResources().addNode(_nodeName);
+    }
+
     @Override
     public void perform(
         final ExecutionContext context
@@ -35,6 +35,11 @@ public class AssignToMachineAction extends Action {
         checkForNull("DeviceNames", _deviceNames);
     }
 
+    @Override
+    public ActionResources getResources() {
+        return new ActionResources().addMachine(_machineName).addDevices(_deviceNames);
+    }
+
     @Override
     public void perform(
         final ExecutionContext context
@@ -0,0 +1,72 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.plan.actions;
+
+import com.bearsnake.k8sclient.K8SException;
+import com.liqid.k8s.exceptions.InternalErrorException;
+import com.liqid.k8s.exceptions.ProcessingException;
+import com.liqid.k8s.plan.ExecutionContext;
+
+/**
+ * Cordons a Kubernetes node and evicts its pods, leaving it that way for the actions which follow
+ * (they do not drain the node again) until an UncordonNodeAction - see DrainScheduler.
+ * The awaited resources are those of the actions which need the node drained; we read them,
+ * so that the cordon does not happen until those actions are able to proceed.
+ */
+public class CordonNodeAction extends Action {
+
+    private String _nodeName;
+    private ActionResources _awaitedResources = new ActionResources();
+
+    public CordonNodeAction() {
+        super(ActionType.CORDON_NODE);
+    }
+
+    public CordonNodeAction setAwaitedResources(final ActionResources value) {_awaitedResources = value; return this; }
+    public CordonNodeAction setNodeName(final String value) {_nodeName = value; return this; }
+
+    public String getNodeName() { return _nodeName; }
+
+    @Override
+    public void checkParameters() throws InternalErrorException {
+        checkForNull("NodeName", _nodeName);
+    }
+
+    @Override
+    public String getCordonedNodeName() { return _nodeName; }
+
+    @Override
+    public ActionResources getResources() {
+        return new ActionResources().addReads(_awaitedResources).addNode(_nodeName);
+    }
+
+    @Override
+    public void perform(
+        final ExecutionContext context
+    ) throws ProcessingException {
+        var fn = this.getClass().getName() + ":perform";
+        context.getLogger().trace("Entering %s", fn);
+
+        try {
+            System.out.printf("Cordoning node %s...\n", _nodeName);
+            context.getK8SClient().cordonNode(_nodeName);
+            context.setNodeDrained(_nodeName, true);
+            context.getK8SClient().evictPodsForNode(_nodeName, true);
+        } catch (K8SException kex) {
+            context.getLogger().catching(kex);
+            var pex = new ProcessingException(kex);
+            context.getLogger().throwing(pex);
+            throw pex;
+        }
+
+        context.getLogger().trace("%s returning", fn);
+    }
+
+    @Override
+    public String toString() {
+        return "Cordon and drain Kubernetes node " + _nodeName;
+    }
+}
@@ -27,6 +27,11 @@ public class CreateGroupAction extends Action {
         checkForNull("GroupName", _groupName);
     }
 
+    @Override
+    public ActionResources getResources() {
+        return new ActionResources().addGroup(_groupName);
+    }
+
     @Override
     public void perform(
         final ExecutionContext context
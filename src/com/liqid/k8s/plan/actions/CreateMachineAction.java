@@ -32,6 +32,11 @@ public class CreateMachineAction extends Action {
         checkForNull("MachineName", _machineName);
     }
 
+    @Override
+    public ActionResources getResources() {
+        return new ActionResources().readGroup(_groupName).addMachine(_machineName);
+    }
+
     @Override
     public void perform(
         final ExecutionContext context
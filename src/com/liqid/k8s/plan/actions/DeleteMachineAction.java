@@ -13,7 +13,8 @@ import com.liqid.sdk.LiqidException;
 
 /**
  * Deletes a machine with the specified name, as part of a specified group.
- * If a node name is specified, we cordon/uncordon the node as part of this process.
+ * If a node name is specified, we cordon/uncordon the node as part of this process
+ * (unless a preceding CordonNodeAction has already done so).
  */
 public class DeleteMachineAction extends Action {
 
@@ -32,6 +33,9 @@ public class DeleteMachineAction extends Action {
         checkForNull("MachineName", _machineName);
     }
 
+    @Override
+    public String getDrainedNodeName() { return _nodeName; }
+
     @Override
     public void perform(
         final ExecutionContext context
@@ -51,7 +55,7 @@ public class DeleteMachineAction extends Action {
                 return;
             }
 
-            if (_nodeName != null) {
+            if ((_nodeName != null) && !context.isNodeDrained(_nodeName)) {
                 System.out.printf("Cordoning node %s...\n", _nodeName);
                 context.getK8SClient().cordonNode(_nodeName);
                 nodeCordoned = true;
@@ -25,6 +25,11 @@ public class EnableP2PForMachineAction extends Action {
         checkForNull("MachineName", _machineName);
     }
 
+    @Override
+    public ActionResources getResources() {
+        return new ActionResources().addMachine(_machineName);
+    }
+
     @Override
     public void perform(
         final ExecutionContext context
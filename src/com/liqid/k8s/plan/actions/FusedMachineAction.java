@@ -0,0 +1,183 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.plan.actions;
+
+import com.bearsnake.k8sclient.K8SException;
+import com.liqid.k8s.exceptions.InternalErrorException;
+import com.liqid.k8s.exceptions.ProcessingException;
+import com.liqid.k8s.plan.ExecutionContext;
+import com.liqid.sdk.LiqidClient;
+import com.liqid.sdk.LiqidException;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Does everything which a number of separate actions would do to one machine (and its node), in one go -
+ * see PlanOptimizer. In order, we:
+ *   create the machine (if so required)
+ *   cordon and drain the node (if so required)
+ *   add and remove devices in a single fabric edit
+ *   un-cordon the node
+ *   enable P2P for the machine
+ *   set user descriptions for devices
+ *   update annotations for the node
+ */
+public class FusedMachineAction extends Action {
+
+    private String _groupName;
+    private String _machineName;
+    private String _nodeName;
+    private boolean _createMachine = false;
+    private boolean _drainNode = false;
+    private boolean _enableP2P = false;
+    private TreeSet<String> _deviceNamesToAdd = new TreeSet<>();
+    private TreeSet<String> _deviceNamesToRemove = new TreeSet<>();
+    private final Map<String, String> _descriptions = new LinkedHashMap<>();
+    private final Map<String, String> _annotations = new LinkedHashMap<>();
+
+    public FusedMachineAction() {
+        super(ActionType.FUSED_MACHINE);
+    }
+
+    public FusedMachineAction addAnnotation(final String keySuffix, final String value) { _annotations.put(keySuffix, value); return this; }
+    public FusedMachineAction addDescription(final String deviceName, final String value) { _descriptions.put(deviceName, value); return this; }
+    public FusedMachineAction addDeviceNamesToAdd(final Collection<String> list) { _deviceNamesToAdd.addAll(list); return this; }
+    public FusedMachineAction addDeviceNamesToRemove(final Collection<String> list) { _deviceNamesToRemove.addAll(list); return this; }
+    public FusedMachineAction setCreateMachine(final boolean value) { _createMachine = value; return this; }
+    public FusedMachineAction setDrainNode(final boolean value) { _drainNode = value; return this; }
+    public FusedMachineAction setEnableP2P(final boolean value) { _enableP2P = value; return this; }
+    public FusedMachineAction setGroupName(final String value) {_groupName = value; return this; }
+    public FusedMachineAction setMachineName(final String value) {_machineName = value; return this; }
+    public FusedMachineAction setNodeName(final String value) {_nodeName = value; return this; }
+
+    public Map<String, String> getAnnotations() { return _annotations; }
+    public Map<String, String> getDescriptions() { return _descriptions; }
+    public Collection<String> getDeviceNamesToAdd() { return _deviceNamesToAdd; }
+    public Collection<String> getDeviceNamesToRemove() { return _deviceNamesToRemove; }
+    public String getGroupName() { return _groupName; }
+    public String getMachineName() { return _machineName; }
+    public String getNodeName() { return _nodeName; }
+    public boolean isCreatingMachine() { return _createMachine; }
+    public boolean isDrainingNode() { return _drainNode && (_nodeName != null); }
+    public boolean isEnablingP2P() { return _enableP2P; }
+
+    @Override
+    public void checkParameters() throws InternalErrorException {
+        checkForNull("MachineName", _machineName);
+        checkForNull("DeviceNamesToAdd", _deviceNamesToAdd);
+        checkForNull("DeviceNamesToRemove", _deviceNamesToRemove);
+        if (_createMachine) {
+            checkForNull("GroupName", _groupName);
+        }
+        if (_drainNode || !_annotations.isEmpty()) {
+            checkForNull("NodeName", _nodeName);
+        }
+    }
+
+    @Override
+    public String getDrainedNodeName() { return isDrainingNode() ? _nodeName : null; }
+
+    @Override
+    public ActionResources getResources() {
+        var resources = new ActionResources().addMachine(_machineName)
+                                             .addNode(_nodeName)
+                                             .addDevices(_deviceNamesToAdd)
+                                             .addDevices(_deviceNamesToRemove)
+                                             .addDevices(_descriptions.keySet());
+        if (_createMachine) {
+            resources.readGroup(_groupName);
+        }
+        return resources;
+    }
+
+    @Override
+    public void perform(
+        final ExecutionContext context
+    ) throws K8SException, LiqidException, ProcessingException {
+        var fn = this.getClass().getName() + ":perform";
+        context.getLogger().trace("Entering %s", fn);
+
+        if (_createMachine) {
+            // as with CreateMachineAction, a missing group skips only the creation - the rest still goes ahead
+            var group = context.getLiqidInventory().getGroup(_groupName);
+            if (group == null) {
+                System.out.printf("INFO:Group %s does not exist in the Liqid Cluster\n", _groupName);
+            } else {
+                var machine = context.getLiqidClient().createMachine(group.getGroupId(), _machineName);
+                context.getLiqidInventory().notifyMachineCreated(machine);
+            }
+        }
+
+        if (!_deviceNamesToAdd.isEmpty() || !_deviceNamesToRemove.isEmpty()) {
+            ReconfigureMachineAction.reconfigure(context,
+                                                 _machineName,
+                                                 isDrainingNode() ? _nodeName : null,
+                                                 _deviceNamesToAdd,
+                                                 _deviceNamesToRemove);
+        }
+
+        if (_enableP2P) {
+            var machine = context.getLiqidInventory().getMachine(_machineName);
+            if (machine != null) {
+                context.getLiqidClient().enableP2PForMachine(machine.getMachineId(), true);
+            }
+        }
+
+        for (var entry : _descriptions.entrySet()) {
+            var devStat = context.getLiqidInventory().getDeviceItem(entry.getKey()).getDeviceStatus();
+            var qType = LiqidClient.deviceTypeToQueryDeviceType(devStat.getDeviceType());
+            context.getLiqidClient().createDeviceDescription(qType, devStat.getDeviceId(), entry.getValue());
+        }
+
+        if (!_annotations.isEmpty()) {
+            var realAnnotations = new HashMap<String, String>();
+            for (var entry : _annotations.entrySet()) {
+                realAnnotations.put(createAnnotationKeyFor(entry.getKey()), entry.getValue());
+            }
+            context.getK8SClient().updateAnnotationsForNode(_nodeName, realAnnotations);
+        }
+
+        context.getLogger().trace("%s returning", fn);
+    }
+
+    @Override
+    public String toString() {
+        var sb = new StringBuilder();
+        sb.append("Update Machine ").append(_machineName);
+        if (_nodeName != null) {
+            sb.append(" and Node ").append(_nodeName);
+        }
+
+        if (_createMachine) {
+            sb.append("\n      create Machine in Group ").append(_groupName);
+        }
+        if (isDrainingNode()) {
+            sb.append("\n      drain Node");
+        }
+        if (!_deviceNamesToAdd.isEmpty()) {
+            sb.append("\n      adding ").append(String.join(",", _deviceNamesToAdd));
+        }
+        if (!_deviceNamesToRemove.isEmpty()) {
+            sb.append("\n      removing ").append(String.join(",", _deviceNamesToRemove));
+        }
+        if (_enableP2P) {
+            sb.append("\n      enable P2P");
+        }
+        for (var entry : _descriptions.entrySet()) {
+            sb.append(String.format("\n      set user description for Device %s to '%s'", entry.getKey(), entry.getValue()));
+        }
+        for (var entry : _annotations.entrySet()) {
+            sb.append("\n      annotate ").append(entry.getKey()).append(":");
+            sb.append((entry.getValue() == null) ? "<to be removed>" : entry.getValue());
+        }
+
+        return sb.toString();
+    }
+}
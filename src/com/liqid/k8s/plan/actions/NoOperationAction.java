@@ -16,6 +16,11 @@ public class NoOperationAction extends Action {
     @Override
     public void checkParameters() {}
 
+    @Override
+    public ActionResources getResources() {
+        return new ActionResources();
+    }
+
     @Override
     public void perform(
         final ExecutionContext context
@@ -44,46 +44,72 @@ public class ReconfigureMachineAction extends Action {
         checkForNull("DeviceNamesToRemove", _deviceNamesToRemove);
     }
 
+    @Override
+    public String getDrainedNodeName() { return _nodeName; }
+
+    @Override
+    public ActionResources getResources() {
+        return new ActionResources().addMachine(_machineName)
+                                    .addNode(_nodeName)
+                                    .addDevices(_deviceNamesToAdd)
+                                    .addDevices(_deviceNamesToRemove);
+    }
+
     @Override
     public void perform(
         final ExecutionContext context
     ) throws ProcessingException {
         var fn = this.getClass().getName() + ":perform";
         context.getLogger().trace("Entering %s", fn);
+        reconfigure(context, _machineName, _nodeName, _deviceNamesToAdd, _deviceNamesToRemove);
+        context.getLogger().trace("%s returning", fn);
+    }
 
+    /**
+     * Adds and removes devices for the named machine in a single fabric edit.
+     * If a node name is given, the node is cordoned and drained around the edit (unless it is already drained).
+     * Shared with FusedMachineAction, which does the same thing as part of a larger set of updates.
+     */
+    static void reconfigure(
+        final ExecutionContext context,
+        final String machineName,
+        final String nodeName,
+        final Collection<String> deviceNamesToAdd,
+        final Collection<String> deviceNamesToRemove
+    ) throws ProcessingException {
         boolean editInProgress = false;
         boolean nodeCordoned = false;
         Integer machineId = null;
 
         // we wrap this in try-catch in order to minimize the deleterious effects of something going badly in the middle.
         try {
-            var machine = context.getLiqidInventory().getMachine(_machineName);
+            var machine = context.getLiqidInventory().getMachine(machineName);
             if (machine == null) {
-                System.out.printf("INFO:Machine %s does not exist in the Liqid Cluster\n", _machineName);
-                context.getLogger().trace("%s returning", fn);
+                System.out.printf("INFO:Machine %s does not exist in the Liqid Cluster\n", machineName);
                 return;
             }
 
             machineId = machine.getMachineId();
 
-            if (_nodeName != null) {
-                context.getK8SClient().cordonNode(_nodeName);
+            if ((nodeName != null) && !context.isNodeDrained(nodeName)) {
+                System.out.printf("Cordoning node %s...\n", nodeName);
+                context.getK8SClient().cordonNode(nodeName);
                 nodeCordoned = true;
-                context.getK8SClient().evictPodsForNode(_nodeName, true);
+                context.getK8SClient().evictPodsForNode(nodeName, true);
             }
 
             context.getLiqidClient().editFabric(machineId);
             editInProgress = true;
             var groupId = machine.getGroupId();
 
-            for (var devName : _deviceNamesToAdd) {
+            for (var devName : deviceNamesToAdd) {
                 var devStat = context.getLiqidInventory().getDeviceItem(devName).getDeviceStatus();
                 var devId = devStat.getDeviceId();
                 context.getLiqidClient().addDeviceToMachine(devId, groupId, machineId);
                 context.getLiqidInventory().notifyDeviceAssignedToMachine(devId, machineId);
             }
 
-            for (var devName : _deviceNamesToRemove) {
+            for (var devName : deviceNamesToRemove) {
                 var devStat = context.getLiqidInventory().getDeviceItem(devName).getDeviceStatus();
                 var devId = devStat.getDeviceId();
                 context.getLiqidClient().removeDeviceFromMachine(devId, groupId, machineId);
@@ -94,7 +120,8 @@ public class ReconfigureMachineAction extends Action {
             editInProgress = false;
 
             if (nodeCordoned) {
-                context.getK8SClient().uncordonNode(_nodeName);
+                System.out.printf("Uncordoning node %s...\n", nodeName);
+                context.getK8SClient().uncordonNode(nodeName);
                 nodeCordoned = false;
             }
         } catch (K8SException kex) {
@@ -121,16 +148,15 @@ public class ReconfigureMachineAction extends Action {
 
             if (nodeCordoned && !editInProgress) {
                 try {
-                    context.getK8SClient().uncordonNode(_nodeName);
+                    System.out.printf("Uncordoning node %s...\n", nodeName);
+                    context.getK8SClient().uncordonNode(nodeName);
                 } catch (K8SException kex) {
                     // cannot fix this either
                     context.getLogger().catching(kex);
-                    System.err.printf("ERROR:Could not un-cordon Kubernetes node %s\n", _nodeName);
+                    System.err.printf("ERROR:Could not un-cordon Kubernetes node %s\n", nodeName);
                 }
             }
         }
-
-        context.getLogger().trace("%s returning", fn);
     }
 
     @Override
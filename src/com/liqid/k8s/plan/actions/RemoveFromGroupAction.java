@@ -40,6 +40,11 @@ public class RemoveFromGroupAction extends Action {
         checkForNull("DeviceNames", _deviceNames);
     }
 
+    @Override
+    public ActionResources getResources() {
+        return new ActionResources().addGroup(_groupName).addDevices(_deviceNames);
+    }
+
     @Override
     public void perform(
         final ExecutionContext context
@@ -16,7 +16,8 @@ import java.util.TreeSet;
 
 /**
  * Removes one or more resources from a Liqid Machine.
- * If a node name is specified, we cordon/uncordon the node as part of this process.
+ * If a node name is specified, we cordon/uncordon the node as part of this process
+ * (unless a preceding CordonNodeAction has already done so).
  */
 public class RemoveFromMachineAction extends Action {
 
@@ -43,6 +44,14 @@ public class RemoveFromMachineAction extends Action {
         checkForNull("DeviceNames", _deviceNames);
     }
 
+    @Override
+    public String getDrainedNodeName() { return _nodeName; }
+
+    @Override
+    public ActionResources getResources() {
+        return new ActionResources().addMachine(_machineName).addNode(_nodeName).addDevices(_deviceNames);
+    }
+
     @Override
     public void perform(
         final ExecutionContext context
@@ -65,7 +74,7 @@ public class RemoveFromMachineAction extends Action {
 
             machineId = machine.getMachineId();
 
-            if (_nodeName != null) {
+            if ((_nodeName != null) && !context.isNodeDrained(_nodeName)) {
                 System.out.printf("Cordoning node %s...\n", _nodeName);
                 context.getK8SClient().cordonNode(_nodeName);
                 nodeCordoned = true;
@@ -26,6 +26,11 @@ public class RemoveUserDescriptionAction extends Action {
         checkForNull("DeviceName", _deviceName);
     }
 
+    @Override
+    public ActionResources getResources() {
+        return new ActionResources().addDevice(_deviceName);
+    }
+
     @Override
     public void perform(
         final ExecutionContext context
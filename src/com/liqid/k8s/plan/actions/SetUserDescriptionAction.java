@@ -31,6 +31,11 @@ public class SetUserDescriptionAction extends Action {
         checkForNull("DeviceDescription", _description);
     }
 
+    @Override
+    public ActionResources getResources() {
+        return new ActionResources().addDevice(_deviceName);
+    }
+
     @Override
     public void perform(
         final ExecutionContext context
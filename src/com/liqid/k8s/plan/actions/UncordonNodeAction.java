@@ -0,0 +1,63 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.plan.actions;
+
+import com.bearsnake.k8sclient.K8SException;
+import com.liqid.k8s.exceptions.InternalErrorException;
+import com.liqid.k8s.exceptions.ProcessingException;
+import com.liqid.k8s.plan.ExecutionContext;
+
+/**
+ * Un-cordons a Kubernetes node which was cordoned by a CordonNodeAction
+ */
+public class UncordonNodeAction extends Action {
+
+    private String _nodeName;
+
+    public UncordonNodeAction() {
+        super(ActionType.UNCORDON_NODE);
+    }
+
+    public UncordonNodeAction setNodeName(final String value) {_nodeName = value; return this; }
+
+    public String getNodeName() { return _nodeName; }
+
+    @Override
+    public void checkParameters() throws InternalErrorException {
+        checkForNull("NodeName", _nodeName);
+    }
+
+    @Override
+    public ActionResources getResources() {
+        return new ActionResources().addNode(_nodeName);
+    }
+
+    @Override
+    public void perform(
+        final ExecutionContext context
+    ) throws ProcessingException {
+        var fn = this.getClass().getName() + ":perform";
+        context.getLogger().trace("Entering %s", fn);
+
+        try {
+            System.out.printf("Uncordoning node %s...\n", _nodeName);
+            context.getK8SClient().uncordonNode(_nodeName);
+            context.setNodeDrained(_nodeName, false);
+        } catch (K8SException kex) {
+            context.getLogger().catching(kex);
+            var pex = new ProcessingException(kex);
+            context.getLogger().throwing(pex);
+            throw pex;
+        }
+
+        context.getLogger().trace("%s returning", fn);
+    }
+
+    @Override
+    public String toString() {
+        return "Uncordon Kubernetes node " + _nodeName;
+    }
+}
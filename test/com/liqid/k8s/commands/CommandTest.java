@@ -17,6 +17,7 @@ import com.liqid.k8s.layout.ClusterLayout;
 import com.liqid.k8s.layout.DeviceItem;
 import com.liqid.k8s.layout.GeneralType;
 import com.liqid.k8s.layout.GenericResourceModel;
+import com.liqid.k8s.layout.IdentifierSet;
 import com.liqid.k8s.layout.LiqidInventory;
 import com.liqid.k8s.layout.MachineProfile;
 import com.liqid.k8s.layout.ResourceModel;
@@ -24,6 +25,7 @@ import com.liqid.k8s.layout.SpecificResourceModel;
 import com.liqid.k8s.layout.VendorResourceModel;
 import com.liqid.k8s.plan.Plan;
 import com.liqid.k8s.plan.actions.AnnotateNodeAction;
+import com.liqid.k8s.plan.actions.FusedMachineAction;
 import com.liqid.sdk.DeviceInfo;
 import com.liqid.sdk.DeviceStatus;
 import com.liqid.sdk.DeviceType;
@@ -244,6 +246,57 @@ public class CommandTest extends Command {
         assertEquals(gpuCount, gpuTally);
     }
 
+    @Test
+    public void allocateWeighted_test() throws Exception {
+        var computeDeviceItems = new HashMap<DeviceItem, Node>();
+        var resourceDeviceItems = new LinkedList<DeviceItem>();
+
+        // worker-1 has 8 CPUs, worker-2 has 24, and worker-3 does not say - so it is taken to have the average of 16.
+        var capacities = new String[]{ "8", "24000m", null };
+        var nodes = new LinkedList<Node>();
+        for (var cx = 0; cx < capacities.length; cx++) {
+            var devName = String.format("pcpu%d", cx);
+            var devStat = new DeviceStatus().setDeviceId(cx).setName(devName).setDeviceType(DeviceType.COMPUTE);
+            var devInfo = new DeviceInfo().setDeviceIdentifier(cx).setName(devName).setDeviceInfoType(DeviceType.COMPUTE);
+
+            var nodeStatus = new NodeStatus();
+            nodeStatus.capacity = new HashMap<>();
+            if (capacities[cx] != null) {
+                nodeStatus.capacity.put("cpu", capacities[cx]);
+            }
+            var node = new Node(new NodeMetadata().setName(String.format("worker-%d", cx + 1)), new NodeSpec(), nodeStatus);
+            nodes.add(node);
+            computeDeviceItems.put(new DeviceItem(devStat, devInfo), node);
+        }
+
+        for (var dx = 0; dx < 12; dx++) {
+            var devName = String.format("gpu%d", dx);
+            var devStat = new DeviceStatus().setDeviceId(0xB00 + dx).setName(devName).setDeviceType(DeviceType.GPU);
+            var devInfo = new DeviceInfo().setDeviceIdentifier(0xB00 + dx).setName(devName).setDeviceInfoType(DeviceType.GPU);
+            resourceDeviceItems.add(new DeviceItem(devStat, devInfo));
+        }
+
+        setDistributionWeighting(DistributionWeighting.CAPACITY);
+        var layout = createEvenlyAllocatedClusterLayout(computeDeviceItems, resourceDeviceItems, getNodeWeights(nodes));
+
+        var gpuModel = ResourceModel.intern(new GenericResourceModel(GeneralType.GPU));
+        var counts = new HashMap<String, Integer>();
+        for (var profile : layout.getMachineProfiles()) {
+            counts.put(profile.getMachineName(), profile.getCount(gpuModel));
+        }
+        assertEquals((Integer) 2, counts.get("pcpu0-worker-1"));
+        assertEquals((Integer) 6, counts.get("pcpu1-worker-2"));
+        assertEquals((Integer) 4, counts.get("pcpu2-worker-3"));
+    }
+
+    @Test
+    public void parseCPUQuantity_test() {
+        assertEquals(16.0, parseCPUQuantity("16"), 0.0);
+        assertEquals(7.5, parseCPUQuantity("7500m"), 0.0);
+        assertNull(parseCPUQuantity("lots"));
+        assertNull(parseCPUQuantity(null));
+    }
+
     @Test
     public void createAnnotationsFromClusterLayout_test() throws InternalErrorException {
         var nodes = new LinkedList<Node>();
@@ -406,7 +459,16 @@ public class CommandTest extends Command {
         createMachines(map, plan);
         plan.show();
 
-        assertEquals(12, plan.getActions().size());
+        // create, assign, describe, and annotate are fused into one action per machine
+        assertEquals(3, plan.getActions().size());
+        for (var action : plan.getActions()) {
+            assertTrue(action instanceof FusedMachineAction);
+            var fused = (FusedMachineAction) action;
+            assertEquals(1, fused.getDeviceNamesToAdd().size());
+            assertEquals(1, fused.getDescriptions().size());
+            assertEquals(1, fused.getAnnotations().size());
+            assertTrue(fused.isCreatingMachine());
+        }
         for (var entry : map.entrySet()) {
             var devItem = entry.getKey();
             var node = entry.getValue();
@@ -676,6 +738,58 @@ public class CommandTest extends Command {
         }
     }
 
+    @Test
+    public void createAllocators_excludedDevices() throws LiqidException {
+        var mock = createMock();
+
+        var groupId = _group.getGroupId();
+        mock.groupPoolEdit(groupId);
+        for (var devStat : mock.getAllDevicesStatus()) {
+            mock.addDeviceToGroup(devStat.getDeviceId(), groupId);
+        }
+        mock.groupPoolDone(groupId);
+
+        // Ford and Trillian each get two L40s, and Ford's are to stay where they are
+        var l40List = new LinkedList<>(_l40Devs);
+        var fordDevs = new IdentifierSet();
+        mock.editFabric(_fordMachine.getMachineId());
+        for (int dx = 0; dx < 2; dx++) {
+            var devId = l40List.pop();
+            fordDevs.addId(devId);
+            mock.addDeviceToMachine(devId, groupId, _fordMachine.getMachineId());
+        }
+        mock.reprogramFabric(_fordMachine.getMachineId());
+
+        var trillianDevs = new IdentifierSet();
+        mock.editFabric(_trillianMachine.getMachineId());
+        for (int dx = 0; dx < 2; dx++) {
+            var devId = l40List.pop();
+            trillianDevs.addId(devId);
+            mock.addDeviceToMachine(devId, groupId, _trillianMachine.getMachineId());
+        }
+        mock.reprogramFabric(_trillianMachine.getMachineId());
+
+        var inventory = LiqidInventory.createLiqidInventory(mock);
+
+        // Arthur wants four L40s
+        var layout = new ClusterLayout();
+        var machProf = new MachineProfile(ARTHUR);
+        machProf.injectCount(new SpecificResourceModel(GeneralType.GPU, NVIDIA, "L40"), 4);
+        layout.addMachineProfile(machProf);
+
+        var allocators = createAllocators(inventory, layout, fordDevs);
+        assertEquals(1, allocators.size());
+        var alloc = allocators.values().iterator().next().iterator().next();
+        var candidates = new IdentifierSet(alloc.getDeviceIdentifiers());
+        for (var devId : _l40Devs) {
+            assertEquals(!fordDevs.containsId(devId), candidates.containsId(devId));
+        }
+
+        // Trillian's are candidates, but only after the free devices
+        var list = alloc.getDeviceIdentifiers();
+        assertEquals(trillianDevs, new IdentifierSet(list.subList(list.size() - 2, list.size())));
+    }
+
     @Test
     public void createAllocators_complicated() throws LiqidException {
         var mock = createMock();
@@ -1175,4 +1289,31 @@ public class CommandTest extends Command {
             }
         }
     }
+
+    @Test
+    public void createAllocations_optimal() {
+        Map<ResourceModel, Collection<Allocator>> allocators = new HashMap<>();
+        var gpuModel = new GenericResourceModel(GeneralType.GPU);
+        // device 1 is attached to Machine2, device 2 to some other machine, and device 3 is free.
+        // Machine1 may use any of them, Machine2 only devices 1 and 3.
+        var alloc1 = new Allocator("Machine1", 2,
+                                   new IdentifierSet(), new IdentifierSet(new int[]{ 3 }), new IdentifierSet(new int[]{ 1, 2 }));
+        var alloc2 = new Allocator("Machine2", 1,
+                                   new IdentifierSet(new int[]{ 1 }), new IdentifierSet(new int[]{ 3 }), new IdentifierSet(new int[]{ 1 }));
+        allocators.put(gpuModel, Arrays.asList(alloc1, alloc2));
+
+        // greedy allocation gives Machine1 devices 3 and 1, and then cannot satisfy Machine2
+        assertNull(createAllocations(allocators));
+
+        setOptimalAllocation(true);
+        var allocations = createAllocations(allocators);
+        assertNotNull(allocations);
+        assertEquals(2, allocations.size());
+        for (var alloc : allocations) {
+            switch (alloc.getMachineName()) {
+                case "Machine1" -> assertEquals(new TreeSet<>(Arrays.asList(2, 3)), new TreeSet<>(alloc.getDeviceIdentifiers()));
+                case "Machine2" -> assertEquals(new TreeSet<>(Arrays.asList(1)), new TreeSet<>(alloc.getDeviceIdentifiers()));
+            }
+        }
+    }
 }
@@ -0,0 +1,74 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.commands;
+
+import com.bearsnake.klog.Logger;
+import com.liqid.k8s.layout.AllocationStrategy;
+import com.liqid.k8s.layout.GeneralType;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SimulateCommandTest {
+
+    @Test
+    public void createSyntheticInventory() {
+        var inv = SimulateCommand.createSyntheticInventory(8, 50, 0.5, SimulateCommand.DEFAULT_SEED);
+        assertEquals(8, inv.getMachines().size());
+        assertEquals(58, inv.getDeviceItems().size());
+        assertEquals(30, inv.query().ofType(GeneralType.GPU).getDeviceIds().size());
+        assertEquals("worker-1", inv.getK8sNodeNameFromMachine(1));
+
+        var again = SimulateCommand.createSyntheticInventory(8, 50, 0.5, SimulateCommand.DEFAULT_SEED);
+        for (var devItem : inv.getDeviceItems()) {
+            assertEquals(devItem.getMachineId(), again.getDeviceItem(devItem.getDeviceId()).getMachineId());
+        }
+    }
+
+    @Test
+    public void simulate_nothingAttached() throws Exception {
+        // Every device is free, so every device is simply attached - nobody is drained.
+        var inv = SimulateCommand.createSyntheticInventory(10, 40, 0.0, SimulateCommand.DEFAULT_SEED);
+        var command = new SimulateCommand(new Logger("Test"), false, 0);
+        var report = command.simulate(inv, command.createAnnotatedNodes(inv));
+
+        assertEquals(10, report.getNodeCount());
+        assertEquals(40, report.getDeviceCount());
+        assertEquals(40, report.getDevicesAttached());
+        assertEquals(0, report.getDevicesDetached());
+        assertEquals(40, report.getDevicesMoved());
+        assertEquals(0, report.getNodesDrained());
+        assertEquals(10, report.getActionCount());
+        assertEquals(5, report.getPhaseMillis().size());
+    }
+
+    @Test
+    public void simulate_alreadyComposed() throws Exception {
+        // Devices are spread at random - minimal disruption leaves them where they are, so there is nothing to do.
+        var inv = SimulateCommand.createSyntheticInventory(10, 40, 1.0, SimulateCommand.DEFAULT_SEED);
+        var command = new SimulateCommand(new Logger("Test"), false, 0);
+        command.setAllocationStrategy(AllocationStrategy.MINIMAL_DISRUPTION);
+        var report = command.simulate(inv, command.createAnnotatedNodes(inv));
+
+        assertEquals(0, report.getActionCount());
+        assertEquals(0, report.getDevicesMoved());
+        assertEquals(0, report.getNodesDrained());
+    }
+
+    @Test
+    public void simulate_spread() throws Exception {
+        var inv = SimulateCommand.createSyntheticInventory(10, 40, 1.0, SimulateCommand.DEFAULT_SEED);
+        var command = new SimulateCommand(new Logger("Test"), false, 0);
+        var report = command.simulate(inv, command.createAnnotatedNodes(inv));
+        report.show();
+
+        // every device is attached somewhere already, so whatever is attached must first be detached
+        assertTrue(report.getActionCount() > 0);
+        assertEquals(report.getDevicesAttached(), report.getDevicesDetached());
+        assertTrue(report.getNodesDrained() <= 10);
+    }
+}
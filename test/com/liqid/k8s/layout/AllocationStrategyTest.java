@@ -0,0 +1,109 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import com.liqid.sdk.DeviceInfo;
+import com.liqid.sdk.DeviceStatus;
+import com.liqid.sdk.DeviceType;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class AllocationStrategyTest {
+
+    private static DeviceItem createDeviceItem(
+        final int deviceId,
+        final DeviceType deviceType,
+        final Integer machineId
+    ) {
+        var devName = String.format("dev%d", deviceId);
+        var devStat = new DeviceStatus().setDeviceId(deviceId).setName(devName).setDeviceType(deviceType);
+        var devInfo = new DeviceInfo().setDeviceIdentifier(deviceId).setName(devName).setDeviceInfoType(deviceType);
+        return new DeviceItem(devStat, devInfo).setMachineId(machineId);
+    }
+
+    // compute devices for machines 1 through count
+    private static List<DeviceItem> createComputeDeviceItems(
+        final int count
+    ) {
+        var list = new LinkedList<DeviceItem>();
+        for (int cx = 0; cx < count; cx++) {
+            list.add(createDeviceItem(cx, DeviceType.COMPUTE, cx + 1));
+        }
+        return list;
+    }
+
+    // GPUs attached to the given machines (null for those which are free)
+    private static List<DeviceItem> createGPUItems(
+        final Integer... machineIds
+    ) {
+        var list = new LinkedList<DeviceItem>();
+        for (int dx = 0; dx < machineIds.length; dx++) {
+            list.add(createDeviceItem(0x2000 + dx, DeviceType.GPU, machineIds[dx]));
+        }
+        return list;
+    }
+
+    @Test
+    public void getStrategy() {
+        assertSame(AllocationStrategy.SPREAD, AllocationStrategy.getStrategy("spread"));
+        assertSame(AllocationStrategy.PACK, AllocationStrategy.getStrategy("Pack"));
+        assertSame(AllocationStrategy.MINIMAL_DISRUPTION, AllocationStrategy.getStrategy("minimal-disruption"));
+        assertNull(AllocationStrategy.getStrategy("bogus"));
+    }
+
+    @Test
+    public void spread() {
+        var gpus = createGPUItems(null, null, null, null, null, null, null);
+        var counts = AllocationStrategy.SPREAD.distribute(createComputeDeviceItems(3), gpus);
+        assertArrayEquals(new int[]{ 3, 2, 2 }, counts);
+    }
+
+    @Test
+    public void pack() {
+        var gpus = createGPUItems(null, null, null, null, null, 3, 3, null, null, null);
+        var counts = new PackAllocationStrategy(4).distribute(createComputeDeviceItems(4), gpus);
+        assertArrayEquals(new int[]{ 4, 2, 4, 0 }, counts);
+    }
+
+    @Test
+    public void pack_overCapacity() {
+        var gpus = createGPUItems(null, null, null, null, null, null, null);
+        var counts = new PackAllocationStrategy(2).distribute(createComputeDeviceItems(2), gpus);
+        assertArrayEquals(new int[]{ 4, 3 }, counts);
+    }
+
+    @Test
+    public void weighted() {
+        var computeItems = createComputeDeviceItems(4);
+        var weights = new HashMap<Integer, Double>();
+        weights.put(computeItems.get(0).getDeviceId(), 1.0);
+        weights.put(computeItems.get(1).getDeviceId(), 1.0);
+        weights.put(computeItems.get(2).getDeviceId(), 3.0);
+
+        // shares are 1.4, 1.4, 4.2 and 0 - the spare device goes to the first of the largest remainders
+        var gpus = createGPUItems(null, null, null, null, null, null, null);
+        var counts = new WeightedAllocationStrategy(AllocationStrategy.SPREAD, weights).distribute(computeItems, gpus);
+        assertArrayEquals(new int[]{ 2, 1, 4, 0 }, counts);
+
+        // no weights at all, so we spread
+        counts = new WeightedAllocationStrategy(AllocationStrategy.SPREAD, new HashMap<>()).distribute(computeItems, gpus);
+        assertArrayEquals(new int[]{ 2, 2, 2, 1 }, counts);
+    }
+
+    @Test
+    public void minimalDisruption() {
+        var gpus = createGPUItems(1, 1, 1, 2, null, null, 5);
+        var counts = AllocationStrategy.MINIMAL_DISRUPTION.distribute(createComputeDeviceItems(3), gpus);
+        assertArrayEquals(new int[]{ 3, 2, 2 }, counts);
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import com.liqid.sdk.DeviceType;
+import com.liqid.sdk.LiqidException;
+import com.liqid.sdk.mock.MockLiqidClient;
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentLiqidInventoryTest {
+
+    private static final int MACHINE_COUNT = 4;
+    private static final int DEVICES_PER_MACHINE = 25;
+
+    private static LiqidInventory createInventory() throws LiqidException {
+        var mock = new MockLiqidClient.Builder().build();
+        mock.createDevices(DeviceType.SSD, (short)0x0030, (short)0x01, "Micron", "Bear", MACHINE_COUNT * DEVICES_PER_MACHINE);
+        var group = mock.createGroup("Group");
+        mock.groupPoolEdit(group.getGroupId());
+        for (var dev : mock.getMockDevices()) {
+            mock.addDeviceToGroup(dev.getDeviceId(), group.getGroupId());
+        }
+        mock.groupPoolDone(group.getGroupId());
+        for (int mx = 0; mx < MACHINE_COUNT; ++mx) {
+            mock.createMachine(group.getGroupId(), "Machine" + mx);
+        }
+        return LiqidInventory.createLiqidInventory(mock);
+    }
+
+    @Test
+    public void concurrentUpdates() throws Exception {
+        var original = createInventory();
+        var inv = new ConcurrentLiqidInventory(original);
+        var devIds = new LinkedList<>(LiqidInventory.getDeviceIdsFromItems(inv.getDeviceItems()));
+        var pool = Executors.newFixedThreadPool(MACHINE_COUNT + 1);
+        try {
+            var tasks = new LinkedList<Callable<Object>>();
+            for (int mx = 0; mx < MACHINE_COUNT; ++mx) {
+                var machineId = inv.getMachine("Machine" + mx).getMachineId();
+                var myIds = devIds.subList(mx * DEVICES_PER_MACHINE, (mx + 1) * DEVICES_PER_MACHINE);
+                tasks.add(() -> {
+                    for (int rep = 0; rep < 10; ++rep) {
+                        for (var id : myIds) {
+                            inv.notifyDeviceAssignedToMachine(id, machineId);
+                        }
+                        for (var id : myIds) {
+                            inv.notifyDeviceRemovedFromMachine(id);
+                        }
+                    }
+                    for (var id : myIds) {
+                        inv.notifyDeviceAssignedToMachine(id, machineId);
+                    }
+                    return null;
+                });
+            }
+
+            // a reader, checking that each snapshot is internally consistent
+            tasks.add(() -> {
+                for (int rep = 0; rep < 200; ++rep) {
+                    var snapshot = inv.copy();
+                    var attached = 0;
+                    for (var machine : snapshot.getMachines()) {
+                        attached += snapshot.getDeviceItemsForMachine(machine.getMachineId()).size();
+                    }
+                    var expected = (int) snapshot.getDeviceItems().stream().filter(DeviceItem::isAssignedToMachine).count();
+                    assertEquals(expected, attached);
+                }
+                return null;
+            });
+
+            for (var future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        for (int mx = 0; mx < MACHINE_COUNT; ++mx) {
+            assertEquals(DEVICES_PER_MACHINE, inv.getDeviceItemsForMachine("Machine" + mx).size());
+        }
+
+        // the source inventory is not affected
+        for (var devItem : original.getDeviceItems()) {
+            assertNull(devItem.getMachineId());
+        }
+    }
+
+    @Test
+    public void snapshotsUpdatedConcurrently() throws Exception {
+        var inv = new ConcurrentLiqidInventory(createInventory());
+        var devIds = new LinkedList<>(LiqidInventory.getDeviceIdsFromItems(inv.getDeviceItems()));
+        var writerMachineId = inv.getMachine("Machine0").getMachineId();
+        var writerIds = devIds.subList(0, DEVICES_PER_MACHINE);
+        var pool = Executors.newFixedThreadPool(MACHINE_COUNT);
+        try {
+            var tasks = new LinkedList<Callable<Object>>();
+
+            // a writer, updating the concurrent inventory while snapshots are taken from it
+            tasks.add(() -> {
+                for (int rep = 0; rep < 50; ++rep) {
+                    for (var id : writerIds) {
+                        inv.notifyDeviceAssignedToMachine(id, writerMachineId);
+                    }
+                    for (var id : writerIds) {
+                        inv.notifyDeviceRemovedFromMachine(id);
+                    }
+                }
+                for (var id : writerIds) {
+                    inv.notifyDeviceAssignedToMachine(id, writerMachineId);
+                }
+                return null;
+            });
+
+            // threads taking snapshots and updating them - which must not affect anything else
+            for (int mx = 1; mx < MACHINE_COUNT; ++mx) {
+                var machineName = "Machine" + mx;
+                var myIds = devIds.subList(mx * DEVICES_PER_MACHINE, (mx + 1) * DEVICES_PER_MACHINE);
+                tasks.add(() -> {
+                    for (int rep = 0; rep < 50; ++rep) {
+                        var snapshot = inv.copy();
+                        var machineId = snapshot.getMachine(machineName).getMachineId();
+                        for (var id : myIds) {
+                            snapshot.notifyDeviceAssignedToMachine(id, machineId);
+                        }
+                        assertEquals(DEVICES_PER_MACHINE, snapshot.getDeviceItemsForMachine(machineId).size());
+                        assertEquals(0, inv.getDeviceItemsForMachine(machineId).size());
+                    }
+                    return null;
+                });
+            }
+
+            for (var future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(DEVICES_PER_MACHINE, inv.getDeviceItemsForMachine("Machine0").size());
+        for (int mx = 1; mx < MACHINE_COUNT; ++mx) {
+            assertEquals(0, inv.getDeviceItemsForMachine("Machine" + mx).size());
+        }
+
+        // the concurrent inventory may still be updated normally
+        inv.notifyDeviceRemovedFromMachine(writerIds.get(0));
+        assertEquals(DEVICES_PER_MACHINE - 1, inv.getDeviceItemsForMachine("Machine0").size());
+    }
+
+    @Test
+    public void retrievedItemsDoNotChange() throws LiqidException {
+        var inv = new ConcurrentLiqidInventory(createInventory());
+        var machineId = inv.getMachine("Machine0").getMachineId();
+        var devItem = inv.getDeviceItems().iterator().next();
+
+        inv.notifyDeviceAssignedToMachine(devItem.getDeviceId(), machineId);
+        assertNull(devItem.getMachineId());
+        assertTrue(inv.getDeviceItem(devItem.getDeviceId()).isAssignedToMachine());
+    }
+
+    @Test
+    public void sharesWithSourceOnly() throws Exception {
+        var original = createInventory();
+        var inv = new ConcurrentLiqidInventory(original);
+        assertEquals(2, original.getSharingCount());
+        assertEquals(2, inv.getSharingCount());
+
+        // the first update takes the tables for itself, and leaves the source as their sole owner
+        var devId = inv.getDeviceItems().iterator().next().getDeviceId();
+        inv.notifyDeviceAssignedToMachine(devId, inv.getMachine("Machine0").getMachineId());
+        assertEquals(1, original.getSharingCount());
+        assertEquals(1, inv.getSharingCount());
+
+        var copy = new ConcurrentLiqidInventory(inv);
+        assertEquals(2, inv.getSharingCount());
+        assertEquals(2, copy.getSharingCount());
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import com.liqid.sdk.DeviceType;
+import com.liqid.sdk.LiqidException;
+import com.liqid.sdk.mock.MockLiqidClient;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FabricLocalityTest {
+
+    // devices 1 and 2 on switch 10, 3, 4, and 5 on switch 20, 6 on switch 30, and Machine1's compute device on 20
+    private static FabricLocality createLocality() {
+        return new FabricLocality().setDeviceSwitch(1, 10)
+                                   .setDeviceSwitch(2, 10)
+                                   .setDeviceSwitch(3, 20)
+                                   .setDeviceSwitch(4, 20)
+                                   .setDeviceSwitch(5, 20)
+                                   .setDeviceSwitch(6, 30)
+                                   .setMachineSwitch("Machine1", 20);
+    }
+
+    @Test
+    public void chooseDevices_prefersCoLocated() {
+        var locality = createLocality();
+        var candidates = new IdentifierSet(new int[]{ 1, 2, 3, 4, 5, 6 });
+
+        assertArrayEquals(new int[]{ 3, 4 }, locality.chooseDevices("Machine1", candidates, 2, new IdentifierSet()).toIntArray());
+        assertArrayEquals(new int[]{ 1, 3, 4, 5 }, locality.chooseDevices("Machine1", candidates, 4, new IdentifierSet()).toIntArray());
+
+        // Machine2's compute device location is unknown - the pair on switch 10 is as good as any
+        assertArrayEquals(new int[]{ 1, 2 }, locality.chooseDevices("Machine2", candidates, 2, new IdentifierSet()).toIntArray());
+
+        // a device already chosen on switch 30 does not attract anything, as nothing else is there
+        var chosen = new IdentifierSet(new int[]{ 6 });
+        assertArrayEquals(new int[]{ 3, 4, 5 }, locality.chooseDevices("Machine1", candidates, 3, chosen).toIntArray());
+    }
+
+    @Test
+    public void chooseDevices_withoutTopology() {
+        var locality = new FabricLocality();
+        assertTrue(locality.isEmpty());
+        var candidates = new IdentifierSet(new int[]{ 7, 5, 3, 1 });
+        assertArrayEquals(new int[]{ 1, 3 }, locality.chooseDevices("Machine1", candidates, 2, new IdentifierSet()).toIntArray());
+    }
+
+    @Test
+    public void createFromInventory_andAllocate() throws LiqidException {
+        var mock = new MockLiqidClient.Builder().build();
+        mock.createDevices(DeviceType.GPU, (short)0x10de, (short)0x01, "NVidia", "A100", 6);
+        var devices = mock.getMockDevices().stream().sorted().toList();
+        for (int dx = 0; dx < devices.size(); ++dx) {
+            devices.get(dx).getDeviceStatus().setSwitchGlobalId(dx < 2 ? 10 : 20);
+        }
+
+        var locality = FabricLocality.createFromInventory(LiqidInventory.createLiqidInventory(mock));
+        assertFalse(locality.isEmpty());
+        var firstId = devices.get(0).getDeviceId();
+        assertEquals(Integer.valueOf(10), locality.getSwitchForDevice(firstId));
+
+        // Machine1 wants 4 GPUs, and there are 2 on switch 10 and 4 on switch 20 - it should get the latter
+        var free = new IdentifierSet(devices.stream().map(dev -> dev.getDeviceId()).toList());
+        var alloc = new Allocator("Machine1", 4, new IdentifierSet(), free, new IdentifierSet());
+        Map<ResourceModel, Collection<Allocator>> allocators = new TreeMap<>();
+        allocators.put(new GenericResourceModel(GeneralType.GPU), Arrays.asList(alloc));
+
+        var plain = new GreedyAllocationSolver(allocators).solve();
+        assertEquals(new IdentifierSet(new int[]{ firstId, firstId + 1, firstId + 2, firstId + 3 }),
+                     plain.getAllocations().iterator().next().getDeviceIdentifiers());
+
+        var coLocated = new GreedyAllocationSolver(allocators).setLocality(locality).solve();
+        assertEquals(new IdentifierSet(new int[]{ firstId + 2, firstId + 3, firstId + 4, firstId + 5 }),
+                     coLocated.getAllocations().iterator().next().getDeviceIdentifiers());
+
+        var optimal = new OptimalAllocationSolver(allocators).setLocality(locality).solve();
+        assertEquals(new IdentifierSet(new int[]{ firstId + 2, firstId + 3, firstId + 4, firstId + 5 }),
+                     optimal.getAllocations().iterator().next().getDeviceIdentifiers());
+    }
+}
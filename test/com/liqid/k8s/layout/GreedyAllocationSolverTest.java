@@ -0,0 +1,160 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class GreedyAllocationSolverTest {
+
+    private static Map<String, IdentifierSet> getResults(
+        final AllocationSolver solver
+    ) {
+        var result = new HashMap<String, IdentifierSet>();
+        solver.getAllocations().forEach(alloc -> result.put(alloc.getMachineName(), alloc.getDeviceIdentifiers()));
+        return result;
+    }
+
+    @Test
+    public void pooledAllocation_matchesOrderedLists() {
+        // devices 0x2000 up, attached at random to one of 10 machines, or free.
+        // two models - a specific one accepting the even devices, and a generic one accepting all devices.
+        var random = new Random(17);
+        var machineCount = 10;
+        var deviceCount = 200;
+        var owners = IntStream.range(0, deviceCount).map(dx -> random.nextInt(machineCount + 1) - 1).toArray();
+        var specificModel = new SpecificResourceModel(GeneralType.GPU, "NVidia", "A100");
+        var genericModel = new GenericResourceModel(GeneralType.GPU);
+
+        Map<ResourceModel, Collection<Allocator>> pooled = new TreeMap<>();
+        Map<ResourceModel, Collection<Allocator>> ordered = new TreeMap<>();
+        for (var resModel : new ResourceModel[]{ specificModel, genericModel }) {
+            pooled.put(resModel, new LinkedList<>());
+            ordered.put(resModel, new LinkedList<>());
+            var step = (resModel == specificModel) ? 2 : 1;
+
+            // the free and assigned candidates are shared by all the machines, as in Command.createAllocators()
+            var free = new IdentifierSet();
+            var assigned = new IdentifierSet();
+            for (int dx = 0; dx < deviceCount; dx += step) {
+                (owners[dx] < 0 ? free : assigned).addId(0x2000 + dx);
+            }
+
+            for (int mx = 0; mx < machineCount; ++mx) {
+                var attached = new IdentifierSet();
+                for (int dx = 0; dx < deviceCount; dx += step) {
+                    if (owners[dx] == mx) {
+                        attached.addId(0x2000 + dx);
+                    }
+                }
+
+                var count = 1 + random.nextInt(step == 2 ? 5 : 15);
+                var alloc = new Allocator("Machine" + mx, count, attached, free, assigned);
+                pooled.get(resModel).add(alloc);
+                ordered.get(resModel).add(new Allocator("Machine" + mx, count, alloc.getDeviceIdentifiers()));
+            }
+        }
+
+        var pooledSolver = new GreedyAllocationSolver(pooled).solve();
+        var orderedSolver = new GreedyAllocationSolver(ordered).solve();
+        assertEquals(getResults(orderedSolver), getResults(pooledSolver));
+        assertEquals(orderedSolver.isSatisfied(), pooledSolver.isSatisfied());
+
+        // and nobody gets the same device twice
+        var seen = new IdentifierSet();
+        for (var alloc : pooledSolver.getAllocations()) {
+            for (var id : alloc.getDeviceIdentifiers()) {
+                assertFalse(seen.contains(id));
+                seen.add(id);
+            }
+        }
+    }
+
+    @Test
+    public void coLocatedPools_matchFullCandidateSets() {
+        // devices spread at random over 4 switches (some unknown), attached at random to one of 10 machines, or free.
+        // the specific model's candidates are a subset of the generic model's, so taking from one pool
+        // must be seen by the other.
+        var random = new Random(23);
+        var machineCount = 10;
+        var deviceCount = 200;
+        var locality = new FabricLocality();
+        var owners = IntStream.range(0, deviceCount).map(dx -> random.nextInt(machineCount + 1) - 1).toArray();
+        for (int dx = 0; dx < deviceCount; ++dx) {
+            var switchId = random.nextInt(5);
+            if (switchId > 0) {
+                locality.setDeviceSwitch(0x2000 + dx, switchId);
+            }
+        }
+        for (int mx = 0; mx < machineCount; mx += 2) {
+            locality.setMachineSwitch("Machine" + mx, 1 + random.nextInt(4));
+        }
+
+        Map<ResourceModel, Collection<Allocator>> allocators = new TreeMap<>();
+        var specificModel = new SpecificResourceModel(GeneralType.GPU, "NVidia", "A100");
+        var genericModel = new GenericResourceModel(GeneralType.GPU);
+        for (var resModel : new ResourceModel[]{ specificModel, genericModel }) {
+            allocators.put(resModel, new LinkedList<>());
+            var step = (resModel == specificModel) ? 2 : 1;
+            var free = new IdentifierSet();
+            var assigned = new IdentifierSet();
+            for (int dx = 0; dx < deviceCount; dx += step) {
+                (owners[dx] < 0 ? free : assigned).addId(0x2000 + dx);
+            }
+
+            for (int mx = 0; mx < machineCount; ++mx) {
+                var attached = new IdentifierSet();
+                for (int dx = 0; dx < deviceCount; dx += step) {
+                    if (owners[dx] == mx) {
+                        attached.addId(0x2000 + dx);
+                    }
+                }
+                var count = 1 + random.nextInt(step == 2 ? 5 : 15);
+                allocators.get(resModel).add(new Allocator("Machine" + mx, count, attached, free, assigned));
+            }
+        }
+
+        // what we expect - each allocator choosing from all the candidates still available to it
+        var expected = new HashMap<String, IdentifierSet>();
+        var taken = new IdentifierSet();
+        for (var allocs : allocators.values()) {
+            for (var alloc : allocs) {
+                var result = expected.computeIfAbsent(alloc.getMachineName(), k -> new IdentifierSet());
+                var chosenHere = new IdentifierSet();
+                var remaining = (int) alloc.getCount();
+                var attached = alloc.getAttachedDeviceIdentifiers();
+                for (int dx = 0; (dx < attached.size()) && (remaining > 0); ++dx) {
+                    if (taken.addId(attached.getId(dx))) {
+                        chosenHere.addId(attached.getId(dx));
+                        remaining--;
+                    }
+                }
+                for (var candidates : new IdentifierSet[]{ alloc.getFreeDeviceIdentifiers(), alloc.getAssignedDeviceIdentifiers() }) {
+                    var available = new IdentifierSet(candidates);
+                    available.removeAll(taken);
+                    var chosen = locality.chooseDevices(alloc.getMachineName(), available, remaining, chosenHere);
+                    taken.addAll(chosen);
+                    chosenHere.addAll(chosen);
+                    remaining -= chosen.size();
+                }
+                result.addAll(chosenHere);
+            }
+        }
+
+        var solver = new GreedyAllocationSolver(allocators).setLocality(locality).solve();
+        assertEquals(expected, getResults(solver));
+    }
+}
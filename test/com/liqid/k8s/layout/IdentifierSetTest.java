@@ -0,0 +1,71 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IdentifierSetTest {
+
+    @Test
+    public void addAndRemove_keepsOrder() {
+        var set = new IdentifierSet();
+        assertTrue(set.addId(0x2002));
+        assertTrue(set.addId(0x1001));
+        assertTrue(set.addId(0x3003));
+        assertTrue(set.addId(0x2000));
+        assertFalse(set.addId(0x1001));
+
+        assertEquals(4, set.size());
+        assertArrayEquals(new int[]{ 0x1001, 0x2000, 0x2002, 0x3003 }, set.toIntArray());
+
+        assertTrue(set.removeId(0x2000));
+        assertFalse(set.removeId(0x2000));
+        assertFalse(set.containsId(0x2000));
+        assertTrue(set.containsId(0x3003));
+        assertEquals(0x2002, set.getId(1));
+    }
+
+    @Test
+    public void bulkOperations() {
+        var set1 = new IdentifierSet(new int[]{ 5, 1, 3, 3, 9 });
+        var set2 = new IdentifierSet(Arrays.asList(2, 3, 4, 9));
+        assertEquals(4, set1.size());
+
+        var union = new IdentifierSet(set1);
+        assertTrue(union.addAll(set2));
+        assertFalse(union.addAll(set1));
+        assertArrayEquals(new int[]{ 1, 2, 3, 4, 5, 9 }, union.toIntArray());
+
+        assertTrue(union.removeAll(set2));
+        assertArrayEquals(new int[]{ 1, 5 }, union.toIntArray());
+    }
+
+    @Test
+    public void behavesAsSetOfInteger() {
+        var set = new IdentifierSet(new int[]{ 4, 8, 15, 16, 23, 42 });
+        var hashSet = new HashSet<>(Arrays.asList(4, 8, 15, 16, 23, 42));
+        assertEquals(hashSet, set);
+        assertEquals(set, hashSet);
+        assertEquals(hashSet.hashCode(), set.hashCode());
+        assertEquals("[4, 8, 15, 16, 23, 42]", set.toString());
+
+        var iter = set.iterator();
+        while (iter.hasNext()) {
+            if (iter.next() % 2 == 0) {
+                iter.remove();
+            }
+        }
+        assertArrayEquals(new int[]{ 15, 23 }, set.toIntArray());
+    }
+}
@@ -0,0 +1,331 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import com.liqid.sdk.ConnectionHistory;
+import com.liqid.sdk.DeviceType;
+import com.liqid.sdk.LiqidClient;
+import com.liqid.sdk.LiqidException;
+import com.liqid.sdk.mock.MockLiqidClient;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LiqidInventoryTest {
+
+    private static MockLiqidClient createMock() throws LiqidException {
+        var mock = new MockLiqidClient.Builder().build();
+        var ssdIds = new LinkedList<>(mock.createDevices(DeviceType.SSD, (short)0x0030, (short)0x01, "Micron", "Bear", 3));
+        var gpuIds = new LinkedList<>(mock.createDevices(DeviceType.GPU, (short)0x0010, (short)0x03, "NVidia", "A100", 6));
+        var fpgaIds = new LinkedList<>(mock.createDevices(DeviceType.FPGA, (short)0x0020, (short)0x05, "Xilinx", "U250", 4));
+
+        var group1 = mock.createGroup("Group1");
+        var group2 = mock.createGroup("Group2");
+        var machine1 = mock.createMachine(group1.getGroupId(), "Machine1");
+        var machine2 = mock.createMachine(group1.getGroupId(), "Machine2");
+        var machine3 = mock.createMachine(group2.getGroupId(), "Machine3");
+
+
+        var group1Ids = new LinkedList<>(ssdIds.subList(0, 2));
+        group1Ids.addAll(gpuIds.subList(0, 4));
+        group1Ids.addAll(fpgaIds.subList(0, 2));
+        mock.groupPoolEdit(group1.getGroupId());
+        for (var id : group1Ids) {
+            mock.addDeviceToGroup(id, group1.getGroupId());
+        }
+        mock.groupPoolDone(group1.getGroupId());
+
+        var group2Ids = new LinkedList<>(ssdIds.subList(2, 3));
+        group2Ids.addAll(gpuIds.subList(4, 5));
+        mock.groupPoolEdit(group2.getGroupId());
+        for (var id : group2Ids) {
+            mock.addDeviceToGroup(id, group2.getGroupId());
+        }
+        mock.groupPoolDone(group2.getGroupId());
+
+        mock.editFabric(machine1.getMachineId());
+        mock.addDeviceToMachine(ssdIds.get(0), group1.getGroupId(), machine1.getMachineId());
+        mock.addDeviceToMachine(gpuIds.get(0), group1.getGroupId(), machine1.getMachineId());
+        mock.addDeviceToMachine(gpuIds.get(1), group1.getGroupId(), machine1.getMachineId());
+        mock.reprogramFabric(machine1.getMachineId());
+
+        mock.editFabric(machine2.getMachineId());
+        mock.addDeviceToMachine(ssdIds.get(1), group1.getGroupId(), machine2.getMachineId());
+        mock.addDeviceToMachine(fpgaIds.get(0), group1.getGroupId(), machine2.getMachineId());
+        mock.reprogramFabric(machine2.getMachineId());
+
+        mock.editFabric(machine3.getMachineId());
+        mock.addDeviceToMachine(ssdIds.get(2), group2.getGroupId(), machine3.getMachineId());
+        mock.addDeviceToMachine(gpuIds.get(4), group2.getGroupId(), machine3.getMachineId());
+        mock.reprogramFabric(machine3.getMachineId());
+
+        return mock;
+    }
+
+    // Produces a comparable digest of the inventory content
+    private static Map<String, String> digest(
+        final LiqidInventory inventory
+    ) {
+        var result = new TreeMap<String, String>();
+        for (var di : inventory.getDeviceItems()) {
+            result.put(di.getDeviceName(),
+                       String.format("id=%d type=%s vendor=%s group=%s machine=%s",
+                                     di.getDeviceId(),
+                                     di.getGeneralType(),
+                                     di.getDeviceInfo().getVendor(),
+                                     di.getGroupId(),
+                                     di.getMachineId()));
+        }
+        for (var g : inventory.getGroups()) {
+            result.put("group:" + g.getGroupName(), String.valueOf(g.getGroupId()));
+        }
+        for (var m : inventory.getMachines()) {
+            result.put("machine:" + m.getMachineName(), m.getMachineId() + "/" + m.getGroupId());
+        }
+        return result;
+    }
+
+    @Test
+    public void concurrentLoad_matchesSerialLoad() throws LiqidException {
+        var mock = createMock();
+        var serial = LiqidInventory.createLiqidInventory(mock);
+        // each thread asks for a client of its own, once - and each client is released afterward
+        var threads = Collections.synchronizedList(new LinkedList<Thread>());
+        var released = new AtomicInteger();
+        var concurrent = LiqidInventory.createLiqidInventory(new LiqidClientFactory() {
+            @Override
+            public LiqidClient createLiqidClient() {
+                threads.add(Thread.currentThread());
+                return mock;
+            }
+
+            @Override
+            public void releaseLiqidClient(final LiqidClient client) {
+                released.incrementAndGet();
+            }
+        }, 4);
+
+        assertEquals(13, serial.getDeviceItems().size());
+        assertEquals(digest(serial), digest(concurrent));
+        assertTrue(threads.size() <= 4);
+        assertEquals(threads.size(), new HashSet<>(threads).size());
+        assertEquals(threads.size(), released.get());
+    }
+
+    @Test
+    public void concurrentLoad_singleThread() throws LiqidException {
+        var mock = createMock();
+        var serial = LiqidInventory.createLiqidInventory(mock);
+        var concurrent = LiqidInventory.createLiqidInventory(() -> mock, 1);
+
+        assertEquals(digest(serial), digest(concurrent));
+    }
+
+    @Test
+    public void indexes_followNotifications() throws LiqidException {
+        var inv = LiqidInventory.createLiqidInventory(createMock());
+        var group1 = inv.getGroup("Group1");
+        var machine1 = inv.getMachine("Machine1");
+        var machine2 = inv.getMachine("Machine2");
+
+        assertEquals(2, inv.getMachinesInGroup(group1.getGroupId()).size());
+        // the mock reports only the free pool devices when asked for the devices in a group
+        assertEquals(3, inv.getDeviceItemsForGroup(group1.getGroupId()).size());
+        assertEquals(3, inv.getDeviceItemsForMachine("Machine1").size());
+        assertEquals(6, inv.getDeviceItemsOfType(GeneralType.GPU).size());
+        assertEquals(4, inv.getDeviceItemsForVendor("Xilinx", "U250").size());
+        assertTrue(inv.hasDevice("NVidia", "A100"));
+        assertFalse(inv.hasDevice("NVidia", "L40"));
+
+        var gpu = inv.getDeviceItem("gpu0");
+        inv.notifyDeviceRemovedFromMachine(gpu.getDeviceId());
+        assertEquals(2, inv.getDeviceItemsForMachine(machine1.getMachineId()).size());
+
+        inv.notifyDeviceAssignedToMachine(gpu.getDeviceId(), machine2.getMachineId());
+        assertTrue(inv.getDeviceItemsForMachine(machine2.getMachineId()).contains(gpu));
+        assertTrue(inv.getDeviceItemsForGroup(group1.getGroupId()).contains(gpu));
+
+        inv.notifyDeviceRemoved(gpu.getDeviceId());
+        assertFalse(inv.getDeviceItemsForMachine(machine2.getMachineId()).contains(gpu));
+        assertEquals(5, inv.getDeviceItemsOfType(GeneralType.GPU).size());
+
+        inv.notifyMachineRemoved(machine1.getMachineId());
+        assertEquals(1, inv.getMachinesInGroup(group1.getGroupId()).size());
+    }
+
+    @Test
+    public void copy_isolatesUpdates() throws LiqidException {
+        var original = LiqidInventory.createLiqidInventory(createMock());
+        var machine1 = original.getMachine("Machine1");
+        var machine2 = original.getMachine("Machine2");
+        var gpu0 = original.getDeviceItem("gpu0");
+        var gpu2 = original.getDeviceItem("gpu2");
+        var before = digest(original);
+
+        var fork = original.copy();
+        assertEquals(before, digest(fork));
+
+        fork.notifyDeviceAssignedToMachine(gpu0.getDeviceId(), machine2.getMachineId());
+        fork.notifyDeviceAssignedToMachine(gpu2.getDeviceId(), machine1.getMachineId());
+        assertEquals(before, digest(original));
+        assertEquals(machine1.getMachineId(), gpu0.getMachineId());
+        assertEquals(machine2.getMachineId(), fork.getDeviceItem("gpu0").getMachineId());
+        assertTrue(fork.getDeviceItemsForMachine(machine1.getMachineId()).contains(gpu2));
+        assertFalse(original.getDeviceItemsForMachine(machine1.getMachineId()).contains(gpu2));
+
+        // updates to the original after the fork must not leak into the fork either
+        var forkState = digest(fork);
+        original.notifyDeviceRemovedFromMachine(gpu0.getDeviceId());
+        original.notifyMachineRemoved(machine2.getMachineId());
+        assertEquals(forkState, digest(fork));
+        assertNull(original.getDeviceItem("gpu0").getMachineId());
+    }
+
+    @Test
+    public void acceptedDeviceIds_followDeviceChanges() throws LiqidException {
+        var inv = LiqidInventory.createLiqidInventory(createMock());
+        var gpus = new GenericResourceModel(GeneralType.GPU);
+        var nvidia = new VendorResourceModel(GeneralType.GPU, "NVidia");
+        var a100 = new SpecificResourceModel(GeneralType.GPU, "NVidia", "A100");
+        var l40 = new SpecificResourceModel(GeneralType.GPU, "NVidia", "L40");
+
+        assertEquals(6, inv.getDeviceIdsAcceptedBy(gpus).size());
+        assertEquals(6, inv.getDeviceIdsAcceptedBy(nvidia).size());
+        assertEquals(6, inv.getDeviceIdsAcceptedBy(a100).size());
+        assertTrue(inv.getDeviceIdsAcceptedBy(l40).isEmpty());
+        assertEquals(4, inv.getDeviceIdsAcceptedBy(new VendorResourceModel(GeneralType.FPGA, "Xilinx")).size());
+
+        // results are copies
+        inv.getDeviceIdsAcceptedBy(a100).clear();
+        assertEquals(6, inv.getDeviceIdsAcceptedBy(a100).size());
+
+        var fork = inv.copy();
+        var gpu0 = inv.getDeviceItem("gpu0");
+        fork.notifyDeviceRemoved(gpu0.getDeviceId());
+        assertEquals(5, fork.getDeviceIdsAcceptedBy(a100).size());
+        assertFalse(fork.getDeviceIdsAcceptedBy(gpus).containsId(gpu0.getDeviceId()));
+        assertEquals(6, inv.getDeviceIdsAcceptedBy(a100).size());
+    }
+
+    @Test
+    public void query_matchesPredicate() throws LiqidException {
+        var inv = LiqidInventory.createLiqidInventory(createMock());
+        var group1 = inv.getGroup("Group1");
+        var machine1 = inv.getMachine("Machine1");
+
+        var queries = new LinkedList<InventoryQuery>();
+        queries.add(inv.query());
+        queries.add(inv.query().ofType(GeneralType.GPU));
+        queries.add(inv.query().ofType(GeneralType.GPU).notInAnyMachine());
+        queries.add(inv.query().inGroup(group1.getGroupId()).notOfType(GeneralType.SSD));
+        queries.add(inv.query().inGroup(null));
+        queries.add(inv.query().inMachine(machine1.getMachineId()).ofType(GeneralType.GPU));
+        queries.add(inv.query().forVendor("Xilinx").inAnyMachine());
+        queries.add(inv.query().forVendor("NVidia", "A100").notInMachine(machine1.getMachineId()));
+        queries.add(inv.query().acceptedBy(new GenericResourceModel(GeneralType.GPU))
+                       .notAcceptedBy(new SpecificResourceModel(GeneralType.GPU, "NVidia", "A100")));
+
+        for (var query : queries) {
+            var expected = LiqidInventory.getDeviceIdsFromItems(inv.getDeviceItems());
+            expected.removeIf(id -> !query.test(inv.getDeviceItem(id)));
+            assertEquals(query.toString(), expected, query.getDeviceIds());
+            assertEquals(expected, LiqidInventory.getDeviceIdsFromItems(new LinkedList<>(query.getDeviceItems())));
+        }
+
+        assertEquals(3, inv.query().ofType(GeneralType.GPU).notInAnyMachine().getDeviceIds().size());
+        assertEquals(2, inv.query().inMachine(machine1.getMachineId()).ofType(GeneralType.GPU).getDeviceItems().size());
+        assertTrue(inv.query().acceptedBy(new GenericResourceModel(GeneralType.GPU))
+                      .notAcceptedBy(new SpecificResourceModel(GeneralType.GPU, "NVidia", "A100"))
+                      .getDeviceIds().isEmpty());
+    }
+
+    @Test
+    public void listeners_receiveEvents() throws LiqidException {
+        var original = LiqidInventory.createLiqidInventory(createMock());
+        var group1 = original.getGroup("Group1");
+        var machine1 = original.getMachine("Machine1");
+        var machine2 = original.getMachine("Machine2");
+        var gpu0 = original.getDeviceItem("gpu0");
+
+        var events = new LinkedList<InventoryEvent>();
+        original.addListener((inv, event) -> events.add(event));
+        var fork = original.copy();
+
+        original.notifyDeviceAssignedToMachine(gpu0.getDeviceId(), machine2.getMachineId());
+        original.notifyMachineRemoved(machine1.getMachineId());
+        fork.notifyMachineRemoved(machine2.getMachineId());
+
+        assertEquals(2, events.size());
+        var moved = events.get(0);
+        assertEquals(InventoryEventType.DEVICE_MOVED, moved.getType());
+        assertEquals(gpu0.getDeviceId(), moved.getDeviceId());
+        assertEquals(machine1.getMachineId(), moved.getPreviousMachineId());
+        assertEquals(machine2.getMachineId(), moved.getMachineId());
+        assertEquals(group1.getGroupId(), moved.getGroupId());
+
+        var removed = events.get(1);
+        assertEquals(InventoryEventType.MACHINE_REMOVED, removed.getType());
+        assertEquals(machine1.getMachineId(), removed.getMachineId());
+
+        // assigning a device to where it already is, is not a change
+        original.notifyDeviceAssignedToMachine(gpu0.getDeviceId(), machine2.getMachineId());
+        assertEquals(2, events.size());
+    }
+
+    @Test
+    public void snapshot_roundTrip() throws IOException, LiqidException {
+        var mock = createMock();
+        var inv = LiqidInventory.createLiqidInventory(mock);
+        var fingerprint = InventorySnapshot.createFingerprint(mock);
+        var file = File.createTempFile("inventory", ".snapshot");
+        file.deleteOnExit();
+
+        InventorySnapshot.write(file.getPath(), "10.1.2.3", fingerprint, inv);
+        var restored = InventorySnapshot.read(file.getPath(), "10.1.2.3", fingerprint, 60);
+        assertEquals(digest(inv), digest(restored));
+
+        assertNull(InventorySnapshot.read(file.getPath(), "10.1.2.4", fingerprint, 60));
+
+        // a change in the configuration invalidates the snapshot
+        var group = mock.getGroups().get(0);
+        mock.createMachine(group.getGroupId(), "Machine4");
+        assertNull(InventorySnapshot.read(file.getPath(), "10.1.2.3", InventorySnapshot.createFingerprint(mock), 60));
+
+        InventorySnapshot.discard(file.getPath());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void fingerprint_coversAttachments() throws LiqidException {
+        var mock = createMock();
+        var machine1 = mock.getMockMachines().stream().filter(m -> m.getMachineName().equals("Machine1")).findFirst().get();
+        var machine2 = mock.getMockMachines().stream().filter(m -> m.getMachineName().equals("Machine2")).findFirst().get();
+        var history = new LinkedList<ConnectionHistory>();
+        history.add(new ConnectionHistory().setName("gpu0").setAttachTime(100L));
+        machine1.setConnectionHistory(history);
+        var fingerprint = InventorySnapshot.createFingerprint(mock);
+
+        // gpu0 moves from Machine1 to Machine2 in the same group - nothing else the fingerprint covers changes
+        history.getFirst().setDetachTime(200L);
+        var history2 = new LinkedList<ConnectionHistory>();
+        history2.add(new ConnectionHistory().setName("gpu0").setAttachTime(200L));
+        machine2.setConnectionHistory(history2);
+        assertNotEquals(fingerprint, InventorySnapshot.createFingerprint(mock));
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class PartitionedAllocationSolverTest {
+
+    private static Map<String, IdentifierSet> getResults(
+        final AllocationSolver solver
+    ) {
+        var result = new HashMap<String, IdentifierSet>();
+        solver.getAllocations().forEach(alloc -> result.put(alloc.getMachineName(), alloc.getDeviceIdentifiers()));
+        return result;
+    }
+
+    @Test
+    public void partitionedAllocation_matchesWhole() {
+        // 100 GPUs from 0x2000 and 100 SSDs from 0x5000, attached at random to one of 10 machines, or free.
+        var random = new Random(23);
+        var machineCount = 10;
+        var deviceCount = 100;
+        var models = new ResourceModel[]{ new GenericResourceModel(GeneralType.GPU),
+                                          new GenericResourceModel(GeneralType.SSD) };
+        var bases = new int[]{ 0x2000, 0x5000 };
+
+        Map<ResourceModel, Collection<Allocator>> allocators = new TreeMap<>();
+        for (int tx = 0; tx < models.length; ++tx) {
+            var owners = random.ints(deviceCount, -1, machineCount).toArray();
+            var free = new IdentifierSet();
+            var assigned = new IdentifierSet();
+            for (int dx = 0; dx < deviceCount; ++dx) {
+                (owners[dx] < 0 ? free : assigned).addId(bases[tx] + dx);
+            }
+
+            var allocs = new LinkedList<Allocator>();
+            for (int mx = 0; mx < machineCount; ++mx) {
+                var attached = new IdentifierSet();
+                for (int dx = 0; dx < deviceCount; ++dx) {
+                    if (owners[dx] == mx) {
+                        attached.addId(bases[tx] + dx);
+                    }
+                }
+                // the SSDs, at least, are over-subscribed
+                var count = (tx == 0) ? 1 + random.nextInt(15) : 11;
+                allocs.add(new Allocator("Machine" + mx, count, attached, free, assigned));
+            }
+            allocators.put(models[tx], allocs);
+        }
+
+        var whole = new GreedyAllocationSolver(allocators).solve();
+        var pool = new ForkJoinPool(2);
+        var partitioned = new PartitionedAllocationSolver(allocators, GreedyAllocationSolver::new).setPool(pool).solve();
+        pool.shutdown();
+
+        assertEquals(getResults(whole), getResults(partitioned));
+        assertFalse(partitioned.isSatisfied());
+        for (var allocs : allocators.values()) {
+            for (var alloc : allocs) {
+                assertEquals(whole.getShortfall(alloc), partitioned.getShortfall(alloc));
+            }
+        }
+    }
+}
@@ -11,6 +11,26 @@ import static org.junit.Assert.*;
 
 public class ProfileTest {
 
+    @Test
+    public void createFingerprint() {
+        var gpuModel = new GenericResourceModel(GeneralType.GPU);
+        var ssdModel = new SpecificResourceModel(GeneralType.SSD, "Liqid", "LQD4500");
+
+        var p1 = new MachineProfile("machine1");
+        p1.injectCount(gpuModel, 2);
+        p1.injectCount(ssdModel, 1);
+        var p2 = new MachineProfile("machine2");
+        p2.injectCount(ssdModel, 1);
+        p2.injectCount(gpuModel, 2);
+        var devIds = new IdentifierSet(new int[]{ 0x2001, 0x2002, 0x5000 });
+
+        assertEquals(p1.createFingerprint(devIds), p2.createFingerprint(new IdentifierSet(devIds)));
+        assertNotEquals(p1.createFingerprint(devIds), p1.createFingerprint(new IdentifierSet(new int[]{ 0x2001, 0x2003, 0x5000 })));
+
+        p2.injectCount(gpuModel, 1);
+        assertNotEquals(p1.createFingerprint(devIds), p2.createFingerprint(devIds));
+    }
+
     //  TODO Need to test with VendorResourceModel objects
     @Test
     public void injectCount_SimpleGeneric() {
@@ -15,6 +15,8 @@ import java.util.TreeSet;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class ResourceModelTest {
@@ -286,4 +288,17 @@ public class ResourceModelTest {
         assertFalse(fpgaGeneral.overlaps(gpuIntelA770));
         assertFalse(gpuIntelA770.overlaps(fpgaGeneral));
     }
+
+    @Test
+    public void hashingAndInterning() {
+        // models differing only in model name must not collide
+        assertNotEquals(INTEL_8080.hashCode(), INTEL_8085.hashCode());
+        assertNotEquals(INTEL_8085.hashCode(), INTEL_8086.hashCode());
+        assertEquals(new SpecificResourceModel(GeneralType.CPU, INTEL_NAME, "8080").hashCode(), INTEL_8080.hashCode());
+
+        var canonical = ResourceModel.intern(new SpecificResourceModel(GeneralType.GPU, INTEL_NAME, "A770"));
+        assertSame(canonical, ResourceModel.intern(new SpecificResourceModel(GeneralType.GPU, INTEL_NAME, "A770")));
+        assertEquals(INTEL_A770, canonical);
+        assertNotSame(ResourceModel.intern(INTEL_GPU), ResourceModel.intern(INTEL_A770));
+    }
 }
@@ -0,0 +1,85 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.layout;
+
+import com.liqid.sdk.DeviceInfo;
+import com.liqid.sdk.DeviceStatus;
+import com.liqid.sdk.DeviceType;
+import com.liqid.sdk.Group;
+import com.liqid.sdk.Machine;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class SparePoolTest {
+
+    private static void createDevice(
+        final LiqidInventory inventory,
+        final int deviceId,
+        final DeviceType deviceType
+    ) {
+        var devName = String.format("dev%d", deviceId);
+        var devStat = new DeviceStatus().setDeviceId(deviceId).setName(devName).setDeviceType(deviceType);
+        var devInfo = new DeviceInfo().setDeviceIdentifier(deviceId).setName(devName).setDeviceInfoType(deviceType);
+        inventory.notifyDeviceCreated(devStat, devInfo);
+    }
+
+    @Test
+    public void parse() {
+        var pool = SparePool.parse("gpu:2, SSD:1");
+        assertNotNull(pool);
+        assertEquals(2, pool.getTarget(GeneralType.GPU));
+        assertEquals(1, pool.getTarget(GeneralType.SSD));
+        assertEquals(0, pool.getTarget(GeneralType.FPGA));
+        assertEquals("gpu:2,ssd:1", pool.toString());
+        assertEquals(pool.toString(), SparePool.parse(pool.toString()).toString());
+
+        assertNull(SparePool.parse("gpu"));
+        assertNull(SparePool.parse("gpu:two"));
+        assertNull(SparePool.parse("widget:2"));
+        assertNull(SparePool.parse("cpu:2"));
+        assertNull(SparePool.parse("gpu:-1"));
+    }
+
+    @Test
+    public void getReplenishment() {
+        var inv = new LiqidInventory();
+        inv.notifyGroupCreated(new Group().setGroupName("Ours").setGroupId(1));
+        inv.notifyGroupCreated(new Group().setGroupName("Theirs").setGroupId(2));
+        inv.notifyMachineCreated(new Machine().setMachineName("Machine1").setMachineId(1).setGroupId(1));
+
+        // GPUs 0x2000 and 0x2001 are free in our group, 0x2002 is attached to our machine,
+        // 0x2003 is in another group, and 0x2004 through 0x2006 are in no group at all.
+        for (var devId = 0x2000; devId <= 0x2006; devId++) {
+            createDevice(inv, devId, DeviceType.GPU);
+        }
+        inv.notifyDeviceAssignedToGroup(0x2000, 1);
+        inv.notifyDeviceAssignedToGroup(0x2001, 1);
+        inv.notifyDeviceAssignedToMachine(0x2002, 1);
+        inv.notifyDeviceAssignedToGroup(0x2003, 2);
+
+        // One of the free GPUs is to be attached, so we need two more to keep three spares.
+        var pool = new SparePool().setTarget(GeneralType.GPU, 3);
+        var attached = new IdentifierSet(new int[]{ 0x2000, 0x2002 });
+        var devItems = pool.getReplenishment(inv, 1, attached);
+        var ids = new TreeSet<>(LiqidInventory.getDeviceIdsFromItems(devItems));
+        assertEquals(new TreeSet<>(Arrays.asList(0x2004, 0x2005)), ids);
+
+        // If nothing is to be attached, the pool is short by one.
+        devItems = pool.getReplenishment(inv, 1, new IdentifierSet(new int[]{ 0x2002 }));
+        assertEquals(1, devItems.size());
+
+        // If we want more than there are, we get what there is.
+        pool.setTarget(GeneralType.GPU, 10);
+        devItems = pool.getReplenishment(inv, 1, attached);
+        assertEquals(3, devItems.size());
+    }
+}
@@ -178,6 +178,7 @@ public class VarianceSetTest {
         for (var action : actions) {
             System.out.println(action);
         }
+        assertEquals(3, actions.size());
     }
 
     @Test
@@ -227,5 +228,43 @@ public class VarianceSetTest {
         for (var action : actions) {
             System.out.println(action);
         }
+
+        //  one bifurcation breaks the cycle, so we get one more action than we have machines
+        assertEquals(5, actions.size());
+    }
+
+    @Test
+    public void varianceSetChain() throws InternalErrorException, LiqidException {
+        //  Each machine wants the device which the next one gives up, and the last device is free.
+        //  There is no cycle, so nothing is bifurcated - each machine gets one action, last one first.
+        var mock = new MockLiqidClient.Builder().build();
+        var gpuIds = mock.createDevices(DeviceType.GPU, (short)0x0010, (short)0x03, "Vector Graphics", "VT-G", 4);
+        var group = mock.createGroup("Peanuts");
+        var machine1 = mock.createMachine(group.getGroupId(), "CharlieBrown");
+        var machine2 = mock.createMachine(group.getGroupId(), "LinusVanPelt");
+        var machine3 = mock.createMachine(group.getGroupId(), "LucyVanPelt");
+        var inv = LiqidInventory.createLiqidInventory(mock);
+
+        var iter = gpuIds.iterator();
+        Integer devId1 = iter.next();
+        Integer devId2 = iter.next();
+        Integer devId3 = iter.next();
+        Integer devId4 = iter.next();
+
+        var vs = new VarianceSet();
+        vs.addVariance(new Variance(machine1, Collections.singleton(devId2), Collections.singleton(devId1)));
+        vs.addVariance(new Variance(machine2, Collections.singleton(devId3), Collections.singleton(devId2)));
+        vs.addVariance(new Variance(machine3, Collections.singleton(devId4), Collections.singleton(devId3)));
+
+        var actions = new LinkedList<Action>();
+        var unassigned = new HashSet<Integer>();
+        unassigned.add(devId4);
+        while (!vs.isEmpty()) {
+            actions.add(vs.getAction(inv, unassigned));
+        }
+
+        assertEquals(3, actions.size());
+        assertTrue(actions.get(0).toString().contains(machine3.getMachineName()));
+        assertTrue(actions.get(2).toString().contains(machine1.getMachineName()));
     }
 }
@@ -0,0 +1,147 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.plan;
+
+import com.liqid.k8s.plan.actions.Action;
+import com.liqid.k8s.plan.actions.AssignToMachineAction;
+import com.liqid.k8s.plan.actions.CordonNodeAction;
+import com.liqid.k8s.plan.actions.ReconfigureMachineAction;
+import com.liqid.k8s.plan.actions.RemoveFromMachineAction;
+import com.liqid.k8s.plan.actions.UncordonNodeAction;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static com.liqid.k8s.Constants.PLAN_ESTIMATED_EVICTION_SECONDS;
+import static com.liqid.k8s.Constants.PLAN_ESTIMATED_REPROGRAM_SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DrainSchedulerTest {
+
+    @Test
+    public void nothingToSchedule() {
+        List<Action> steps = Arrays.asList(
+            new RemoveFromMachineAction().setMachineName("Machine1").setNodeName("Node1").addDeviceName("gpu0"),
+            new AssignToMachineAction().setMachineName("Machine2").addDeviceName("gpu0"),
+            new ReconfigureMachineAction().setMachineName("Machine3").setNodeName("Node3").addDeviceNameToRemove("gpu1"));
+        assertSame(steps, DrainScheduler.schedule(steps));
+    }
+
+    @Test
+    public void singleWindow() {
+        var release = new RemoveFromMachineAction().setMachineName("Machine2").setNodeName("Node2").addDeviceName("gpu1");
+        var remove = new RemoveFromMachineAction().setMachineName("Machine1").setNodeName("Node1").addDeviceName("gpu0");
+        var assign = new AssignToMachineAction().setMachineName("Machine1").addDeviceName("gpu1");
+        var reconfig = new ReconfigureMachineAction().setMachineName("Machine1")
+                                                     .setNodeName("Node1")
+                                                     .addDeviceNameToAdd("gpu2")
+                                                     .addDeviceNameToRemove("gpu3");
+        List<Action> steps = Arrays.asList(remove, release, assign, reconfig);
+
+        // the release of gpu1 is needed within the window, but need not be inside it
+        var result = DrainScheduler.schedule(steps);
+        assertEquals(6, result.size());
+        assertSame(release, result.get(0));
+        assertTrue(result.get(1) instanceof CordonNodeAction);
+        assertEquals("Node1", ((CordonNodeAction) result.get(1)).getNodeName());
+        assertSame(remove, result.get(2));
+        assertSame(assign, result.get(3));
+        assertSame(reconfig, result.get(4));
+        assertTrue(result.get(5) instanceof UncordonNodeAction);
+        assertEquals("Node1", ((UncordonNodeAction) result.get(5)).getNodeName());
+
+        // the cordon waits for what the window needs, so that the node is not cordoned while it cannot proceed
+        var graph = new DependencyGraph(result);
+        assertTrue(graph.dependsOn(1, 0));
+        assertTrue(graph.dependsOn(2, 1));
+        assertTrue(graph.dependsOn(5, 4));
+
+        var downtimes = DrainScheduler.estimateDowntime(result);
+        assertEquals(2, downtimes.size());
+        assertEquals(List.of("steps 2-6"), downtimes.get("Node1").getSpans());
+        assertEquals(PLAN_ESTIMATED_EVICTION_SECONDS + 2 * PLAN_ESTIMATED_REPROGRAM_SECONDS,
+                     downtimes.get("Node1").getSeconds());
+        assertEquals(List.of("step 1"), downtimes.get("Node2").getSpans());
+        assertEquals(PLAN_ESTIMATED_EVICTION_SECONDS + PLAN_ESTIMATED_REPROGRAM_SECONDS,
+                     downtimes.get("Node2").getSeconds());
+    }
+
+    @Test
+    public void windowsDoNotWaitOnOtherNodes() {
+        // Node2's work does not depend on Node1, so it is not held inside Node1's window
+        List<Action> steps = Arrays.asList(
+            new RemoveFromMachineAction().setMachineName("Machine1").setNodeName("Node1").addDeviceName("gpu0"),
+            new RemoveFromMachineAction().setMachineName("Machine2").setNodeName("Node2").addDeviceName("gpu1"),
+            new RemoveFromMachineAction().setMachineName("Machine1").setNodeName("Node1").addDeviceName("gpu2"),
+            new RemoveFromMachineAction().setMachineName("Machine2").setNodeName("Node2").addDeviceName("gpu3"));
+        var result = DrainScheduler.schedule(steps);
+        assertEquals(8, result.size());
+        assertTrue(result.get(0) instanceof CordonNodeAction);
+        assertSame(steps.get(0), result.get(1));
+        assertSame(steps.get(2), result.get(2));
+        assertTrue(result.get(3) instanceof UncordonNodeAction);
+        assertTrue(result.get(4) instanceof CordonNodeAction);
+        assertSame(steps.get(1), result.get(5));
+        assertSame(steps.get(3), result.get(6));
+        assertTrue(result.get(7) instanceof UncordonNodeAction);
+
+        // ...and when steps are performed concurrently, the second window need not wait for the first
+        assertTrue(new DependencyGraph(result).getAncestors(List.of(4)).isEmpty());
+    }
+
+    @Test
+    public void interleavedWindows() {
+        // Node2's first step must come between Node1's steps, and Node1's second step comes before Node2's second
+        List<Action> steps = Arrays.asList(
+            new RemoveFromMachineAction().setMachineName("Machine1").setNodeName("Node1").addDeviceName("gpu0"),
+            new ReconfigureMachineAction().setMachineName("Machine2")
+                                          .setNodeName("Node2")
+                                          .addDeviceNameToAdd("gpu0")
+                                          .addDeviceNameToRemove("gpu1"),
+            new ReconfigureMachineAction().setMachineName("Machine1").setNodeName("Node1").addDeviceNameToAdd("gpu1"),
+            new RemoveFromMachineAction().setMachineName("Machine2").setNodeName("Node2").addDeviceName("gpu2"),
+            new AssignToMachineAction().setMachineName("Machine3").addDeviceName("gpu3"));
+        var result = DrainScheduler.schedule(steps);
+
+        // each node is cordoned once, and every draining step is performed while its node is cordoned
+        var cordoned = new HashSet<String>();
+        var cordonCounts = new HashMap<String, Integer>();
+        for (var action : result) {
+            if (action instanceof CordonNodeAction cordon) {
+                cordoned.add(cordon.getNodeName());
+                cordonCounts.merge(cordon.getNodeName(), 1, Integer::sum);
+            } else if (action instanceof UncordonNodeAction uncordon) {
+                assertTrue(cordoned.remove(uncordon.getNodeName()));
+            } else if (action.getDrainedNodeName() != null) {
+                assertTrue(cordoned.contains(action.getDrainedNodeName()));
+            }
+        }
+        assertTrue(cordoned.isEmpty());
+        assertEquals(Map.of("Node1", 1, "Node2", 1), cordonCounts);
+        assertEquals(steps.size() + 4, result.size());
+        for (var step : steps) {
+            assertTrue(result.contains(step));
+        }
+
+        // and the order still respects the dependencies
+        var positions = new HashMap<Action, Integer>();
+        for (int rx = 0; rx < result.size(); ++rx) {
+            positions.put(result.get(rx), rx);
+        }
+        var graph = new DependencyGraph(steps);
+        for (int sx = 0; sx < steps.size(); ++sx) {
+            for (var px : graph.getPredecessors(sx)) {
+                assertTrue(positions.get(steps.get(px)) < positions.get(steps.get(sx)));
+            }
+        }
+    }
+}
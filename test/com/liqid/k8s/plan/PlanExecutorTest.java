@@ -0,0 +1,385 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.plan;
+
+import com.bearsnake.k8sclient.K8SClient;
+import com.bearsnake.klog.Logger;
+import com.liqid.k8s.exceptions.ProcessingException;
+import com.liqid.k8s.layout.ConcurrentLiqidInventory;
+import com.liqid.k8s.layout.LiqidClientFactory;
+import com.liqid.k8s.layout.LiqidInventory;
+import com.liqid.k8s.plan.actions.Action;
+import com.liqid.k8s.plan.actions.ActionResources;
+import com.liqid.k8s.plan.actions.ActionType;
+import com.liqid.k8s.plan.actions.AssignToMachineAction;
+import com.liqid.k8s.plan.actions.ClearConfigurationAction;
+import com.liqid.k8s.plan.actions.CordonNodeAction;
+import com.liqid.k8s.plan.actions.CreateGroupAction;
+import com.liqid.k8s.plan.actions.CreateMachineAction;
+import com.liqid.k8s.plan.actions.ReconfigureMachineAction;
+import com.liqid.k8s.plan.actions.RemoveFromMachineAction;
+import com.liqid.sdk.DeviceType;
+import com.liqid.sdk.LiqidClient;
+import com.liqid.sdk.LiqidException;
+import com.liqid.sdk.Machine;
+import com.liqid.sdk.mock.MockLiqidClient;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PlanExecutorTest {
+
+    // records what is done to nodes, rather than doing it
+    private static class TestK8SClient extends K8SClient {
+
+        private final List<String> _events = Collections.synchronizedList(new LinkedList<>());
+
+        private TestK8SClient() throws Exception {
+            super("http://localhost:1");
+        }
+
+        @Override public void cordonNode(final String nodeName) { _events.add("cordon " + nodeName); }
+        @Override public void evictPodsForNode(final String nodeName, final boolean force) { _events.add("evict " + nodeName); }
+        @Override public void uncordonNode(final String nodeName) { _events.add("uncordon " + nodeName); }
+    }
+
+    // an action which updates one device (and perhaps drains one node), and which may wait or fail
+    private static class TestAction extends Action {
+
+        private final String _deviceName;
+        private String _nodeName;
+        private String _awaitDrainOf;
+        private CountDownLatch _latch;
+        private boolean _fail = false;
+        private boolean _performed = false;
+        private boolean _wasDrained = false;
+
+        private TestAction(final String deviceName) {
+            super(ActionType.NO_OPERATION);
+            _deviceName = deviceName;
+        }
+
+        private TestAction setAwaitDrainOf(final String value) { _awaitDrainOf = value; return this; }
+        private TestAction setFail() { _fail = true; return this; }
+        private TestAction setLatch(final CountDownLatch value) { _latch = value; return this; }
+        private TestAction setNodeName(final String value) { _nodeName = value; return this; }
+
+        @Override
+        public void checkParameters() {}
+
+        @Override
+        public String getDrainedNodeName() { return _nodeName; }
+
+        @Override
+        public ActionResources getResources() { return new ActionResources().addDevice(_deviceName).addNode(_nodeName); }
+
+        @Override
+        public void perform(
+            final ExecutionContext context
+        ) throws ProcessingException {
+            if (_nodeName != null) {
+                _wasDrained = context.isNodeDrained(_nodeName);
+            }
+            if (_awaitDrainOf != null) {
+                // some other node must be drained while we are running
+                var limit = System.currentTimeMillis() + 10000;
+                while (!context.isNodeDrained(_awaitDrainOf)) {
+                    if (System.currentTimeMillis() > limit) {
+                        throw new ProcessingException("drain timed out");
+                    }
+                    Thread.onSpinWait();
+                }
+            }
+            if (_latch != null) {
+                // every latched action must be running at once, for any of them to finish
+                _latch.countDown();
+                try {
+                    if (!_latch.await(10, TimeUnit.SECONDS)) {
+                        throw new ProcessingException("latch timed out");
+                    }
+                } catch (InterruptedException ex) {
+                    throw new ProcessingException("interrupted");
+                }
+            }
+            _performed = true;
+            if (_fail) {
+                throw new ProcessingException("failed on purpose");
+            }
+        }
+    }
+
+    // records which threads use it, and the devices which it attaches to machines (in a shared map), rather than doing it
+    private static class TestLiqidClient extends LiqidClient {
+
+        private final Map<Integer, Integer> _attachments;
+        private final CountDownLatch _latch;
+        private final Set<Thread> _threads = ConcurrentHashMap.newKeySet();
+        private boolean _released = false;
+
+        private TestLiqidClient(
+            final Map<Integer, Integer> attachments,
+            final CountDownLatch latch
+        ) {
+            super(false, "localhost", 1, false, 1, false, 0, 0, false, 0);
+            _attachments = attachments;
+            _latch = latch;
+        }
+
+        private void used() {
+            _threads.add(Thread.currentThread());
+        }
+
+        @Override
+        public Machine editFabric(final Integer machineId) throws LiqidException {
+            used();
+            // every edit must be in progress at once, for any of them to finish
+            _latch.countDown();
+            try {
+                if (!_latch.await(10, TimeUnit.SECONDS)) {
+                    throw new LiqidException("latch timed out");
+                }
+            } catch (InterruptedException ex) {
+                throw new LiqidException("interrupted");
+            }
+            return null;
+        }
+
+        @Override
+        public void addDeviceToMachine(final Integer deviceId, final Integer groupId, final Integer machineId) throws LiqidException {
+            used();
+            _attachments.put(deviceId, machineId);
+        }
+
+        @Override
+        public Machine reprogramFabric(final Integer machineId) throws LiqidException {
+            used();
+            return null;
+        }
+    }
+
+    private static ExecutionContext createContext() {
+        // these steps do not talk to a Liqid Cluster, but a factory lets them run concurrently
+        return new ExecutionContext().setLogger(new Logger("Test"))
+                                     .setLiqidClientFactory(() -> { throw new LiqidException("no Liqid Cluster here"); });
+    }
+
+    @Test
+    public void dependencies() {
+        List<Action> steps = Arrays.asList(
+            new CreateGroupAction().setGroupName("Group"),
+            new CreateMachineAction().setGroupName("Group").setMachineName("Machine1"),
+            new CreateMachineAction().setGroupName("Group").setMachineName("Machine2"),
+            new RemoveFromMachineAction().setMachineName("Machine3").addDeviceName("gpu0"),
+            new AssignToMachineAction().setMachineName("Machine1").addDeviceName("gpu0"),
+            new AssignToMachineAction().setMachineName("Machine2").addDeviceName("gpu1"),
+            new ClearConfigurationAction(),
+            new TestAction("gpu2"));
+        var executor = new PlanExecutor(steps);
+
+        // a group before its machines, but the machines do not depend on each other
+        assertTrue(executor.dependsOn(1, 0));
+        assertTrue(executor.dependsOn(2, 0));
+        assertFalse(executor.dependsOn(2, 1));
+
+        // machine creation before assignment, and release before re-assignment
+        assertTrue(executor.dependsOn(4, 1));
+        assertTrue(executor.dependsOn(4, 3));
+        assertTrue(executor.dependsOn(5, 2));
+        assertFalse(executor.dependsOn(5, 3));
+        assertFalse(executor.dependsOn(5, 4));
+
+        // an action which might do anything comes between everything before it and everything after it
+        assertTrue(executor.dependsOn(6, 4));
+        assertTrue(executor.dependsOn(6, 5));
+        assertTrue(executor.dependsOn(7, 6));
+    }
+
+    @Test
+    public void concurrent() throws Exception {
+        // none of these can finish unless all of them are running at once
+        var latch = new CountDownLatch(4);
+        List<Action> steps = Arrays.asList(new TestAction("gpu0").setLatch(latch),
+                                           new TestAction("gpu1").setLatch(latch),
+                                           new TestAction("gpu2").setLatch(latch),
+                                           new TestAction("gpu3").setLatch(latch));
+        var executor = new PlanExecutor(steps).setConcurrency(4);
+        executor.execute(createContext());
+        for (int sx = 0; sx < steps.size(); ++sx) {
+            assertEquals(StepStatus.SUCCEEDED, executor.getStatus(sx));
+        }
+    }
+
+    @Test
+    public void failFast() throws Exception {
+        var failing = new TestAction("gpu0").setFail();
+        var dependent = new TestAction("gpu0");
+        var independent = new TestAction("gpu1");
+        var executor = new PlanExecutor(Arrays.asList(failing, dependent, independent));
+        try {
+            executor.execute(createContext());
+            fail("expected an exception");
+        } catch (ProcessingException ex) {
+            assertEquals("failed on purpose", ex.getMessage());
+        }
+
+        assertEquals(StepStatus.FAILED, executor.getStatus(0));
+        assertEquals(StepStatus.SKIPPED, executor.getStatus(1));
+        assertEquals(StepStatus.SKIPPED, executor.getStatus(2));
+        assertFalse(independent._performed);
+    }
+
+    @Test
+    public void continueOnError() throws Exception {
+        var failing = new TestAction("gpu0").setFail();
+        var dependent = new TestAction("gpu0");
+        var independent = new TestAction("gpu1");
+        var executor = new PlanExecutor(Arrays.asList(failing, dependent, independent))
+            .setConcurrency(2)
+            .setErrorPolicy(ErrorPolicy.CONTINUE_ON_ERROR);
+        try {
+            executor.execute(createContext());
+            fail("expected an exception");
+        } catch (ProcessingException ex) {
+            // expected
+        }
+
+        assertEquals(StepStatus.FAILED, executor.getStatus(0));
+        assertEquals(StepStatus.SKIPPED, executor.getStatus(1));
+        assertEquals(StepStatus.SUCCEEDED, executor.getStatus(2));
+        assertFalse(dependent._performed);
+        assertTrue(independent._performed);
+    }
+
+    @Test
+    public void drainAhead() throws Exception {
+        var client = new TestK8SClient();
+        var first = new TestAction("gpu0").setNodeName("Node1").setAwaitDrainOf("Node2");
+        var second = new TestAction("gpu1").setNodeName("Node2");
+        var executor = new PlanExecutor(Arrays.asList(first, second)).setDrainLookahead(1);
+        var context = createContext().setK8SClient(client);
+        executor.execute(context);
+
+        // the first step drains its own node; the second node is drained while the first step runs
+        assertEquals(StepStatus.SUCCEEDED, executor.getStatus(0));
+        assertEquals(StepStatus.SUCCEEDED, executor.getStatus(1));
+        assertFalse(first._wasDrained);
+        assertTrue(second._wasDrained);
+        assertEquals(Arrays.asList("cordon Node2", "evict Node2", "uncordon Node2"), client._events);
+        assertTrue(context.getDrainedNodeNames().isEmpty());
+    }
+
+    @Test
+    public void drainAheadWindow() throws Exception {
+        var client = new TestK8SClient();
+        var first = new TestAction("gpu0").setAwaitDrainOf("Node2");
+        var second = new TestAction("gpu1").setNodeName("Node2");
+        var third = new TestAction("gpu2").setNodeName("Node2");
+        var steps = DrainScheduler.schedule(Arrays.asList(first, second, third));
+        assertTrue(steps.get(1) instanceof CordonNodeAction);
+        var executor = new PlanExecutor(steps).setDrainLookahead(1);
+        var context = createContext().setK8SClient(client);
+        executor.execute(context);
+
+        // the window's node is drained while the first step runs, which leaves nothing for the cordon to do
+        for (int sx = 0; sx < steps.size(); ++sx) {
+            assertEquals(StepStatus.SUCCEEDED, executor.getStatus(sx));
+        }
+        assertTrue(second._wasDrained);
+        assertTrue(third._wasDrained);
+        assertEquals(Arrays.asList("cordon Node2", "evict Node2", "uncordon Node2"), client._events);
+        assertTrue(context.getDrainedNodeNames().isEmpty());
+    }
+
+    @Test
+    public void drainAheadAbandoned() throws Exception {
+        var client = new TestK8SClient();
+        var failing = new TestAction("gpu0").setNodeName("Node1").setAwaitDrainOf("Node2").setFail();
+        var dependent = new TestAction("gpu0").setNodeName("Node2");
+        var executor = new PlanExecutor(Arrays.asList(failing, dependent))
+            .setDrainLookahead(1)
+            .setErrorPolicy(ErrorPolicy.CONTINUE_ON_ERROR);
+        var context = createContext().setK8SClient(client);
+        try {
+            executor.execute(context);
+            fail("expected an exception");
+        } catch (ProcessingException ex) {
+            // expected
+        }
+
+        // the node drained for the dependent step is put back when that step can no longer happen
+        assertEquals(StepStatus.FAILED, executor.getStatus(0));
+        assertEquals(StepStatus.SKIPPED, executor.getStatus(1));
+        assertFalse(dependent._performed);
+        assertEquals(Arrays.asList("cordon Node2", "evict Node2", "uncordon Node2"), client._events);
+        assertTrue(context.getDrainedNodeNames().isEmpty());
+    }
+
+    @Test
+    public void concurrentClients() throws Exception {
+        var mock = new MockLiqidClient.Builder().build();
+        var devIds = new LinkedList<>(mock.createDevices(DeviceType.GPU, (short)0x0010, (short)0x02, "NVidia", "A100", 4));
+        var group = mock.createGroup("Group");
+        mock.groupPoolEdit(group.getGroupId());
+        for (var devId : devIds) {
+            mock.addDeviceToGroup(devId, group.getGroupId());
+        }
+        mock.groupPoolDone(group.getGroupId());
+        for (int mx = 0; mx < 4; ++mx) {
+            mock.createMachine(group.getGroupId(), "Machine" + mx);
+        }
+        var inventory = new ConcurrentLiqidInventory(LiqidInventory.createLiqidInventory(mock));
+
+        // each worker gets a client of its own - the context's own client is not used at all
+        var latch = new CountDownLatch(4);
+        var clients = Collections.synchronizedList(new LinkedList<TestLiqidClient>());
+        var attachments = new ConcurrentHashMap<Integer, Integer>();
+        var context = createContext().setLiqidInventory(inventory).setLiqidClientFactory(new LiqidClientFactory() {
+            @Override
+            public LiqidClient createLiqidClient() {
+                var client = new TestLiqidClient(attachments, latch);
+                clients.add(client);
+                return client;
+            }
+
+            @Override
+            public void releaseLiqidClient(final LiqidClient client) {
+                ((TestLiqidClient) client)._released = true;
+            }
+        });
+
+        var steps = new LinkedList<Action>();
+        for (int mx = 0; mx < 4; ++mx) {
+            var deviceName = inventory.getDeviceItem(devIds.get(mx)).getDeviceName();
+            steps.add(new ReconfigureMachineAction().setMachineName("Machine" + mx).addDeviceNameToAdd(deviceName));
+        }
+        var executor = new PlanExecutor(steps).setConcurrency(4);
+        executor.execute(context);
+
+        for (int sx = 0; sx < steps.size(); ++sx) {
+            assertEquals(StepStatus.SUCCEEDED, executor.getStatus(sx));
+            assertEquals(inventory.getMachineId("Machine" + sx), attachments.get(devIds.get(sx)));
+        }
+        assertEquals(4, clients.size());
+        for (var client : clients) {
+            assertEquals(1, client._threads.size());
+            assertTrue(client._released);
+        }
+        assertEquals(4, clients.stream().map(client -> client._threads.iterator().next()).distinct().count());
+    }
+}
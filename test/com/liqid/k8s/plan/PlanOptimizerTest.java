@@ -0,0 +1,99 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.plan;
+
+import com.liqid.k8s.plan.actions.Action;
+import com.liqid.k8s.plan.actions.AnnotateNodeAction;
+import com.liqid.k8s.plan.actions.AssignToMachineAction;
+import com.liqid.k8s.plan.actions.ClearConfigurationAction;
+import com.liqid.k8s.plan.actions.EnableP2PForMachineAction;
+import com.liqid.k8s.plan.actions.FusedMachineAction;
+import com.liqid.k8s.plan.actions.NoOperationAction;
+import com.liqid.k8s.plan.actions.ReconfigureMachineAction;
+import com.liqid.k8s.plan.actions.RemoveFromMachineAction;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static com.liqid.k8s.Constants.K8S_ANNOTATION_MACHINE_NAME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PlanOptimizerTest {
+
+    @Test
+    public void fuseAcrossIndependentActions() {
+        var assign = new AssignToMachineAction().setMachineName("Machine1").addDeviceName("gpu0");
+        var reconfig = new ReconfigureMachineAction().setMachineName("Machine2")
+                                                     .setNodeName("worker-2")
+                                                     .addDeviceNameToAdd("gpu1")
+                                                     .addDeviceNameToRemove("gpu2");
+        var enable = new EnableP2PForMachineAction().setMachineName("Machine1");
+        var result = PlanOptimizer.optimize(Arrays.asList(new NoOperationAction(), assign, reconfig, enable));
+
+        assertEquals(2, result.size());
+        var fused = (FusedMachineAction) result.get(0);
+        assertEquals("Machine1", fused.getMachineName());
+        assertEquals(Collections.singleton("gpu0"), new HashSet<>(fused.getDeviceNamesToAdd()));
+        assertTrue(fused.isEnablingP2P());
+        assertFalse(fused.isDrainingNode());
+        assertSame(reconfig, result.get(1));
+    }
+
+    @Test
+    public void fuseRemoveWithAssign() {
+        var remove = new RemoveFromMachineAction().setMachineName("Machine1").setNodeName("worker-1").addDeviceName("gpu0");
+        var assign = new AssignToMachineAction().setMachineName("Machine1").addDeviceName("gpu1");
+        var result = PlanOptimizer.optimize(Arrays.asList(remove, assign));
+
+        assertEquals(1, result.size());
+        var fused = (FusedMachineAction) result.get(0);
+        assertEquals("worker-1", fused.getNodeName());
+        assertTrue(fused.isDrainingNode());
+        assertEquals(Collections.singleton("gpu0"), new HashSet<>(fused.getDeviceNamesToRemove()));
+        assertEquals(Collections.singleton("gpu1"), new HashSet<>(fused.getDeviceNamesToAdd()));
+    }
+
+    @Test
+    public void doNotFuseAcrossDependencies() {
+        // Machine2 needs the device which Machine1 gives up, so Machine1's second step must wait for it
+        var remove = new RemoveFromMachineAction().setMachineName("Machine1").setNodeName("worker-1").addDeviceName("gpu0");
+        var take = new AssignToMachineAction().setMachineName("Machine2").addDeviceName("gpu0");
+        var assign = new AssignToMachineAction().setMachineName("Machine1").addDeviceName("gpu0");
+        var actions = Arrays.<Action>asList(remove, take, assign);
+        assertEquals(actions, PlanOptimizer.optimize(actions));
+    }
+
+    @Test
+    public void doNotFuseAcrossOtherActions() {
+        var assign = new AssignToMachineAction().setMachineName("Machine1").addDeviceName("gpu0");
+        var clear = new ClearConfigurationAction();
+        var enable = new EnableP2PForMachineAction().setMachineName("Machine1");
+        var actions = Arrays.<Action>asList(assign, clear, enable);
+        assertEquals(actions, PlanOptimizer.optimize(actions));
+    }
+
+    @Test
+    public void annotationsFuseOnlyWhenAdjacent() {
+        var assign1 = new AssignToMachineAction().setMachineName("Machine1").addDeviceName("gpu0");
+        var assign2 = new AssignToMachineAction().setMachineName("Machine2").addDeviceName("gpu1");
+        var annotate1 = new AnnotateNodeAction().setNodeName("worker-1").addAnnotation(K8S_ANNOTATION_MACHINE_NAME, "Machine1");
+        var annotate2 = new AnnotateNodeAction().setNodeName("worker-2").addAnnotation(K8S_ANNOTATION_MACHINE_NAME, "Machine2");
+        var result = PlanOptimizer.optimize(Arrays.asList(assign1, assign2, annotate2, annotate1));
+
+        assertEquals(3, result.size());
+        assertSame(assign1, result.get(0));
+        var fused = (FusedMachineAction) result.get(1);
+        assertEquals("Machine2", fused.getMachineName());
+        assertEquals("worker-2", fused.getNodeName());
+        assertFalse(fused.isDrainingNode());
+        assertSame(annotate1, result.get(2));
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * k8s-integration
+ * Copyright 2023-2024 by Liqid, Inc - All Rights Reserved
+ */
+
+package com.liqid.k8s.plan;
+
+import com.bearsnake.klog.Logger;
+import com.liqid.k8s.layout.InventorySnapshot;
+import com.liqid.k8s.layout.LiqidClientFactory;
+import com.liqid.k8s.layout.LiqidInventory;
+import com.liqid.sdk.DeviceType;
+import com.liqid.sdk.LiqidClient;
+import com.liqid.sdk.LiqidException;
+import com.liqid.sdk.mock.MockLiqidClient;
+import com.liqid.k8s.plan.actions.Action;
+import com.liqid.k8s.plan.actions.AssignToMachineAction;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PlanTest {
+
+    private static final Logger LOGGER = new Logger("Test");
+
+    private static MockLiqidClient createMock() throws LiqidException {
+        var mock = new MockLiqidClient.Builder().build();
+        mock.createDevices(DeviceType.GPU, (short)0x0010, (short)0x02, "NVidia", "A100", 4);
+        var group = mock.createGroup("Group");
+        mock.groupPoolEdit(group.getGroupId());
+        for (var dev : mock.getMockDevices()) {
+            mock.addDeviceToGroup(dev.getDeviceId(), group.getGroupId());
+        }
+        mock.groupPoolDone(group.getGroupId());
+        mock.createMachine(group.getGroupId(), "Machine1");
+        return mock;
+    }
+
+    // Makes a change to the planning inventory which the Liqid Cluster does not know about,
+    // so that we can tell whether the execution inventory came from the planning inventory.
+    private static Integer markPlanningInventory(
+        final LiqidInventory inventory
+    ) {
+        var devItem = inventory.getDeviceItems().iterator().next();
+        inventory.notifyDeviceAssignedToMachine(devItem.getDeviceId(), inventory.getMachineId("Machine1"));
+        return devItem.getDeviceId();
+    }
+
+    @Test
+    public void executionInventory_fingerprintMatches() throws LiqidException {
+        var mock = createMock();
+        var fingerprint = InventorySnapshot.createFingerprint(mock);
+        var planning = LiqidInventory.createLiqidInventory(mock);
+        var devId = markPlanningInventory(planning);
+
+        var execution = new Plan().getExecutionInventory(mock, planning, fingerprint, Collections.emptyList(), LOGGER);
+        assertNotSame(planning, execution);
+        assertNotNull(execution.getDeviceItem(devId).getMachineId());
+
+        // the planning inventory is not affected by execution
+        execution.notifyDeviceRemovedFromMachine(devId);
+        assertNotNull(planning.getDeviceItem(devId).getMachineId());
+    }
+
+    @Test
+    public void executionInventory_fingerprintDiffers() throws LiqidException {
+        var mock = createMock();
+        var fingerprint = InventorySnapshot.createFingerprint(mock);
+        var planning = LiqidInventory.createLiqidInventory(mock);
+        var devId = markPlanningInventory(planning);
+
+        mock.createMachine(mock.getGroups().get(0).getGroupId(), "Machine2");
+        var execution = new Plan().getExecutionInventory(mock, planning, fingerprint, Collections.emptyList(), LOGGER);
+        assertNotNull(execution.getMachine("Machine2"));
+        assertNull(execution.getDeviceItem(devId).getMachineId());
+    }
+
+    @Test
+    public void executionInventory_noFingerprint() throws LiqidException {
+        var mock = createMock();
+        var planning = LiqidInventory.createLiqidInventory(mock);
+        var devId = markPlanningInventory(planning);
+
+        var execution = new Plan().getExecutionInventory(mock, planning, null, Collections.emptyList(), LOGGER);
+        assertNull(execution.getDeviceItem(devId).getMachineId());
+        assertEquals(planning.getDeviceItems().size(), execution.getDeviceItems().size());
+    }
+
+    @Test
+    public void executionInventory_attachmentsDiffer() throws LiqidException {
+        var mock = createMock();
+        var groupId = mock.getGroups().get(0).getGroupId();
+        var machine1 = mock.getMachines().get(0);
+        var machine2 = mock.createMachine(groupId, "Machine2");
+        var devices = new ArrayList<>(mock.getMockDevices());
+        var moved = devices.get(0).getDeviceId();
+        mock.editFabric(machine1.getMachineId());
+        mock.addDeviceToMachine(moved, groupId, machine1.getMachineId());
+        mock.reprogramFabric(machine1.getMachineId());
+
+        var fingerprint = InventorySnapshot.createFingerprint(mock);
+        var planning = LiqidInventory.createLiqidInventory(mock);
+
+        // moving a device between machines in the same group does not change the fingerprint
+        mock.editFabric(machine1.getMachineId());
+        mock.removeDeviceFromMachine(moved, groupId, machine1.getMachineId());
+        mock.reprogramFabric(machine1.getMachineId());
+        mock.editFabric(machine2.getMachineId());
+        mock.addDeviceToMachine(moved, groupId, machine2.getMachineId());
+        mock.reprogramFabric(machine2.getMachineId());
+        assertEquals(fingerprint, InventorySnapshot.createFingerprint(mock));
+
+        // ...but it is noticed if the plan touches either machine
+        var deviceName = planning.getDeviceItem(devices.get(1).getDeviceId()).getDeviceName();
+        List<Action> actions = List.of(new AssignToMachineAction().setMachineName("Machine1").addDeviceName(deviceName));
+        var execution = new Plan().getExecutionInventory(mock, planning, fingerprint, actions, LOGGER);
+        assertEquals(machine2.getMachineId(), execution.getDeviceItem(moved).getMachineId());
+
+        // and not otherwise
+        var untouched = new Plan().getExecutionInventory(mock, planning, fingerprint, Collections.emptyList(), LOGGER);
+        assertTrue(untouched.getDeviceItemsForMachine("Machine2").isEmpty());
+    }
+
+    @Test
+    public void executionInventory_mostMachinesAffected() throws LiqidException {
+        var mock = createMock();
+        var fingerprint = InventorySnapshot.createFingerprint(mock);
+        var planning = LiqidInventory.createLiqidInventory(mock);
+        var devId = markPlanningInventory(planning);
+
+        // the only machine is touched, so checking it would cost as much as a reload
+        var deviceName = planning.getDeviceItems().iterator().next().getDeviceName();
+        List<Action> actions = List.of(new AssignToMachineAction().setMachineName("Machine1").addDeviceName(deviceName));
+        var execution = new Plan().getExecutionInventory(mock, planning, fingerprint, actions, LOGGER);
+        assertNull(execution.getDeviceItem(devId).getMachineId());
+    }
+
+    @Test
+    public void executionInventory_concurrentChecks() throws LiqidException {
+        var mock = createMock();
+        var groupId = mock.getGroups().get(0).getGroupId();
+        for (int mx = 2; mx <= 4; ++mx) {
+            mock.createMachine(groupId, "Machine" + mx);
+        }
+        var fingerprint = InventorySnapshot.createFingerprint(mock);
+        var planning = LiqidInventory.createLiqidInventory(mock);
+        var devId = markPlanningInventory(planning);
+
+        // Machine1 is checked with clients from the factory - and its devices differ, so we reload with them too
+        var created = new AtomicInteger();
+        var released = new AtomicInteger();
+        var plan = new Plan().setInventoryConcurrency(4).setLiqidClientFactory(new LiqidClientFactory() {
+            @Override
+            public LiqidClient createLiqidClient() {
+                created.incrementAndGet();
+                return mock;
+            }
+
+            @Override
+            public void releaseLiqidClient(final LiqidClient client) {
+                released.incrementAndGet();
+            }
+        });
+        List<Action> actions = List.of(new AssignToMachineAction().setMachineName("Machine1").addDeviceName("gpu3"));
+        var execution = plan.getExecutionInventory(mock, planning, fingerprint, actions, LOGGER);
+        assertNull(execution.getDeviceItem(devId).getMachineId());
+        assertTrue(created.get() >= 2);
+        assertEquals(created.get(), released.get());
+    }
+}